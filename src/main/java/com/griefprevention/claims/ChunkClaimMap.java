@@ -0,0 +1,298 @@
+package com.griefprevention.claims;
+
+import me.ryanhamshire.GriefPrevention.Claim;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * A hash map from primitive chunk keys to compact arrays of {@link Claim Claims}.
+ *
+ * <p>Keys are stored unboxed in an open-addressing table with linear probing. Value arrays are
+ * copy-on-write: once an array has been returned by {@link #get(long)} it is never modified, so
+ * callers may keep and iterate it freely.</p>
+ *
+ * <p>This map is not thread-safe for concurrent writes. Readers racing a writer may observe a stale
+ * or missing entry, but never an unbounded probe, so callers are expected to validate such reads
+ * (i.e. with an optimistic lock stamp).</p>
+ *
+ * <p>Most lookups are for unclaimed chunks. Each table carries a bitmap of hashed keys, eight bits per slot, so that
+ * such lookups usually end on a single bit instead of a probe. Bits are not cleared on removal; the table is rebuilt
+ * after a quarter of its capacity in removals.</p>
+ */
+final class ChunkClaimMap
+{
+
+    private static final int MIN_CAPACITY = 16;
+
+    private volatile Table table;
+    private int size;
+    private int removals;
+
+    /**
+     * Construct a new empty {@code ChunkClaimMap}.
+     */
+    ChunkClaimMap()
+    {
+        this.table = new Table(MIN_CAPACITY);
+    }
+
+    /**
+     * Get the number of chunks with at least one claim.
+     *
+     * @return the number of keys
+     */
+    int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Get the claims for a chunk key.
+     *
+     * @param key the chunk key
+     * @return the claims or {@code null} if there are none
+     */
+    @Nullable Claim[] get(long key)
+    {
+        Table table = this.table;
+        if (!table.mayContain(key)) return null;
+
+        int mask = table.mask;
+        int slot = mix(key) & mask;
+
+        // The probe is bounded by the capacity so that a racing writer can never trap a reader.
+        for (int probes = 0; probes <= mask; probes++)
+        {
+            Claim[] value = table.values[slot];
+            if (value == null) return null;
+            if (table.keys[slot] == key) return value;
+            slot = (slot + 1) & mask;
+        }
+
+        return null;
+    }
+
+    /**
+     * Append a {@link Claim} to the claims for a chunk key.
+     *
+     * @param key the chunk key
+     * @param claim the {@code Claim}
+     */
+    void add(long key, @NotNull Claim claim)
+    {
+        Table table = this.table;
+        int slot = table.find(key);
+
+        if (slot >= 0)
+        {
+            Claim[] oldValue = table.values[slot];
+            Claim[] newValue = Arrays.copyOf(oldValue, oldValue.length + 1);
+            newValue[oldValue.length] = claim;
+            table.values[slot] = newValue;
+            return;
+        }
+
+        this.put(key, new Claim[] { claim });
+    }
+
+    /**
+     * Set the claims for a chunk key, replacing any existing claims.
+     *
+     * @param key the chunk key
+     * @param claims the claims, which must not be modified afterwards
+     */
+    void put(long key, @NotNull Claim @NotNull [] claims)
+    {
+        Table table = this.table;
+        int slot = table.find(key);
+
+        if (slot >= 0)
+        {
+            table.values[slot] = claims;
+            return;
+        }
+
+        if ((this.size + 1) * 2 > table.values.length)
+        {
+            table = this.resize(table.values.length * 2);
+        }
+
+        slot = ~table.find(key);
+        table.keys[slot] = key;
+        // Mark the key before publishing its value so that a reader seeing the value can reach it.
+        table.mark(key);
+        table.values[slot] = claims;
+        this.size++;
+    }
+
+    /**
+     * Remove claims matching a {@link Predicate} from the claims for a chunk key.
+     *
+     * @param key the chunk key
+     * @param filter the predicate matching claims to remove
+     * @return true if any claims were removed
+     */
+    boolean removeIf(long key, @NotNull Predicate<Claim> filter)
+    {
+        Table table = this.table;
+        int slot = table.find(key);
+        if (slot < 0) return false;
+
+        Claim[] oldValue = table.values[slot];
+        Claim[] newValue = new Claim[oldValue.length];
+        int remaining = 0;
+        for (Claim claim : oldValue)
+        {
+            if (!filter.test(claim)) newValue[remaining++] = claim;
+        }
+
+        if (remaining == oldValue.length) return false;
+
+        if (remaining > 0)
+        {
+            table.values[slot] = Arrays.copyOf(newValue, remaining);
+            return true;
+        }
+
+        table.delete(slot);
+        this.size--;
+
+        // Stale bits only cost a probe, but churn would eventually fill the bitmap.
+        if (++this.removals > table.values.length >>> 2)
+        {
+            this.resize(table.values.length);
+        }
+        return true;
+    }
+
+    /**
+     * Remove all entries.
+     */
+    void clear()
+    {
+        this.table = new Table(MIN_CAPACITY);
+        this.size = 0;
+        this.removals = 0;
+    }
+
+    private @NotNull Table resize(int capacity)
+    {
+        Table oldTable = this.table;
+        Table newTable = new Table(capacity);
+        for (int i = 0; i < oldTable.values.length; i++)
+        {
+            Claim[] value = oldTable.values[i];
+            if (value == null) continue;
+            int slot = ~newTable.find(oldTable.keys[i]);
+            newTable.keys[slot] = oldTable.keys[i];
+            newTable.values[slot] = value;
+            newTable.mark(oldTable.keys[i]);
+        }
+
+        // Publish the fully populated table in one write.
+        this.table = newTable;
+        this.removals = 0;
+        return newTable;
+    }
+
+    private static int mix(long key)
+    {
+        // Chunk keys are heavily patterned, so spread them before masking.
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static int bit(long key)
+    {
+        // Spread differently from the slot so that bitmap collisions don't line up with probe clusters.
+        return (int) ((key * 0xC2B2AE3D27D4EB4FL) >>> 32);
+    }
+
+    private static final class Table
+    {
+        private final long[] keys;
+        private final Claim[][] values;
+        private final int mask;
+        private final long[] claimed;
+        private final int claimedMask;
+
+        private Table(int capacity)
+        {
+            this.keys = new long[capacity];
+            this.values = new Claim[capacity][];
+            this.mask = capacity - 1;
+            this.claimed = new long[capacity >>> 3];
+            this.claimedMask = (capacity << 3) - 1;
+        }
+
+        /**
+         * Check whether a key may be present.
+         *
+         * @param key the key
+         * @return false if the key is certainly absent
+         */
+        private boolean mayContain(long key)
+        {
+            int bit = bit(key) & this.claimedMask;
+            return (this.claimed[bit >>> 6] & 1L << bit) != 0;
+        }
+
+        /**
+         * Mark a key as possibly present.
+         *
+         * @param key the key
+         */
+        private void mark(long key)
+        {
+            int bit = bit(key) & this.claimedMask;
+            this.claimed[bit >>> 6] |= 1L << bit;
+        }
+
+        /**
+         * Find the slot for a key.
+         *
+         * @param key the key
+         * @return the slot index if present, otherwise the bitwise complement of the free slot to insert at
+         */
+        private int find(long key)
+        {
+            int slot = mix(key) & this.mask;
+            while (this.values[slot] != null)
+            {
+                if (this.keys[slot] == key) return slot;
+                slot = (slot + 1) & this.mask;
+            }
+            return ~slot;
+        }
+
+        /**
+         * Empty a slot, shifting back any following entries so that probes stay unbroken without tombstones.
+         *
+         * @param slot the slot to empty
+         */
+        private void delete(int slot)
+        {
+            int free = slot;
+            int next = slot;
+            while (true)
+            {
+                next = (next + 1) & this.mask;
+                if (this.values[next] == null) break;
+
+                int ideal = mix(this.keys[next]) & this.mask;
+                // Leave the entry if its ideal slot lies cyclically between the free slot and its current slot.
+                boolean reachable = free <= next ? free < ideal && ideal <= next : free < ideal || ideal <= next;
+                if (reachable) continue;
+
+                this.keys[free] = this.keys[next];
+                this.values[free] = this.values[next];
+                free = next;
+            }
+            this.values[free] = null;
+        }
+    }
+
+}
@@ -0,0 +1,274 @@
+package com.griefprevention.claims;
+
+import me.ryanhamshire.GriefPrevention.Claim;
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.LongConsumer;
+
+/**
+ * A spatial index of the top level {@link Claim Claims} in a single {@link World}.
+ *
+ * <p>Claims are bucketed by every chunk their bounds touch. Because each world has its own index,
+ * lookups never have to walk and discard claims from other worlds that share the same chunk coordinates.
+ * Subdivisions are not indexed directly; they are resolved through their parent.</p>
+ *
+ * <p>Lookups in unclaimed chunks are usually ruled out by the chunk map's claimed-chunk bitmap without probing its
+ * table. See {@code ClaimIndexBenchmark} in the tests for measurements.</p>
+ *
+ * <p>Writes must be externally serialized. Reads racing a write may see stale buckets and should be validated.</p>
+ */
+public final class ClaimIndex
+{
+
+    private final @NotNull UUID worldId;
+    private static final Claim[] NO_CLAIMS = new Claim[0];
+
+    private final @NotNull ChunkClaimMap chunksToClaims = new ChunkClaimMap();
+
+    /**
+     * Construct a new empty {@code ClaimIndex} for the specified {@link World}.
+     *
+     * @param world the {@code World}
+     */
+    public ClaimIndex(@NotNull World world)
+    {
+        this.worldId = world.getUID();
+    }
+
+    /**
+     * Get the unique ID of the {@link World} this index covers.
+     *
+     * @return the world's unique ID
+     */
+    public @NotNull UUID getWorldId()
+    {
+        return this.worldId;
+    }
+
+    /**
+     * Get an identifier for the chunk at the given chunk coordinates.
+     *
+     * @param chunkX the chunk X coordinate
+     * @param chunkZ the chunk Z coordinate
+     * @return the chunk key
+     */
+    public static long getChunkKey(long chunkX, long chunkZ)
+    {
+        return chunkZ ^ (chunkX << 32);
+    }
+
+    /**
+     * Pass the key of every chunk touched by a {@link BoundingBox} to a consumer without boxing.
+     *
+     * @param boundingBox the area
+     * @param consumer the chunk key consumer
+     */
+    public static void forEachChunkKey(@NotNull BoundingBox boundingBox, @NotNull LongConsumer consumer)
+    {
+        int chunkXMax = boundingBox.getMaxX() >> 4;
+        int chunkZMax = boundingBox.getMaxZ() >> 4;
+
+        for (int chunkX = boundingBox.getMinX() >> 4; chunkX <= chunkXMax; chunkX++)
+        {
+            for (int chunkZ = boundingBox.getMinZ() >> 4; chunkZ <= chunkZMax; chunkZ++)
+            {
+                consumer.accept(getChunkKey(chunkX, chunkZ));
+            }
+        }
+    }
+
+    /**
+     * Add a top level {@link Claim} to every chunk its bounds touch.
+     *
+     * @param claim the {@code Claim}
+     */
+    public void add(@NotNull Claim claim)
+    {
+        // Subclaims are resolved through their parent.
+        if (claim.parent != null) return;
+
+        forEachChunkKey(claim.getBounds(), chunkKey -> this.chunksToClaims.add(chunkKey, claim));
+    }
+
+    /**
+     * Remove a {@link Claim} from every chunk its current bounds touch.
+     *
+     * <p>This must be called before the claim's bounds are changed.</p>
+     *
+     * @param claim the {@code Claim}
+     */
+    public void remove(@NotNull Claim claim)
+    {
+        // Subclaims are never indexed directly.
+        if (claim.parent != null) return;
+
+        Long claimId = claim.getID();
+        forEachChunkKey(claim.getBounds(),
+                chunkKey -> this.chunksToClaims.removeIf(chunkKey, other -> other.getID().equals(claimId)));
+    }
+
+    /**
+     * Remove all claims from the index.
+     */
+    public void clear()
+    {
+        this.chunksToClaims.clear();
+    }
+
+    /**
+     * Get the top level claims touching a chunk.
+     *
+     * @param chunkX the chunk X coordinate
+     * @param chunkZ the chunk Z coordinate
+     * @return an unmodifiable snapshot of the claims in the chunk
+     */
+    public @NotNull Collection<Claim> getClaims(int chunkX, int chunkZ)
+    {
+        Claim[] claimsInChunk = this.chunksToClaims.get(getChunkKey(chunkX, chunkZ));
+        if (claimsInChunk == null) return Collections.emptyList();
+        // Buckets are copy-on-write, so this is a stable snapshot.
+        return Collections.unmodifiableList(Arrays.asList(claimsInChunk));
+    }
+
+    /**
+     * Get the top level claims touching any chunk that the specified {@link BoundingBox} touches.
+     *
+     * <p>Note that claims are not guaranteed to intersect the bounding box itself.</p>
+     *
+     * @param boundingBox the area
+     * @return a new set containing the claims
+     */
+    public @NotNull Set<Claim> getChunkClaims(@NotNull BoundingBox boundingBox)
+    {
+        Set<Claim> claims = new HashSet<>();
+        forEachChunkKey(boundingBox, chunkKey ->
+        {
+            Claim[] claimsInChunk = this.chunksToClaims.get(chunkKey);
+            if (claimsInChunk == null) return;
+
+            for (Claim claim : claimsInChunk)
+            {
+                if (claim.inDataStore)
+                {
+                    claims.add(claim);
+                }
+            }
+        });
+        return claims;
+    }
+
+    /**
+     * Get the claim at a position.
+     *
+     * @param x the X coordinate
+     * @param y the Y coordinate
+     * @param z the Z coordinate
+     * @param ignoreHeight whether positions under a 2D claim are considered inside it
+     * @param ignoreSubclaims whether top level claims should be returned instead of their subdivisions
+     * @return the claim containing the position or null if no claim exists there
+     */
+    public @Nullable Claim getClaimAt(int x, int y, int z, boolean ignoreHeight, boolean ignoreSubclaims)
+    {
+        Claim[] claimsInChunk = this.chunksToClaims.get(getChunkKey(x >> 4, z >> 4));
+        if (claimsInChunk == null) return null;
+
+        return getClaimAt(claimsInChunk, x, y, z, ignoreHeight, ignoreSubclaims);
+    }
+
+    /**
+     * Get the claims at many blocks at once.
+     *
+     * <p>The claims of each chunk are looked up only once, no matter how many of the blocks fall inside it.</p>
+     *
+     * @param blocks the blocks, which must all be in this index's world
+     * @param results the array to store the claim at each block in, or null where there is no claim
+     * @param offset the index in the results array to store the first block's claim at
+     * @param ignoreHeight whether positions under a 2D claim are considered inside it
+     * @param ignoreSubclaims whether top level claims should be returned instead of their subdivisions
+     */
+    public void getClaimsAt(
+            @NotNull List<Block> blocks,
+            @Nullable Claim @NotNull [] results,
+            int offset,
+            boolean ignoreHeight,
+            boolean ignoreSubclaims)
+    {
+        // Buckets fetched for this batch, including empty ones.
+        ChunkClaimMap fetched = new ChunkClaimMap();
+        long lastChunkKey = 0;
+        Claim[] lastChunkClaims = null;
+
+        for (int i = 0; i < blocks.size(); i++)
+        {
+            Block block = blocks.get(i);
+            int x = block.getX();
+            int z = block.getZ();
+            long chunkKey = getChunkKey(x >> 4, z >> 4);
+
+            if (lastChunkClaims == null || chunkKey != lastChunkKey)
+            {
+                lastChunkClaims = fetched.get(chunkKey);
+                if (lastChunkClaims == null)
+                {
+                    lastChunkClaims = this.chunksToClaims.get(chunkKey);
+                    if (lastChunkClaims == null) lastChunkClaims = NO_CLAIMS;
+                    fetched.put(chunkKey, lastChunkClaims);
+                }
+                lastChunkKey = chunkKey;
+            }
+
+            results[offset + i] = getClaimAt(lastChunkClaims, x, block.getY(), z, ignoreHeight, ignoreSubclaims);
+        }
+    }
+
+    private static @Nullable Claim getClaimAt(
+            @NotNull Claim @NotNull [] claimsInChunk,
+            int x,
+            int y,
+            int z,
+            boolean ignoreHeight,
+            boolean ignoreSubclaims)
+    {
+        for (Claim claim : claimsInChunk)
+        {
+            if (!claim.inDataStore || !claim.getBounds().contains2d(x, z)) continue;
+
+            // When we find a top level claim, if the position is in one of its subdivisions,
+            // return the subdivision, not the top level claim.
+            if (!ignoreSubclaims)
+            {
+                List<Claim> candidates = claim.getSubdivisionCandidates(x, z);
+                for (int i = 0; i < candidates.size(); i++)
+                {
+                    Claim subdivision = candidates.get(i);
+                    // Never ignore height of 3D subclaims.
+                    if (subdivision.inDataStore && contains(subdivision, x, y, z, ignoreHeight))
+                        return subdivision;
+                }
+            }
+
+            if (contains(claim, x, y, z, ignoreHeight))
+                return claim;
+        }
+
+        return null;
+    }
+
+    private static boolean contains(@NotNull Claim claim, int x, int y, int z, boolean ignoreHeight)
+    {
+        if (ignoreHeight && !claim.is3D()) return claim.getBounds().contains2d(x, z);
+        return claim.getBounds().contains(x, y, z);
+    }
+
+}
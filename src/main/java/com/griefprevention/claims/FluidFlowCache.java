@@ -0,0 +1,228 @@
+package com.griefprevention.claims;
+
+import me.ryanhamshire.GriefPrevention.Claim;
+import me.ryanhamshire.GriefPrevention.DataStore;
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+
+/**
+ * A cache of fluid flow decisions between 16x16x16 chunk sections.
+ *
+ * <p>Fluid farms and flows along claim edges fire thousands of flow events per second, nearly all between the same
+ * few sections. When a section lies entirely inside one claim or entirely in the wilderness, every block in it has
+ * the same claim, so a flow between two such sections can be decided once for the pair. Flows touching a section
+ * split between claims are decided block by block.</p>
+ *
+ * <p>Entries last for one tick of their world and are dropped as soon as claims are added, removed or resized. Trust
+ * and ownership changes are picked up on the next tick.</p>
+ */
+public final class FluidFlowCache
+{
+
+    // Entries allowed per world and tick before starting over, in case a world's time stands still.
+    private static final int MAX_ENTRIES = 8192;
+    // Section state for a section split between claims and wilderness or between several claims.
+    private static final Object MIXED = new Object();
+    // Section state for a section without any claim.
+    private static final Object WILDERNESS = new Object();
+
+    private final @NotNull DataStore dataStore;
+    private final Map<UUID, WorldCache> worlds = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder blockLookups = new LongAdder();
+
+    /**
+     * Construct a new {@code FluidFlowCache}.
+     *
+     * @param dataStore the {@link DataStore} to look up claims in
+     */
+    public FluidFlowCache(@NotNull DataStore dataStore)
+    {
+        this.dataStore = dataStore;
+    }
+
+    /**
+     * Decide whether fluid may flow from one block to another.
+     *
+     * <p>The rule must give the same answer for the same claims within a world for the duration of a tick.</p>
+     *
+     * @param from the block the fluid flows from
+     * @param to the block the fluid flows into
+     * @param rule the rule deciding flow from the claim at the source into the claim at the destination, where
+     *             {@code null} is the wilderness
+     * @return whether the flow is allowed
+     */
+    public boolean isFlowAllowed(
+            @NotNull Block from,
+            @NotNull Block to,
+            @NotNull BiPredicate<@Nullable Claim, @Nullable Claim> rule)
+    {
+        World world = from.getWorld();
+        WorldCache cache = this.worlds.computeIfAbsent(world.getUID(), id -> new WorldCache());
+        synchronized (cache)
+        {
+            cache.validate(world.getGameTime());
+
+            int fromSectionX = from.getX() >> 4, fromSectionY = from.getY() >> 4, fromSectionZ = from.getZ() >> 4;
+            int dX = (to.getX() >> 4) - fromSectionX;
+            int dY = (to.getY() >> 4) - fromSectionY;
+            int dZ = (to.getZ() >> 4) - fromSectionZ;
+
+            // Flows are always between neighboring blocks, but don't trust that for the key.
+            if (Math.abs(dX) <= 1 && Math.abs(dY) <= 1 && Math.abs(dZ) <= 1)
+            {
+                long fromSection = getSectionKey(fromSectionX, fromSectionY, fromSectionZ);
+                long pairKey = fromSection << 5 | (dX + 1) * 9 + (dY + 1) * 3 + (dZ + 1);
+                Boolean decision = cache.decisions.get(pairKey);
+                if (decision != null)
+                {
+                    this.hits.increment();
+                    return decision;
+                }
+
+                Object fromState = cache.getSection(world, fromSectionX, fromSectionY, fromSectionZ, fromSection);
+                Object toState = cache.getSection(world, fromSectionX + dX, fromSectionY + dY, fromSectionZ + dZ,
+                        getSectionKey(fromSectionX + dX, fromSectionY + dY, fromSectionZ + dZ));
+                if (fromState != MIXED && toState != MIXED)
+                {
+                    this.misses.increment();
+                    decision = rule.test(toClaim(fromState), toClaim(toState));
+                    cache.decisions.put(pairKey, decision);
+                    return decision;
+                }
+            }
+
+            // Mixed sections need the claim at each block.
+            this.blockLookups.increment();
+            Claim fromClaim = this.dataStore.getClaimAt(from.getLocation(), false, cache.lastFromClaim);
+            Claim toClaim = this.dataStore.getClaimAt(to.getLocation(), false, cache.lastToClaim);
+
+            // Neighboring flows usually hit the same pair of claims again.
+            cache.lastFromClaim = fromClaim;
+            cache.lastToClaim = toClaim;
+
+            return rule.test(fromClaim, toClaim);
+        }
+    }
+
+    /**
+     * Get the number of flows decided from a remembered section pair.
+     *
+     * @return the number of hits
+     */
+    public long getHits()
+    {
+        return this.hits.sum();
+    }
+
+    /**
+     * Get the number of section pairs decided and remembered.
+     *
+     * @return the number of misses
+     */
+    public long getMisses()
+    {
+        return this.misses.sum();
+    }
+
+    /**
+     * Get the number of flows decided by looking up the claims of both blocks.
+     *
+     * @return the number of block lookups
+     */
+    public long getBlockLookups()
+    {
+        return this.blockLookups.sum();
+    }
+
+    private static long getSectionKey(int sectionX, int sectionY, int sectionZ)
+    {
+        // Chunk coordinates fit in 22 bits within the world border, section heights in 12.
+        return ((long) sectionX & 0x3FFFFF) << 34 | ((long) sectionZ & 0x3FFFFF) << 12 | (sectionY & 0xFFF);
+    }
+
+    private static @Nullable Claim toClaim(@NotNull Object state)
+    {
+        return state == WILDERNESS ? null : (Claim) state;
+    }
+
+    private final class WorldCache
+    {
+
+        private long gameTime = Long.MIN_VALUE;
+        private long claimStamp = 0;
+        private final HashMap<Long, Object> sections = new HashMap<>();
+        private final HashMap<Long, Boolean> decisions = new HashMap<>();
+        private @Nullable Claim lastFromClaim;
+        private @Nullable Claim lastToClaim;
+
+        private void validate(long gameTime)
+        {
+            if (gameTime == this.gameTime
+                    && dataStore.isClaimModelUnchanged(this.claimStamp)
+                    && this.sections.size() + this.decisions.size() < MAX_ENTRIES)
+                return;
+
+            this.gameTime = gameTime;
+            this.claimStamp = dataStore.getClaimModelStamp();
+            this.sections.clear();
+            this.decisions.clear();
+        }
+
+        private @NotNull Object getSection(
+                @NotNull World world,
+                int sectionX,
+                int sectionY,
+                int sectionZ,
+                long sectionKey)
+        {
+            Object state = this.sections.get(sectionKey);
+            if (state == null)
+            {
+                state = resolveSection(world, sectionX, sectionY, sectionZ);
+                this.sections.put(sectionKey, state);
+            }
+            return state;
+        }
+
+        private @NotNull Object resolveSection(@NotNull World world, int sectionX, int sectionY, int sectionZ)
+        {
+            BoundingBox section = new BoundingBox(sectionX << 4, sectionY << 4, sectionZ << 4,
+                    (sectionX << 4) + 15, (sectionY << 4) + 15, (sectionZ << 4) + 15);
+
+            // Find the only top level claim touching the section, which must cover all of it.
+            Claim found = null;
+            for (Claim claim : dataStore.getClaims(world, sectionX, sectionZ))
+            {
+                if (!claim.inDataStore || !claim.getBounds().intersects(section)) continue;
+                if (found != null || !claim.getBounds().contains(section)) return MIXED;
+                found = claim;
+            }
+            if (found == null) return WILDERNESS;
+
+            // The same goes for its subdivisions.
+            Claim subdivision = null;
+            for (Claim child : found.children)
+            {
+                if (!child.inDataStore || !child.getBounds().intersects(section)) continue;
+                if (subdivision != null || !child.getBounds().contains(section)) return MIXED;
+                subdivision = child;
+            }
+            return subdivision != null ? subdivision : found;
+        }
+
+    }
+
+}
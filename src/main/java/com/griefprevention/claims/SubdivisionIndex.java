@@ -0,0 +1,151 @@
+package com.griefprevention.claims;
+
+import me.ryanhamshire.GriefPrevention.Claim;
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A 2D grid over the subdivisions of a single top level {@link Claim}.
+ *
+ * <p>Each cell holds the subdivisions whose bounds overlap it, in the same order as the parent's
+ * {@link Claim#children children}, so a scan of a cell returns the same first match as a scan of every child.
+ * The grid is sized so that the average cell holds about one subdivision.</p>
+ *
+ * <p>An index is an immutable snapshot. It is tagged with the parent's modification count and child count at
+ * the time it was built and must be discarded once either changes.</p>
+ */
+public final class SubdivisionIndex
+{
+
+    /** The number of subdivisions below which a linear scan is cheaper than maintaining an index. */
+    public static final int MIN_SUBDIVISIONS = 32;
+
+    private final int modCount;
+    private final int size;
+    private final int minX;
+    private final int minZ;
+    private final int cellSize;
+    private final int cellsX;
+    private final int cellsZ;
+    private final @NotNull List<List<Claim>> cells;
+
+    /**
+     * Construct a new {@code SubdivisionIndex} from a snapshot of subdivisions.
+     *
+     * @param subdivisions the subdivisions in lookup order
+     * @param modCount the parent's modification count when the snapshot was taken
+     */
+    public SubdivisionIndex(@NotNull List<Claim> subdivisions, int modCount)
+    {
+        Claim[] snapshot = subdivisions.toArray(new Claim[0]);
+        this.modCount = modCount;
+        this.size = snapshot.length;
+
+        int minX = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (Claim subdivision : snapshot)
+        {
+            BoundingBox bounds = subdivision.getBounds();
+            minX = Math.min(minX, bounds.getMinX());
+            minZ = Math.min(minZ, bounds.getMinZ());
+            maxX = Math.max(maxX, bounds.getMaxX());
+            maxZ = Math.max(maxZ, bounds.getMaxZ());
+        }
+
+        if (snapshot.length == 0)
+        {
+            minX = minZ = 0;
+            maxX = maxZ = 0;
+        }
+
+        long length = (long) maxX - minX + 1;
+        long width = (long) maxZ - minZ + 1;
+        this.minX = minX;
+        this.minZ = minZ;
+        long cellSize = (long) Math.max(1, Math.ceil(Math.sqrt((double) length * width / Math.max(1, snapshot.length))));
+        // Long, thin layouts round up to many more cells than subdivisions; coarsen until the grid stays small.
+        while (((length - 1) / cellSize + 1) * ((width - 1) / cellSize + 1) > 16L * Math.max(1, snapshot.length))
+        {
+            cellSize *= 2;
+        }
+        this.cellSize = (int) Math.min(Integer.MAX_VALUE, cellSize);
+        this.cellsX = (int) ((length - 1) / this.cellSize + 1);
+        this.cellsZ = (int) ((width - 1) / this.cellSize + 1);
+
+        List<List<Claim>> cells = new ArrayList<>(this.cellsX * this.cellsZ);
+        for (int i = 0; i < this.cellsX * this.cellsZ; i++)
+        {
+            cells.add(new ArrayList<>());
+        }
+
+        for (Claim subdivision : snapshot)
+        {
+            BoundingBox bounds = subdivision.getBounds();
+            int cellXMax = this.getCellX(bounds.getMaxX());
+            int cellZMax = this.getCellZ(bounds.getMaxZ());
+            for (int cellX = this.getCellX(bounds.getMinX()); cellX <= cellXMax; cellX++)
+            {
+                for (int cellZ = this.getCellZ(bounds.getMinZ()); cellZ <= cellZMax; cellZ++)
+                {
+                    cells.get(cellX * this.cellsZ + cellZ).add(subdivision);
+                }
+            }
+        }
+
+        for (int i = 0; i < cells.size(); i++)
+        {
+            List<Claim> cell = cells.get(i);
+            cells.set(i, cell.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(cell));
+        }
+        this.cells = cells;
+    }
+
+    /**
+     * Check whether this index still describes the parent's subdivisions.
+     *
+     * @param modCount the parent's current modification count
+     * @param size the parent's current number of subdivisions
+     * @return true if the index may be used
+     */
+    public boolean isCurrent(int modCount, int size)
+    {
+        return this.modCount == modCount && this.size == size;
+    }
+
+    /**
+     * Get the subdivisions whose 2D bounds may contain a position.
+     *
+     * <p>Callers must still check each candidate's bounds.</p>
+     *
+     * @param x the X coordinate
+     * @param z the Z coordinate
+     * @return an unmodifiable list of candidates in lookup order
+     */
+    public @NotNull List<Claim> getCandidates(int x, int z)
+    {
+        long offsetX = (long) x - this.minX;
+        long offsetZ = (long) z - this.minZ;
+        if (offsetX < 0 || offsetZ < 0) return Collections.emptyList();
+
+        long cellX = offsetX / this.cellSize;
+        long cellZ = offsetZ / this.cellSize;
+        if (cellX >= this.cellsX || cellZ >= this.cellsZ) return Collections.emptyList();
+
+        return this.cells.get((int) cellX * this.cellsZ + (int) cellZ);
+    }
+
+    private int getCellX(int x)
+    {
+        return (int) (((long) x - this.minX) / this.cellSize);
+    }
+
+    private int getCellZ(int z)
+    {
+        return (int) (((long) z - this.minZ) / this.cellSize);
+    }
+
+}
@@ -0,0 +1,175 @@
+package com.griefprevention.protection;
+
+import me.ryanhamshire.GriefPrevention.Claim;
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+/**
+ * A part of an area where an action is denied, and why.
+ *
+ * <p>A region is the intersection of the area with a single claim, or with a single chunk of wilderness. It covers
+ * every block in its bounds except those in the excluded areas, which belong to a subdivision or, for wilderness, to
+ * a claim, and were decided separately.</p>
+ *
+ * @param world the {@link World} containing the region
+ * @param bounds the bounds of the region
+ * @param excluded the areas within the bounds that are not part of the region
+ * @param claim the {@link Claim} denying the action, or {@code null} for the wilderness
+ * @param reason the denial message supplier
+ */
+public record DeniedRegion(
+        @NotNull World world,
+        @NotNull BoundingBox bounds,
+        @NotNull List<BoundingBox> excluded,
+        @Nullable Claim claim,
+        @NotNull Supplier<String> reason)
+{
+
+    public DeniedRegion
+    {
+        excluded = List.copyOf(excluded);
+    }
+
+    /**
+     * Check whether a position is part of the region.
+     *
+     * @param x the X coordinate
+     * @param y the Y coordinate
+     * @param z the Z coordinate
+     * @return true if the position is in the bounds and not excluded
+     */
+    public boolean contains(int x, int y, int z)
+    {
+        if (!this.bounds.contains(x, y, z)) return false;
+        for (BoundingBox box : this.excluded)
+        {
+            if (box.contains(x, y, z)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check whether the excluded areas cover the entire region.
+     *
+     * <p>This looks at columns rather than blocks, and stops at the first column with a block left in it.</p>
+     *
+     * @return true if the region contains no blocks
+     */
+    public boolean isEmpty()
+    {
+        List<BoundingBox> overlapping = new ArrayList<>();
+        for (BoundingBox box : this.excluded)
+        {
+            if (box.contains(this.bounds)) return true;
+            if (box.intersects(this.bounds)) overlapping.add(box);
+        }
+        if (overlapping.isEmpty()) return false;
+
+        for (int x = this.bounds.getMinX(); x <= this.bounds.getMaxX(); x++)
+        {
+            for (int z = this.bounds.getMinZ(); z <= this.bounds.getMaxZ(); z++)
+            {
+                if (!isColumnCovered(overlapping, x, z)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the blocks in the region. Blocks are looked up as they are iterated, so even a large region costs nothing
+     * until it is walked.
+     *
+     * @return the blocks in the region, layer by layer from the bottom
+     */
+    public @NotNull Iterable<Block> blocks()
+    {
+        return () -> new BlockIterator(this);
+    }
+
+    private boolean isColumnCovered(@NotNull List<BoundingBox> overlapping, int x, int z)
+    {
+        // Raise the lowest uncovered height until no excluded area starts at or below it.
+        int uncovered = this.bounds.getMinY();
+        boolean raised = true;
+        while (raised)
+        {
+            raised = false;
+            for (BoundingBox box : overlapping)
+            {
+                if (box.contains2d(x, z) && box.getMinY() <= uncovered && box.getMaxY() >= uncovered)
+                {
+                    uncovered = box.getMaxY() + 1;
+                    raised = true;
+                }
+            }
+            if (uncovered > this.bounds.getMaxY()) return true;
+        }
+        return false;
+    }
+
+    private static final class BlockIterator implements Iterator<Block>
+    {
+
+        private final @NotNull DeniedRegion region;
+        private final @NotNull BoundingBox bounds;
+        private int x;
+        private int y;
+        private int z;
+        private boolean done;
+
+        private BlockIterator(@NotNull DeniedRegion region)
+        {
+            this.region = region;
+            this.bounds = region.bounds();
+            this.x = this.bounds.getMinX();
+            this.y = this.bounds.getMinY();
+            this.z = this.bounds.getMinZ();
+            this.skipExcluded();
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return !this.done;
+        }
+
+        @Override
+        public @NotNull Block next()
+        {
+            if (this.done) throw new NoSuchElementException();
+
+            Block block = this.region.world().getBlockAt(this.x, this.y, this.z);
+            this.advance();
+            this.skipExcluded();
+            return block;
+        }
+
+        private void skipExcluded()
+        {
+            while (!this.done && !this.region.contains(this.x, this.y, this.z))
+            {
+                this.advance();
+            }
+        }
+
+        private void advance()
+        {
+            if (++this.z <= this.bounds.getMaxZ()) return;
+            this.z = this.bounds.getMinZ();
+            if (++this.x <= this.bounds.getMaxX()) return;
+            this.x = this.bounds.getMinX();
+            if (++this.y > this.bounds.getMaxY()) this.done = true;
+        }
+
+    }
+
+}
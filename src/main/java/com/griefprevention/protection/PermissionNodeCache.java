@@ -0,0 +1,143 @@
+package com.griefprevention.protection;
+
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A per-player cache of permission node checks for {@code [permission.node]} claim trust.
+ *
+ * <p>Checking a node goes through the server's permissions plugin, and claims trusting many nodes would otherwise
+ * repeat those checks on every interaction. Results are remembered per player until the player's entry is
+ * {@link #invalidate(UUID) invalidated} or expires.</p>
+ *
+ * <p>Bukkit fires no event when a player's permission attachments change, so entries expire after a short time to
+ * pick up such changes. Integrations that know when permissions change can invalidate entries immediately.</p>
+ */
+public final class PermissionNodeCache
+{
+
+    private final long ttlNanos;
+    private final @NotNull LongSupplier clock;
+    private final ConcurrentHashMap<UUID, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Construct a new {@code PermissionNodeCache}.
+     *
+     * @param ttl how long a player's results are kept
+     * @param unit the unit of the time to live
+     */
+    public PermissionNodeCache(long ttl, @NotNull TimeUnit unit)
+    {
+        this(ttl, unit, System::nanoTime);
+    }
+
+    PermissionNodeCache(long ttl, @NotNull TimeUnit unit, @NotNull LongSupplier clock)
+    {
+        this.ttlNanos = unit.toNanos(ttl);
+        this.clock = clock;
+    }
+
+    /**
+     * Check whether a {@link Player} has a permission node, using a remembered result if possible.
+     *
+     * @param player the player
+     * @param node the permission node, without surrounding brackets
+     * @return whether the player has the permission
+     */
+    public boolean hasPermission(@NotNull Player player, @NotNull String node)
+    {
+        long now = this.clock.getAsLong();
+        Entry entry = this.entries.get(player.getUniqueId());
+        if (entry == null || now - entry.created > this.ttlNanos)
+        {
+            entry = new Entry(now);
+            this.entries.put(player.getUniqueId(), entry);
+        }
+
+        Boolean result = entry.results.get(node);
+        if (result != null)
+        {
+            this.hits.increment();
+            return result;
+        }
+
+        this.misses.increment();
+        boolean hasPermission = player.hasPermission(node);
+        entry.results.put(node, hasPermission);
+        return hasPermission;
+    }
+
+    /**
+     * Forget the results for a player, for example because their permissions changed.
+     *
+     * @param playerID the player's UUID
+     */
+    public void invalidate(@NotNull UUID playerID)
+    {
+        if (this.entries.remove(playerID) != null) this.invalidations.increment();
+    }
+
+    /**
+     * Forget the results for every player.
+     */
+    public void invalidateAll()
+    {
+        this.invalidations.add(this.entries.size());
+        this.entries.clear();
+    }
+
+    /**
+     * Get the number of checks answered from the cache.
+     *
+     * @return the number of hits
+     */
+    public long getHits()
+    {
+        return this.hits.sum();
+    }
+
+    /**
+     * Get the number of checks passed on to the permissions plugin.
+     *
+     * @return the number of misses
+     */
+    public long getMisses()
+    {
+        return this.misses.sum();
+    }
+
+    /**
+     * Get the number of player entries dropped before they expired.
+     *
+     * @return the number of invalidations
+     */
+    public long getInvalidations()
+    {
+        return this.invalidations.sum();
+    }
+
+    private static final class Entry
+    {
+
+        private final long created;
+        private final Map<String, Boolean> results = new ConcurrentHashMap<>();
+
+        private Entry(long created)
+        {
+            this.created = created;
+        }
+
+    }
+
+}
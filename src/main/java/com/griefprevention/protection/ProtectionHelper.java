@@ -1,5 +1,6 @@
 package com.griefprevention.protection;
 
+import com.griefprevention.events.EventDispatch;
 import me.ryanhamshire.GriefPrevention.Claim;
 import me.ryanhamshire.GriefPrevention.ClaimPermission;
 import me.ryanhamshire.GriefPrevention.ClaimsMode;
@@ -8,10 +9,12 @@ import me.ryanhamshire.GriefPrevention.GriefPrevention;
 import me.ryanhamshire.GriefPrevention.Messages;
 import me.ryanhamshire.GriefPrevention.PlayerData;
 import me.ryanhamshire.GriefPrevention.events.PreventBlockBreakEvent;
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
+import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
 import org.bukkit.event.Event;
 import org.bukkit.event.block.BlockBreakEvent;
@@ -19,6 +22,12 @@ import org.bukkit.event.block.BlockPlaceEvent;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.function.Supplier;
 
 /**
@@ -58,33 +67,195 @@ public final class ProtectionHelper
 
 
         // If there is no claim here, use wilderness rules.
-        if (claim == null)
+        if (claim == null) return checkWilderness(player, playerData, world, trigger);
+
+        return checkClaim(player, playerData, claim, permission, trigger);
+    }
+
+    /**
+     * Check the {@link ClaimPermission} state for a {@link Player} at many {@link Block Blocks} at once.
+     *
+     * <p>This is equivalent to calling {@link #checkPermission(Player, Location, ClaimPermission, Event)} for each
+     * block, but the player's data is fetched once, claims are resolved a chunk at a time, and each distinct claim
+     * (or world's wilderness) is only checked once no matter how many of the blocks it covers.</p>
+     *
+     * @param player the person performing the action
+     * @param blocks the affected blocks
+     * @param permission the required permission
+     * @param trigger the triggering {@link Event}, if any
+     * @return the denied blocks in iteration order, each with its denial message supplier
+     */
+    public static @NotNull Map<Block, Supplier<String>> checkPermission(
+            @NotNull Player player,
+            @NotNull Collection<Block> blocks,
+            @NotNull ClaimPermission permission,
+            @Nullable Event trigger)
+    {
+        Map<Block, Supplier<String>> denied = new LinkedHashMap<>();
+        if (blocks.isEmpty()) return denied;
+
+        PlayerData playerData = GriefPrevention.instance.dataStore.getPlayerData(player.getUniqueId());
+
+        // Administrators ignoring claims always have permission.
+        if (playerData.ignoreClaims) return denied;
+
+        List<Block> input = blocks instanceof List<Block> list ? list : new ArrayList<>(blocks);
+        List<Claim> claims = GriefPrevention.instance.dataStore.getClaimsAt(input, false, false);
+
+        // Results keyed by claim, or by world for wilderness. Granted results are stored as null.
+        Map<Object, Supplier<String>> results = new IdentityHashMap<>();
+        for (int i = 0; i < input.size(); i++)
         {
-            ClaimsMode mode = GriefPrevention.instance.config_claims_worldModes.get(world);
-            if (mode == ClaimsMode.Creative || mode == ClaimsMode.SurvivalRequiringClaims)
+            Block block = input.get(i);
+            Claim claim = claims.get(i);
+            Object key = claim != null ? claim : block.getWorld();
+
+            Supplier<String> result;
+            if (results.containsKey(key))
             {
-                // Allow placing chest if it would create an automatic claim.
-                if (trigger instanceof BlockPlaceEvent placeEvent
-                        && placeEvent.getBlock().getType() == Material.CHEST
-                        && playerData.getClaims().isEmpty()
-                        && GriefPrevention.instance.config_claims_automaticClaimsForNewPlayersRadius > -1)
-                    return null;
-
-                // If claims are required, provide relevant information.
-                return () ->
+                result = results.get(key);
+            }
+            else
+            {
+                if (!GriefPrevention.instance.claimsEnabledForWorld(block.getWorld())) result = null;
+                else if (claim == null) result = checkWilderness(player, playerData, block.getWorld(), trigger);
+                else result = checkClaim(player, playerData, claim, permission, trigger);
+                results.put(key, result);
+            }
+
+            if (result != null) denied.put(block, result);
+        }
+
+        return denied;
+    }
+
+    /**
+     * Check the {@link ClaimPermission} state for a {@link Player} in an area.
+     *
+     * <p>This is equivalent to calling {@link #checkPermission(Player, Location, ClaimPermission, Event)} for every
+     * block in the area, but no block is looked at. Each claim and subdivision touching the area is checked once and,
+     * if it denies the action, its intersection with the area is returned. Where claims are required, the unclaimed
+     * part of each chunk touching the area is returned as well. Callers needing the denied blocks can walk
+     * {@link DeniedRegion#blocks()}.</p>
+     *
+     * @param player the person performing the action
+     * @param world the {@link World} containing the area
+     * @param area the affected area
+     * @param permission the required permission
+     * @param trigger the triggering {@link Event}, if any
+     * @return the denied regions, which do not overlap
+     */
+    public static @NotNull List<DeniedRegion> checkPermission(
+            @NotNull Player player,
+            @NotNull World world,
+            @NotNull BoundingBox area,
+            @NotNull ClaimPermission permission,
+            @Nullable Event trigger)
+    {
+        List<DeniedRegion> denied = new ArrayList<>();
+        if (!GriefPrevention.instance.claimsEnabledForWorld(world)) return denied;
+
+        PlayerData playerData = GriefPrevention.instance.dataStore.getPlayerData(player.getUniqueId());
+
+        // Administrators ignoring claims always have permission.
+        if (playerData.ignoreClaims) return denied;
+
+        for (Claim claim : GriefPrevention.instance.dataStore.getChunkClaims(world, area))
+        {
+            BoundingBox claimArea = claim.inDataStore ? claim.getBounds().intersection(area) : null;
+            if (claimArea == null) continue;
+
+            // Subdivisions decide for their own blocks, so they are cut out of their parent's region.
+            List<BoundingBox> subdivisions = new ArrayList<>();
+            for (Claim child : claim.children)
+            {
+                BoundingBox childArea = child.inDataStore ? child.getBounds().intersection(claimArea) : null;
+                if (childArea == null) continue;
+
+                subdivisions.add(childArea);
+                Supplier<String> reason = checkClaim(player, playerData, child, permission, trigger);
+                if (reason != null) denied.add(new DeniedRegion(world, childArea, List.of(), child, reason));
+            }
+
+            Supplier<String> reason = checkClaim(player, playerData, claim, permission, trigger);
+            if (reason == null) continue;
+            DeniedRegion region = new DeniedRegion(world, claimArea, subdivisions, claim, reason);
+            if (!region.isEmpty()) denied.add(region);
+        }
+
+        Supplier<String> wildernessReason = checkWilderness(player, playerData, world, trigger);
+        if (wildernessReason != null) addWilderness(denied, world, area, wildernessReason);
+
+        return denied;
+    }
+
+    private static void addWilderness(
+            @NotNull List<DeniedRegion> denied,
+            @NotNull World world,
+            @NotNull BoundingBox area,
+            @NotNull Supplier<String> reason)
+    {
+        for (int chunkX = area.getMinX() >> 4; chunkX <= area.getMaxX() >> 4; chunkX++)
+        {
+            for (int chunkZ = area.getMinZ() >> 4; chunkZ <= area.getMaxZ() >> 4; chunkZ++)
+            {
+                BoundingBox chunk = new BoundingBox(chunkX << 4, area.getMinY(), chunkZ << 4,
+                        (chunkX << 4) + 15, area.getMaxY(), (chunkZ << 4) + 15);
+                BoundingBox chunkArea = chunk.intersection(area);
+                if (chunkArea == null) continue;
+
+                // Claimed blocks were decided by their claims.
+                List<BoundingBox> claimed = new ArrayList<>();
+                for (Claim claim : GriefPrevention.instance.dataStore.getClaims(world, chunkX, chunkZ))
                 {
-                    String reason = GriefPrevention.instance.dataStore.getMessage(Messages.NoBuildOutsideClaims);
-                    if (player.hasPermission("griefprevention.ignoreclaims"))
-                        reason += "  " + GriefPrevention.instance.dataStore.getMessage(Messages.IgnoreClaimsAdvertisement);
-                    reason += "  " + GriefPrevention.instance.dataStore.getMessage(Messages.CreativeBasicsVideo2, DataStore.CREATIVE_VIDEO_URL);
-                    return reason;
-                };
+                    BoundingBox claimArea = claim.inDataStore ? claim.getBounds().intersection(chunkArea) : null;
+                    if (claimArea != null) claimed.add(claimArea);
+                }
+
+                DeniedRegion region = new DeniedRegion(world, chunkArea, claimed, null, reason);
+                if (!region.isEmpty()) denied.add(region);
             }
+        }
+    }
+
+    private static @Nullable Supplier<String> checkWilderness(
+            @NotNull Player player,
+            @NotNull PlayerData playerData,
+            @NotNull World world,
+            @Nullable Event trigger)
+    {
+        ClaimsMode mode = GriefPrevention.instance.config_claims_worldModes.get(world);
+        if (mode == ClaimsMode.Creative || mode == ClaimsMode.SurvivalRequiringClaims)
+        {
+            // Allow placing chest if it would create an automatic claim.
+            if (trigger instanceof BlockPlaceEvent placeEvent
+                    && placeEvent.getBlock().getType() == Material.CHEST
+                    && playerData.getClaims().isEmpty()
+                    && GriefPrevention.instance.config_claims_automaticClaimsForNewPlayersRadius > -1)
+                return null;
 
-            // If claims are not required, then the player has permission.
-            return null;
+            // If claims are required, provide relevant information.
+            return () ->
+            {
+                String reason = GriefPrevention.instance.dataStore.getMessage(Messages.NoBuildOutsideClaims);
+                if (player.hasPermission("griefprevention.ignoreclaims"))
+                    reason += "  " + GriefPrevention.instance.dataStore.getMessage(Messages.IgnoreClaimsAdvertisement);
+                reason += "  " + GriefPrevention.instance.dataStore.getMessage(Messages.CreativeBasicsVideo2, DataStore.CREATIVE_VIDEO_URL);
+                return reason;
+            };
         }
 
+        // If claims are not required, then the player has permission.
+        return null;
+    }
+
+    private static @Nullable Supplier<String> checkClaim(
+            @NotNull Player player,
+            @NotNull PlayerData playerData,
+            @NotNull Claim claim,
+            @NotNull ClaimPermission permission,
+            @Nullable Event trigger)
+    {
         // Update cached claim.
         playerData.lastClaim = claim;
 
@@ -92,7 +263,8 @@ public final class ProtectionHelper
         Supplier<String> cancel = claim.checkPermission(player, permission, trigger);
 
         // Apply additional specific rules.
-        if (cancel != null && trigger instanceof BlockBreakEvent breakEvent)
+        if (cancel != null && trigger instanceof BlockBreakEvent breakEvent
+                && EventDispatch.hasListeners(PreventBlockBreakEvent.getHandlerList()))
         {
             PreventBlockBreakEvent preventionEvent = new PreventBlockBreakEvent(breakEvent);
             Bukkit.getPluginManager().callEvent(preventionEvent);
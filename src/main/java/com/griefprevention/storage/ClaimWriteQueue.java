@@ -0,0 +1,405 @@
+package com.griefprevention.storage;
+
+import me.ryanhamshire.GriefPrevention.Claim;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * A write-behind queue for claim persistence.
+ *
+ * <p>Saves and deletions are recorded per claim ID and written on a dedicated I/O thread once the coalescing
+ * window has passed. Repeated changes to the same claim within the window result in a single write of the latest
+ * state. Callers must pass a detached snapshot of the claim, as it is serialized off the calling thread.</p>
+ *
+ * <p>If a {@link BatchWriter} is provided, everything pending is handed to it at once so that storage can group the
+ * changes, for example into one database transaction. Should the batch fail, its claims are retried one at a time so
+ * that a single bad claim does not hold back the rest.</p>
+ *
+ * <p>Once {@link #close() closed}, the queue writes through on the calling thread so that late changes are not
+ * lost during shutdown.</p>
+ */
+public final class ClaimWriteQueue
+{
+
+    private final @NotNull ClaimWriter writer;
+    private final @NotNull ClaimWriter deleter;
+    private final @Nullable BatchWriter batchWriter;
+    private final @NotNull BiConsumer<String, Throwable> errorLogger;
+    private final long windowMillis;
+    private final @NotNull ScheduledThreadPoolExecutor executor;
+
+    private final Object lock = new Object();
+    private @NotNull LinkedHashMap<Long, PendingWrite> pending = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+    private boolean closed = false;
+
+    private long completedWrites = 0;
+    private long coalescedWrites = 0;
+    private long failedWrites = 0;
+    private volatile long lastFlushNanos = 0;
+    private volatile int lastFlushSize = 0;
+    private volatile long maxFlushNanos = 0;
+
+    /**
+     * Construct a new {@code ClaimWriteQueue}.
+     *
+     * @param writer the synchronous claim writer
+     * @param deleter the synchronous claim deleter
+     * @param errorLogger a consumer that accepts error messages and their cause, if any
+     * @param windowMillis the time to wait for further changes before writing a claim
+     */
+    public ClaimWriteQueue(
+            @NotNull ClaimWriter writer,
+            @NotNull ClaimWriter deleter,
+            @NotNull BiConsumer<String, Throwable> errorLogger,
+            long windowMillis)
+    {
+        this(writer, deleter, null, errorLogger, windowMillis);
+    }
+
+    /**
+     * Construct a new {@code ClaimWriteQueue} that writes pending changes in batches.
+     *
+     * @param writer the synchronous claim writer, used for write-through and to retry failed batches
+     * @param deleter the synchronous claim deleter, used for write-through and to retry failed batches
+     * @param batchWriter the synchronous batch writer, or {@code null} to write claims one at a time
+     * @param errorLogger a consumer that accepts error messages and their cause, if any
+     * @param windowMillis the time to wait for further changes before writing a claim
+     */
+    public ClaimWriteQueue(
+            @NotNull ClaimWriter writer,
+            @NotNull ClaimWriter deleter,
+            @Nullable BatchWriter batchWriter,
+            @NotNull BiConsumer<String, Throwable> errorLogger,
+            long windowMillis)
+    {
+        this.writer = writer;
+        this.deleter = deleter;
+        this.batchWriter = batchWriter;
+        this.errorLogger = errorLogger;
+        this.windowMillis = windowMillis;
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable ->
+        {
+            Thread thread = new Thread(runnable, "GriefPrevention Claim I/O");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Pending writes are drained by close instead.
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Queue a claim to be written.
+     *
+     * @param snapshot a detached copy of the claim
+     */
+    public void save(@NotNull Claim snapshot)
+    {
+        this.enqueue(new PendingWrite(snapshot, false));
+    }
+
+    /**
+     * Queue a claim to be deleted. Any pending write of the same claim is discarded.
+     *
+     * @param snapshot a detached copy of the claim
+     */
+    public void delete(@NotNull Claim snapshot)
+    {
+        this.enqueue(new PendingWrite(snapshot, true));
+    }
+
+    private void enqueue(@NotNull PendingWrite write)
+    {
+        synchronized (this.lock)
+        {
+            if (!this.closed)
+            {
+                if (this.pending.put(write.claim.getID(), write) != null) this.coalescedWrites++;
+
+                if (!this.flushScheduled)
+                {
+                    this.flushScheduled = true;
+                    this.executor.schedule(this::flushPending, this.windowMillis, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+
+        // Shutting down, write through.
+        this.write(write);
+    }
+
+    private void flushPending()
+    {
+        Map<Long, PendingWrite> batch;
+        synchronized (this.lock)
+        {
+            batch = this.pending;
+            this.pending = new LinkedHashMap<>();
+            this.flushScheduled = false;
+        }
+
+        this.write(batch);
+    }
+
+    private void write(@NotNull Map<Long, PendingWrite> batch)
+    {
+        if (batch.isEmpty()) return;
+
+        long start = System.nanoTime();
+        if (this.batchWriter == null || !this.writeBatch(batch))
+        {
+            for (PendingWrite write : batch.values())
+            {
+                this.write(write);
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        this.lastFlushNanos = elapsed;
+        this.lastFlushSize = batch.size();
+        if (elapsed > this.maxFlushNanos) this.maxFlushNanos = elapsed;
+    }
+
+    private boolean writeBatch(@NotNull Map<Long, PendingWrite> batch)
+    {
+        List<Claim> saves = new ArrayList<>(batch.size());
+        List<Claim> deletes = new ArrayList<>();
+        for (PendingWrite write : batch.values())
+        {
+            if (write.delete) deletes.add(write.claim);
+            else saves.add(write.claim);
+        }
+
+        try
+        {
+            this.batchWriter.write(saves, deletes);
+        }
+        catch (Exception e)
+        {
+            this.errorLogger.accept("Unable to write a batch of " + batch.size() + " claims, retrying them one at a time.", e);
+            return false;
+        }
+
+        synchronized (this.lock)
+        {
+            this.completedWrites += batch.size();
+        }
+        return true;
+    }
+
+    private void write(@NotNull PendingWrite write)
+    {
+        try
+        {
+            if (write.delete) this.deleter.write(write.claim);
+            else this.writer.write(write.claim);
+
+            synchronized (this.lock)
+            {
+                this.completedWrites++;
+            }
+        }
+        catch (Exception e)
+        {
+            synchronized (this.lock)
+            {
+                this.failedWrites++;
+            }
+            this.errorLogger.accept("Unable to write claim " + write.claim.getID(), e);
+        }
+    }
+
+    /**
+     * Write everything pending on the I/O thread and wait for it to finish.
+     */
+    public void flush()
+    {
+        Future<?> flush;
+        synchronized (this.lock)
+        {
+            // A closed queue writes through, so nothing can be pending.
+            if (this.closed) return;
+            flush = this.executor.submit(this::flushPending);
+        }
+
+        try
+        {
+            flush.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            this.errorLogger.accept("Unable to flush claim writes.", e.getCause());
+        }
+    }
+
+    /**
+     * Stop the I/O thread and write everything still pending on the calling thread.
+     *
+     * <p>Later changes are written through immediately.</p>
+     */
+    public void close()
+    {
+        synchronized (this.lock)
+        {
+            this.closed = true;
+        }
+
+        this.executor.shutdown();
+        try
+        {
+            if (!this.executor.awaitTermination(1, TimeUnit.MINUTES))
+            {
+                this.errorLogger.accept("Timed out waiting for in-flight claim writes to finish.", null);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        Map<Long, PendingWrite> batch;
+        synchronized (this.lock)
+        {
+            batch = this.pending;
+            this.pending = new LinkedHashMap<>();
+        }
+        this.write(batch);
+    }
+
+    /**
+     * Get the number of claims waiting to be written.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth()
+    {
+        synchronized (this.lock)
+        {
+            return this.pending.size();
+        }
+    }
+
+    /**
+     * Get the number of claim writes and deletions completed.
+     *
+     * @return the number of completed writes
+     */
+    public long getCompletedWrites()
+    {
+        synchronized (this.lock)
+        {
+            return this.completedWrites;
+        }
+    }
+
+    /**
+     * Get the number of changes that were folded into an already pending write.
+     *
+     * @return the number of coalesced writes
+     */
+    public long getCoalescedWrites()
+    {
+        synchronized (this.lock)
+        {
+            return this.coalescedWrites;
+        }
+    }
+
+    /**
+     * Get the number of claim writes and deletions that failed.
+     *
+     * @return the number of failed writes
+     */
+    public long getFailedWrites()
+    {
+        synchronized (this.lock)
+        {
+            return this.failedWrites;
+        }
+    }
+
+    /**
+     * Get how long the most recent flush took.
+     *
+     * @param unit the unit to return the duration in
+     * @return the duration
+     */
+    public long getLastFlushTime(@NotNull TimeUnit unit)
+    {
+        return unit.convert(this.lastFlushNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get how many claims the most recent flush wrote.
+     *
+     * @return the number of claims
+     */
+    public int getLastFlushSize()
+    {
+        return this.lastFlushSize;
+    }
+
+    /**
+     * Get how long the slowest flush took.
+     *
+     * @param unit the unit to return the duration in
+     * @return the duration
+     */
+    public long getMaxFlushTime(@NotNull TimeUnit unit)
+    {
+        return unit.convert(this.maxFlushNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * A writer for a single claim change.
+     */
+    @FunctionalInterface
+    public interface ClaimWriter
+    {
+
+        /**
+         * Write a claim change.
+         *
+         * @param claim a detached copy of the claim
+         * @throws Exception if the change could not be written
+         */
+        void write(@NotNull Claim claim) throws Exception;
+
+    }
+
+    /**
+     * A writer for many claim changes at once.
+     */
+    @FunctionalInterface
+    public interface BatchWriter
+    {
+
+        /**
+         * Write a batch of claim changes. Each claim appears at most once across both lists.
+         *
+         * @param saves detached copies of claims to write
+         * @param deletes detached copies of claims to delete
+         * @throws Exception if the batch could not be written as a whole
+         */
+        void write(@NotNull List<Claim> saves, @NotNull List<Claim> deletes) throws Exception;
+
+    }
+
+    private record PendingWrite(@NotNull Claim claim, boolean delete) {}
+
+}
@@ -0,0 +1,362 @@
+package com.griefprevention.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * A small fixed-size JDBC connection pool with its own worker threads.
+ *
+ * <p>Connections are opened lazily up to the maximum size and reused between operations. A connection is only
+ * validated with a round trip to the database when it has been idle for longer than the validation interval, and
+ * is discarded if an operation fails with a connection-level error.</p>
+ *
+ * <p>Work submitted {@link #supplyAsync(SqlFunction) asynchronously} runs on one of as many worker threads as there
+ * are connections, so callers on the server thread never wait for the database.</p>
+ */
+public final class ConnectionPool implements AutoCloseable
+{
+
+    private final @NotNull ConnectionFactory factory;
+    private final @NotNull BiConsumer<String, Throwable> errorLogger;
+    private final int maxSize;
+    private final long validationIntervalNanos;
+    private final @NotNull ExecutorService executor;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<IdleConnection> idle = new ArrayDeque<>();
+    private int open = 0;
+    private boolean closed = false;
+
+    /**
+     * Construct a new {@code ConnectionPool}.
+     *
+     * @param factory the source of new connections
+     * @param maxSize the maximum number of open connections
+     * @param validationInterval the idle time after which a connection is validated before reuse
+     * @param validationIntervalUnit the unit of the validation interval
+     * @param errorLogger a consumer that accepts error messages and their cause, if any
+     */
+    public ConnectionPool(
+            @NotNull ConnectionFactory factory,
+            int maxSize,
+            long validationInterval,
+            @NotNull TimeUnit validationIntervalUnit,
+            @NotNull BiConsumer<String, Throwable> errorLogger)
+    {
+        if (maxSize < 1) throw new IllegalArgumentException("Pool size must be at least 1");
+
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.validationIntervalNanos = validationIntervalUnit.toNanos(validationInterval);
+        this.errorLogger = errorLogger;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(maxSize, runnable ->
+        {
+            Thread thread = new Thread(runnable, "GriefPrevention Database " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Run an operation with a pooled connection on the calling thread, waiting for a free connection if necessary.
+     *
+     * @param operation the operation
+     * @return the result of the operation
+     * @param <T> the type of result
+     * @throws SQLException if a connection cannot be obtained or the operation fails
+     */
+    public <T> T execute(@NotNull SqlFunction<T> operation) throws SQLException
+    {
+        Connection connection = this.borrow();
+        boolean broken = true;
+        try
+        {
+            T result = operation.apply(connection);
+            broken = false;
+            return result;
+        }
+        catch (SQLException e)
+        {
+            broken = isConnectionError(e) || connection.isClosed();
+            throw e;
+        }
+        finally
+        {
+            this.release(connection, broken);
+        }
+    }
+
+    /**
+     * Run an operation with a pooled connection on a database worker thread.
+     *
+     * <p>If the operation fails, the returned future completes exceptionally with a
+     * {@link CompletionException} wrapping the cause.</p>
+     *
+     * @param operation the operation
+     * @return a future completed with the result of the operation
+     * @param <T> the type of result
+     */
+    public <T> @NotNull CompletableFuture<T> supplyAsync(@NotNull SqlFunction<T> operation)
+    {
+        return CompletableFuture.supplyAsync(() ->
+        {
+            try
+            {
+                return this.execute(operation);
+            }
+            catch (SQLException e)
+            {
+                throw new CompletionException(e);
+            }
+        }, this.executor);
+    }
+
+    /**
+     * Get the number of currently open connections, whether idle or in use.
+     *
+     * @return the number of open connections
+     */
+    public int getOpenConnections()
+    {
+        synchronized (this.lock)
+        {
+            return this.open;
+        }
+    }
+
+    /**
+     * Get the number of open connections not currently in use.
+     *
+     * @return the number of idle connections
+     */
+    public int getIdleConnections()
+    {
+        synchronized (this.lock)
+        {
+            return this.idle.size();
+        }
+    }
+
+    private @NotNull Connection borrow() throws SQLException
+    {
+        while (true)
+        {
+            IdleConnection candidate;
+            synchronized (this.lock)
+            {
+                while (true)
+                {
+                    if (this.closed) throw new SQLException("Connection pool is closed");
+
+                    candidate = this.idle.pollLast();
+                    if (candidate != null) break;
+
+                    if (this.open < this.maxSize)
+                    {
+                        // Reserve the slot before connecting outside the lock.
+                        this.open++;
+                        break;
+                    }
+
+                    try
+                    {
+                        this.lock.wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a connection", e);
+                    }
+                }
+            }
+
+            if (candidate == null)
+            {
+                try
+                {
+                    return this.factory.connect();
+                }
+                catch (SQLException | RuntimeException e)
+                {
+                    this.forget();
+                    throw e;
+                }
+            }
+
+            // Recently used connections are trusted, older ones may have been dropped by the server.
+            if (System.nanoTime() - candidate.releasedAt < this.validationIntervalNanos || isValid(candidate.connection))
+            {
+                return candidate.connection;
+            }
+
+            this.discard(candidate.connection);
+        }
+    }
+
+    private void release(@NotNull Connection connection, boolean broken)
+    {
+        if (!broken)
+        {
+            try
+            {
+                // Never hand a half-finished transaction to the next borrower.
+                if (!connection.getAutoCommit())
+                {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            }
+            catch (SQLException e)
+            {
+                broken = true;
+            }
+        }
+
+        if (broken)
+        {
+            this.discard(connection);
+            return;
+        }
+
+        synchronized (this.lock)
+        {
+            if (!this.closed)
+            {
+                this.idle.addLast(new IdleConnection(connection, System.nanoTime()));
+                this.lock.notify();
+                return;
+            }
+        }
+
+        this.discard(connection);
+    }
+
+    private void discard(@NotNull Connection connection)
+    {
+        try
+        {
+            connection.close();
+        }
+        catch (SQLException e)
+        {
+            this.errorLogger.accept("Unable to close a database connection", e);
+        }
+        this.forget();
+    }
+
+    private void forget()
+    {
+        synchronized (this.lock)
+        {
+            this.open--;
+            this.lock.notify();
+        }
+    }
+
+    private static boolean isValid(@NotNull Connection connection)
+    {
+        try
+        {
+            return connection.isValid(3);
+        }
+        catch (SQLException e)
+        {
+            return false;
+        }
+    }
+
+    private static boolean isConnectionError(@NotNull SQLException e)
+    {
+        // SQLState class 08 is "connection exception".
+        String state = e.getSQLState();
+        return state != null && state.startsWith("08");
+    }
+
+    /**
+     * Finish queued asynchronous work, then close every connection.
+     *
+     * <p>Connections in use when the pool closes are closed as they are released.</p>
+     */
+    @Override
+    public void close()
+    {
+        this.executor.shutdown();
+        try
+        {
+            if (!this.executor.awaitTermination(30, TimeUnit.SECONDS))
+            {
+                this.errorLogger.accept("Timed out waiting for database work to finish", null);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        ArrayDeque<IdleConnection> toClose;
+        synchronized (this.lock)
+        {
+            this.closed = true;
+            toClose = new ArrayDeque<>(this.idle);
+            this.idle.clear();
+            this.lock.notifyAll();
+        }
+
+        for (IdleConnection connection : toClose)
+        {
+            this.discard(connection.connection);
+        }
+    }
+
+    /**
+     * A source of new database connections.
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory
+    {
+
+        /**
+         * Open a new connection.
+         *
+         * @return the connection
+         * @throws SQLException if the connection cannot be opened
+         */
+        @NotNull Connection connect() throws SQLException;
+
+    }
+
+    /**
+     * An operation using a database connection.
+     *
+     * @param <T> the type of result
+     */
+    @FunctionalInterface
+    public interface SqlFunction<T>
+    {
+
+        /**
+         * Run the operation. The connection must not be closed or used after returning.
+         *
+         * @param connection the connection
+         * @return the result
+         * @throws SQLException if the operation fails
+         */
+        T apply(@NotNull Connection connection) throws SQLException;
+
+    }
+
+    private record IdleConnection(@NotNull Connection connection, long releasedAt) {}
+
+}
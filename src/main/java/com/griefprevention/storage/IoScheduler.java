@@ -0,0 +1,372 @@
+package com.griefprevention.storage;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A scheduler for background storage work such as player data saves.
+ *
+ * <p>Each task runs on its own virtual thread, but no more than the concurrency limit run at once. Tasks submitted
+ * with the same key run one at a time in submission order, so two saves for the same player can never overtake each
+ * other. Tasks without a key are unordered.</p>
+ *
+ * <p>Once the queue capacity of tasks are waiting or running, submitting from a thread that may wait blocks until a
+ * task finishes, slowing producers to the speed of storage instead of letting work pile up without limit. Threads
+ * that may not wait, such as the server's main thread, are never blocked; their tasks go over capacity instead.</p>
+ *
+ * <p>A {@link #submitCoalesced(Object, Runnable) coalesced} task replaces the key's pending coalesced task if that has
+ * not started yet, so repeated saves of the same data while storage is slow are written once.</p>
+ *
+ * <p>Once {@link #close() closed}, the scheduler runs tasks on the calling thread so that late work is not lost
+ * during shutdown.</p>
+ */
+public final class IoScheduler implements AutoCloseable
+{
+
+    private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final @NotNull BiConsumer<String, Throwable> errorLogger;
+    private final @NotNull BooleanSupplier mayWait;
+    private final int queueCapacity;
+    private final @NotNull Semaphore running;
+    private final @NotNull ExecutorService executor;
+
+    private final Object lock = new Object();
+    private final HashMap<Object, CompletableFuture<Void>> lastTaskByKey = new HashMap<>();
+    private final HashMap<Object, CoalescedTask> pendingCoalesced = new HashMap<>();
+    private int queued = 0;
+    private boolean closed = false;
+
+    private long completedTasks = 0;
+    private long failedTasks = 0;
+    private long throttledSubmissions = 0;
+    private long coalescedSubmissions = 0;
+
+    /**
+     * Construct a new {@code IoScheduler} that lets every submitter wait for queue space.
+     *
+     * @param concurrency the maximum number of tasks running at once
+     * @param queueCapacity the number of tasks waiting or running at which submitters start to wait
+     * @param errorLogger a consumer that accepts error messages and their cause, if any
+     */
+    public IoScheduler(int concurrency, int queueCapacity, @NotNull BiConsumer<String, Throwable> errorLogger)
+    {
+        this(concurrency, queueCapacity, () -> true, errorLogger);
+    }
+
+    /**
+     * Construct a new {@code IoScheduler}.
+     *
+     * @param concurrency the maximum number of tasks running at once
+     * @param queueCapacity the number of tasks waiting or running at which submitters start to wait
+     * @param mayWait whether the submitting thread may wait for queue space
+     * @param errorLogger a consumer that accepts error messages and their cause, if any
+     */
+    public IoScheduler(
+            int concurrency,
+            int queueCapacity,
+            @NotNull BooleanSupplier mayWait,
+            @NotNull BiConsumer<String, Throwable> errorLogger)
+    {
+        if (concurrency < 1) throw new IllegalArgumentException("Concurrency must be at least 1");
+        if (queueCapacity < concurrency) throw new IllegalArgumentException("Queue capacity must be at least the concurrency");
+
+        this.errorLogger = errorLogger;
+        this.mayWait = mayWait;
+        this.queueCapacity = queueCapacity;
+        this.running = new Semaphore(concurrency);
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("GriefPrevention I/O ", 0).factory());
+    }
+
+    /**
+     * Schedule a task, waiting for queue space if the queue is full and the calling thread may wait.
+     *
+     * @param key the key whose tasks must run in order, or {@code null} if the task may run in any order
+     * @param task the task
+     * @return a future completed once the task has run, whether it succeeded or not
+     */
+    public @NotNull CompletableFuture<Void> submit(@Nullable Object key, @NotNull Runnable task)
+    {
+        return this.submit(key, task, false);
+    }
+
+    /**
+     * Schedule a task that supersedes any earlier coalesced task for the same key that has not started yet. The
+     * earlier task is dropped and this one runs in its place, so only use this for tasks that each write the latest
+     * state in full.
+     *
+     * @param key the key whose tasks must run in order
+     * @param task the task
+     * @return a future completed once the task has run, whether it succeeded or not
+     */
+    public @NotNull CompletableFuture<Void> submitCoalesced(@NotNull Object key, @NotNull Runnable task)
+    {
+        return this.submit(key, task, true);
+    }
+
+    private @NotNull CompletableFuture<Void> submit(@Nullable Object key, @NotNull Runnable task, boolean coalesce)
+    {
+        boolean interrupted = false;
+        try
+        {
+            synchronized (this.lock)
+            {
+                boolean throttled = false;
+                while (!this.closed)
+                {
+                    CompletableFuture<Void> previous = key == null ? null : this.lastTaskByKey.get(key);
+
+                    // The pending task is last in line for its key, so nothing is reordered by replacing it.
+                    CoalescedTask pending = coalesce ? this.pendingCoalesced.get(key) : null;
+                    if (pending != null && !pending.started && pending.future == previous)
+                    {
+                        pending.task = task;
+                        this.coalescedSubmissions++;
+                        return pending.future;
+                    }
+
+                    if (this.queued >= this.queueCapacity)
+                    {
+                        if (!throttled) this.throttledSubmissions++;
+                        throttled = true;
+
+                        if (this.mayWait.getAsBoolean())
+                        {
+                            try
+                            {
+                                this.lock.wait();
+                            }
+                            catch (InterruptedException e)
+                            {
+                                interrupted = true;
+                            }
+                            continue;
+                        }
+                    }
+
+                    return this.schedule(key, task, coalesce, previous);
+                }
+            }
+        }
+        finally
+        {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+
+        // Shutting down, run on the calling thread.
+        this.run(task);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    // Must be called while holding the lock.
+    private @NotNull CompletableFuture<Void> schedule(
+            @Nullable Object key,
+            @NotNull Runnable task,
+            boolean coalesce,
+            @Nullable CompletableFuture<Void> previous)
+    {
+        CoalescedTask coalesced = coalesce ? new CoalescedTask(task) : null;
+        Runnable queuedTask = coalesced == null ? () -> this.runQueued(task) : () -> this.runQueued(coalesced);
+
+        this.queued++;
+        // Tasks never complete exceptionally, so a task always runs after its predecessor.
+        CompletableFuture<Void> scheduled = previous == null
+                ? CompletableFuture.runAsync(queuedTask, this.executor)
+                : previous.thenRunAsync(queuedTask, this.executor);
+
+        if (key != null)
+        {
+            this.lastTaskByKey.put(key, scheduled);
+            if (coalesced != null)
+            {
+                coalesced.future = scheduled;
+                this.pendingCoalesced.put(key, coalesced);
+            }
+            scheduled.whenComplete((result, error) ->
+            {
+                synchronized (this.lock)
+                {
+                    this.lastTaskByKey.remove(key, scheduled);
+                    if (coalesced != null) this.pendingCoalesced.remove(key, coalesced);
+                }
+            });
+        }
+        return scheduled;
+    }
+
+    private void runQueued(@NotNull CoalescedTask coalesced)
+    {
+        Runnable task;
+        synchronized (this.lock)
+        {
+            coalesced.started = true;
+            task = coalesced.task;
+        }
+        this.runQueued(task);
+    }
+
+    private void runQueued(@NotNull Runnable task)
+    {
+        this.running.acquireUninterruptibly();
+        try
+        {
+            this.run(task);
+        }
+        finally
+        {
+            this.running.release();
+            synchronized (this.lock)
+            {
+                this.queued--;
+                this.lock.notifyAll();
+            }
+        }
+    }
+
+    private void run(@NotNull Runnable task)
+    {
+        boolean failed = false;
+        try
+        {
+            task.run();
+        }
+        catch (RuntimeException | Error e)
+        {
+            failed = true;
+            this.errorLogger.accept("An I/O task failed", e);
+        }
+
+        synchronized (this.lock)
+        {
+            this.completedTasks++;
+            if (failed) this.failedTasks++;
+        }
+    }
+
+    /**
+     * Get the number of tasks waiting or running.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth()
+    {
+        synchronized (this.lock)
+        {
+            return this.queued;
+        }
+    }
+
+    /**
+     * Get the number of tasks completed, including failed tasks.
+     *
+     * @return the number of completed tasks
+     */
+    public long getCompletedTasks()
+    {
+        synchronized (this.lock)
+        {
+            return this.completedTasks;
+        }
+    }
+
+    /**
+     * Get the number of tasks that threw an exception.
+     *
+     * @return the number of failed tasks
+     */
+    public long getFailedTasks()
+    {
+        synchronized (this.lock)
+        {
+            return this.failedTasks;
+        }
+    }
+
+    /**
+     * Get the number of submissions made while the queue was full, whether they waited for queue space or went over
+     * capacity because the submitting thread may not wait.
+     *
+     * @return the number of throttled submissions
+     */
+    public long getThrottledSubmissions()
+    {
+        synchronized (this.lock)
+        {
+            return this.throttledSubmissions;
+        }
+    }
+
+    /**
+     * Get the number of coalesced submissions that replaced a pending task instead of adding one.
+     *
+     * @return the number of coalesced submissions
+     */
+    public long getCoalescedSubmissions()
+    {
+        synchronized (this.lock)
+        {
+            return this.coalescedSubmissions;
+        }
+    }
+
+    /**
+     * Finish every scheduled task, then stop the I/O threads. Tasks submitted afterward run on the calling thread.
+     */
+    @Override
+    public void close()
+    {
+        synchronized (this.lock)
+        {
+            if (this.closed) return;
+            this.closed = true;
+            // Wake submitters waiting for space so they run their tasks themselves.
+            this.lock.notifyAll();
+
+            long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MILLIS;
+            try
+            {
+                long remaining;
+                while (this.queued > 0 && (remaining = deadline - System.currentTimeMillis()) > 0)
+                {
+                    this.lock.wait(remaining);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            if (this.queued > 0)
+            {
+                this.errorLogger.accept("Timed out waiting for " + this.queued + " I/O tasks to finish", null);
+            }
+        }
+
+        this.executor.shutdown();
+    }
+
+    private static final class CoalescedTask
+    {
+
+        // Guarded by the scheduler's lock.
+        private @NotNull Runnable task;
+        private @Nullable CompletableFuture<Void> future;
+        private boolean started = false;
+
+        private CoalescedTask(@NotNull Runnable task)
+        {
+            this.task = task;
+        }
+
+    }
+
+}
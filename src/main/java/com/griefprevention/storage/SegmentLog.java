@@ -0,0 +1,570 @@
+package com.griefprevention.storage;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only key-value log split into numbered segment files.
+ *
+ * <p>Every change is appended to the newest segment as a single checksummed record. Appends are not forced to disk
+ * individually; callers choose their durability by calling {@link #sync()}. When the log is opened, segments are memory-mapped and replayed in order to rebuild an index of the
+ * latest record for each key. A record that is cut short or fails its checksum at the end of the newest segment is
+ * the remains of an interrupted write and is truncated away.</p>
+ *
+ * <p>Superseded records and deletion markers are reclaimed by {@link #compact() compaction}, which copies the live
+ * records into fresh segments before deleting the old ones. A crash at any point during compaction leaves a log that
+ * replays to the same contents.</p>
+ *
+ * <p>Record layout, big-endian:</p>
+ * <pre>
+ * int    body length
+ * int    CRC32 of the body
+ * byte   namespace
+ * byte   operation, 1 for put and 0 for delete
+ * short  key length
+ * byte[] key, UTF-8
+ * byte[] value, the rest of the body
+ * </pre>
+ */
+public final class SegmentLog
+{
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("(\\d{20})\\.log");
+    private static final int HEADER_SIZE = 8;
+    private static final int MIN_BODY_SIZE = 4;
+    private static final int MAX_BODY_SIZE = 16 * 1024 * 1024;
+    private static final byte OP_DELETE = 0;
+    private static final byte OP_PUT = 1;
+
+    private final @NotNull Path directory;
+    private final long maxSegmentSize;
+    private final @NotNull BiConsumer<String, Throwable> errorLogger;
+
+    private final @NotNull TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final @NotNull HashMap<Key, Location> index = new HashMap<>();
+    private @NotNull Segment active;
+    private boolean dirty = false;
+    private boolean closed = false;
+    // Replaced by tests to simulate segments that can't be deleted.
+    @NotNull FileDeleter fileDeleter = Files::delete;
+
+    /**
+     * Open or create a log.
+     *
+     * @param directory the directory holding the segment files
+     * @param maxSegmentSize the size at which a new segment is started
+     * @param errorLogger a consumer that accepts error messages and their cause, if any
+     * @throws IOException if the log cannot be read
+     */
+    public SegmentLog(
+            @NotNull Path directory,
+            long maxSegmentSize,
+            @NotNull BiConsumer<String, Throwable> errorLogger) throws IOException
+    {
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+        this.errorLogger = errorLogger;
+
+        Files.createDirectories(directory);
+
+        List<Long> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory))
+        {
+            files.forEach(file ->
+            {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) ids.add(Long.parseLong(matcher.group(1)));
+            });
+        }
+        ids.sort(Comparator.naturalOrder());
+
+        for (int i = 0; i < ids.size(); i++)
+        {
+            this.replay(ids.get(i), i == ids.size() - 1);
+        }
+
+        Map.Entry<Long, Segment> last = this.segments.lastEntry();
+        if (last != null && last.getValue().size < maxSegmentSize)
+        {
+            this.active = last.getValue();
+        }
+        else
+        {
+            this.active = this.createSegment(last == null ? 0 : last.getKey() + 1);
+        }
+    }
+
+    private void replay(long id, boolean newest) throws IOException
+    {
+        Path path = this.getSegmentPath(id);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, path, channel);
+        this.segments.put(id, segment);
+
+        long fileSize = channel.size();
+        if (fileSize > Integer.MAX_VALUE)
+        {
+            throw new IOException("Segment " + path + " is too large to map.");
+        }
+
+        int end = 0;
+        if (fileSize > 0)
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            end = this.scan(buffer, (key, location) -> this.apply(key, location, segment), id);
+        }
+        segment.size = end;
+
+        if (end < fileSize)
+        {
+            if (newest)
+            {
+                // The tail of the newest segment is an interrupted write.
+                this.errorLogger.accept("Discarding " + (fileSize - end) + " bytes of incomplete records at the end of " + path + ".", null);
+                channel.truncate(end);
+                channel.force(true);
+            }
+            else
+            {
+                this.errorLogger.accept("Segment " + path + " is corrupt after byte " + end + ", the rest of it was skipped.", null);
+                // Later records are ignored, but the file's full size still counts as garbage.
+                segment.size = fileSize;
+            }
+        }
+    }
+
+    /**
+     * Scan a mapped segment, calling the consumer for every valid record.
+     *
+     * @return the offset after the last valid record
+     */
+    private int scan(@NotNull ByteBuffer buffer, @NotNull RecordConsumer consumer, long segmentId)
+    {
+        CRC32 crc = new CRC32();
+        int position = 0;
+        int limit = buffer.limit();
+        while (position + HEADER_SIZE <= limit)
+        {
+            int bodyLength = buffer.getInt(position);
+            int checksum = buffer.getInt(position + 4);
+            if (bodyLength < MIN_BODY_SIZE || bodyLength > MAX_BODY_SIZE || bodyLength > limit - position - HEADER_SIZE)
+            {
+                break;
+            }
+
+            ByteBuffer body = buffer.slice(position + HEADER_SIZE, bodyLength);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum) break;
+
+            int keyLength = Short.toUnsignedInt(body.getShort(2));
+            if (MIN_BODY_SIZE + keyLength > bodyLength) break;
+
+            byte[] keyBytes = new byte[keyLength];
+            body.get(MIN_BODY_SIZE, keyBytes);
+            Key key = new Key(body.get(0), new String(keyBytes, StandardCharsets.UTF_8));
+            int recordLength = HEADER_SIZE + bodyLength;
+            consumer.accept(key, body.get(1) == OP_PUT ? new Location(segmentId, position, recordLength) : null);
+
+            position += recordLength;
+        }
+        return position;
+    }
+
+    private void apply(@NotNull Key key, @Nullable Location location, @NotNull Segment segment)
+    {
+        Location previous = location == null ? this.index.remove(key) : this.index.put(key, location);
+        if (previous != null) this.segments.get(previous.segment).liveBytes -= previous.length;
+        if (location != null) segment.liveBytes += location.length;
+    }
+
+    /**
+     * Read the current value of every key in a namespace, in the order the values were written.
+     *
+     * @param namespace the namespace
+     * @param consumer a consumer that accepts each key and its value
+     * @throws IOException if a segment cannot be read
+     */
+    public synchronized void forEach(byte namespace, @NotNull BiConsumer<String, byte[]> consumer) throws IOException
+    {
+        this.checkOpen();
+        for (Segment segment : this.segments.values())
+        {
+            long size = segment.size;
+            if (size == 0) continue;
+
+            MappedByteBuffer buffer = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            this.scan(buffer, (key, location) ->
+            {
+                if (location == null || key.namespace != namespace || !location.equals(this.index.get(key))) return;
+
+                byte[] value = new byte[location.length - HEADER_SIZE - MIN_BODY_SIZE - key.getEncodedLength()];
+                buffer.get((int) location.offset + location.length - value.length, value);
+                consumer.accept(key.key, value);
+            }, segment.id);
+        }
+    }
+
+    /**
+     * Get the keys in a namespace.
+     *
+     * @param namespace the namespace
+     * @return a new list of keys
+     */
+    public synchronized @NotNull List<String> getKeys(byte namespace)
+    {
+        List<String> keys = new ArrayList<>();
+        for (Key key : this.index.keySet())
+        {
+            if (key.namespace == namespace) keys.add(key.key);
+        }
+        return keys;
+    }
+
+    /**
+     * Get the current value of a key.
+     *
+     * @param namespace the namespace
+     * @param key the key
+     * @return the value, or null if the key has no value
+     * @throws IOException if the value cannot be read
+     */
+    public synchronized byte @Nullable [] get(byte namespace, @NotNull String key) throws IOException
+    {
+        this.checkOpen();
+        Key indexKey = new Key(namespace, key);
+        Location location = this.index.get(indexKey);
+        if (location == null) return null;
+
+        ByteBuffer record = this.readRecord(location);
+        int valueLength = location.length - HEADER_SIZE - MIN_BODY_SIZE - indexKey.getEncodedLength();
+        byte[] value = new byte[valueLength];
+        record.get(location.length - valueLength, value);
+        return value;
+    }
+
+    /**
+     * Set the value of a key.
+     *
+     * @param namespace the namespace
+     * @param key the key
+     * @param value the value
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized void put(byte namespace, @NotNull String key, byte @NotNull [] value) throws IOException
+    {
+        this.checkOpen();
+        Key indexKey = new Key(namespace, key);
+        Location location = this.append(this.encode(indexKey, OP_PUT, value));
+        this.apply(indexKey, location, this.active);
+    }
+
+    /**
+     * Remove the value of a key.
+     *
+     * @param namespace the namespace
+     * @param key the key
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized void delete(byte namespace, @NotNull String key) throws IOException
+    {
+        this.checkOpen();
+        Key indexKey = new Key(namespace, key);
+        if (!this.index.containsKey(indexKey)) return;
+
+        this.append(this.encode(indexKey, OP_DELETE, new byte[0]));
+        this.apply(indexKey, null, this.active);
+    }
+
+    private @NotNull ByteBuffer encode(@NotNull Key key, byte operation, byte @NotNull [] value) throws IOException
+    {
+        byte[] keyBytes = key.key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > 0xFFFF) throw new IOException("Key is too long: " + key.key);
+
+        int bodyLength = MIN_BODY_SIZE + keyBytes.length + value.length;
+        if (bodyLength > MAX_BODY_SIZE) throw new IOException("Value for " + key.key + " is too large.");
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + bodyLength);
+        record.position(HEADER_SIZE);
+        record.put(key.namespace).put(operation).putShort((short) keyBytes.length).put(keyBytes).put(value);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_SIZE, bodyLength);
+        record.putInt(0, bodyLength).putInt(4, (int) crc.getValue());
+        return record.flip();
+    }
+
+    private @NotNull Location append(@NotNull ByteBuffer record) throws IOException
+    {
+        if (this.active.size > 0 && this.active.size + record.remaining() > this.maxSegmentSize)
+        {
+            this.active.channel.force(true);
+            this.active = this.createSegment(this.active.id + 1);
+        }
+
+        this.dirty = true;
+        return this.write(this.active, record);
+    }
+
+    private @NotNull Location write(@NotNull Segment segment, @NotNull ByteBuffer record) throws IOException
+    {
+        long offset = segment.size;
+        int length = record.remaining();
+        long position = offset;
+        while (record.hasRemaining())
+        {
+            position += segment.channel.write(record, position);
+        }
+        segment.size += length;
+        return new Location(segment.id, offset, length);
+    }
+
+    private @NotNull ByteBuffer readRecord(@NotNull Location location) throws IOException
+    {
+        Segment segment = this.segments.get(location.segment);
+        ByteBuffer record = ByteBuffer.allocate(location.length);
+        long position = location.offset;
+        while (record.hasRemaining())
+        {
+            int read = segment.channel.read(record, position);
+            if (read < 0) throw new IOException("Unexpected end of " + segment.path + ".");
+            position += read;
+        }
+        record.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_SIZE, location.length - HEADER_SIZE);
+        if ((int) crc.getValue() != record.getInt(4))
+        {
+            throw new IOException("Checksum mismatch in " + segment.path + " at byte " + location.offset + ".");
+        }
+        return record;
+    }
+
+    /**
+     * Force any appended records to disk.
+     *
+     * @throws IOException if the records cannot be forced
+     */
+    public synchronized void sync() throws IOException
+    {
+        if (this.closed || !this.dirty) return;
+
+        this.active.channel.force(false);
+        this.dirty = false;
+    }
+
+    /**
+     * Get the fraction of the log's bytes that no longer hold a current value.
+     *
+     * @return a number between 0 and 1
+     */
+    public synchronized double getGarbageRatio()
+    {
+        long total = 0;
+        long live = 0;
+        for (Segment segment : this.segments.values())
+        {
+            total += segment.size;
+            live += segment.liveBytes;
+        }
+        return total == 0 ? 0 : (double) (total - live) / total;
+    }
+
+    /**
+     * Get the number of segment files.
+     *
+     * @return the number of segments
+     */
+    public synchronized int getSegmentCount()
+    {
+        return this.segments.size();
+    }
+
+    /**
+     * Get the number of keys with a value.
+     *
+     * @return the number of keys
+     */
+    public synchronized int size()
+    {
+        return this.index.size();
+    }
+
+    /**
+     * Rewrite the current value of every key into new segments and delete the old ones.
+     *
+     * @throws IOException if the log cannot be rewritten
+     */
+    public synchronized void compact() throws IOException
+    {
+        this.checkOpen();
+
+        List<Segment> oldSegments = new ArrayList<>(this.segments.values());
+        // The newest segment is always the active one, so if compaction fails part way,
+        // later writes still replay after the copies made so far.
+        Segment target = this.createSegment(this.active.id + 1);
+        this.active = target;
+
+        // Copy in write order so related records stay close together.
+        List<Map.Entry<Key, Location>> live = new ArrayList<>(this.index.entrySet());
+        live.sort(Comparator.comparingLong((Map.Entry<Key, Location> entry) -> entry.getValue().segment)
+                .thenComparingLong(entry -> entry.getValue().offset));
+
+        for (Map.Entry<Key, Location> entry : live)
+        {
+            ByteBuffer record = this.readRecord(entry.getValue());
+            if (target.size > 0 && target.size + record.remaining() > this.maxSegmentSize)
+            {
+                target.channel.force(true);
+                target = this.createSegment(target.id + 1);
+                this.active = target;
+            }
+
+            Location location = this.write(target, record);
+            this.index.put(entry.getKey(), location);
+            target.liveBytes += location.length;
+        }
+        target.channel.force(true);
+        this.dirty = false;
+
+        // Only once every live record is safely in a new segment may the old ones go, oldest first.
+        // Deletion markers aren't copied, so a leftover segment's records could come back on replay if a newer
+        // segment holding their deletion were gone. If one can't be deleted, it and every newer old segment stay
+        // until the next compaction, which replays to the same contents.
+        for (Segment segment : oldSegments)
+        {
+            segment.liveBytes = 0;
+        }
+        for (Segment segment : oldSegments)
+        {
+            segment.channel.close();
+            try
+            {
+                this.fileDeleter.delete(segment.path);
+            }
+            catch (IOException e)
+            {
+                this.errorLogger.accept("Unable to delete compacted segment " + segment.path
+                        + ", keeping it and the segments after it until the next compaction.", e);
+                return;
+            }
+            this.segments.remove(segment.id);
+        }
+    }
+
+    /**
+     * Force everything to disk and close the segment files. The log cannot be used afterward.
+     *
+     * @throws IOException if a segment cannot be closed
+     */
+    public synchronized void close() throws IOException
+    {
+        if (this.closed) return;
+        this.closed = true;
+
+        IOException failure = null;
+        try
+        {
+            this.active.channel.force(true);
+        }
+        catch (IOException e)
+        {
+            failure = e;
+        }
+
+        // Close every segment even if one fails, so that no file handle outlives the log.
+        for (Segment segment : this.segments.values())
+        {
+            try
+            {
+                segment.channel.close();
+            }
+            catch (IOException e)
+            {
+                if (failure == null) failure = e;
+                else failure.addSuppressed(e);
+            }
+        }
+
+        if (failure != null) throw failure;
+    }
+
+    private void checkOpen() throws IOException
+    {
+        if (this.closed) throw new IOException("Log is closed.");
+    }
+
+    private @NotNull Segment createSegment(long id) throws IOException
+    {
+        Path path = this.getSegmentPath(id);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, path, channel);
+        this.segments.put(id, segment);
+        return segment;
+    }
+
+    private @NotNull Path getSegmentPath(long id)
+    {
+        return this.directory.resolve(String.format("%020d.log", id));
+    }
+
+    private static final class Segment
+    {
+        private final long id;
+        private final @NotNull Path path;
+        private final @NotNull FileChannel channel;
+        private long size;
+        private long liveBytes;
+
+        private Segment(long id, @NotNull Path path, @NotNull FileChannel channel)
+        {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+        }
+    }
+
+    private record Key(byte namespace, @NotNull String key)
+    {
+        private int getEncodedLength()
+        {
+            return this.key.getBytes(StandardCharsets.UTF_8).length;
+        }
+    }
+
+    private record Location(long segment, long offset, int length) {}
+
+    @FunctionalInterface
+    interface FileDeleter
+    {
+        void delete(@NotNull Path path) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface RecordConsumer
+    {
+        void accept(@NotNull Key key, @Nullable Location location);
+    }
+
+}
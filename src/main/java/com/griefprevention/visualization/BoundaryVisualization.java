@@ -1,13 +1,13 @@
 package com.griefprevention.visualization;
 
 import com.griefprevention.events.BoundaryVisualizationEvent;
+import com.griefprevention.events.EventDispatch;
 import com.griefprevention.util.IntVector;
 import me.ryanhamshire.GriefPrevention.Claim;
 import me.ryanhamshire.GriefPrevention.CustomLogEntryTypes;
 import me.ryanhamshire.GriefPrevention.GriefPrevention;
 import me.ryanhamshire.GriefPrevention.PlayerData;
 import me.ryanhamshire.GriefPrevention.util.BoundingBox;
-import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
@@ -325,7 +325,7 @@ public abstract class BoundaryVisualization
      * @param event the {@code BoundaryVisualizationEvent}
      */
     public static void callAndVisualize(@NotNull BoundaryVisualizationEvent event) {
-        Bukkit.getPluginManager().callEvent(event);
+        EventDispatch.call(event);
 
         Player player = event.getPlayer();
         PlayerData playerData = GriefPrevention.instance.dataStore.getPlayerData(player.getUniqueId());
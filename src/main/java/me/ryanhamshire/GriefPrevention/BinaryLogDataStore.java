@@ -0,0 +1,398 @@
+/*
+    GriefPrevention Server Plugin for Minecraft
+    Copyright (C) 2012 Ryan Hamshire
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.ryanhamshire.GriefPrevention;
+
+import com.griefprevention.storage.SegmentLog;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+//manages data stored in an append-only binary log in the file system
+//every change is one checksummed record, so a trust change appends a few hundred bytes instead of rewriting a file
+public class BinaryLogDataStore extends DataStore
+{
+    private final static String logFolderPath = dataLayerFolderPath + File.separator + "ClaimLog";
+    private final static long SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    //record namespaces within the log
+    private final static byte CLAIMS = 1;
+    private final static byte PLAYERS = 2;
+    private final static byte GROUPS = 3;
+    private final static byte METADATA = 4;
+
+    private final static String NEXT_CLAIM_ID_KEY = "nextClaimID";
+    private final static String SCHEMA_VERSION_KEY = "schemaVersion";
+
+    private SegmentLog log;
+    private ScheduledExecutorService maintenance;
+
+    static boolean hasData()
+    {
+        File logFolder = new File(logFolderPath);
+
+        return logFolder.exists();
+    }
+
+    //initialization!
+    BinaryLogDataStore() throws Exception
+    {
+        this.initialize();
+    }
+
+    @Override
+    void initialize() throws Exception
+    {
+        long startTime = System.nanoTime();
+
+        this.log = new SegmentLog(Path.of(logFolderPath), SEGMENT_SIZE,
+                (message, error) -> GriefPrevention.instance.getLogger().log(Level.SEVERE, message, error));
+
+        //if there's no data yet, then anything written will use the schema implemented by this code
+        if (this.log.size() == 0)
+        {
+            this.setSchemaVersion(DataStore.latestSchemaVersion);
+        }
+
+        //load group data into memory
+        this.log.forEach(GROUPS, (groupName, value) -> this.permissionToBonusBlocksMap.put(groupName, ByteBuffer.wrap(value).getInt()));
+
+        //load next claim number
+        byte[] nextClaimID = this.log.get(METADATA, NEXT_CLAIM_ID_KEY);
+        if (nextClaimID != null)
+        {
+            this.nextClaimID = ByteBuffer.wrap(nextClaimID).getLong();
+        }
+
+        long readTime = System.nanoTime();
+
+        //load claims, linking subdivisions to their parents once every top level claim is in place
+        Map<String, World> validWorlds = ClaimCodec.indexWorlds(Bukkit.getServer().getWorlds());
+        Map<Claim, Long> orphans = new HashMap<>();
+        this.log.forEach(CLAIMS, (claimID, value) ->
+        {
+            try
+            {
+                ArrayList<Long> out_parentID = new ArrayList<>();  //hacky output parameter
+                Claim claim = ClaimCodec.decode(value, Long.parseLong(claimID), out_parentID, validWorlds);
+                if (out_parentID.get(0) == -1)
+                {
+                    this.addClaim(claim, false);
+                }
+                else
+                {
+                    orphans.put(claim, out_parentID.get(0));
+                }
+            }
+            catch (Exception e)
+            {
+                if (e.getMessage() != null && e.getMessage().contains("World not found"))
+                {
+                    GriefPrevention.AddLogEntry("Failed to load a claim (ID:" + claimID + ") because its world isn't loaded (yet?).  If this is not expected, delete this claim.");
+                }
+                else
+                {
+                    GriefPrevention.instance.getLogger().log(Level.SEVERE, "Unable to load claim " + claimID, e);
+                }
+            }
+        });
+
+        for (Map.Entry<Claim, Long> orphan : orphans.entrySet())
+        {
+            Claim parent = this.getClaim(orphan.getValue());
+            if (parent != null)
+            {
+                orphan.getKey().parent = parent;
+                this.addClaim(orphan.getKey(), false);
+            }
+            else
+            {
+                //otherwise the record would stay in the log forever
+                GriefPrevention.AddLogEntry("Removing orphaned claim subdivision (ID:" + orphan.getKey().id + ", parent ID:" + orphan.getValue() + "): " + orphan.getKey().getGreaterBoundaryCorner().toString());
+                this.deleteClaimFromSecondaryStorage(orphan.getKey());
+            }
+        }
+
+        GriefPrevention.AddLogEntry(String.format("Loaded %d records from %d log segments in %dms (reading %dms, claims %dms).",
+                this.log.size(),
+                this.log.getSegmentCount(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime),
+                TimeUnit.NANOSECONDS.toMillis(readTime - startTime),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - readTime)));
+
+        //appends are forced to disk once a second, and the log is compacted once most of it is superseded records
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "GriefPrevention Log Maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maintenance.scheduleWithFixedDelay(this::sync, 1, 1, TimeUnit.SECONDS);
+        this.maintenance.scheduleWithFixedDelay(this::compactIfNeeded, 5, 5, TimeUnit.MINUTES);
+
+        super.initialize();
+    }
+
+    private void sync()
+    {
+        try
+        {
+            this.log.sync();
+        }
+        catch (IOException e)
+        {
+            GriefPrevention.instance.getLogger().log(Level.SEVERE, "Unable to sync the claim log to disk", e);
+        }
+    }
+
+    private void compactIfNeeded()
+    {
+        if (this.log.getGarbageRatio() < 0.5) return;
+
+        try
+        {
+            long start = System.nanoTime();
+            this.log.compact();
+            GriefPrevention.AddLogEntry("Compacted the claim log in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms.", CustomLogEntryTypes.Debug, true);
+        }
+        catch (IOException e)
+        {
+            GriefPrevention.instance.getLogger().log(Level.SEVERE, "Unable to compact the claim log", e);
+        }
+    }
+
+    @Override
+    void writeClaimToStorage(Claim claim) throws IOException
+    {
+        this.log.put(CLAIMS, String.valueOf(claim.id), ClaimCodec.encode(claim));
+    }
+
+    @Override
+    void deleteClaimFromSecondaryStorage(Claim claim)
+    {
+        try
+        {
+            this.log.delete(CLAIMS, String.valueOf(claim.id));
+        }
+        catch (IOException e)
+        {
+            GriefPrevention.instance.getLogger().log(Level.SEVERE, "Unable to delete data for claim " + claim.id, e);
+        }
+    }
+
+    @Override
+    PlayerData getPlayerDataFromStorage(UUID playerID)
+    {
+        PlayerData playerData = new PlayerData();
+        playerData.playerID = playerID;
+
+        try
+        {
+            byte[] value = this.log.get(PLAYERS, playerID.toString());
+            if (value != null)
+            {
+                ByteBuffer buffer = ByteBuffer.wrap(value);
+                playerData.setAccruedClaimBlocks(buffer.getInt());
+                playerData.setBonusClaimBlocks(buffer.getInt());
+            }
+        }
+        catch (IOException e)
+        {
+            GriefPrevention.instance.getLogger().log(Level.SEVERE, "Unable to load data for player " + playerID, e);
+        }
+
+        return playerData;
+    }
+
+    //saves changes to player data.  MUST be called after you're done making changes, otherwise a reload will lose them
+    @Override
+    void overrideSavePlayerData(UUID playerID, PlayerData playerData)
+    {
+        //never save data for the "administrative" account.  null for claim owner ID indicates administrative account
+        if (playerID == null) return;
+
+        ByteBuffer value = ByteBuffer.allocate(8);
+        value.putInt(playerData.getAccruedClaimBlocks());
+        value.putInt(playerData.getBonusClaimBlocks());
+
+        try
+        {
+            this.log.put(PLAYERS, playerID.toString(), value.array());
+        }
+        catch (IOException e)
+        {
+            GriefPrevention.AddLogEntry("GriefPrevention: Unexpected exception saving data for player \"" + playerID + "\": " + e.getMessage());
+        }
+    }
+
+    @Override
+    synchronized void incrementNextClaimID()
+    {
+        //increment in memory
+        this.nextClaimID++;
+
+        try
+        {
+            this.log.put(METADATA, NEXT_CLAIM_ID_KEY, ByteBuffer.allocate(8).putLong(this.nextClaimID).array());
+        }
+        catch (IOException e)
+        {
+            GriefPrevention.AddLogEntry("Unexpected exception saving next claim ID: " + e.getMessage());
+        }
+    }
+
+    //grants a group (players with a specific permission) bonus claim blocks as long as they're still members of the group
+    @Override
+    void saveGroupBonusBlocks(String groupName, int currentValue)
+    {
+        try
+        {
+            this.log.put(GROUPS, groupName, ByteBuffer.allocate(4).putInt(currentValue).array());
+        }
+        catch (IOException e)
+        {
+            GriefPrevention.AddLogEntry("Unexpected exception saving data for group \"" + groupName + "\": " + e.getMessage());
+        }
+    }
+
+    //copies everything into another data store, then moves the log aside so the migration won't run again
+    //this is how servers switch back to the YAML layout
+    synchronized void migrateData(DataStore targetStore)
+    {
+        //migrate claims
+        for (Claim claim : this.claims)
+        {
+            targetStore.addClaim(claim, true);
+            for (Claim child : claim.children)
+            {
+                targetStore.addClaim(child, true);
+            }
+        }
+
+        //migrate groups
+        for (Map.Entry<String, Integer> groupEntry : this.permissionToBonusBlocksMap.entrySet())
+        {
+            targetStore.saveGroupBonusBlocks(groupEntry.getKey(), groupEntry.getValue());
+        }
+
+        //migrate players
+        for (String playerID : this.log.getKeys(PLAYERS))
+        {
+            UUID uuid = UUID.fromString(playerID);
+            targetStore.overrideSavePlayerData(uuid, this.getPlayerData(uuid));
+            this.clearCachedPlayerData(uuid);
+        }
+
+        //migrate next claim ID
+        if (this.nextClaimID > targetStore.nextClaimID)
+        {
+            targetStore.setNextClaimID(this.nextClaimID);
+        }
+
+        //make sure every claim is written before the source goes away
+        this.flushClaimWrites();
+        targetStore.getClaimWriteQueue().flush();
+        this.close();
+
+        //rename the log folder so the migration won't run again
+        int i = 0;
+        File backupFolder;
+        do
+        {
+            backupFolder = new File(logFolderPath + ".backup" + (i > 0 ? String.valueOf(i) : ""));
+            i++;
+        } while (backupFolder.exists());
+
+        new File(logFolderPath).renameTo(backupFolder);
+
+        GriefPrevention.AddLogEntry("Backed your claim log up to " + backupFolder.getName() + ".");
+        GriefPrevention.AddLogEntry("When you're satisfied that all your data have been safely migrated, consider deleting that folder.");
+    }
+
+    @Override
+    synchronized void close()
+    {
+        //let a running sync or compaction finish, interrupting it would close the log's channels under it
+        if (this.maintenance != null)
+        {
+            this.maintenance.shutdown();
+            try
+            {
+                if (!this.maintenance.awaitTermination(1, TimeUnit.MINUTES))
+                {
+                    GriefPrevention.instance.getLogger().severe("Timed out waiting for claim log maintenance to finish.");
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        try
+        {
+            this.log.close();
+        }
+        catch (IOException e)
+        {
+            GriefPrevention.instance.getLogger().log(Level.SEVERE, "Unable to close the claim log", e);
+        }
+    }
+
+    @Override
+    int getSchemaVersionFromStorage()
+    {
+        try
+        {
+            byte[] value = this.log.get(METADATA, SCHEMA_VERSION_KEY);
+            if (value != null) return ByteBuffer.wrap(value).getInt();
+        }
+        catch (IOException e)
+        {
+            GriefPrevention.instance.getLogger().log(Level.SEVERE, "Unable to read the schema version", e);
+        }
+
+        this.updateSchemaVersionInStorage(0);
+        return 0;
+    }
+
+    @Override
+    void updateSchemaVersionInStorage(int versionToSet)
+    {
+        try
+        {
+            this.log.put(METADATA, SCHEMA_VERSION_KEY, ByteBuffer.allocate(4).putInt(versionToSet).array());
+        }
+        catch (IOException e)
+        {
+            GriefPrevention.AddLogEntry("Unexpected exception saving schema version: " + e.getMessage());
+        }
+    }
+}
@@ -509,23 +509,9 @@ public class BlockEventHandler implements Listener {
 
         // Assemble list of potentially intersecting claims from chunks interacted with.
         ArrayList<Claim> intersectable = new ArrayList<>();
-        int chunkXMax = movedBlocks.getMaxX() >> 4;
-        int chunkZMax = movedBlocks.getMaxZ() >> 4;
-
-        for (int chunkX = movedBlocks.getMinX() >> 4; chunkX <= chunkXMax; ++chunkX) {
-            for (int chunkZ = movedBlocks.getMinZ() >> 4; chunkZ <= chunkZMax; ++chunkZ) {
-                ArrayList<Claim> chunkClaims = dataStore.chunksToClaimsMap.get(DataStore.getChunkHash(chunkX, chunkZ));
-                if (chunkClaims != null) {
-                    for (Claim claim : chunkClaims) {
-                        // Ensure claim is not piston claim and is in same world.
-                        if (pistonWorld.equals(claim.getWorld())) {
-                            intersectable.add(claim);
-                            if (claim.children.size() > 0) intersectable.addAll(claim.children);
-                        }
-                    }
-                }
-
-            }
+        for (Claim claim : dataStore.getChunkClaims(pistonWorld, movedBlocks)) {
+            intersectable.add(claim);
+            if (claim.children.size() > 0) intersectable.addAll(claim.children);
         }
 
         Predicate<Claim> intersectionHandler;
@@ -549,17 +535,23 @@ public class BlockEventHandler implements Listener {
         }
         // Precise mode: Bounding box intersection may not yield a conflict. Individual blocks must be considered.
         else {
+            // Resolve every moved block and its destination in one pass.
+            List<Block> affected = new ArrayList<>(blocks.size() * 2);
+            for (Block check : blocks) {
+                affected.add(check);
+                affected.add(check.getRelative(direction));
+            }
+            // A block in a subdivision is also inside its parent, and subdivisions never overlap each other.
+            Set<Claim> containing = new HashSet<>();
+            for (Claim claim : dataStore.getClaimsAt(affected, false, false)) {
+                if (claim == null) continue;
+                containing.add(claim);
+                if (claim.parent != null) containing.add(claim.parent);
+            }
 
             intersectionHandler = (claim) -> {
                 // Ensure that the claim contains an affected block.
-                boolean contains = false;
-                for (Block check : blocks) {
-                    if (claim.getBounds().contains(check) || claim.getBounds().contains(check.getX() + direction.getModX(), check.getY() + direction.getModY(), check.getZ() + direction.getModZ())) {
-                        contains = true;
-                        break;
-                    }
-                }
-                if (!contains) return false;
+                if (!containing.contains(claim)) return false;
 
                 // If owners are different, or moving out of subclaim and not into wilderness, or moving into a restricted subclaim, cancel.
                 if (pistonClaim == null || !Objects.equals(pistonClaim.getOwnerID(), claim.getOwnerID())
@@ -641,7 +633,8 @@ public class BlockEventHandler implements Listener {
             if (!claimBoundingBox.intersects(boundingBox)) continue;
 
             // Tau: check subclaims properly
-            for (Claim child : claim.children) {
+            // A child containing the box must contain its lower corner, so only those candidates need checking.
+            for (Claim child : claim.getSubdivisionCandidates(boundingBox.getMinX(), boundingBox.getMinZ())) {
                 if (child.is3D() && child.getBounds().contains(boundingBox) || child.getBounds().contains2d(boundingBox)) {
                     claim = child;
                     break;
@@ -911,8 +904,8 @@ public class BlockEventHandler implements Listener {
     }
 
     //ensures fluids don't flow into land claims from outside
-    private Claim lastSpreadFromClaim = null;
-    private Claim lastSpreadToClaim = null;
+    private static final BiPredicate<Claim, Claim> CREATIVE_FLUID_FLOW = (from, to) -> isFluidFlowAllowed(from, to, true);
+    private static final BiPredicate<Claim, Claim> SURVIVAL_FLUID_FLOW = (from, to) -> isFluidFlowAllowed(from, to, false);
 
     @EventHandler(ignoreCancelled = true, priority = EventPriority.LOWEST)
     public void onBlockFromTo(BlockFromToEvent spreadEvent) {
@@ -924,19 +917,15 @@ public class BlockEventHandler implements Listener {
         if (!GriefPrevention.instance.claimsEnabledForWorld(spreadEvent.getBlock().getWorld())) return;
 
         //where from and where to?
-        Location fromLocation = spreadEvent.getBlock().getLocation();
-        Location toLocation = spreadEvent.getToBlock().getLocation();
-        boolean isInCreativeRulesWorld = GriefPrevention.instance.creativeRulesApply(toLocation.getWorld());
-        Claim fromClaim = this.dataStore.getClaimAt(fromLocation, false, lastSpreadFromClaim);
-        Claim toClaim = this.dataStore.getClaimAt(toLocation, false, lastSpreadToClaim);
+        Block fromBlock = spreadEvent.getBlock();
+        Block toBlock = spreadEvent.getToBlock();
+        boolean isInCreativeRulesWorld = GriefPrevention.instance.creativeRulesApply(toBlock.getWorld());
 
         //due to the nature of what causes this event (fluid flow/spread),
-        //we'll probably run similar checks for the same pair of claims again,
-        //so we cache them to use in claim lookup later
-        this.lastSpreadFromClaim = fromClaim;
-        this.lastSpreadToClaim = toClaim;
-
-        if (!isFluidFlowAllowed(fromClaim, toClaim, isInCreativeRulesWorld)) {
+        //we'll probably run similar checks for the same pair of chunk sections again,
+        //so the decision is cached per pair of sections for the rest of the tick
+        BiPredicate<Claim, Claim> rule = isInCreativeRulesWorld ? CREATIVE_FLUID_FLOW : SURVIVAL_FLUID_FLOW;
+        if (!this.dataStore.getFluidFlowCache().isFlowAllowed(fromBlock, toBlock, rule)) {
             spreadEvent.setCancelled(true);
         }
     }
@@ -949,7 +938,7 @@ public class BlockEventHandler implements Listener {
      * @param creativeRulesApply Whether creative rules apply to the world where claims are located.
      * @return `true` if fluid flow is allowed, `false` otherwise.
      */
-    private boolean isFluidFlowAllowed(Claim from, Claim to, boolean creativeRulesApply) {
+    private static boolean isFluidFlowAllowed(Claim from, Claim to, boolean creativeRulesApply) {
         // Special case: if in a world with creative rules,
         // don't allow fluids to flow into wilderness.
         if (creativeRulesApply && to == null) return false;
@@ -18,6 +18,8 @@
 
 package me.ryanhamshire.GriefPrevention;
 
+import com.griefprevention.claims.SubdivisionIndex;
+import com.griefprevention.events.EventDispatch;
 import me.ryanhamshire.GriefPrevention.events.ClaimPermissionCheckEvent;
 import me.ryanhamshire.GriefPrevention.util.BoundingBox;
 import org.bukkit.Bukkit;
@@ -38,6 +40,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
 //represents a player claim
@@ -69,10 +72,22 @@ public class Claim
     public UUID ownerID;
 
     //list of players who (beyond the claim owner) have permission to grant permissions in this claim
-    public ArrayList<String> managers = new ArrayList<>();
+    //the list indexes its player UUIDs, see ManagerList
+    public ArrayList<String> managers = new ManagerList();
 
     //permissions for this claim, see ClaimPermission class
-    private HashMap<String, ClaimPermission> playerIDToClaimPermissionMap = new HashMap<>();
+    //players are keyed by UUID so permission checks don't build strings, and the public and [permission.node] entries are kept apart
+    private HashMap<UUID, ClaimPermission> playerTrust = new HashMap<>();
+    private HashMap<String, ClaimPermission> permissionNodeTrust = new HashMap<>();  //keyed by node, without brackets
+    private HashMap<String, ClaimPermission> otherTrust = new HashMap<>();  //anything else, such as names which never converted to UUIDs
+    private ClaimPermission publicTrust = null;
+
+    //grants found by permission checks, remembered until trust changes, see getDefaultDenial
+    //the epoch is bumped by every trust change made through this class, and direct edits to the managers list are seen through its mod count
+    private record RememberedGrants(long epoch, int permissions) {}
+    private static final int MAX_REMEMBERED_PLAYERS = 256;
+    private volatile @Nullable ConcurrentHashMap<UUID, RememberedGrants> rememberedGrants = null;  //created on first use
+    private volatile long trustEpoch = 0;
 
     //whether or not this claim is in the data store
     //if a claim instance isn't in the data store, it isn't "active" - players can't interract with it
@@ -93,6 +108,11 @@ public class Claim
     //note subdivisions themselves never have children
     public ArrayList<Claim> children = new ArrayList<>();
 
+    //spatial index of children, built on demand once there are enough of them to be worth it
+    //the datastore bumps the mod count whenever children are added, removed, or resized
+    private volatile @Nullable SubdivisionIndex subdivisionIndex = null;
+    private volatile int subdivisionModCount = 0;
+
     //playerIds who have been banned from this claim
     private HashSet<UUID> bannedPlayerIds = new HashSet<>();
     private Set<UUID> unmodifiableBannedPlayerIds = Collections.unmodifiableSet(bannedPlayerIds);
@@ -262,8 +282,11 @@ public class Claim
         this.bounds = claim.bounds.clone();
         this.id = claim.id;
         this.ownerID = claim.ownerID;
-        this.managers = new ArrayList<>(claim.managers);
-        this.playerIDToClaimPermissionMap = new HashMap<>(claim.playerIDToClaimPermissionMap);
+        this.managers = new ManagerList(claim.managers);
+        this.playerTrust = new HashMap<>(claim.playerTrust);
+        this.permissionNodeTrust = new HashMap<>(claim.permissionNodeTrust);
+        this.otherTrust = new HashMap<>(claim.otherTrust);
+        this.publicTrust = claim.publicTrust;
         this.inDataStore = false; //since it's a copy of a claim, not in datastore!
         this.areExplosivesAllowed = claim.areExplosivesAllowed;
         this.parent = claim.parent;
@@ -273,6 +296,17 @@ public class Claim
         this.bannedPlayerIds = claim.bannedPlayerIds;
     }
 
+    //produces a detached copy of a claim which can be written to storage off the main thread
+    //unlike the copy constructor, nothing that is serialized is shared with the original
+    Claim copyForStorage()
+    {
+        Claim copy = new Claim(this);
+        copy.bannedPlayerIds = new HashSet<>(this.bannedPlayerIds);
+        copy.unmodifiableBannedPlayerIds = Collections.unmodifiableSet(copy.bannedPlayerIds);
+        copy.publicIsBanned = this.publicIsBanned;
+        return copy;
+    }
+
     //measurements.  all measurements are in blocks
     public int getArea() {
         return (int) Math.min(Integer.MAX_VALUE, this.bounds.getArea());
@@ -298,6 +332,7 @@ public class Claim
     public void setSubclaimRestrictions(boolean inheritNothing)
     {
         this.inheritNothing = inheritNothing;
+        this.invalidatePermissionDecisions();
     }
 
     // returns true if the location is near this claim by howNear
@@ -382,8 +417,7 @@ public class Claim
         if (uuid.equals(this.getOwnerID())) {
             return true;
         } else {
-            String uuidString = uuid.toString();
-            return playerIDToClaimPermissionMap.containsKey(uuidString) || managers.contains(uuidString);
+            return playerTrust.containsKey(uuid) || isManager(uuid);
         }
     }
 
@@ -391,9 +425,76 @@ public class Claim
     {
         if (uuid.equals(this.getOwnerID())) return true;
 
-        if (level == ClaimPermission.Manage) return this.managers.contains(uuid.toString());
+        if (level == ClaimPermission.Manage) return this.isManager(uuid);
+
+        return level.isGrantedBy(this.playerTrust.get(uuid));
+    }
+
+    // Trust held by a player's UUID or by the public, which only changes along with the trust epoch.
+    private boolean hasTrust(@NotNull UUID uuid, @NotNull ClaimPermission level)
+    {
+        if (level == ClaimPermission.Manage) return this.isManager(uuid);
+        return level.isGrantedBy(this.playerTrust.get(uuid)) || level.isGrantedBy(this.publicTrust);
+    }
+
+    boolean isGrantRemembered(@NotNull UUID uuid, @NotNull ClaimPermission level)
+    {
+        ConcurrentHashMap<UUID, RememberedGrants> rememberedGrants = this.rememberedGrants;
+        if (rememberedGrants == null) return false;
 
-        return level.isGrantedBy(this.playerIDToClaimPermissionMap.get(uuid.toString()));
+        RememberedGrants grants = rememberedGrants.get(uuid);
+        return grants != null
+                && (grants.permissions() & (1 << level.ordinal())) != 0
+                && grants.epoch() == this.getTrustEpoch();
+    }
+
+    void rememberGrant(@NotNull UUID uuid, @NotNull ClaimPermission level)
+    {
+        long epoch = this.getTrustEpoch();
+        if (epoch < 0) return;
+
+        // Public claims are checked by everyone, so don't let the map grow without limit.
+        ConcurrentHashMap<UUID, RememberedGrants> rememberedGrants = this.rememberedGrants;
+        if (rememberedGrants == null || rememberedGrants.size() >= MAX_REMEMBERED_PLAYERS && !rememberedGrants.containsKey(uuid))
+        {
+            rememberedGrants = new ConcurrentHashMap<>();
+            this.rememberedGrants = rememberedGrants;
+        }
+
+        int permission = 1 << level.ordinal();
+        rememberedGrants.merge(uuid, new RememberedGrants(epoch, permission), (previous, added) ->
+                previous.epoch() == epoch ? new RememberedGrants(epoch, previous.permissions() | permission) : added);
+    }
+
+    // Forgets remembered grants, for changes to anything a grant may have depended on.
+    void invalidatePermissionDecisions()
+    {
+        this.trustEpoch++;
+        this.rememberedGrants = null;
+    }
+
+    // The trust epoch of this claim and, for subdivisions, the parent it may inherit from.
+    // Negative if changes can't be seen because the managers list was replaced.
+    private long getTrustEpoch()
+    {
+        long epoch = this.getOwnTrustEpoch();
+        if (epoch < 0 || this.parent == null) return epoch;
+
+        long parentEpoch = this.parent.getOwnTrustEpoch();
+        return parentEpoch < 0 ? -1 : epoch + parentEpoch;
+    }
+
+    private long getOwnTrustEpoch()
+    {
+        if (!(this.managers instanceof ManagerList managerList)) return -1;
+        return this.trustEpoch + managerList.getModCount();
+    }
+
+    private boolean isManager(@NotNull UUID uuid)
+    {
+        //other code may have replaced the list, in which case there's no index to use
+        if (this.managers instanceof ManagerList managerList) return managerList.containsPlayer(uuid);
+        return this.managers.contains(uuid.toString());
     }
 
     public boolean hasExplicitPermission(@NotNull Player player, @NotNull ClaimPermission level)
@@ -404,32 +505,36 @@ public class Claim
         // Special case managers - a separate list is used.
         if (level == ClaimPermission.Manage)
         {
-            for (String node : this.managers)
+            List<String> nodes = this.managers instanceof ManagerList managerList
+                    ? managerList.getPermissionNodes()
+                    : ManagerList.getPermissionNodes(this.managers);
+            for (String node : nodes)
             {
-                // Ensure valid permission format for permissions - [permission.node]
-                if (node.length() < 3 || node.charAt(0) != '[' || node.charAt(node.length() - 1) != ']') continue;
                 // Check if player has node
-                if (player.hasPermission(node.substring(1, node.length() - 1))) return true;
+                if (hasPermissionNode(player, node)) return true;
             }
             return false;
         }
 
         // Check permission-based ClaimPermission
-        for (Map.Entry<String, ClaimPermission> stringToPermission : this.playerIDToClaimPermissionMap.entrySet())
+        if (this.permissionNodeTrust.isEmpty()) return false;
+        for (Map.Entry<String, ClaimPermission> nodeToPermission : this.permissionNodeTrust.entrySet())
         {
-            String node = stringToPermission.getKey();
-            // Ensure valid permission format for permissions - [permission.node]
-            if (node.length() < 3 || node.charAt(0) != '[' || node.charAt(node.length() - 1) != ']') continue;
-
             // Check if level is high enough and player has node
-            if (level.isGrantedBy(stringToPermission.getValue())
-                    && player.hasPermission(node.substring(1, node.length() - 1)))
+            if (level.isGrantedBy(nodeToPermission.getValue())
+                    && hasPermissionNode(player, nodeToPermission.getKey()))
                 return true;
         }
 
         return false;
     }
 
+    // Node checks go through the permissions plugin, so results are remembered for a short while.
+    private static boolean hasPermissionNode(@NotNull Player player, @NotNull String node)
+    {
+        return GriefPrevention.instance.dataStore.getPermissionNodeCache().hasPermission(player, node);
+    }
+
     /**
      * Check whether a Player has a certain level of trust.
      *
@@ -545,6 +650,10 @@ public class Claim
             @Nullable Event event,
             @Nullable Supplier<String> denialOverride)
     {
+        if (!EventDispatch.hasListeners(ClaimPermissionCheckEvent.getHandlerList()))
+        {
+            return getDenial(player, player.getUniqueId(), permission, event, denialOverride);
+        }
         return callPermissionCheck(new ClaimPermissionCheckEvent(player, this, permission, event), denialOverride);
     }
 
@@ -561,6 +670,10 @@ public class Claim
             @NotNull ClaimPermission permission,
             @Nullable Event event)
     {
+        if (!EventDispatch.hasListeners(ClaimPermissionCheckEvent.getHandlerList()))
+        {
+            return getDenial(Bukkit.getPlayer(uuid), uuid, permission, event, null);
+        }
         return callPermissionCheck(new ClaimPermissionCheckEvent(uuid, this, permission, event), null);
     }
 
@@ -576,20 +689,39 @@ public class Claim
             @Nullable Supplier<String> denialOverride)
     {
         // Set denial message (if any) using default behavior.
-        Supplier<String> defaultDenial = getDefaultDenial(event.getCheckedPlayer(), event.getCheckedUUID(),
-                event.getRequiredPermission(), event.getTriggeringEvent());
-        // If permission is denied and a clarifying override is provided, use override.
-        if (defaultDenial != null && denialOverride != null) {
-            defaultDenial = denialOverride;
-        }
-
-        event.setDenialReason(defaultDenial);
+        event.setDenialReason(getDenial(event.getCheckedPlayer(), event.getCheckedUUID(),
+                event.getRequiredPermission(), event.getTriggeringEvent(), denialOverride));
 
         Bukkit.getPluginManager().callEvent(event);
 
         return event.getDenialReason();
     }
 
+    /**
+     * Get the reason for denial of a ClaimPermission before addons have their say.
+     *
+     * @param player the Player being checked for permissions
+     * @param uuid the UUID being checked for permissions
+     * @param permission the ClaimPermission required
+     * @param event the Event triggering the permission check
+     * @param denialOverride a message overriding the default denial for clarity
+     * @return the denial reason or null if permission is granted
+     */
+    private @Nullable Supplier<String> getDenial(
+            @Nullable Player player,
+            @NotNull UUID uuid,
+            @NotNull ClaimPermission permission,
+            @Nullable Event event,
+            @Nullable Supplier<String> denialOverride)
+    {
+        Supplier<String> defaultDenial = getDefaultDenial(player, uuid, permission, event);
+        // If permission is denied and a clarifying override is provided, use override.
+        if (defaultDenial != null && denialOverride != null) {
+            defaultDenial = denialOverride;
+        }
+        return defaultDenial;
+    }
+
     /**
      * Get the default reason for denial of a ClaimPermission.
      *
@@ -605,6 +737,9 @@ public class Claim
             @NotNull ClaimPermission permission,
             @Nullable Event event)
     {
+        // Every check before the trust lookups can only grant permission, so a remembered grant can be returned first.
+        if (this.isGrantRemembered(uuid, permission)) return null;
+
         if (player != null)
         {
             // Admin claims need adminclaims permission only.
@@ -624,18 +759,15 @@ public class Claim
                 && hasBypassPermission(player, permission))
             return null;
 
-        // Look for explicit individual permission.
-        if (player != null)
+        // Look for explicit individual or public permission.
+        if (this.hasTrust(uuid, permission))
         {
-            if (this.hasExplicitPermission(player, permission)) return null;
-        }
-        else
-        {
-            if (this.hasExplicitPermission(uuid, permission)) return null;
+            this.rememberGrant(uuid, permission);
+            return null;
         }
 
-        // Check for public permission.
-        if (permission.isGrantedBy(this.playerIDToClaimPermissionMap.get("public"))) return null;
+        // Look for permission node trust. This depends on the player's permissions, so it isn't remembered.
+        if (player != null && this.hasExplicitPermission(player, permission)) return null;
 
         // Special building-only rules.
         if (permission == ClaimPermission.Build)
@@ -662,6 +794,13 @@ public class Claim
             ClaimPermission parentPerm = permission;
             // if permissiontrusted in parent claim allow edits
             if (parentPerm == ClaimPermission.Edit) parentPerm = ClaimPermission.Manage;
+
+            // Building also depends on PvP combat, checked above, so only other inherited grants are remembered.
+            if (permission != ClaimPermission.Build && this.parent.hasTrust(uuid, parentPerm))
+            {
+                this.rememberGrant(uuid, permission);
+                return null;
+            }
             return this.parent.getDefaultDenial(player, uuid, parentPerm, event);
         }
 
@@ -746,7 +885,13 @@ public class Claim
     {
         if (playerID == null || playerID.isEmpty()) return null;
 
-        return this.playerIDToClaimPermissionMap.get(playerID.toLowerCase());
+        playerID = playerID.toLowerCase();
+        UUID uuid = parsePlayerID(playerID);
+        if (uuid != null) return this.playerTrust.get(uuid);
+        if (playerID.equals("public")) return this.publicTrust;
+        String node = getPermissionNode(playerID);
+        if (node != null) return this.permissionNodeTrust.get(node);
+        return this.otherTrust.get(playerID);
     }
 
     //grants a permission for a player or the public
@@ -756,6 +901,7 @@ public class Claim
 
         if (playerID == null || playerID.isEmpty()) return;
 
+        this.invalidatePermissionDecisions();
         if (permissionLevel == null)
             dropPermission(playerID);
         else if (permissionLevel == ClaimPermission.Manage) {
@@ -764,14 +910,41 @@ public class Claim
                 unbanUUID(UUID.fromString(playerID), true, false);
             } catch (IllegalArgumentException ignored) {}
         } else
-            this.playerIDToClaimPermissionMap.put(playerID.toLowerCase(), permissionLevel);
+            this.putPermission(playerID.toLowerCase(), permissionLevel);
+    }
+
+    //stores a non-manager permission under the right kind of subject, or removes it when the level is null
+    private void putPermission(@NotNull String playerID, @Nullable ClaimPermission permissionLevel)
+    {
+        UUID uuid = parsePlayerID(playerID);
+        String node;
+        if (uuid != null)
+        {
+            if (permissionLevel == null) this.playerTrust.remove(uuid);
+            else this.playerTrust.put(uuid, permissionLevel);
+        }
+        else if (playerID.equals("public"))
+        {
+            this.publicTrust = permissionLevel;
+        }
+        else if ((node = getPermissionNode(playerID)) != null)
+        {
+            if (permissionLevel == null) this.permissionNodeTrust.remove(node);
+            else this.permissionNodeTrust.put(node, permissionLevel);
+        }
+        else
+        {
+            if (permissionLevel == null) this.otherTrust.remove(playerID);
+            else this.otherTrust.put(playerID, permissionLevel);
+        }
     }
 
     //revokes a permission for a player or the public
     public void dropPermission(@NotNull String playerID)
     {
         playerID = playerID.toLowerCase();
-        this.playerIDToClaimPermissionMap.remove(playerID);
+        this.invalidatePermissionDecisions();
+        this.putPermission(playerID, null);
         this.managers.remove(playerID);
 
         for (Claim child : this.children)
@@ -783,7 +956,11 @@ public class Claim
     //clears all permissions (except owner of course)
     public void clearPermissions()
     {
-        this.playerIDToClaimPermissionMap.clear();
+        this.invalidatePermissionDecisions();
+        this.playerTrust.clear();
+        this.permissionNodeTrust.clear();
+        this.otherTrust.clear();
+        this.publicTrust = null;
         this.managers.clear();
 
         for (Claim child : this.children)
@@ -796,26 +973,132 @@ public class Claim
     //useful for  making copies of permissions during a claim resize and listing all permissions in a claim
     public void getPermissions(ArrayList<String> builders, ArrayList<String> containers, ArrayList<String> accessors, ArrayList<String> managers)
     {
-        //loop through all the entries in the hash map
-        for (Map.Entry<String, ClaimPermission> entry : this.playerIDToClaimPermissionMap.entrySet())
+        //build up a list for each permission level, with each kind of subject back in its string form
+        for (Map.Entry<UUID, ClaimPermission> entry : this.playerTrust.entrySet())
         {
-            //build up a list for each permission level
-            if (entry.getValue() == ClaimPermission.Build)
-            {
-                builders.add(entry.getKey());
-            }
-            else if (entry.getValue() == ClaimPermission.Inventory)
+            addPermission(entry.getKey().toString(), entry.getValue(), builders, containers, accessors);
+        }
+        if (this.publicTrust != null)
+        {
+            addPermission("public", this.publicTrust, builders, containers, accessors);
+        }
+        for (Map.Entry<String, ClaimPermission> entry : this.permissionNodeTrust.entrySet())
+        {
+            addPermission("[" + entry.getKey() + "]", entry.getValue(), builders, containers, accessors);
+        }
+        for (Map.Entry<String, ClaimPermission> entry : this.otherTrust.entrySet())
+        {
+            addPermission(entry.getKey(), entry.getValue(), builders, containers, accessors);
+        }
+
+        //managers are handled a little differently
+        managers.addAll(this.managers);
+    }
+
+    private static void addPermission(String playerID, ClaimPermission permission, List<String> builders, List<String> containers, List<String> accessors)
+    {
+        if (permission == ClaimPermission.Build)
+        {
+            builders.add(playerID);
+        }
+        else if (permission == ClaimPermission.Inventory)
+        {
+            containers.add(playerID);
+        }
+        else
+        {
+            accessors.add(playerID);
+        }
+    }
+
+    //parses a trust subject as a player UUID, or returns null if it is something else
+    static @Nullable UUID parsePlayerID(@NotNull String playerID)
+    {
+        //cheap checks first, so subjects like "public" don't cost an exception
+        if (playerID.length() != 36 || playerID.charAt(8) != '-' || playerID.charAt(13) != '-') return null;
+        try
+        {
+            return UUID.fromString(playerID);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+
+    //gets the node of a [permission.node] trust subject, or null if it is something else
+    static @Nullable String getPermissionNode(@NotNull String playerID)
+    {
+        if (playerID.length() < 3 || playerID.charAt(0) != '[' || playerID.charAt(playerID.length() - 1) != ']') return null;
+        return playerID.substring(1, playerID.length() - 1);
+    }
+
+    //a claim's managers in their string form, which also indexes the player UUIDs and permission nodes among them
+    //the index is rebuilt after any change to the list, so code that edits the list directly keeps working
+    static final class ManagerList extends ArrayList<String>
+    {
+        private record Index(int modCount, Set<UUID> playerIDs, List<String> permissionNodes) {}
+
+        private volatile Index index = null;
+
+        ManagerList() {}
+
+        ManagerList(Collection<String> managers)
+        {
+            super(managers);
+        }
+
+        boolean containsPlayer(UUID playerID)
+        {
+            return this.getIndex().playerIDs().contains(playerID);
+        }
+
+        List<String> getPermissionNodes()
+        {
+            return this.getIndex().permissionNodes();
+        }
+
+        int getModCount()
+        {
+            return this.modCount;
+        }
+
+        private Index getIndex()
+        {
+            Index index = this.index;
+            int modCount = this.modCount;
+            if (index == null || index.modCount() != modCount)
             {
-                containers.add(entry.getKey());
+                Set<UUID> playerIDs = new HashSet<>();
+                for (String manager : this)
+                {
+                    UUID playerID = parsePlayerID(manager);
+                    if (playerID != null) playerIDs.add(playerID);
+                }
+                index = new Index(modCount, playerIDs, getPermissionNodes(this));
+                this.index = index;
             }
-            else
+            return index;
+        }
+
+        //replacing an element doesn't count as a modification for ArrayList, but it does for the index
+        @Override
+        public String set(int index, String element)
+        {
+            this.modCount++;
+            return super.set(index, element);
+        }
+
+        static List<String> getPermissionNodes(List<String> managers)
+        {
+            List<String> nodes = new ArrayList<>();
+            for (String manager : managers)
             {
-                accessors.add(entry.getKey());
+                String node = getPermissionNode(manager);
+                if (node != null) nodes.add(node);
             }
+            return nodes;
         }
-
-        //managers are handled a little differently
-        managers.addAll(this.managers);
     }
 
     // the claims current bounds, DO NOT MODIFY
@@ -850,6 +1133,32 @@ public class Claim
         return GriefPrevention.lookupPlayerName(this.ownerID);
     }
 
+    //gets the subdivisions which may contain a block column, in the same order as children
+    //for claims with few children this is just the children list, callers must still check bounds and must not modify it
+    public @NotNull List<Claim> getSubdivisionCandidates(int x, int z)
+    {
+        if (this.children.size() < SubdivisionIndex.MIN_SUBDIVISIONS) return this.children;
+
+        //read the mod count before the children so that a concurrent change can only make the new index look stale
+        int modCount = this.subdivisionModCount;
+        SubdivisionIndex index = this.subdivisionIndex;
+        if (index == null || !index.isCurrent(modCount, this.children.size()))
+        {
+            index = new SubdivisionIndex(this.children, modCount);
+            this.subdivisionIndex = index;
+        }
+
+        return index.getCandidates(x, z);
+    }
+
+    //marks the subdivision index stale after children have been added, removed, or moved
+    //writes are serialized by the datastore
+    void invalidateSubdivisionIndex()
+    {
+        this.subdivisionModCount++;
+        this.subdivisionIndex = null;
+    }
+
     public UUID getOwnerID()
     {
         if (this.parent != null)
@@ -885,7 +1194,7 @@ public class Claim
         else if (excludeSubdivisions)
         {
             //search all subdivisions to see if the location is in any of them
-            for (Claim child : this.children)
+            for (Claim child : this.getSubdivisionCandidates(x, z))
             {
                 //if we find such a subdivision, return false
                 if (child.contains(location, ignoreHeight, true))
@@ -0,0 +1,184 @@
+/*
+    GriefPrevention Server Plugin for Minecraft
+    Copyright (C) 2012 Ryan Hamshire
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.ryanhamshire.GriefPrevention;
+
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
+import org.bukkit.World;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+//compact binary form of a single claim, shared by the binary log data store and the claim snapshot
+final class ClaimCodec
+{
+    //version of the claim record format, written first in every claim record
+    private final static byte CLAIM_FORMAT = 1;
+
+    private ClaimCodec() {}
+
+    //indexes worlds by lower case name, matching how claim locations resolve worlds
+    static Map<String, World> indexWorlds(List<World> worlds)
+    {
+        Map<String, World> worldsByName = new HashMap<>();
+        for (World world : worlds)
+        {
+            worldsByName.putIfAbsent(world.getName().toLowerCase(Locale.ROOT), world);
+        }
+        return worldsByName;
+    }
+
+    static byte[] encode(Claim claim) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeByte(CLAIM_FORMAT);
+
+        //boundaries
+        BoundingBox bounds = claim.getBounds();
+        out.writeUTF(claim.getWorld().getName());
+        out.writeInt(bounds.getMinX());
+        out.writeInt(bounds.getMinY());
+        out.writeInt(bounds.getMinZ());
+        out.writeInt(bounds.getMaxX());
+        out.writeInt(bounds.getMaxY());
+        out.writeInt(bounds.getMaxZ());
+
+        //owner
+        writeUUID(out, claim.ownerID);
+
+        //permissions
+        ArrayList<String> builders = new ArrayList<>();
+        ArrayList<String> containers = new ArrayList<>();
+        ArrayList<String> accessors = new ArrayList<>();
+        ArrayList<String> managers = new ArrayList<>();
+        claim.getPermissions(builders, containers, accessors, managers);
+        writeStrings(out, builders);
+        writeStrings(out, containers);
+        writeStrings(out, accessors);
+        writeStrings(out, managers);
+
+        out.writeLong(claim.parent != null ? claim.parent.id : -1L);
+        out.writeBoolean(claim.getSubclaimRestrictions());
+
+        //bans
+        out.writeBoolean(claim.isPublicBanned());
+        out.writeInt(claim.getBannedPlayers().size());
+        for (UUID bannedPlayerID : claim.getBannedPlayers())
+        {
+            writeUUID(out, bannedPlayerID);
+        }
+
+        out.writeBoolean(claim.areExplosivesAllowed);
+        out.writeLong(claim.modifiedDate != null ? claim.modifiedDate.getTime() : System.currentTimeMillis());
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static Claim decode(byte[] value, long claimID, ArrayList<Long> out_parentID, Map<String, World> validWorlds) throws Exception
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(value));
+
+        byte format = in.readByte();
+        if (format != CLAIM_FORMAT) throw new IOException("Unknown claim record format " + format);
+
+        //boundaries
+        String worldName = in.readUTF();
+        World world = validWorlds.get(worldName.toLowerCase(Locale.ROOT));
+        if (world == null)
+        {
+            throw new Exception("World not found: \"" + worldName + "\"");
+        }
+
+        BoundingBox bounds = new BoundingBox(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+
+        //owner and permissions
+        UUID ownerID = readUUID(in);
+        List<String> builders = readStrings(in);
+        List<String> containers = readStrings(in);
+        List<String> accessors = readStrings(in);
+        List<String> managers = readStrings(in);
+
+        out_parentID.add(in.readLong());
+        boolean inheritNothing = in.readBoolean();
+
+        //instantiate
+        Claim claim = new Claim(world, bounds, ownerID, builders, containers, accessors, managers, inheritNothing, claimID);
+
+        //bans
+        claim.setPublicBanned(in.readBoolean());
+        int bannedPlayers = in.readInt();
+        for (int i = 0; i < bannedPlayers; i++)
+        {
+            claim.banUUID(readUUID(in));
+        }
+
+        claim.areExplosivesAllowed = in.readBoolean();
+        claim.modifiedDate = new Date(in.readLong());
+
+        return claim;
+    }
+
+    private static void writeUUID(DataOutputStream out, UUID uuid) throws IOException
+    {
+        out.writeBoolean(uuid != null);
+        if (uuid == null) return;
+
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUUID(DataInputStream in) throws IOException
+    {
+        if (!in.readBoolean()) return null;
+
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException
+    {
+        out.writeInt(strings.size());
+        for (String string : strings)
+        {
+            out.writeUTF(string);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException
+    {
+        int size = in.readInt();
+        List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+        {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+}
@@ -0,0 +1,416 @@
+/*
+    GriefPrevention Server Plugin for Minecraft
+    Copyright (C) 2012 Ryan Hamshire
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.ryanhamshire.GriefPrevention;
+
+import com.griefprevention.storage.SegmentLog;
+import org.bukkit.World;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+//a snapshot of every loaded claim, written at shutdown, plus a journal of claim changes made since it was written
+//loading the two replaces listing and parsing every claim file with one sequential read
+//the journal is written before secondary storage, so snapshot plus journal is never behind storage, even after a crash
+//journal appends aren't forced to disk: if the machine loses power, the journal's tail may be lost while claim files written
+//after it survive, but those files are then newer than the snapshot or missing from it, so checkClaimFiles rejects the snapshot
+final class ClaimSnapshot
+{
+    private final static int MAGIC = 0x47505348;  //"GPSH"
+    private final static int FORMAT = 1;
+    private final static byte JOURNAL_CLAIMS = 1;
+    private final static byte[] DELETED = new byte[0];
+
+    private final File snapshotFile;
+    private final Path journalFolder;
+    private final String storeType;
+
+    private SegmentLog journal;
+
+    //whether every claim in secondary storage made it into memory
+    //claims skipped at load, for example because their world isn't loaded, aren't in memory and so can't be snapshotted
+    private volatile boolean complete = true;
+
+    ClaimSnapshot(File snapshotFile, Path journalFolder, String storeType)
+    {
+        this.snapshotFile = snapshotFile;
+        this.journalFolder = journalFolder;
+        this.storeType = storeType;
+    }
+
+    //loads claims from the snapshot and journal into a data store
+    //returns false without changing the data store if there's no usable snapshot, in which case the caller must load normally
+    //claimFolder holds one <id>.yml file per claim, which must match the snapshot and journal for the snapshot to be used
+    boolean load(DataStore dataStore, int schemaVersion, File claimFolder, List<World> worlds)
+    {
+        if (!this.snapshotFile.isFile()) return false;
+
+        long startTime = System.nanoTime();
+        LinkedHashMap<Long, byte[]> records = new LinkedHashMap<>();
+        List<Long> journaled = new ArrayList<>();
+        try
+        {
+            //one sequential read, checked as a whole before any of it is trusted
+            byte[] content = Files.readAllBytes(this.snapshotFile.toPath());
+            if (content.length < 4) throw new IOException("truncated");
+
+            CRC32 crc = new CRC32();
+            crc.update(content, 0, content.length - 4);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+            in.skipNBytes(content.length - 4);
+            if ((int) crc.getValue() != in.readInt()) throw new IOException("checksum mismatch");
+
+            in = new DataInputStream(new ByteArrayInputStream(content, 0, content.length - 4));
+            if (in.readInt() != MAGIC) throw new IOException("not a claim snapshot");
+            int format = in.readInt();
+            if (format != FORMAT) throw new IOException("unknown format " + format);
+            String storeType = in.readUTF();
+            if (!this.storeType.equals(storeType)) throw new IOException("written by the " + storeType + " data store");
+            int snapshotSchemaVersion = in.readInt();
+            if (snapshotSchemaVersion != schemaVersion) throw new IOException("schema version " + snapshotSchemaVersion + " is out of date");
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                long claimID = in.readLong();
+                byte[] record = new byte[in.readInt()];
+                in.readFully(record);
+                records.put(claimID, record);
+            }
+
+            //apply changes made since the snapshot was written
+            this.journal = this.openJournal();
+            this.journal.forEach(JOURNAL_CLAIMS, (claimID, record) ->
+            {
+                long id = Long.parseLong(claimID);
+                journaled.add(id);
+                if (record.length == 0) records.remove(id);
+                else records.put(id, record);
+            });
+
+            this.checkClaimFiles(claimFolder, records.keySet(), new HashSet<>(journaled));
+        }
+        catch (IOException | RuntimeException e)
+        {
+            GriefPrevention.AddLogEntry("Claim snapshot can't be used (" + e.getMessage() + "), loading claims from storage instead.");
+            this.closeJournal();
+            return false;
+        }
+
+        long readTime = System.nanoTime();
+
+        //subdivisions are written after their parents, but journaled claims may come in any order
+        Map<String, World> validWorlds = ClaimCodec.indexWorlds(worlds);
+        Map<Claim, Long> orphans = new LinkedHashMap<>();
+        Map<Long, Claim> loaded = new HashMap<>();  //top level claims and subdivisions, by ID
+        for (Map.Entry<Long, byte[]> record : records.entrySet())
+        {
+            try
+            {
+                ArrayList<Long> out_parentID = new ArrayList<>();  //hacky output parameter
+                Claim claim = ClaimCodec.decode(record.getValue(), record.getKey(), out_parentID, validWorlds);
+                if (out_parentID.get(0) == -1)
+                {
+                    dataStore.addClaim(claim, false);
+                    loaded.put(claim.id, claim);
+                }
+                else
+                {
+                    orphans.put(claim, out_parentID.get(0));
+                }
+            }
+            catch (Exception e)
+            {
+                this.complete = false;
+                if (e.getMessage() != null && e.getMessage().contains("World not found"))
+                {
+                    GriefPrevention.AddLogEntry("Failed to load a claim (ID:" + record.getKey() + ") because its world isn't loaded (yet?).  If this is not expected, delete this claim.");
+                }
+                else
+                {
+                    GriefPrevention.instance.getLogger().log(Level.SEVERE, "Unable to load claim " + record.getKey() + " from the snapshot", e);
+                }
+            }
+        }
+
+        for (Map.Entry<Claim, Long> orphan : orphans.entrySet())
+        {
+            Claim parent = loaded.get(orphan.getValue());
+            if (parent != null)
+            {
+                orphan.getKey().parent = parent;
+                dataStore.addClaim(orphan.getKey(), false);
+                loaded.put(orphan.getKey().id, orphan.getKey());
+            }
+            else
+            {
+                this.complete = false;
+            }
+        }
+
+        //storage may be a write behind the journal if the server stopped suddenly, so write journaled changes again
+        //subdivisions are journaled by their own ID, so look claims up in what was loaded rather than only the top level
+        for (long claimID : journaled)
+        {
+            Claim claim = loaded.get(claimID);
+            if (claim != null)
+            {
+                dataStore.saveClaim(claim);
+            }
+            else if (!records.containsKey(claimID))
+            {
+                Claim deleted = new Claim();
+                deleted.id = claimID;
+                dataStore.getClaimWriteQueue().delete(deleted);
+            }
+        }
+
+        GriefPrevention.AddLogEntry(String.format("Loaded %d claims from the snapshot and %d journaled changes in %dms (reading %dms, indexing %dms).",
+                records.size(),
+                journaled.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime),
+                TimeUnit.NANOSECONDS.toMillis(readTime - startTime),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - readTime)));
+        return true;
+    }
+
+    //throws if the claim files were changed other than through this data store since the snapshot was written
+    //for example, claim files restored from a backup, edited by hand or added while the server was stopped
+    //a folder's modification time isn't enough, it doesn't change when a file in it is edited in place
+    private void checkClaimFiles(File claimFolder, Set<Long> claimIDs, Set<Long> journaled) throws IOException
+    {
+        long snapshotModified = this.snapshotFile.lastModified();
+        int unjournaledFiles = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(claimFolder.toPath()))
+        {
+            for (Path file : files)
+            {
+                //skip _nextClaimID and anything else that isn't a claim file, the flat file loader ignores those too
+                String name = file.getFileName().toString();
+                if (name.startsWith("_") || !name.endsWith(".yml")) continue;
+
+                long claimID;
+                try
+                {
+                    claimID = Long.parseLong(name.substring(0, name.length() - 4));
+                }
+                catch (NumberFormatException e)
+                {
+                    continue;
+                }
+
+                //journaled claims may be a write behind or ahead of their files after a crash, replaying the journal settles them
+                if (journaled.contains(claimID)) continue;
+
+                if (!claimIDs.contains(claimID)) throw new IOException("claim file " + name + " isn't in the snapshot");
+                if (Files.getLastModifiedTime(file).toMillis() > snapshotModified) throw new IOException("claim file " + name + " was modified after the snapshot was written");
+                unjournaledFiles++;
+            }
+        }
+
+        long unjournaledClaims = claimIDs.stream().filter(claimID -> !journaled.contains(claimID)).count();
+        if (unjournaledFiles != unjournaledClaims) throw new IOException("claim files were deleted after the snapshot was written");
+    }
+
+    //discards any snapshot and journal and starts journaling from a clean slate
+    //used when claims were loaded from storage, which is then the only source of truth
+    void reset()
+    {
+        this.closeJournal();
+        this.delete();
+
+        try
+        {
+            this.journal = this.openJournal();
+        }
+        catch (IOException e)
+        {
+            this.complete = false;
+            GriefPrevention.instance.getLogger().log(Level.SEVERE, "Unable to start the claim journal, no snapshot will be written at shutdown", e);
+        }
+    }
+
+    //notes that some claims in storage aren't in memory, so a snapshot of memory would lose them
+    void markIncomplete()
+    {
+        this.complete = false;
+    }
+
+    //records a claim about to be written to storage
+    void journal(Claim claim)
+    {
+        this.append(claim, null);
+    }
+
+    //records a claim about to be deleted from storage
+    void journalDeletion(Claim claim)
+    {
+        this.append(claim, DELETED);
+    }
+
+    private synchronized void append(Claim claim, byte[] record)
+    {
+        if (this.journal == null) return;
+
+        try
+        {
+            this.journal.put(JOURNAL_CLAIMS, String.valueOf(claim.id), record != null ? record : ClaimCodec.encode(claim));
+        }
+        catch (IOException e)
+        {
+            //without the journal, the snapshot would fall behind storage
+            this.complete = false;
+            GriefPrevention.instance.getLogger().log(Level.SEVERE, "Unable to journal claim " + claim.id + ", no snapshot will be written at shutdown", e);
+        }
+    }
+
+    //writes a snapshot of the given claims and their subdivisions, then clears the journal
+    //must only be called once all claim writes have finished
+    synchronized void write(List<Claim> claims, int schemaVersion)
+    {
+        if (!this.complete)
+        {
+            GriefPrevention.AddLogEntry("Not writing a claim snapshot because some claims weren't loaded.  The next startup will load claims from storage.");
+            this.closeJournal();
+            this.delete();
+            return;
+        }
+
+        long startTime = System.nanoTime();
+        File temporaryFile = new File(this.snapshotFile.getPath() + ".tmp");
+        int count = 0;
+        try
+        {
+            List<Claim> ordered = new ArrayList<>();
+            for (Claim claim : claims)
+            {
+                ordered.add(claim);
+                ordered.addAll(claim.children);
+            }
+
+            CRC32 crc = new CRC32();
+            try (OutputStream file = Files.newOutputStream(temporaryFile.toPath());
+                 CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), crc);
+                 DataOutputStream out = new DataOutputStream(checked))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeUTF(this.storeType);
+                out.writeInt(schemaVersion);
+                out.writeInt(ordered.size());
+                for (Claim claim : ordered)
+                {
+                    byte[] record = ClaimCodec.encode(claim.copyForStorage());
+                    out.writeLong(claim.id);
+                    out.writeInt(record.length);
+                    out.write(record);
+                    count++;
+                }
+
+                //the checksum covers everything before it
+                out.flush();
+                out.writeInt((int) crc.getValue());
+            }
+
+            //replace the old snapshot in one step
+            //until the journal is cleared below, its entries are already part of this snapshot, so replaying them is harmless
+            Files.move(temporaryFile.toPath(), this.snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            GriefPrevention.instance.getLogger().log(Level.SEVERE, "Unable to write the claim snapshot", e);
+            this.closeJournal();
+            this.delete();
+            temporaryFile.delete();
+            return;
+        }
+
+        this.closeJournal();
+        this.deleteJournal();
+
+        GriefPrevention.AddLogEntry("Wrote a snapshot of " + count + " claims in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + "ms.");
+    }
+
+    //removes the snapshot and journal, for example because the claim data was moved away
+    synchronized void delete()
+    {
+        this.closeJournal();
+        this.snapshotFile.delete();
+        this.deleteJournal();
+    }
+
+    private SegmentLog openJournal() throws IOException
+    {
+        return new SegmentLog(this.journalFolder, 16L * 1024 * 1024,
+                (message, error) -> GriefPrevention.instance.getLogger().log(Level.WARNING, message, error));
+    }
+
+    private synchronized void closeJournal()
+    {
+        if (this.journal == null) return;
+
+        try
+        {
+            this.journal.close();
+        }
+        catch (IOException e)
+        {
+            GriefPrevention.instance.getLogger().log(Level.WARNING, "Unable to close the claim journal", e);
+        }
+        this.journal = null;
+    }
+
+    private void deleteJournal()
+    {
+        if (!Files.isDirectory(this.journalFolder)) return;
+
+        try (Stream<Path> files = Files.walk(this.journalFolder))
+        {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList())
+            {
+                Files.delete(file);
+            }
+        }
+        catch (IOException e)
+        {
+            GriefPrevention.instance.getLogger().log(Level.WARNING, "Unable to delete the claim journal", e);
+        }
+    }
+}
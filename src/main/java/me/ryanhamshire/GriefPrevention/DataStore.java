@@ -20,20 +20,32 @@ package me.ryanhamshire.GriefPrevention;
 
 import com.google.common.io.FileWriteMode;
 import com.google.common.io.Files;
+import com.griefprevention.claims.ClaimIndex;
+import com.griefprevention.claims.FluidFlowCache;
+import com.griefprevention.protection.PermissionNodeCache;
+import com.griefprevention.storage.ClaimWriteQueue;
+import com.griefprevention.storage.IoScheduler;
 import com.griefprevention.visualization.BoundaryVisualization;
 import com.griefprevention.visualization.VisualizationType;
 import me.ryanhamshire.GriefPrevention.events.*;
 import me.ryanhamshire.GriefPrevention.util.BoundingBox;
 import org.bukkit.*;
+import org.bukkit.block.Block;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 import java.util.regex.Pattern;
 
 //singleton class which manages all GriefPrevention data (except for config options)
@@ -46,11 +58,47 @@ public abstract class DataStore
     //in-memory cache for group (permission-based) data
     protected ConcurrentHashMap<String, Integer> permissionToBonusBlocksMap = new ConcurrentHashMap<>();
 
+    //in-memory cache for each online player's total group bonus blocks
+    //Bukkit has no event for permission changes, so entries also expire after a short while
+    private final ConcurrentHashMap<UUID, CachedGroupBonusBlocks> groupBonusBlocksCache = new ConcurrentHashMap<>();
+    private static final long GROUP_BONUS_BLOCKS_CACHE_NANOS = TimeUnit.SECONDS.toNanos(30);
+
     //in-memory cache for claim data
     ArrayList<Claim> claims = new ArrayList<>();
     // claim id to claim cache
     public final Map<Long, Claim> claimIDMap = new ConcurrentHashMap<>();
-    ConcurrentHashMap<Long, ArrayList<Claim>> chunksToClaimsMap = new ConcurrentHashMap<>();
+    // world ID to spatial claim index
+    private final ConcurrentHashMap<UUID, ClaimIndex> worldClaimIndexes = new ConcurrentHashMap<>();
+    // owner ID to that owner's top level claims, in the order they were added
+    private final ConcurrentHashMap<UUID, Set<Claim>> ownerClaims = new ConcurrentHashMap<>();
+    // owner ID to the total area of that owner's top level claims
+    private final ConcurrentHashMap<UUID, Long> ownerClaimedArea = new ConcurrentHashMap<>();
+    // guards the in-memory claim model for lock-free lookups
+    // writers hold the write side only while mutating memory, never while writing to storage
+    private final StampedLock claimLock = new StampedLock();
+    // how long a changed claim waits for further changes before it is written
+    private static final long CLAIM_WRITE_WINDOW_MILLIS = 500;
+    // claim writes and deletions waiting to be persisted on the claim I/O thread
+    private final ClaimWriteQueue claimWriteQueue = new ClaimWriteQueue(
+            this::writeClaimToStorage,
+            this::deleteClaimFromSecondaryStorage,
+            this::writeClaimsToStorage,
+            (message, error) -> GriefPrevention.instance.getLogger().log(Level.SEVERE, message, error),
+            CLAIM_WRITE_WINDOW_MILLIS);
+    // player data saves and other background file work, run in order for each player
+    // the main thread never waits for queue space, so a slow disk can't stall the server
+    private static final int IO_CONCURRENCY = 4;
+    private static final int IO_QUEUE_CAPACITY = 1000;
+    private final IoScheduler ioScheduler = new IoScheduler(
+            IO_CONCURRENCY,
+            IO_QUEUE_CAPACITY,
+            () -> !Bukkit.isPrimaryThread(),
+            (message, error) -> GriefPrevention.instance.getLogger().log(Level.SEVERE, message, error));
+    // results of [permission.node] trust checks, kept briefly because bukkit doesn't announce permission changes
+    private static final long PERMISSION_NODE_CACHE_SECONDS = 5;
+    private final PermissionNodeCache permissionNodeCache = new PermissionNodeCache(PERMISSION_NODE_CACHE_SECONDS, TimeUnit.SECONDS);
+    //fluid flow decisions between chunk sections, kept for a tick
+    private final FluidFlowCache fluidFlowCache = new FluidFlowCache(this);
 
     //in-memory cache for messages
     private String[] messages;
@@ -337,16 +385,31 @@ public abstract class DataStore
     {
         this.lastPlayerData = null;
         this.playerNameToPlayerDataMap.remove(playerID);
+        this.groupBonusBlocksCache.remove(playerID);
+    }
+
+    //forgets every cached group bonus, for when groups or permissions may have changed
+    void clearGroupBonusBlocksCache()
+    {
+        this.groupBonusBlocksCache.clear();
     }
 
     //gets the number of bonus blocks a player has from his permissions
     //Bukkit doesn't allow for checking permissions of an offline player.
     //this will return 0 when he's offline, and the correct number when online.
-    synchronized public int getGroupBonusBlocks(UUID playerID)
+    public int getGroupBonusBlocks(UUID playerID)
     {
+        long now = System.nanoTime();
+        CachedGroupBonusBlocks cached = this.groupBonusBlocksCache.get(playerID);
+        if (cached != null && now - cached.expiresAt < 0) return cached.blocks;
+
         Player player = GriefPrevention.instance.getServer().getPlayer(playerID);
 
-        if (player == null) return 0;
+        if (player == null)
+        {
+            this.groupBonusBlocksCache.remove(playerID);
+            return 0;
+        }
 
         int bonusBlocks = 0;
 
@@ -358,9 +421,22 @@ public abstract class DataStore
             }
         }
 
+        this.groupBonusBlocksCache.put(playerID, new CachedGroupBonusBlocks(bonusBlocks, now + GROUP_BONUS_BLOCKS_CACHE_NANOS));
         return bonusBlocks;
     }
 
+    private static final class CachedGroupBonusBlocks
+    {
+        private final int blocks;
+        private final long expiresAt;
+
+        private CachedGroupBonusBlocks(int blocks, long expiresAt)
+        {
+            this.blocks = blocks;
+            this.expiresAt = expiresAt;
+        }
+    }
+
     //grants a group (players with a specific permission) bonus claim blocks as long as they're still members of the group
     synchronized public int adjustGroupBonusBlocks(String groupName, int amount)
     {
@@ -370,6 +446,9 @@ public abstract class DataStore
         currentValue += amount;
         this.permissionToBonusBlocksMap.put(groupName, currentValue);
 
+        //members of the group now have a different bonus
+        this.clearGroupBonusBlocksCache();
+
         //write changes to storage to ensure they don't get lost
         this.saveGroupBonusBlocks(groupName, currentValue);
 
@@ -421,7 +500,18 @@ public abstract class DataStore
         }
 
         //transfer
-        claim.ownerID = event.getNewOwner();
+        long stamp = this.claimLock.writeLock();
+        try
+        {
+            if (claim.inDataStore) removeFromOwnerClaims(claim);
+            claim.ownerID = event.getNewOwner();
+            claim.invalidatePermissionDecisions();
+            if (claim.inDataStore) addToOwnerClaims(claim);
+        }
+        finally
+        {
+            this.claimLock.unlockWrite(stamp);
+        }
         this.saveClaim(claim);
 
         //adjust blocks and other records
@@ -430,7 +520,7 @@ public abstract class DataStore
             ownerData.getClaims().remove(claim);
         }
 
-        if (newOwnerData != null)
+        if (newOwnerData != null && !newOwnerData.getClaims().contains(claim))
         {
             newOwnerData.getClaims().add(claim);
         }
@@ -442,11 +532,21 @@ public abstract class DataStore
         //subdivisions are added under their parent, not directly to the hash map for direct search
         if (newClaim.parent != null)
         {
-            if (!newClaim.parent.children.contains(newClaim))
+            long stamp = this.claimLock.writeLock();
+            try
             {
-                newClaim.parent.children.add(newClaim);
+                if (!newClaim.parent.children.contains(newClaim))
+                {
+                    newClaim.parent.children.add(newClaim);
+                }
+                newClaim.parent.invalidateSubdivisionIndex();
+                this.claimIDMap.put(newClaim.id, newClaim);
+                newClaim.inDataStore = true;
+            }
+            finally
+            {
+                this.claimLock.unlockWrite(stamp);
             }
-            newClaim.inDataStore = true;
             if (writeToStorage)
             {
                 this.saveClaim(newClaim);
@@ -455,21 +555,35 @@ public abstract class DataStore
         }
 
         //add it and mark it as added
-        this.claims.add(newClaim);
-        this.claimIDMap.put(newClaim.id, newClaim);
-        for (Claim child : newClaim.children)
+        long stamp = this.claimLock.writeLock();
+        try
         {
-            this.claimIDMap.put(child.id, child);
-        }
-        addToChunkClaimMap(newClaim);
+            this.claims.add(newClaim);
+            this.claimIDMap.put(newClaim.id, newClaim);
+            for (Claim child : newClaim.children)
+            {
+                this.claimIDMap.put(child.id, child);
+            }
+            addToChunkClaimMap(newClaim);
+            addToOwnerClaims(newClaim);
+            newClaim.invalidateSubdivisionIndex();
 
-        newClaim.inDataStore = true;
+            newClaim.inDataStore = true;
+        }
+        finally
+        {
+            this.claimLock.unlockWrite(stamp);
+        }
 
         //except for administrative claims (which have no owner), update the owner's playerData with the new claim
         if (!newClaim.isAdminClaim() && writeToStorage)
         {
             PlayerData ownerData = this.getPlayerData(newClaim.ownerID);
-            ownerData.getClaims().add(newClaim);
+            //a player's claims are first loaded from the owner index, which may already include this one
+            if (!ownerData.getClaims().contains(newClaim))
+            {
+                ownerData.getClaims().add(newClaim);
+            }
         }
 
         //make sure the claim is saved to disk
@@ -484,42 +598,105 @@ public abstract class DataStore
         // Subclaims should not be added to chunk claim map.
         if (claim.parent != null) return;
 
-        ArrayList<Long> chunkHashes = claim.getChunkHashes();
-        for (Long chunkHash : chunkHashes)
+        this.worldClaimIndexes.computeIfAbsent(claim.getWorld().getUID(), worldId -> new ClaimIndex(claim.getWorld()))
+                .add(claim);
+    }
+
+    private void removeFromChunkClaimMap(Claim claim)
+    {
+        ClaimIndex index = this.worldClaimIndexes.get(claim.getWorld().getUID());
+        if (index != null)
         {
-            ArrayList<Claim> claimsInChunk = this.chunksToClaimsMap.get(chunkHash);
-            if (claimsInChunk == null)
-            {
-                this.chunksToClaimsMap.put(chunkHash, claimsInChunk = new ArrayList<>());
-            }
+            index.remove(claim);
+        }
+    }
 
-            claimsInChunk.add(claim);
+    private void addToOwnerClaims(Claim claim)
+    {
+        if (claim.parent != null || claim.ownerID == null) return;
+        if (this.ownerClaims.computeIfAbsent(claim.ownerID, ownerID -> new LinkedHashSet<>()).add(claim))
+        {
+            this.adjustClaimedArea(claim.ownerID, claim.getArea());
         }
     }
 
-    private void removeFromChunkClaimMap(Claim claim)
+    private void removeFromOwnerClaims(Claim claim)
+    {
+        if (claim.parent != null || claim.ownerID == null) return;
+        Set<Claim> owned = this.ownerClaims.get(claim.ownerID);
+        if (owned == null || !owned.remove(claim)) return;
+
+        if (owned.isEmpty()) this.ownerClaims.remove(claim.ownerID);
+        this.adjustClaimedArea(claim.ownerID, -claim.getArea());
+    }
+
+    private void adjustClaimedArea(UUID ownerID, long delta)
     {
-        ArrayList<Long> chunkHashes = claim.getChunkHashes();
-        for (Long chunkHash : chunkHashes)
+        this.ownerClaimedArea.compute(ownerID, (id, area) ->
         {
-            ArrayList<Claim> claimsInChunk = this.chunksToClaimsMap.get(chunkHash);
-            if (claimsInChunk != null)
+            long total = (area == null ? 0 : area) + delta;
+            return total == 0 ? null : total;
+        });
+    }
+
+    /**
+     * Get the total area of the top level claims owned by a player.
+     *
+     * @param ownerID the owner's unique ID
+     * @return the claimed area in blocks
+     */
+    public long getClaimedArea(@NotNull UUID ownerID)
+    {
+        Long area = this.ownerClaimedArea.get(ownerID);
+        return area == null ? 0 : area;
+    }
+
+    /**
+     * Get the top level claims owned by a player.
+     *
+     * @param ownerID the owner's unique ID
+     * @return a new list of the owner's claims in the order they were added
+     */
+    public @NotNull List<Claim> getClaimsOwnedBy(@NotNull UUID ownerID)
+    {
+        return this.readClaims(() ->
+        {
+            Set<Claim> owned = this.ownerClaims.get(ownerID);
+            return owned == null ? new ArrayList<>() : new ArrayList<>(owned);
+        });
+    }
+
+    /**
+     * Get the spatial claim index for a {@link World}.
+     *
+     * <p>The index is maintained by the data store. Callers must not modify it.
+     *
+     * @param world the world
+     * @return the index, or null if the world has no claims or is not loaded
+     */
+    public @Nullable ClaimIndex getClaimIndex(@NotNull World world)
+    {
+        return this.worldClaimIndexes.get(world.getUID());
+    }
+
+    //builds a fresh claim index for a newly loaded world
+    synchronized void onWorldLoad(@NotNull World world)
+    {
+        ClaimIndex index = new ClaimIndex(world);
+        for (Claim claim : this.claims)
+        {
+            if (claim.inDataStore && world.getUID().equals(claim.getWorld().getUID()))
             {
-                for (Iterator<Claim> it = claimsInChunk.iterator(); it.hasNext(); )
-                {
-                    Claim c = it.next();
-                    if (c.id.equals(claim.id))
-                    {
-                        it.remove();
-                        break;
-                    }
-                }
-                if (claimsInChunk.isEmpty())
-                { // if nothing's left, remove this chunk's cache
-                    this.chunksToClaimsMap.remove(chunkHash);
-                }
+                index.add(claim);
             }
         }
+        this.worldClaimIndexes.put(world.getUID(), index);
+    }
+
+    //drops the claim index of an unloading world
+    synchronized void onWorldUnload(@NotNull World world)
+    {
+        this.worldClaimIndexes.remove(world.getUID());
     }
 
     //turns a location into a string, useful in data storage
@@ -580,11 +757,25 @@ public abstract class DataStore
     }
 
     //saves any changes to a claim to secondary storage
+    //the write happens shortly after on the claim I/O thread, so a snapshot of the claim's current state is queued
     synchronized public void saveClaim(Claim claim)
     {
         assignClaimID(claim);
 
-        this.writeClaimToStorage(claim);
+        this.claimWriteQueue.save(claim.copyForStorage());
+    }
+
+    //gets the queue which persists claim changes, mostly for its statistics
+    public ClaimWriteQueue getClaimWriteQueue()
+    {
+        return this.claimWriteQueue;
+    }
+
+    //writes any queued claim changes and stops the claim I/O thread
+    //changes made afterward are written immediately
+    void flushClaimWrites()
+    {
+        this.claimWriteQueue.close();
     }
 
     private void assignClaimID(Claim claim)
@@ -597,17 +788,41 @@ public abstract class DataStore
         }
     }
 
-    abstract void writeClaimToStorage(Claim claim);
+    //failures are left to the caller, so that the claim write queue can log and count them
+    abstract void writeClaimToStorage(Claim claim) throws Exception;
+
+    //writes everything the claim write queue has pending at once, each claim only appearing once
+    //data stores which can group changes, like a database in one transaction, should override this
+    void writeClaimsToStorage(List<Claim> saves, List<Claim> deletes) throws Exception
+    {
+        for (Claim claim : deletes)
+        {
+            this.deleteClaimFromSecondaryStorage(claim);
+        }
+
+        for (Claim claim : saves)
+        {
+            this.writeClaimToStorage(claim);
+        }
+    }
 
     //increments the claim ID and updates secondary storage to be sure it's saved
     abstract void incrementNextClaimID();
 
+    //sets the next claim ID, used while migrating data from another data store
+    void setNextClaimID(long nextID)
+    {
+        this.nextClaimID = nextID - 1;
+        this.incrementNextClaimID();
+    }
+
     //retrieves player data from memory or secondary storage, as necessary
     //if the player has never been on the server before, this will return a fresh player data with default values
-    private PlayerData lastPlayerData = null;
-    synchronized public PlayerData getPlayerData(UUID playerID)
+    private volatile PlayerData lastPlayerData = null;
+    public PlayerData getPlayerData(UUID playerID)
     {
         //first, check lastPlayerData
+        PlayerData lastPlayerData = this.lastPlayerData;
         if (lastPlayerData != null && playerID.equals(lastPlayerData.playerID)) {
             return lastPlayerData;
         }
@@ -618,11 +833,13 @@ public abstract class DataStore
         //if not there, build a fresh instance with some blanks for what may be in secondary storage
         if (playerData == null)
         {
-            playerData = new PlayerData();
-            playerData.playerID = playerID;
-
-            //shove that new player data into the hash map cache
-            this.playerNameToPlayerDataMap.put(playerID, playerData);
+            //shove that new player data into the hash map cache, unless another thread beat us to it
+            playerData = this.playerNameToPlayerDataMap.computeIfAbsent(playerID, id ->
+            {
+                PlayerData newPlayerData = new PlayerData();
+                newPlayerData.playerID = id;
+                return newPlayerData;
+            });
         }
 
         return playerData;
@@ -653,36 +870,47 @@ public abstract class DataStore
             this.deleteClaim(claim.children.get(j - 1), fireEvent, ignored);
         }
 
-        //subdivisions must also be removed from the parent claim child list
-        if (claim.parent != null)
+        long stamp = this.claimLock.writeLock();
+        try
         {
-            Claim parentClaim = claim.parent;
-            parentClaim.children.remove(claim);
-        }
+            //subdivisions must also be removed from the parent claim child list
+            if (claim.parent != null)
+            {
+                Claim parentClaim = claim.parent;
+                parentClaim.children.remove(claim);
+                parentClaim.invalidateSubdivisionIndex();
+            }
 
-        //mark as deleted so any references elsewhere can be ignored
-        claim.inDataStore = false;
+            //mark as deleted so any references elsewhere can be ignored
+            claim.inDataStore = false;
 
-        //remove from memory
-        for (int i = 0; i < this.claims.size(); i++)
-        {
-            if (claims.get(i).id.equals(claim.id))
+            //remove from memory
+            for (int i = 0; i < this.claims.size(); i++)
             {
-                this.claims.remove(i);
-                break;
+                if (claims.get(i).id.equals(claim.id))
+                {
+                    this.claims.remove(i);
+                    break;
+                }
+            }
+
+            //subdivisions are in the ID map too, so lookups by ID find them
+            claimIDMap.remove(claim.id);
+            for (Claim child : claim.children)
+            {
+                claimIDMap.remove(child.id);
             }
-        }
 
-        claimIDMap.remove(claim.id);
-        for (Claim child : claim.children)
+            removeFromChunkClaimMap(claim);
+            removeFromOwnerClaims(claim);
+        }
+        finally
         {
-            claimIDMap.remove(child.id);
+            this.claimLock.unlockWrite(stamp);
         }
 
-        removeFromChunkClaimMap(claim);
-
         //remove from secondary storage
-        this.deleteClaimFromSecondaryStorage(claim);
+        this.claimWriteQueue.delete(claim.copyForStorage());
 
         //update player data
         if (claim.ownerID != null)
@@ -711,7 +939,7 @@ public abstract class DataStore
     //gets the claim at a specific location
     //ignoreHeight = TRUE means that a location UNDER an existing claim will return the claim
     //cachedClaim can be NULL, but will help performance if you have a reasonable guess about which claim the location is in
-    synchronized public Claim getClaimAt(Location location, boolean ignoreHeight, Claim cachedClaim)
+    public Claim getClaimAt(Location location, boolean ignoreHeight, Claim cachedClaim)
     {
         return getClaimAt(location, ignoreHeight, false, cachedClaim);
     }
@@ -728,41 +956,137 @@ public abstract class DataStore
      * @param cachedClaim the cached claim, if any
      * @return the claim containing the location or null if no claim exists there
      */
-    synchronized public Claim getClaimAt(Location location, boolean ignoreHeight, boolean ignoreSubclaims, Claim cachedClaim)
+    public Claim getClaimAt(Location location, boolean ignoreHeight, boolean ignoreSubclaims, Claim cachedClaim)
+    {
+        //lookups never take the data store monitor, so they can't queue up behind a slow write
+        //first try an optimistic read, which is valid as long as no writer touched the claim model meanwhile
+        long stamp = this.claimLock.tryOptimisticRead();
+        if (stamp != 0)
+        {
+            try
+            {
+                Claim claim = this.getClaimAtUnguarded(location, ignoreHeight, ignoreSubclaims, cachedClaim);
+                if (this.claimLock.validate(stamp)) return claim;
+            }
+            catch (RuntimeException ignored)
+            {
+                //a concurrent write left the model inconsistent mid-read, retry below
+            }
+        }
+
+        //a write happened during the optimistic read, so retry holding the read side
+        stamp = this.claimLock.readLock();
+        try
+        {
+            return this.getClaimAtUnguarded(location, ignoreHeight, ignoreSubclaims, cachedClaim);
+        }
+        finally
+        {
+            this.claimLock.unlockRead(stamp);
+        }
+    }
+
+    private Claim getClaimAtUnguarded(Location location, boolean ignoreHeight, boolean ignoreSubclaims, Claim cachedClaim)
     {
         //check cachedClaim guess first.  if it's in the datastore and the location is inside it, we're done
         if (cachedClaim != null && cachedClaim.inDataStore && (cachedClaim.parent == null || !ignoreSubclaims) && cachedClaim.contains(location, !cachedClaim.is3D() && ignoreHeight, !ignoreSubclaims))
             return cachedClaim;
 
-        //find a top level claim
-        Long chunkID = getChunkHash(location);
-        ArrayList<Claim> claimsInChunk = this.chunksToClaimsMap.get(chunkID);
-        if (claimsInChunk == null) return null;
-
-        for (Claim claim : claimsInChunk) {
-            if (claim.inDataStore && claim.contains(location, true, false)) {
-                // If ignoring subclaims, claim is a match.
-                if (!ignoreSubclaims) {
-                    //when we find a top level claim, if the location is in one of its subdivisions,
-                    //return the SUBDIVISION, not the top level claim
-                    for (int j = 0; j < claim.children.size(); j++) {
-                        Claim subdivision = claim.children.get(j);
-                        // never ignore height of 3d subclaims
-                        if (subdivision.inDataStore && subdivision.contains(location, !subdivision.is3D() && ignoreHeight, false))
-                            return subdivision;
-                    }
+        //find a top level claim in the location's world
+        World world = location.getWorld();
+        if (world == null) return null;
+
+        ClaimIndex index = this.worldClaimIndexes.get(world.getUID());
+        if (index == null) return null;
+
+        return index.getClaimAt(location.getBlockX(), location.getBlockY(), location.getBlockZ(), ignoreHeight, ignoreSubclaims);
+    }
+
+    /**
+     * Get the claim at each of many blocks in one pass over the claim model.
+     *
+     * <p>Blocks are resolved a chunk at a time, so this is much cheaper than calling
+     * {@link #getClaimAt(Location, boolean, boolean, Claim)} for each block of an explosion or structure.</p>
+     *
+     * @param blocks the blocks
+     * @param ignoreHeight whether positions under a 2D claim are considered inside it
+     * @param ignoreSubclaims whether top level claims should be returned instead of their subdivisions
+     * @return a list holding the claim at each block in iteration order, or null where there is no claim
+     */
+    public @NotNull List<@Nullable Claim> getClaimsAt(
+            @NotNull Collection<Block> blocks,
+            boolean ignoreHeight,
+            boolean ignoreSubclaims)
+    {
+        List<Block> input = blocks instanceof List<Block> list ? list : new ArrayList<>(blocks);
+        Claim[] claims = this.readClaims(() ->
+        {
+            Claim[] results = new Claim[input.size()];
+
+            //blocks are almost always all in one world, so resolve each run of blocks sharing a world together
+            int start = 0;
+            while (start < input.size())
+            {
+                World world = input.get(start).getWorld();
+                int end = start + 1;
+                while (end < input.size() && input.get(end).getWorld().equals(world)) end++;
+
+                ClaimIndex index = this.worldClaimIndexes.get(world.getUID());
+                if (index != null)
+                {
+                    index.getClaimsAt(input.subList(start, end), results, start, ignoreHeight, ignoreSubclaims);
                 }
-                if (claim.contains(location, !claim.is3D() && ignoreHeight, false))
-                    return claim;
+                start = end;
+            }
+
+            return results;
+        });
+        return Arrays.asList(claims);
+    }
+
+    //stamps the current state of the in-memory claim model, so caches of claim lookups can tell when claims change
+    //the stamp is zero while a change is in progress
+    public long getClaimModelStamp()
+    {
+        return this.claimLock.tryOptimisticRead();
+    }
+
+    //checks whether any claim was added, removed or resized since a stamp was taken
+    public boolean isClaimModelUnchanged(long stamp)
+    {
+        return stamp != 0 && this.claimLock.validate(stamp);
+    }
+
+    //runs a read of the in-memory claim model without blocking behind the data store monitor
+    private <T> T readClaims(Supplier<T> read)
+    {
+        long stamp = this.claimLock.tryOptimisticRead();
+        if (stamp != 0)
+        {
+            try
+            {
+                T result = read.get();
+                if (this.claimLock.validate(stamp)) return result;
+            }
+            catch (RuntimeException ignored)
+            {
+                //a concurrent write left the model inconsistent mid-read, retry below
             }
         }
 
-        //if no claim found, return null
-        return null;
+        stamp = this.claimLock.readLock();
+        try
+        {
+            return read.get();
+        }
+        finally
+        {
+            this.claimLock.unlockRead(stamp);
+        }
     }
 
     //finds a claim by ID
-    public synchronized Claim getClaim(long id)
+    public Claim getClaim(long id)
     {
         return this.claimIDMap.get(id);
     }
@@ -775,49 +1099,42 @@ public abstract class DataStore
         return Collections.unmodifiableCollection(this.claims);
     }
 
+    /**
+     * @deprecated Chunk coordinates are ambiguous across worlds. Use {@link #getClaims(World, int, int)}.
+     */
+    @Deprecated
     public Collection<Claim> getClaims(int chunkx, int chunkz)
     {
-        ArrayList<Claim> chunkClaims = this.chunksToClaimsMap.get(getChunkHash(chunkx, chunkz));
-        if (chunkClaims != null)
+        return this.readClaims(() ->
         {
+            ArrayList<Claim> chunkClaims = new ArrayList<>();
+            for (ClaimIndex index : this.worldClaimIndexes.values())
+            {
+                chunkClaims.addAll(index.getClaims(chunkx, chunkz));
+            }
             return Collections.unmodifiableCollection(chunkClaims);
-        }
-        else
-        {
-            return Collections.unmodifiableCollection(new ArrayList<>());
-        }
+        });
     }
 
-    public @NotNull Set<Claim> getChunkClaims(@NotNull World world, @NotNull BoundingBox boundingBox)
+    //gets the top level claims touching a chunk in a world
+    public @NotNull Collection<Claim> getClaims(@NotNull World world, int chunkx, int chunkz)
     {
-        Set<Claim> claims = new HashSet<>();
-        int chunkXMax = boundingBox.getMaxX() >> 4;
-        int chunkZMax = boundingBox.getMaxZ() >> 4;
-
-        for (int chunkX = boundingBox.getMinX() >> 4; chunkX <= chunkXMax; ++chunkX)
-        {
-            for (int chunkZ = boundingBox.getMinZ() >> 4; chunkZ <= chunkZMax; ++chunkZ)
-            {
-                ArrayList<Claim> chunkClaims = this.chunksToClaimsMap.get(getChunkHash(chunkX, chunkZ));
-                if (chunkClaims == null) continue;
-
-                for (Claim claim : chunkClaims)
-                {
-                    if (claim.inDataStore && world.equals(claim.getLesserBoundaryCorner().getWorld()))
-                    {
-                        claims.add(claim);
-                    }
-                }
-            }
-        }
+        ClaimIndex index = this.worldClaimIndexes.get(world.getUID());
+        if (index == null) return Collections.emptyList();
+        return this.readClaims(() -> index.getClaims(chunkx, chunkz));
+    }
 
-        return claims;
+    public @NotNull Set<Claim> getChunkClaims(@NotNull World world, @NotNull BoundingBox boundingBox)
+    {
+        ClaimIndex index = this.worldClaimIndexes.get(world.getUID());
+        if (index == null) return new HashSet<>();
+        return this.readClaims(() -> index.getChunkClaims(boundingBox));
     }
 
     //gets an almost-unique, persistent identifier for a chunk
     public static Long getChunkHash(long chunkx, long chunkz)
     {
-        return (chunkz ^ (chunkx << 32));
+        return ClaimIndex.getChunkKey(chunkx, chunkz);
     }
 
     //gets an almost-unique, persistent identifier for a chunk
@@ -837,22 +1154,16 @@ public abstract class DataStore
 
     public static ArrayList<Long> getChunkHashes(BoundingBox box) {
         ArrayList<Long> hashes = new ArrayList<>();
-        int smallX = box.getMinX() >> 4;
-        int smallZ = box.getMinZ() >> 4;
-        int largeX = box.getMaxX() >> 4;
-        int largeZ = box.getMaxZ() >> 4;
-
-        for (int x = smallX; x <= largeX; x++)
-        {
-            for (int z = smallZ; z <= largeZ; z++)
-            {
-                hashes.add(getChunkHash(x, z));
-            }
-        }
-
+        getChunkHashes(box, hashes::add);
         return hashes;
     }
 
+    //visits the chunk hashes touched by an area without boxing them
+    public static void getChunkHashes(BoundingBox box, LongConsumer consumer)
+    {
+        ClaimIndex.forEachChunkKey(box, consumer);
+    }
+
     /*
      * Creates a claim and flags it as being new....throwing a create claim event;
      */
@@ -960,26 +1271,13 @@ public abstract class DataStore
         newClaim.parent = parent;
 
         //ensure this new claim won't overlap any existing claims
-        ArrayList<Claim> claimsToCheck;
-        if (newClaim.parent != null)
-        {
-            claimsToCheck = newClaim.parent.children;
-        }
-        else
-        {
-            claimsToCheck = this.claims;
-        }
-
-        for (Claim otherClaim : claimsToCheck)
+        Claim overlappedClaim = this.getOverlappingClaim(newClaim);
+        if (overlappedClaim != null)
         {
-            //if we find an existing claim which will be overlapped
-            if (!Objects.equals(otherClaim.id, newClaim.id) && otherClaim.inDataStore && otherClaim.overlaps(newClaim))
-            {
-                //result = fail, return conflicting claim
-                result.succeeded = false;
-                result.claim = otherClaim;
-                return result;
-            }
+            //result = fail, return conflicting claim
+            result.succeeded = false;
+            result.claim = overlappedClaim;
+            return result;
         }
 
         if (dryRun)
@@ -1013,6 +1311,40 @@ public abstract class DataStore
         return result;
     }
 
+    //finds an existing claim which a new or resized claim would overlap, if any
+    //the claim itself (matched by ID) is ignored so resizes don't conflict with their old boundaries
+    @Nullable Claim getOverlappingClaim(@NotNull Claim newClaim)
+    {
+        Collection<Claim> claimsToCheck;
+        if (newClaim.parent != null)
+        {
+            claimsToCheck = newClaim.parent.children;
+        }
+        else
+        {
+            ClaimIndex index = this.worldClaimIndexes.get(newClaim.getWorld().getUID());
+            if (index == null) return null;
+
+            //only claims sharing a chunk with the new boundaries can intersect them
+            //for huge boundaries, walking every chunk costs more than a plain scan of all claims
+            BoundingBox bounds = newClaim.getBounds();
+            long chunks = ((long) (bounds.getMaxX() >> 4) - (bounds.getMinX() >> 4) + 1)
+                    * ((long) (bounds.getMaxZ() >> 4) - (bounds.getMinZ() >> 4) + 1);
+            claimsToCheck = chunks > this.claims.size() ? this.claims : index.getChunkClaims(bounds);
+        }
+
+        for (Claim otherClaim : claimsToCheck)
+        {
+            //if we find an existing claim which will be overlapped
+            if (!Objects.equals(otherClaim.id, newClaim.id) && otherClaim.inDataStore && otherClaim.overlaps(newClaim))
+            {
+                return otherClaim;
+            }
+        }
+
+        return null;
+    }
+
     //saves changes to player data to secondary storage.  MUST be called after you're done making changes, otherwise a reload will lose them
     public void savePlayerDataSync(UUID playerID, PlayerData playerData)
     {
@@ -1024,9 +1356,47 @@ public abstract class DataStore
     }
 
     //saves changes to player data to secondary storage.  MUST be called after you're done making changes, otherwise a reload will lose them
+    //saves for the same player are written in the order they were made, and a save still waiting to start is replaced by a newer one
     public void savePlayerData(UUID playerID, PlayerData playerData)
     {
-        new SavePlayerDataThread(playerID, playerData).start();
+        this.ioScheduler.submitCoalesced(playerID, () ->
+        {
+            //ensure player data is already read from file before trying to save
+            playerData.getAccruedClaimBlocks();
+            playerData.getClaims();
+            this.asyncSavePlayerData(playerID, playerData);
+        });
+    }
+
+    //loads a player's ignore list in the background, after any pending save of it
+    void loadIgnoredPlayers(UUID playerID, PlayerData playerData)
+    {
+        this.ioScheduler.submit(playerID, new IgnoreLoader(playerID, playerData.ignoredPlayers));
+    }
+
+    //gets the cache of fluid flow decisions
+    public FluidFlowCache getFluidFlowCache()
+    {
+        return this.fluidFlowCache;
+    }
+
+    //gets the cache of [permission.node] trust checks
+    public PermissionNodeCache getPermissionNodeCache()
+    {
+        return this.permissionNodeCache;
+    }
+
+    //gets the scheduler for background file work, mostly for its statistics
+    public IoScheduler getIoScheduler()
+    {
+        return this.ioScheduler;
+    }
+
+    //writes any queued player data and stops the I/O threads
+    //saves made afterward are written immediately
+    void flushPlayerDataWrites()
+    {
+        this.ioScheduler.close();
     }
 
     public void asyncSavePlayerData(UUID playerID, PlayerData playerData)
@@ -1124,24 +1494,36 @@ public abstract class DataStore
         int ly = depth, gy = claim.getBounds().getMaxY();
 
         gy = Math.max(ly, gy);
-        claim.getBounds().setY(ly, gy);
+        List<Claim> modifiedChildren = new ArrayList<>();
+        long stamp = this.claimLock.writeLock();
+        try
+        {
+            claim.getBounds().setY(ly, gy);
 
-        saveClaim(claim);
+            for (Claim child : claim.children) {
+                boolean mod = false;
+                int cly = child.getBounds().getMinY(), cgy = child.getBounds().getMaxY();
+                if (cly < depth || !child.is3D()) {
+                    cly = depth;
+                    mod = true;
+                }
+                if (cgy < depth) {
+                    cgy = depth;
+                    mod = true;
+                }
 
-        for (Claim child : claim.children) {
-            boolean mod = false;
-            int cly = child.getBounds().getMinY(), cgy = child.getBounds().getMaxY();
-            if (cly < depth || !child.is3D()) {
-                cly = depth;
-                mod = true;
-            }
-            if (cgy < depth) {
-                cgy = depth;
-                mod = true;
+                child.getBounds().setY(cly, cgy);
+                if (mod) modifiedChildren.add(child);
             }
+        }
+        finally
+        {
+            this.claimLock.unlockWrite(stamp);
+        }
 
-            child.getBounds().setY(cly, cgy);
-            if (mod) saveClaim(child);
+        saveClaim(claim);
+        for (Claim child : modifiedChildren) {
+            saveClaim(child);
         }
         return depth;
     }
@@ -1150,11 +1532,20 @@ public abstract class DataStore
     synchronized public void deleteClaimsForPlayer(UUID playerID, boolean releasePets)
     {
         //make a list of the player's claims
-        ArrayList<Claim> claimsToDelete = new ArrayList<>();
-        for (Claim claim : this.claims)
+        //administrative claims have no owner and are not indexed by owner
+        List<Claim> claimsToDelete;
+        if (playerID != null)
+        {
+            claimsToDelete = this.getClaimsOwnedBy(playerID);
+        }
+        else
         {
-            if (Objects.equals(playerID, claim.ownerID))
-                claimsToDelete.add(claim);
+            claimsToDelete = new ArrayList<>();
+            for (Claim claim : this.claims)
+            {
+                if (claim.ownerID == null)
+                    claimsToDelete.add(claim);
+            }
         }
 
         //delete them one by one
@@ -1174,24 +1565,63 @@ public abstract class DataStore
         //if succeeded
         if (result.succeeded)
         {
-            removeFromChunkClaimMap(claim); // remove the old boundary from the chunk cache
-            // copy the boundary from the claim created in the dry run of createClaim() to our existing claim
-            claim.getBounds().copy(result.claim);
-            // enforce max height
-            if (claim.is3D()) claim.getBounds().setY(claim.getBounds().getMinY(), Math.min(claim.getWorld().getMaxHeight(), claim.getBounds().getMaxY()));
+            long stamp = this.claimLock.writeLock();
+            try
+            {
+                removeFromChunkClaimMap(claim); // remove the old boundary from the chunk cache
+                long oldArea = claim.getArea();
+                // copy the boundary from the claim created in the dry run of createClaim() to our existing claim
+                claim.getBounds().copy(result.claim);
+                // enforce max height
+                if (claim.is3D()) claim.getBounds().setY(claim.getBounds().getMinY(), Math.min(claim.getWorld().getMaxHeight(), claim.getBounds().getMaxY()));
+                addToChunkClaimMap(claim); // add the new boundary to the chunk cache
+                // keep the owner's claimed area current
+                if (claim.inDataStore && claim.parent == null && claim.ownerID != null)
+                    adjustClaimedArea(claim.ownerID, claim.getArea() - oldArea);
+                // a moved subdivision changes its parent's subdivision grid
+                if (claim.parent != null) claim.parent.invalidateSubdivisionIndex();
+            }
+            finally
+            {
+                this.claimLock.unlockWrite(stamp);
+            }
             // Update claim depth and parent depth
             // Also saves affected claims.
             setNewDepth(claim, claim.getBounds().getMinY());
             // make sure all subdivisions fit inside the parent claim
             truncateSubdivisions(claim, true);
             result.claim = claim;
-            addToChunkClaimMap(claim); // add the new boundary to the chunk cache
         }
 
         return result;
     }
 
     void truncateSubdivisions(Claim claim, boolean saveIfModified) {
+        List<Claim> removedChildren = new ArrayList<>();
+        List<Claim> modifiedChildren = new ArrayList<>();
+        long stamp = this.claimLock.writeLock();
+        try
+        {
+            truncateSubdivisions(claim, removedChildren, modifiedChildren);
+            if (!removedChildren.isEmpty() || !modifiedChildren.isEmpty()) claim.invalidateSubdivisionIndex();
+        }
+        finally
+        {
+            this.claimLock.unlockWrite(stamp);
+        }
+
+        // write to storage once the in-memory model is consistent again
+        for (Claim child : removedChildren) {
+            this.claimWriteQueue.delete(child.copyForStorage());
+        }
+        if (saveIfModified) {
+            for (Claim child : modifiedChildren) {
+                saveClaim(child);
+            }
+        }
+    }
+
+    private void truncateSubdivisions(Claim claim, List<Claim> removedChildren, List<Claim> modifiedChildren) {
         int lx = claim.getBounds().getMinX(), ly = claim.getBounds().getMinY(), lz = claim.getBounds().getMinZ();
         int gx = claim.getBounds().getMaxX(), gy = claim.getBounds().getMaxY(), gz = claim.getBounds().getMaxZ();
         Iterator<Claim> it = claim.children.iterator();
@@ -1231,8 +1661,8 @@ public abstract class DataStore
             if (!claim.getBounds().contains(box)) {
                 it.remove();
                 removeFromChunkClaimMap(child);
-                deleteClaimFromSecondaryStorage(child);
-            } else if (mod && saveIfModified) saveClaim(child);
+                removedChildren.add(child);
+            } else if (mod) modifiedChildren.add(child);
         }
     }
 
@@ -1522,26 +1952,6 @@ public abstract class DataStore
 
     abstract void close();
 
-    private class SavePlayerDataThread extends Thread
-    {
-        private final UUID playerID;
-        private final PlayerData playerData;
-
-        SavePlayerDataThread(UUID playerID, PlayerData playerData)
-        {
-            this.playerID = playerID;
-            this.playerData = playerData;
-        }
-
-        public void run()
-        {
-            //ensure player data is already read from file before trying to save
-            playerData.getAccruedClaimBlocks();
-            playerData.getClaims();
-            asyncSavePlayerData(this.playerID, this.playerData);
-        }
-    }
-
     //gets all the claims "near" a location
     Set<Claim> getNearbyClaims(Location location)
     {
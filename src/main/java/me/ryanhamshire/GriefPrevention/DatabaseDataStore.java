@@ -18,6 +18,7 @@
 
 package me.ryanhamshire.GriefPrevention;
 
+import com.griefprevention.storage.ConnectionPool;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.OfflinePlayer;
@@ -25,10 +26,17 @@ import org.bukkit.World;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import java.sql.*;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 //manages data stored in the file system
@@ -38,49 +46,124 @@ public class DatabaseDataStore extends DataStore
     private static final String SQL_UPDATE_NAME =
             "UPDATE griefprevention_playerdata SET name = ? WHERE name = ?";
     private static final String SQL_INSERT_CLAIM =
-            "INSERT INTO griefprevention_claimdata (id, owner, lessercorner, greatercorner, builders, containers, accessors, managers, inheritnothing, parentid, bannedplayerids, claimExplosions) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+            "INSERT INTO griefprevention_claims (id, owner, lessercorner, greatercorner, inheritnothing, parentid, claimexplosions) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    //claim upserts, in each database's own syntax, with the same parameters as an insert
+    private static final String SQL_MERGE_CLAIM_H2 =
+            "MERGE INTO griefprevention_claims (id, owner, lessercorner, greatercorner, inheritnothing, parentid, claimexplosions) KEY (id) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String SQL_UPSERT_CLAIM_MYSQL = SQL_INSERT_CLAIM +
+            " ON DUPLICATE KEY UPDATE owner = VALUES(owner), lessercorner = VALUES(lessercorner), greatercorner = VALUES(greatercorner), inheritnothing = VALUES(inheritnothing), parentid = VALUES(parentid), claimexplosions = VALUES(claimexplosions)";
+    private static final String SQL_UPSERT_CLAIM = SQL_INSERT_CLAIM +
+            " ON CONFLICT (id) DO UPDATE SET owner = excluded.owner, lessercorner = excluded.lessercorner, greatercorner = excluded.greatercorner, inheritnothing = excluded.inheritnothing, parentid = excluded.parentid, claimexplosions = excluded.claimexplosions";
     private static final String SQL_DELETE_CLAIM =
-            "DELETE FROM griefprevention_claimdata WHERE id = ?";
+            "DELETE FROM griefprevention_claims WHERE id = ?";
+    private static final String SQL_INSERT_CLAIM_TRUST =
+            "INSERT INTO griefprevention_claimtrust (claim_id, subject, level) VALUES (?, ?, ?)";
+    private static final String SQL_DELETE_CLAIM_TRUST =
+            "DELETE FROM griefprevention_claimtrust WHERE claim_id = ?";
+    private static final String SQL_SELECT_CLAIMS =
+            "SELECT c.id, c.owner, c.lessercorner, c.greatercorner, c.inheritnothing, c.parentid, c.claimexplosions, t.subject, t.level " +
+            "FROM griefprevention_claims c LEFT JOIN griefprevention_claimtrust t ON t.claim_id = c.id ORDER BY c.id";
+    private static final String SQL_SELECT_TRUSTED_CLAIM_IDS =
+            "SELECT DISTINCT claim_id FROM griefprevention_claimtrust WHERE subject = ? AND level <> " + DatabaseDataStore.TRUST_BANNED;
     private static final String SQL_SELECT_PLAYER_DATA =
             "SELECT * FROM griefprevention_playerdata WHERE name = ?";
-    private static final String SQL_DELETE_PLAYER_DATA =
-            "DELETE FROM griefprevention_playerdata WHERE name = ?";
+    private static final String SQL_UPDATE_PLAYER_DATA =
+            "UPDATE griefprevention_playerdata SET lastlogin = ?, accruedblocks = ?, bonusblocks = ? WHERE name = ?";
     private static final String SQL_INSERT_PLAYER_DATA =
             "INSERT INTO griefprevention_playerdata (name, lastlogin, accruedblocks, bonusblocks) VALUES (?, ?, ?, ?)";
-    private static final String SQL_SET_NEXT_CLAIM_ID =
+    private static final String SQL_UPDATE_NEXT_CLAIM_ID =
+            "UPDATE griefprevention_nextclaimid SET nextid = ?";
+    private static final String SQL_INSERT_NEXT_CLAIM_ID =
             "INSERT INTO griefprevention_nextclaimid VALUES (?)";
-    private static final String SQL_DELETE_GROUP_DATA =
-            "DELETE FROM griefprevention_playerdata WHERE name = ?";
+    private static final String SQL_UPDATE_SCHEMA_VERSION =
+            "UPDATE griefprevention_schemaversion SET version = ?";
     private static final String SQL_INSERT_SCHEMA_VERSION =
             "INSERT INTO griefprevention_schemaversion VALUES (?)";
-    private static final String SQL_DELETE_NEXT_CLAIM_ID =
-            "DELETE FROM griefprevention_nextclaimid";
-    private static final String SQL_DELETE_SCHEMA_VERSION =
-            "DELETE FROM griefprevention_schemaversion";
     private static final String SQL_SELECT_SCHEMA_VERSION =
             "SELECT * FROM griefprevention_schemaversion";
+    private static final String SQL_UPDATE_TABLE_VERSION =
+            "UPDATE griefprevention_tableversion SET version = ?";
+    private static final String SQL_INSERT_TABLE_VERSION =
+            "INSERT INTO griefprevention_tableversion VALUES (?)";
+    private static final String SQL_SELECT_TABLE_VERSION =
+            "SELECT version FROM griefprevention_tableversion";
 
-    private Connection databaseConnection = null;
+    //the layout of the database's own tables, versioned apart from the data schema every data store shares
+    //so that changing the tables doesn't make file based data stores rewrite all of their claims
+    //1: claims in griefprevention_claims and trust in griefprevention_claimtrust, instead of the single griefprevention_claimdata table
+    private static final int LATEST_TABLE_VERSION = 1;
+
+    //levels in the claim trust table
+    //a trust row's subject is a player UUID, "public", or a [permission.node]
+    private static final int TRUST_ACCESS = 1;
+    private static final int TRUST_CONTAINER = 2;
+    private static final int TRUST_BUILD = 3;
+    private static final int TRUST_MANAGE = 4;
+    private static final int TRUST_BANNED = 5;
+
+    //statements sent to the database per round trip when writing many claims
+    private static final int BATCH_SIZE = 500;
+
+    //rows fetched from the database per round trip when reading large results
+    private static final int FETCH_SIZE = 1000;
+
+    //claims handed to each claim construction task during startup
+    private static final int CLAIMS_PER_TASK = 256;
+
+    //connections idle for longer than this are checked with a round trip before being reused
+    private static final long CONNECTION_VALIDATION_SECONDS = 30;
+
+    private final ConnectionPool connectionPool;
+
+    //player, group and next claim ID writes run on the pool's threads, one at a time and in the order they were made
+    //claim writes don't need this, because the claim write queue already runs them one at a time off the server thread
+    private CompletableFuture<Void> pendingWrites = CompletableFuture.completedFuture(null);
 
     private final String databaseUrl;
-    private final String userName;
-    private final String password;
 
     DatabaseDataStore(String url, String userName, String password) throws Exception
     {
-        this.databaseUrl = url;
-        this.userName = userName;
-        this.password = password;
+        this(url, userName, password, 3);
+    }
+
+    DatabaseDataStore(String url, String userName, String password, int poolSize) throws Exception
+    {
+        this(url, createConnectionPool(url, userName, password, poolSize));
 
         this.initialize();
     }
 
+    //a data store which hasn't loaded anything yet, for tests which set up the database themselves
+    DatabaseDataStore(String url, ConnectionPool connectionPool)
+    {
+        this.databaseUrl = url;
+        this.connectionPool = connectionPool;
+    }
+
+    private static ConnectionPool createConnectionPool(String url, String userName, String password, int poolSize)
+    {
+        //set username/pass properties
+        Properties connectionProps = new Properties();
+        connectionProps.put("user", userName);
+        connectionProps.put("password", password);
+        connectionProps.put("autoReconnect", "true");
+        connectionProps.put("maxReconnects", String.valueOf(Integer.MAX_VALUE));
+
+        //moving claims out of the old table reads on one connection while writing on another
+        return new ConnectionPool(
+                () -> DriverManager.getConnection(url, connectionProps),
+                Math.max(2, poolSize),
+                CONNECTION_VALIDATION_SECONDS,
+                TimeUnit.SECONDS,
+                (message, error) -> GriefPrevention.instance.getLogger().log(Level.WARNING, message, error));
+    }
+
     @Override
     void initialize() throws Exception
     {
         try
         {
-            this.refreshDataConnection();
+            this.connectionPool.execute(connection -> null);
         }
         catch (Exception e2)
         {
@@ -88,38 +171,10 @@ public class DatabaseDataStore extends DataStore
             throw e2;
         }
 
-        try (Statement statement = databaseConnection.createStatement())
+        boolean newDatabase;
+        try
         {
-            //ensure the data tables exist
-            statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_nextclaimid (nextid INTEGER)");
-            statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_claimdata (id INTEGER, owner VARCHAR(50), lessercorner VARCHAR(100), greatercorner VARCHAR(100), builders TEXT, containers TEXT, accessors TEXT, managers TEXT, inheritnothing BOOLEAN, parentid INTEGER, bannedplayerids TEXT, claimExplosions BOOLEAN)");
-            statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_playerdata (name VARCHAR(50), lastlogin DATETIME, accruedblocks INTEGER, bonusblocks INTEGER)");
-            statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_schemaversion (version INTEGER)");
-
-            //ensure old tables contain columns added in later versions
-            statement.execute("ALTER TABLE griefprevention_claimdata ADD IF NOT EXISTS bannedplayerids TEXT");
-            try {
-                statement.execute("ALTER TABLE griefprevention_claimdata ADD claimExplosions BOOLEAN");
-            } catch (SQLException ignored) {}
-
-            // By making this run only for MySQL, we technically support SQLite too, as this is the only invalid
-            // SQL we use that SQLite does not support. Seeing as its only use is to update VERY old, existing, MySQL
-            // databases, this is of no concern.
-            if (databaseUrl.startsWith("jdbc:mysql://"))
-            {
-                statement.execute("ALTER TABLE griefprevention_claimdata MODIFY builders TEXT");
-                statement.execute("ALTER TABLE griefprevention_claimdata MODIFY containers TEXT");
-                statement.execute("ALTER TABLE griefprevention_claimdata MODIFY accessors TEXT");
-                statement.execute("ALTER TABLE griefprevention_claimdata MODIFY managers TEXT");
-            }
-
-            //if the next claim id table is empty, this is a brand new database which will write using the latest schema
-            //otherwise, schema version is determined by schemaversion table (or =0 if table is empty, see getSchemaVersion())
-            ResultSet results = statement.executeQuery("SELECT * FROM griefprevention_nextclaimid");
-            if (!results.next())
-            {
-                this.setSchemaVersion(latestSchemaVersion);
-            }
+            newDatabase = this.createTables();
         }
         catch (Exception e3)
         {
@@ -129,63 +184,79 @@ public class DatabaseDataStore extends DataStore
             throw e3;
         }
 
-        //load group data into memory
-        Statement statement = databaseConnection.createStatement();
-        ResultSet results = statement.executeQuery("SELECT * FROM griefprevention_playerdata");
+        if (newDatabase)
+        {
+            this.setSchemaVersion(latestSchemaVersion);
+            this.setTableVersion(LATEST_TABLE_VERSION);
+        }
 
-        while (results.next())
+        this.connectionPool.execute(connection ->
         {
-            String name = results.getString("name");
+            //load group data into memory.  all group names start with a dollar sign, so let the database skip players.
+            try (Statement groupStatement = this.createStreamingStatement(connection))
+            {
+                ResultSet results = groupStatement.executeQuery("SELECT name, bonusblocks FROM griefprevention_playerdata WHERE name LIKE '$%'");
 
-            //ignore non-groups.  all group names start with a dollar sign.
-            if (!name.startsWith("$")) continue;
+                while (results.next())
+                {
+                    String name = results.getString("name");
+                    if (!name.startsWith("$")) continue;
 
-            String groupName = name.substring(1);
-            if (groupName == null || groupName.isEmpty()) continue;  //defensive coding, avoid unlikely cases
+                    String groupName = name.substring(1);
+                    if (groupName == null || groupName.isEmpty()) continue;  //defensive coding, avoid unlikely cases
 
-            int groupBonusBlocks = results.getInt("bonusblocks");
+                    int groupBonusBlocks = results.getInt("bonusblocks");
 
-            this.permissionToBonusBlocksMap.put(groupName, groupBonusBlocks);
-        }
+                    this.permissionToBonusBlocksMap.put(groupName, groupBonusBlocks);
+                }
+            }
 
-        //load next claim number into memory
-        results = statement.executeQuery("SELECT * FROM griefprevention_nextclaimid");
+            //load next claim number into memory
+            Statement statement = connection.createStatement();
+            ResultSet results = statement.executeQuery("SELECT * FROM griefprevention_nextclaimid");
 
-        //if there's nothing yet, add it
-        if (!results.next())
-        {
-            statement.execute("INSERT INTO griefprevention_nextclaimid VALUES (0)");
-            this.nextClaimID = (long) 0;
-        }
+            //if there's nothing yet, add it
+            if (!results.next())
+            {
+                statement.execute("INSERT INTO griefprevention_nextclaimid VALUES (0)");
+                this.nextClaimID = (long) 0;
+            }
 
-        //otherwise load it
-        else
-        {
-            this.nextClaimID = results.getLong("nextid");
-        }
+            //otherwise load it
+            else
+            {
+                this.nextClaimID = results.getLong("nextid");
+            }
+
+            return null;
+        });
 
         if (this.getSchemaVersion() == 0)
         {
             try
             {
-                this.refreshDataConnection();
-
                 //pull ALL player data from the database
-                statement = this.databaseConnection.createStatement();
-                results = statement.executeQuery("SELECT * FROM griefprevention_playerdata");
+                ArrayList<String> namesToConvert = this.connectionPool.execute(connection ->
+                {
+                    try (Statement statement = this.createStreamingStatement(connection))
+                    {
+                        ResultSet results = statement.executeQuery("SELECT name FROM griefprevention_playerdata");
 
-                //make a list of changes to be made
-                HashMap<String, UUID> changes = new HashMap<>();
+                        ArrayList<String> names = new ArrayList<>();
+                        while (results.next())
+                        {
+                            //get the id
+                            String playerName = results.getString("name");
 
-                ArrayList<String> namesToConvert = new ArrayList<>();
-                while (results.next())
-                {
-                    //get the id
-                    String playerName = results.getString("name");
+                            //add to list of names to convert to UUID
+                            names.add(playerName);
+                        }
+                        return names;
+                    }
+                });
 
-                    //add to list of names to convert to UUID
-                    namesToConvert.add(playerName);
-                }
+                //make a list of changes to be made
+                HashMap<String, UUID> changes = new HashMap<>();
 
                 //resolve and cache as many as possible through various means
                 try
@@ -199,15 +270,9 @@ public class DatabaseDataStore extends DataStore
                     e.printStackTrace();
                 }
 
-                //reset results cursor
-                results.beforeFirst();
-
                 //for each result
-                while (results.next())
+                for (String playerName : namesToConvert)
                 {
-                    //get the id
-                    String playerName = results.getString("name");
-
                     //try to convert player name to UUID
                     try
                     {
@@ -223,23 +288,25 @@ public class DatabaseDataStore extends DataStore
                     catch (Exception ignored) { }
                 }
 
-                //refresh data connection in case data migration took a long time
-                this.refreshDataConnection();
-
-                for (String name : changes.keySet())
+                //borrow a connection only now, in case name resolution took a long time
+                this.connectionPool.execute(connection ->
                 {
-                    try (PreparedStatement updateStmnt = this.databaseConnection.prepareStatement(SQL_UPDATE_NAME))
+                    for (String name : changes.keySet())
                     {
-                        updateStmnt.setString(1, changes.get(name).toString());
-                        updateStmnt.setString(2, name);
-                        updateStmnt.executeUpdate();
-                    }
-                    catch (SQLException e)
-                    {
-                        GriefPrevention.AddLogEntry("Unable to convert player data for " + name + ".  Skipping.");
-                        GriefPrevention.AddLogEntry(e.getMessage());
+                        try (PreparedStatement updateStmnt = connection.prepareStatement(SQL_UPDATE_NAME))
+                        {
+                            updateStmnt.setString(1, changes.get(name).toString());
+                            updateStmnt.setString(2, name);
+                            updateStmnt.executeUpdate();
+                        }
+                        catch (SQLException e)
+                        {
+                            GriefPrevention.AddLogEntry("Unable to convert player data for " + name + ".  Skipping.");
+                            GriefPrevention.AddLogEntry(e.getMessage());
+                        }
                     }
-                }
+                    return null;
+                });
             }
             catch (SQLException e)
             {
@@ -249,147 +316,278 @@ public class DatabaseDataStore extends DataStore
             }
         }
 
-        if (this.getSchemaVersion() <= 2)
+        //move claims out of the old single table, which is left in place as a backup
+        int schemaVersion = this.getSchemaVersion();
+        if (this.getTableVersion() < 1)
         {
-            statement = this.databaseConnection.createStatement();
-            statement.execute("ALTER TABLE griefprevention_claimdata ADD inheritNothing BOOLEAN DEFAULT 0 AFTER managers");
+            this.migrateClaimTable(schemaVersion);
+            this.setTableVersion(1);
         }
 
         //load claims data into memory
+        this.loadClaims(schemaVersion);
 
-        results = statement.executeQuery("SELECT * FROM griefprevention_claimdata");
-
-        ArrayList<Claim> claimsToRemove = new ArrayList<>();
-        ArrayList<Claim> subdivisionsToLoad = new ArrayList<>();
-        List<World> validWorlds = Bukkit.getServer().getWorlds();
+        super.initialize();
+    }
 
-        Long claimID = null;
-        while (results.next())
+    //ensures the data tables exist, and returns whether this is a brand new database
+    boolean createTables() throws SQLException
+    {
+        return this.connectionPool.execute(connection ->
         {
-            try
+            try (Statement statement = connection.createStatement())
             {
-                //problematic claims will be removed from secondary storage, and never added to in-memory data store
-                boolean removeClaim = false;
+                //ensure the data tables exist
+                statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_nextclaimid (nextid INTEGER)");
+                statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_playerdata (name VARCHAR(50), lastlogin DATETIME, accruedblocks INTEGER, bonusblocks INTEGER)");
+                statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_schemaversion (version INTEGER)");
+                statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_tableversion (version INTEGER)");
+
+                //claims and their trust lists, as of table version 1
+                statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_claims (id BIGINT NOT NULL PRIMARY KEY, owner VARCHAR(50), lessercorner VARCHAR(100), greatercorner VARCHAR(100), inheritnothing BOOLEAN, parentid BIGINT, claimexplosions BOOLEAN)");
+                statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_claimtrust (claim_id BIGINT NOT NULL, subject VARCHAR(255) NOT NULL, level SMALLINT NOT NULL, PRIMARY KEY (claim_id, subject, level))");
+
+                //not every database supports CREATE INDEX IF NOT EXISTS, so an error here means the index is already there
+                try {
+                    statement.execute("CREATE INDEX griefprevention_claims_owner ON griefprevention_claims (owner)");
+                } catch (SQLException ignored) {}
+                try {
+                    statement.execute("CREATE INDEX griefprevention_claimtrust_subject ON griefprevention_claimtrust (subject)");
+                } catch (SQLException ignored) {}
+
+                //if the next claim id table is empty, this is a brand new database which will write using the latest schema
+                //otherwise, schema version is determined by schemaversion table (or =0 if table is empty, see getSchemaVersion())
+                ResultSet results = statement.executeQuery("SELECT * FROM griefprevention_nextclaimid");
+                return !results.next();
+            }
+        });
+    }
 
-                long parentId = results.getLong("parentid");
-                claimID = results.getLong("id");
-                boolean inheritNothing = results.getBoolean("inheritNothing");
-                Location lesserBoundaryCorner = null;
-                Location greaterBoundaryCorner = null;
-                String lesserCornerString = "(location not available)";
-                try
-                {
-                    lesserCornerString = results.getString("lessercorner");
-                    lesserBoundaryCorner = this.locationFromString(lesserCornerString, validWorlds);
-                    String greaterCornerString = results.getString("greatercorner");
-                    greaterBoundaryCorner = this.locationFromString(greaterCornerString, validWorlds);
-                }
-                catch (Exception e)
-                {
-                    if (e.getMessage() != null && e.getMessage().contains("World not found"))
-                    {
-                        GriefPrevention.AddLogEntry("Failed to load a claim (ID:" + claimID + ") because its world isn't loaded (yet?).  Please delete the claim or contact the GriefPrevention developer with information about which plugin(s) you're using to load or create worlds.  " + lesserCornerString);
-                        continue;
-                    }
-                    else
-                    {
-                        throw e;
-                    }
-                }
+    //copies claims from the single table used before table version 1 into the claim and trust tables
+    //rows are copied as they are, so anything needing conversion is converted by the usual load and re-save of every claim afterward
+    //the copy is one transaction, and the new tables are emptied first, so an interrupted migration simply runs again
+    void migrateClaimTable(int schemaVersion) throws SQLException
+    {
+        GriefPrevention.AddLogEntry("Moving claims to the new claim and trust tables...");
+        long startTime = System.nanoTime();
 
-                String ownerName = results.getString("owner");
-                UUID ownerID = null;
-                if (ownerName.isEmpty() || ownerName.startsWith("--"))
+        this.connectionPool.execute(connection ->
+        {
+            try (Statement statement = connection.createStatement())
+            {
+                statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_claimdata (id INTEGER, owner VARCHAR(50), lessercorner VARCHAR(100), greatercorner VARCHAR(100), builders TEXT, containers TEXT, accessors TEXT, managers TEXT, inheritnothing BOOLEAN, parentid INTEGER, bannedplayerids TEXT, claimExplosions BOOLEAN)");
+
+                //ensure old tables contain columns added in later versions
+                statement.execute("ALTER TABLE griefprevention_claimdata ADD IF NOT EXISTS bannedplayerids TEXT");
+                try {
+                    statement.execute("ALTER TABLE griefprevention_claimdata ADD claimExplosions BOOLEAN");
+                } catch (SQLException ignored) {}
+
+                // By making this run only for MySQL, we technically support SQLite too, as this is the only invalid
+                // SQL we use that SQLite does not support. Seeing as its only use is to update VERY old, existing, MySQL
+                // databases, this is of no concern.
+                if (databaseUrl.startsWith("jdbc:mysql://"))
                 {
-                    ownerID = null;  //administrative land claim or subdivision
+                    statement.execute("ALTER TABLE griefprevention_claimdata MODIFY builders TEXT");
+                    statement.execute("ALTER TABLE griefprevention_claimdata MODIFY containers TEXT");
+                    statement.execute("ALTER TABLE griefprevention_claimdata MODIFY accessors TEXT");
+                    statement.execute("ALTER TABLE griefprevention_claimdata MODIFY managers TEXT");
                 }
-                else if (this.getSchemaVersion() < 1)
+
+                if (schemaVersion <= 2)
                 {
-                    try
-                    {
-                        ownerID = UUIDFetcher.getUUIDOf(ownerName);
-                    }
-                    catch (Exception ex)
-                    {
-                        GriefPrevention.AddLogEntry("This owner name did not convert to a UUID: " + ownerName + ".");
-                        GriefPrevention.AddLogEntry("  Converted land claim to administrative @ " + lesserBoundaryCorner.toString());
-                    }
+                    statement.execute("ALTER TABLE griefprevention_claimdata ADD inheritNothing BOOLEAN DEFAULT 0 AFTER managers");
+                    statement.execute("DELETE FROM griefprevention_claimdata WHERE id = '-1'");
                 }
-                else
+            }
+            return null;
+        });
+
+        //the old table is streamed on one connection while the copy is written on another
+        //a streaming result ties up its connection until it is read to the end, and the whole table may not fit in memory
+        int migrated = this.connectionPool.execute(writer ->
+        {
+            writer.setAutoCommit(false);
+
+            int count;
+            try (Statement statement = writer.createStatement();
+                 PreparedStatement insertClaim = writer.prepareStatement(SQL_INSERT_CLAIM);
+                 PreparedStatement insertTrust = writer.prepareStatement(SQL_INSERT_CLAIM_TRUST))
+            {
+                statement.execute("DELETE FROM griefprevention_claimtrust");
+                statement.execute("DELETE FROM griefprevention_claims");
+
+                count = this.connectionPool.execute(reader ->
                 {
-                    try
-                    {
-                        ownerID = UUID.fromString(ownerName);
-                    }
-                    catch (Exception ex)
+                    //some drivers only use a cursor inside a transaction, which the pool ends before the copy is committed
+                    reader.setAutoCommit(false);
+
+                    try (Statement select = this.createStreamingStatement(reader))
                     {
-                        GriefPrevention.AddLogEntry("This owner entry is not a UUID: " + ownerName + ".");
-                        GriefPrevention.AddLogEntry("  Converted land claim to administrative @ " + lesserBoundaryCorner.toString());
+                        return this.copyClaimRows(select.executeQuery("SELECT * FROM griefprevention_claimdata"), insertClaim, insertTrust);
                     }
-                }
+                });
 
-                String buildersString = results.getString("builders");
-                List<String> builderNames = Arrays.asList(buildersString.split(";"));
-                builderNames = this.convertNameListToUUIDList(builderNames);
+                insertClaim.executeBatch();
+                insertTrust.executeBatch();
+            }
 
-                String containersString = results.getString("containers");
-                List<String> containerNames = Arrays.asList(containersString.split(";"));
-                containerNames = this.convertNameListToUUIDList(containerNames);
+            writer.commit();
+            return count;
+        });
 
-                String accessorsString = results.getString("accessors");
-                List<String> accessorNames = Arrays.asList(accessorsString.split(";"));
-                accessorNames = this.convertNameListToUUIDList(accessorNames);
+        GriefPrevention.AddLogEntry("Moved " + migrated + " claims in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + "ms.  The old griefprevention_claimdata table was left as a backup, and can be dropped once you're satisfied with the migration.");
+    }
+
+    //adds the claim and trust rows for each old claim row to the insert batches, sending full batches as it goes
+    private int copyClaimRows(ResultSet results, PreparedStatement insertClaim, PreparedStatement insertTrust) throws SQLException
+    {
+        //the old table had no key, so a claim may have been written twice
+        Set<Long> copied = new HashSet<>();
+        int count = 0;
+        int pendingTrust = 0;
+        while (results.next())
+        {
+            long claimID = results.getLong("id");
+            if (!copied.add(claimID))
+            {
+                GriefPrevention.AddLogEntry("Skipping a duplicate row for claim " + claimID + " while moving claims.");
+                continue;
+            }
+
+            insertClaim.setLong(1, claimID);
+            insertClaim.setString(2, results.getString("owner"));
+            insertClaim.setString(3, results.getString("lessercorner"));
+            insertClaim.setString(4, results.getString("greatercorner"));
+            insertClaim.setBoolean(5, results.getBoolean("inheritNothing"));
+            insertClaim.setLong(6, results.getLong("parentid"));
+            insertClaim.setBoolean(7, results.getBoolean("claimExplosions"));
+            insertClaim.addBatch();
+            if (++count % BATCH_SIZE == 0) insertClaim.executeBatch();
+
+            ClaimRow trust = new ClaimRow(claimID);
+            trust.addTrustList(results.getString("builders"), TRUST_BUILD);
+            trust.addTrustList(results.getString("containers"), TRUST_CONTAINER);
+            trust.addTrustList(results.getString("accessors"), TRUST_ACCESS);
+            trust.addTrustList(results.getString("managers"), TRUST_MANAGE);
+            trust.addTrustList(results.getString("bannedplayerids"), TRUST_BANNED);
+            for (int level = TRUST_ACCESS; level <= TRUST_BANNED; level++)
+            {
+                for (String subject : trust.getTrust(level))
+                {
+                    insertTrust.setLong(1, claimID);
+                    insertTrust.setString(2, subject);
+                    insertTrust.setInt(3, level);
+                    insertTrust.addBatch();
+                    if (++pendingTrust % BATCH_SIZE == 0) insertTrust.executeBatch();
+                }
+            }
+        }
+        return count;
+    }
+
+    //streams every claim from the database, building claims on worker threads while more rows arrive
+    //only a bounded number of claims is ever waiting to be built, so memory use doesn't grow with the size of the table
+    //subdivisions are attached to their parents once every top level claim is in, and orphaned ones are deleted
+    void loadClaims(int schemaVersion) throws SQLException
+    {
+        long startTime = System.nanoTime();
+        ArrayList<Claim> subdivisionsToLoad = new ArrayList<>();
+        resetPeakHeapUsage();
 
-                String managersString = results.getString("managers");
-                List<String> managerNames = Arrays.asList(managersString.split(";"));
-                managerNames = this.convertNameListToUUIDList(managerNames);
+        List<World> validWorlds = Bukkit.getServer().getWorlds();
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        ForkJoinPool pool = new ForkJoinPool(threads, forkJoinPool ->
+        {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("GriefPrevention Claim Loader " + thread.getPoolIndex());
+            //building claims may resolve classes through the context class loader, which must be the plugin's
+            thread.setContextClassLoader(DatabaseDataStore.class.getClassLoader());
+            return thread;
+        }, null, false);
+
+        long[] counts = new long[2];  //rows, claims
+        try
+        {
+            this.connectionPool.execute(connection ->
+            {
+                //some drivers only use a cursor inside a transaction, which the pool rolls back once we're done reading
+                connection.setAutoCommit(false);
 
-                Claim claim = new Claim(lesserBoundaryCorner, greaterBoundaryCorner, ownerID, builderNames, containerNames, accessorNames, managerNames, inheritNothing, claimID);
+                try (Statement statement = this.createStreamingStatement(connection))
+                {
+                    //one row per trust entry, in claim order, so each claim is complete once the next one starts
+                    ResultSet results = statement.executeQuery(SQL_SELECT_CLAIMS);
 
-                String bannedPlayerIDsString = results.getString("bannedplayerids");
-                if (bannedPlayerIDsString != null && !bannedPlayerIDsString.isEmpty()) {
-                    for (String s : bannedPlayerIDsString.split(";")) {
-                        try {
-                            if ("public".equals(s)) {
-                                claim.setPublicBanned(true);
-                            } else {
-                                claim.banUUID(UUID.fromString(s));
+                    ArrayDeque<CompletableFuture<List<LoadedClaim>>> building = new ArrayDeque<>();
+                    List<ClaimRow> task = new ArrayList<>(CLAIMS_PER_TASK);
+                    ClaimRow row = null;
+                    while (results.next())
+                    {
+                        counts[0]++;
+                        long claimID = results.getLong(1);
+                        if (row == null || row.id != claimID)
+                        {
+                            row = new ClaimRow(claimID);
+                            row.owner = results.getString(2);
+                            row.lesserCorner = results.getString(3);
+                            row.greaterCorner = results.getString(4);
+                            row.inheritNothing = results.getBoolean(5);
+                            row.parentID = results.getLong(6);
+                            row.explosivesAllowed = results.getBoolean(7);
+                            task.add(row);
+                            counts[1]++;
+
+                            //hand off full tasks, except for the claim still being read
+                            if (task.size() > CLAIMS_PER_TASK)
+                            {
+                                List<ClaimRow> complete = new ArrayList<>(task.subList(0, CLAIMS_PER_TASK));
+                                task.subList(0, CLAIMS_PER_TASK).clear();
+                                building.add(CompletableFuture.supplyAsync(() -> this.buildClaims(complete, schemaVersion, validWorlds), pool));
+
+                                //wait on the oldest task rather than letting unbuilt claims pile up
+                                if (building.size() >= threads * 2)
+                                {
+                                    this.addLoadedClaims(building.poll().join(), subdivisionsToLoad);
+                                }
                             }
-                        } catch (IllegalArgumentException ex) {
-                            GriefPrevention.instance.getLogger().log(Level.WARNING, "Failed to deserialize banned player id \"" + s + "\" as it was not a valid UUID for claimID " + claimID, ex);
                         }
-                    }
-                }
 
-                claim.areExplosivesAllowed = results.getBoolean("claimExplosions");
+                        String subject = results.getString(8);
+                        if (subject != null) row.addTrust(subject, results.getInt(9));
+                    }
 
-                if (removeClaim)
-                {
-                    claimsToRemove.add(claim);
-                }
-                else if (parentId == -1)
-                {
-                    //top level claim
-                    this.addClaim(claim, false);
-                }
-                else
-                {
-                    //subdivision
-                    subdivisionsToLoad.add(claim);
+                    building.add(CompletableFuture.supplyAsync(() -> this.buildClaims(task, schemaVersion, validWorlds), pool));
+                    while (!building.isEmpty())
+                    {
+                        this.addLoadedClaims(building.poll().join(), subdivisionsToLoad);
+                    }
                 }
-            }
-            catch (SQLException e)
-            {
-                GriefPrevention.AddLogEntry("Unable to load a claim.  Details: " + e.getMessage() + " ... " + results);
-                e.printStackTrace();
-            }
+
+                return null;
+            });
+        }
+        finally
+        {
+            pool.shutdownNow();
         }
 
+        long elapsed = Math.max(1, System.nanoTime() - startTime);
+        GriefPrevention.AddLogEntry(String.format("Loaded %d claims from %d rows in %dms (%d rows/s, building claims on %d threads).  Peak heap use during the load was at most %dMB.",
+                counts[1],
+                counts[0],
+                TimeUnit.NANOSECONDS.toMillis(elapsed),
+                counts[0] * TimeUnit.SECONDS.toNanos(1) / elapsed,
+                threads,
+                getPeakHeapUsage() / (1024 * 1024)));
+
+        ArrayList<Claim> claimsToRemove = new ArrayList<>();
+
         //add subdivisions to their parent claims
         for (Claim childClaim : subdivisionsToLoad)
         {
             //find top level claim parent
-            Claim topLevelClaim = this.getClaimAt(childClaim.getGreaterBoundaryCorner(), true, null);
+            Claim topLevelClaim = this.getClaimAt(childClaim.getGreaterBoundaryCorner(), true, true, null);
 
             if (topLevelClaim == null)
             {
@@ -399,122 +597,449 @@ public class DatabaseDataStore extends DataStore
             }
 
             //add this claim to the list of children of the current top level claim
+            //going through addClaim keeps the parent's subdivision index in step with its children
             childClaim.parent = topLevelClaim;
-            topLevelClaim.children.add(childClaim);
-            childClaim.inDataStore = true;
+            this.addClaim(childClaim, false);
         }
 
         for (Claim claim : claimsToRemove)
         {
             this.deleteClaimFromSecondaryStorage(claim);
         }
+    }
 
-        if (this.getSchemaVersion() <= 2)
+    //a forward-only statement which fetches rows a few at a time instead of materializing the whole result in driver memory
+    private Statement createStreamingStatement(Connection connection) throws SQLException
+    {
+        Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+        //mysql's driver ignores positive fetch sizes unless cursor fetching is enabled, but streams row by row given this value
+        if (this.databaseUrl.startsWith("jdbc:mysql://") && !this.databaseUrl.contains("useCursorFetch=true"))
+        {
+            statement.setFetchSize(Integer.MIN_VALUE);
+        }
+        else
         {
-            this.refreshDataConnection();
-            statement = this.databaseConnection.createStatement();
-            statement.execute("DELETE FROM griefprevention_claimdata WHERE id = '-1'");
+            statement.setFetchSize(FETCH_SIZE);
         }
 
-        super.initialize();
+        return statement;
     }
 
-    @Override
-    synchronized void writeClaimToStorage(Claim claim)  //see datastore.cs.  this will ALWAYS be a top level claim
+    //adds built claims to the data store in claim order, and logs any problems on this thread so messages aren't interleaved
+    private void addLoadedClaims(List<LoadedClaim> loadedClaims, List<Claim> subdivisionsToLoad) throws SQLException
     {
+        for (LoadedClaim loaded : loadedClaims)
+        {
+            for (String message : loaded.messages())
+            {
+                GriefPrevention.AddLogEntry(message);
+            }
+
+            if (loaded.error() != null)
+            {
+                throw new SQLException(loaded.error());
+            }
+            else if (loaded.claim() == null)
+            {
+                continue;
+            }
+            else if (loaded.parentID() == -1)
+            {
+                //top level claim
+                this.addClaim(loaded.claim(), false);
+            }
+            else
+            {
+                //subdivision
+                subdivisionsToLoad.add(loaded.claim());
+            }
+        }
+    }
+
+    //builds claims without touching the data store, so it is safe to call from any thread
+    private List<LoadedClaim> buildClaims(List<ClaimRow> rows, int schemaVersion, List<World> validWorlds)
+    {
+        List<LoadedClaim> loaded = new ArrayList<>(rows.size());
+        for (ClaimRow row : rows)
+        {
+            List<String> messages = new ArrayList<>(0);
+            try
+            {
+                Claim claim = this.buildClaim(row, schemaVersion, validWorlds, messages);
+                loaded.add(new LoadedClaim(claim, row.parentID, messages, null));
+            }
+            catch (Exception e)
+            {
+                loaded.add(new LoadedClaim(null, row.parentID, messages, e));
+            }
+        }
+        return loaded;
+    }
+
+    //the result of building a single claim, which is either a claim, nothing if the claim should be skipped, or the reason it couldn't be built
+    private record LoadedClaim(Claim claim, long parentID, List<String> messages, Exception error) {}
+
+    //turns a claim's rows into a claim, or returns null and explains why it can't
+    private Claim buildClaim(ClaimRow row, int schemaVersion, List<World> validWorlds, List<String> messages) throws Exception
+    {
+        Location lesserBoundaryCorner = null;
+        Location greaterBoundaryCorner = null;
+        String lesserCornerString = "(location not available)";
         try
         {
-            this.refreshDataConnection();
+            lesserCornerString = row.lesserCorner;
+            lesserBoundaryCorner = this.locationFromString(lesserCornerString, validWorlds);
+            greaterBoundaryCorner = this.locationFromString(row.greaterCorner, validWorlds);
+        }
+        catch (Exception e)
+        {
+            if (e.getMessage() != null && e.getMessage().contains("World not found"))
+            {
+                messages.add("Failed to load a claim (ID:" + row.id + ") because its world isn't loaded (yet?).  Please delete the claim or contact the GriefPrevention developer with information about which plugin(s) you're using to load or create worlds.  " + lesserCornerString);
+                return null;
+            }
+            else
+            {
+                throw e;
+            }
+        }
 
-            //wipe out any existing data about this claim
-            this.deleteClaimFromSecondaryStorage(claim);
+        String ownerName = row.owner;
+        UUID ownerID = null;
+        if (ownerName.isEmpty() || ownerName.startsWith("--"))
+        {
+            ownerID = null;  //administrative land claim or subdivision
+        }
+        else if (schemaVersion < 1)
+        {
+            try
+            {
+                ownerID = UUIDFetcher.getUUIDOf(ownerName);
+            }
+            catch (Exception ex)
+            {
+                messages.add("This owner name did not convert to a UUID: " + ownerName + ".");
+                messages.add("  Converted land claim to administrative @ " + lesserBoundaryCorner.toString());
+            }
+        }
+        else
+        {
+            try
+            {
+                ownerID = UUID.fromString(ownerName);
+            }
+            catch (Exception ex)
+            {
+                messages.add("This owner entry is not a UUID: " + ownerName + ".");
+                messages.add("  Converted land claim to administrative @ " + lesserBoundaryCorner.toString());
+            }
+        }
+
+        //names only need converting in very old data, otherwise the row's lists are used as they are
+        List<String> builderNames = this.convertNameListToUUIDList(row.builders);
+        List<String> containerNames = this.convertNameListToUUIDList(row.containers);
+        List<String> accessorNames = this.convertNameListToUUIDList(row.accessors);
+        List<String> managerNames = this.convertNameListToUUIDList(row.managers);
 
-            //write claim data to the database
-            this.writeClaimData(claim);
+        Claim claim = new Claim(lesserBoundaryCorner, greaterBoundaryCorner, ownerID, builderNames, containerNames, accessorNames, managerNames, row.inheritNothing, row.id);
+
+        for (String s : row.banned)
+        {
+            try {
+                if ("public".equals(s)) {
+                    claim.setPublicBanned(true);
+                } else {
+                    claim.banUUID(UUID.fromString(s));
+                }
+            } catch (IllegalArgumentException ex) {
+                messages.add("Failed to deserialize banned player id \"" + s + "\" as it was not a valid UUID for claimID " + row.id);
+            }
         }
-        catch (SQLException e)
+
+        claim.areExplosivesAllowed = row.explosivesAllowed;
+        return claim;
+    }
+
+    //resets the recorded peak usage of the heap, so a later getPeakHeapUsage() only covers what happened since
+    private static void resetPeakHeapUsage()
+    {
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans())
         {
-            GriefPrevention.AddLogEntry("Unable to save data for claim at " + this.locationToString(claim.getLesserBoundaryCorner()) + ".  Details:");
-            GriefPrevention.AddLogEntry(e.getMessage());
+            if (memoryPool.getType() == MemoryType.HEAP) memoryPool.resetPeakUsage();
+        }
+    }
+
+    //the sum of each heap pool's peak usage, which may slightly overstate the true peak since pools peak at different times
+    private static long getPeakHeapUsage()
+    {
+        long peak = 0;
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (memoryPool.getType() == MemoryType.HEAP) peak += memoryPool.getPeakUsage().getUsed();
         }
+        return peak;
     }
 
-    //actually writes claim data to the database
-    synchronized private void writeClaimData(Claim claim) throws SQLException
+    //a claim's columns and trust rows, gathered while reading the joined result
+    private static class ClaimRow
+    {
+        private final long id;
+        private String owner;
+        private String lesserCorner;
+        private String greaterCorner;
+        private boolean inheritNothing;
+        private long parentID;
+        private boolean explosivesAllowed;
+
+        //subjects by trust level, filled straight from the result and handed to the claim as they are
+        private final ArrayList<String> builders = new ArrayList<>();
+        private final ArrayList<String> containers = new ArrayList<>();
+        private final ArrayList<String> accessors = new ArrayList<>();
+        private final ArrayList<String> managers = new ArrayList<>();
+        private final ArrayList<String> banned = new ArrayList<>();
+
+        private ClaimRow(long id)
+        {
+            this.id = id;
+        }
+
+        private ArrayList<String> getTrust(int level)
+        {
+            return switch (level)
+            {
+                case TRUST_ACCESS -> this.accessors;
+                case TRUST_CONTAINER -> this.containers;
+                case TRUST_BUILD -> this.builders;
+                case TRUST_MANAGE -> this.managers;
+                case TRUST_BANNED -> this.banned;
+                default -> null;
+            };
+        }
+
+        private void addTrust(String subject, int level)
+        {
+            //levels written by a newer version are ignored
+            ArrayList<String> subjects = this.getTrust(level);
+            if (subjects != null) subjects.add(subject);
+        }
+
+        //adds every entry of a ;-separated list from the old table, skipping repeats which the trust table's key doesn't allow
+        private void addTrustList(String list, int level)
+        {
+            if (list == null) return;
+
+            ArrayList<String> subjects = this.getTrust(level);
+            int start = 0;
+            while (start <= list.length())
+            {
+                int end = list.indexOf(';', start);
+                if (end < 0) end = list.length();
+                if (end > start)
+                {
+                    String subject = list.substring(start, end);
+                    if (!subjects.contains(subject)) subjects.add(subject);
+                }
+                start = end + 1;
+            }
+        }
+    }
+
+    //claim writes are serialized on the claim write queue's thread, which logs and counts failures
+    @Override
+    void writeClaimToStorage(Claim claim) throws SQLException
+    {
+        this.writeClaimsToStorage(List.of(claim), List.of());
+    }
+
+    //writes a batch of claim changes in one transaction, a few round trips for the whole batch
+    //mass changes like transferring or deleting all of a player's claims arrive here as one batch from the claim write queue
+    @Override
+    void writeClaimsToStorage(List<Claim> saves, List<Claim> deletes) throws SQLException
+    {
+        this.connectionPool.execute(connection ->
+        {
+            connection.setAutoCommit(false);
+
+            //saved claims have their trust rows written again below
+            List<Claim> changed = new ArrayList<>(deletes);
+            changed.addAll(saves);
+            try (PreparedStatement deleteTrust = connection.prepareStatement(SQL_DELETE_CLAIM_TRUST);
+                 PreparedStatement deleteClaim = connection.prepareStatement(SQL_DELETE_CLAIM))
+            {
+                executeInBatches(deleteTrust, changed, (statement, claim) -> statement.setLong(1, claim.id));
+                executeInBatches(deleteClaim, deletes, (statement, claim) -> statement.setLong(1, claim.id));
+            }
+
+            //one upsert per claim, so row counts are never needed and drivers which don't report them for batches are fine
+            try (PreparedStatement upsertClaim = connection.prepareStatement(this.getUpsertClaimSql());
+                 PreparedStatement insertTrust = connection.prepareStatement(SQL_INSERT_CLAIM_TRUST))
+            {
+                executeInBatches(upsertClaim, saves, (statement, claim) ->
+                {
+                    statement.setLong(1, claim.id);
+                    this.setClaimParameters(statement, claim, 2);
+                });
+
+                int pendingTrust = 0;
+                for (Claim claim : saves)
+                {
+                    for (Map.Entry<Integer, Set<String>> level : getTrustRows(claim).entrySet())
+                    {
+                        for (String subject : level.getValue())
+                        {
+                            insertTrust.setLong(1, claim.id);
+                            insertTrust.setString(2, subject);
+                            insertTrust.setInt(3, level.getKey());
+                            insertTrust.addBatch();
+                            if (++pendingTrust % BATCH_SIZE == 0) insertTrust.executeBatch();
+                        }
+                    }
+                }
+                insertTrust.executeBatch();
+            }
+
+            connection.commit();
+            return null;
+        });
+    }
+
+    //gets the claim upsert for this database, by its JDBC URL
+    private String getUpsertClaimSql()
+    {
+        if (this.databaseUrl.startsWith("jdbc:h2:")) return SQL_MERGE_CLAIM_H2;
+        if (this.databaseUrl.startsWith("jdbc:mysql:") || this.databaseUrl.startsWith("jdbc:mariadb:")) return SQL_UPSERT_CLAIM_MYSQL;
+
+        //PostgreSQL and SQLite
+        return SQL_UPSERT_CLAIM;
+    }
+
+    //runs a statement once for each claim, BATCH_SIZE claims per round trip
+    private static void executeInBatches(PreparedStatement statement, List<Claim> claims, ClaimParameterSetter setter) throws SQLException
+    {
+        for (int i = 0; i < claims.size(); i += BATCH_SIZE)
+        {
+            int end = Math.min(i + BATCH_SIZE, claims.size());
+            for (int j = i; j < end; j++)
+            {
+                setter.set(statement, claims.get(j));
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ClaimParameterSetter
+    {
+        void set(PreparedStatement statement, Claim claim) throws SQLException;
+    }
+
+    //sets a claim's columns other than its ID, in table order, starting at the given parameter index
+    private void setClaimParameters(PreparedStatement statement, Claim claim, int index) throws SQLException
     {
-        String lesserCornerString = this.locationToString(claim.getLesserBoundaryCorner());
-        String greaterCornerString = this.locationToString(claim.getGreaterBoundaryCorner());
         String owner = "";
         if (claim.ownerID != null) owner = claim.ownerID.toString();
 
+        statement.setString(index, owner);
+        statement.setString(index + 1, this.locationToString(claim.getLesserBoundaryCorner()));
+        statement.setString(index + 2, this.locationToString(claim.getGreaterBoundaryCorner()));
+        statement.setBoolean(index + 3, claim.getSubclaimRestrictions());
+        statement.setLong(index + 4, claim.parent == null ? -1 : claim.parent.id);
+        statement.setBoolean(index + 5, claim.areExplosivesAllowed);
+    }
+
+    //gets a claim's rows for the trust table, subjects by trust level
+    private static Map<Integer, Set<String>> getTrustRows(Claim claim)
+    {
         ArrayList<String> builders = new ArrayList<>();
         ArrayList<String> containers = new ArrayList<>();
         ArrayList<String> accessors = new ArrayList<>();
         ArrayList<String> managers = new ArrayList<>();
-
         claim.getPermissions(builders, containers, accessors, managers);
 
-        String buildersString = this.storageStringBuilder(builders);
-        String containersString = this.storageStringBuilder(containers);
-        String accessorsString = this.storageStringBuilder(accessors);
-        String managersString = this.storageStringBuilder(managers);
-        boolean inheritNothing = claim.getSubclaimRestrictions();
-        long parentId = claim.parent == null ? -1 : claim.parent.id;
-
-        List<String> bannedPlayersList = new ArrayList<>(claim.getBannedPlayers().stream().map(UUID::toString).toList());
-        if (claim.isPublicBanned()) bannedPlayersList.add("public");
-        String bannedPlayers = this.storageStringBuilder(bannedPlayersList);
-
-        boolean claimExplosions = claim.areExplosivesAllowed;
+        Set<String> banned = new LinkedHashSet<>();
+        for (UUID bannedID : claim.getBannedPlayers()) banned.add(bannedID.toString());
+        if (claim.isPublicBanned()) banned.add("public");
+
+        Map<Integer, Set<String>> rows = new LinkedHashMap<>();
+        rows.put(TRUST_BUILD, new LinkedHashSet<>(builders));
+        rows.put(TRUST_CONTAINER, new LinkedHashSet<>(containers));
+        rows.put(TRUST_ACCESS, new LinkedHashSet<>(accessors));
+        rows.put(TRUST_MANAGE, new LinkedHashSet<>(managers));
+        rows.put(TRUST_BANNED, banned);
+        return rows;
+    }
 
-        try (PreparedStatement insertStmt = this.databaseConnection.prepareStatement(SQL_INSERT_CLAIM))
+    //deletes a claim from the database
+    @Override
+    void deleteClaimFromSecondaryStorage(Claim claim)
+    {
+        try
         {
-
-            insertStmt.setLong(1, claim.id);
-            insertStmt.setString(2, owner);
-            insertStmt.setString(3, lesserCornerString);
-            insertStmt.setString(4, greaterCornerString);
-            insertStmt.setString(5, buildersString);
-            insertStmt.setString(6, containersString);
-            insertStmt.setString(7, accessorsString);
-            insertStmt.setString(8, managersString);
-            insertStmt.setBoolean(9, inheritNothing);
-            insertStmt.setLong(10, parentId);
-            insertStmt.setString(11, bannedPlayers);
-            insertStmt.setBoolean(12, claimExplosions);
-            insertStmt.executeUpdate();
+            this.writeClaimsToStorage(List.of(), List.of(claim));
         }
         catch (SQLException e)
         {
-            GriefPrevention.AddLogEntry("Unable to save data for claim at " + this.locationToString(claim.getLesserBoundaryCorner()) + ".  Details:");
-            GriefPrevention.AddLogEntry(e.getMessage());
+            StringWriter errors = new StringWriter();
+            e.printStackTrace(new PrintWriter(errors));
+            GriefPrevention.AddLogEntry("Unable to delete data for claim " + claim.id + ".  Details:");
+            GriefPrevention.AddLogEntry(errors.toString(), CustomLogEntryTypes.Exception);
         }
     }
 
-    //deletes a claim from the database
+    //finds the claims in which a player UUID, "public", or a [permission.node] has any level of trust, using the trust table's index
+    public CompletableFuture<List<Long>> getTrustedClaimIDsAsync(String subject)
+    {
+        return this.connectionPool.supplyAsync(connection ->
+        {
+            try (PreparedStatement selectStmnt = connection.prepareStatement(SQL_SELECT_TRUSTED_CLAIM_IDS))
+            {
+                selectStmnt.setString(1, subject);
+                ResultSet results = selectStmnt.executeQuery();
+
+                List<Long> claimIDs = new ArrayList<>();
+                while (results.next())
+                {
+                    claimIDs.add(results.getLong(1));
+                }
+                return claimIDs;
+            }
+        });
+    }
+
+    //player data is loaded ahead of time on the login thread (see PlayerEventHandler), so this rarely runs on the server thread
     @Override
-    synchronized void deleteClaimFromSecondaryStorage(Claim claim)
+    PlayerData getPlayerDataFromStorage(UUID playerID)
     {
-        try (PreparedStatement deleteStmnt = this.databaseConnection.prepareStatement(SQL_DELETE_CLAIM))
+        try
         {
-            deleteStmnt.setLong(1, claim.id);
-            deleteStmnt.executeUpdate();
+            return this.connectionPool.execute(connection -> this.readPlayerData(connection, playerID));
         }
         catch (SQLException e)
         {
-            GriefPrevention.AddLogEntry("Unable to delete data for claim " + claim.id + ".  Details:");
-            GriefPrevention.AddLogEntry(e.getMessage());
-            e.printStackTrace();
+            StringWriter errors = new StringWriter();
+            e.printStackTrace(new PrintWriter(errors));
+            GriefPrevention.AddLogEntry(playerID + " " + errors, CustomLogEntryTypes.Exception);
+
+            PlayerData playerData = new PlayerData();
+            playerData.playerID = playerID;
+            return playerData;
         }
     }
 
-    @Override
-    PlayerData getPlayerDataFromStorage(UUID playerID)
+    //reads a player's data without blocking the calling thread
+    public CompletableFuture<PlayerData> getPlayerDataFromStorageAsync(UUID playerID)
+    {
+        return this.connectionPool.supplyAsync(connection -> this.readPlayerData(connection, playerID));
+    }
+
+    private PlayerData readPlayerData(Connection connection, UUID playerID) throws SQLException
     {
         PlayerData playerData = new PlayerData();
         playerData.playerID = playerID;
 
-        try (PreparedStatement selectStmnt = this.databaseConnection.prepareStatement(SQL_SELECT_PLAYER_DATA))
+        try (PreparedStatement selectStmnt = connection.prepareStatement(SQL_SELECT_PLAYER_DATA))
         {
             selectStmnt.setString(1, playerID.toString());
             ResultSet results = selectStmnt.executeQuery();
@@ -526,12 +1051,6 @@ public class DatabaseDataStore extends DataStore
                 playerData.setBonusClaimBlocks(results.getInt("bonusblocks"));
             }
         }
-        catch (SQLException e)
-        {
-            StringWriter errors = new StringWriter();
-            e.printStackTrace(new PrintWriter(errors));
-            GriefPrevention.AddLogEntry(playerID + " " + errors, CustomLogEntryTypes.Exception);
-        }
 
         return playerData;
     }
@@ -548,28 +1067,24 @@ public class DatabaseDataStore extends DataStore
 
     private void savePlayerData(String playerID, PlayerData playerData)
     {
-        try (PreparedStatement deleteStmnt = this.databaseConnection.prepareStatement(SQL_DELETE_PLAYER_DATA);
-             PreparedStatement insertStmnt = this.databaseConnection.prepareStatement(SQL_INSERT_PLAYER_DATA))
+        //read everything now, the write happens later on another thread
+        OfflinePlayer player = Bukkit.getOfflinePlayer(UUID.fromString(playerID));
+        SimpleDateFormat sqlFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        String dateString = sqlFormat.format(new Date(player.getLastPlayed()));
+        int accruedBlocks = playerData.getAccruedClaimBlocks();
+        int bonusBlocks = playerData.getBonusClaimBlocks();
+
+        this.writeAsync(connection ->
         {
-            OfflinePlayer player = Bukkit.getOfflinePlayer(UUID.fromString(playerID));
-
-            SimpleDateFormat sqlFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            String dateString = sqlFormat.format(new Date(player.getLastPlayed()));
-            deleteStmnt.setString(1, playerID);
-            deleteStmnt.executeUpdate();
-
-            insertStmnt.setString(1, playerID);
-            insertStmnt.setString(2, dateString);
-            insertStmnt.setInt(3, playerData.getAccruedClaimBlocks());
-            insertStmnt.setInt(4, playerData.getBonusClaimBlocks());
-            insertStmnt.executeUpdate();
-        }
-        catch (SQLException e)
+            this.upsertPlayerData(connection, playerID, dateString, accruedBlocks, bonusBlocks);
+            return null;
+        }).exceptionally(e ->
         {
             StringWriter errors = new StringWriter();
             e.printStackTrace(new PrintWriter(errors));
             GriefPrevention.AddLogEntry(playerID + " " + errors, CustomLogEntryTypes.Exception);
-        }
+            return null;
+        });
     }
 
     @Override
@@ -579,107 +1094,118 @@ public class DatabaseDataStore extends DataStore
     }
 
     //sets the next claim ID.  used by incrementNextClaimID() above, and also while migrating data from a flat file data store
+    @Override
     synchronized void setNextClaimID(long nextID)
     {
         this.nextClaimID = nextID;
 
-        try (PreparedStatement deleteStmnt = this.databaseConnection.prepareStatement(SQL_DELETE_NEXT_CLAIM_ID);
-             PreparedStatement insertStmnt = this.databaseConnection.prepareStatement(SQL_SET_NEXT_CLAIM_ID))
+        this.writeAsync(connection ->
         {
-            deleteStmnt.execute();
-            insertStmnt.setLong(1, nextID);
-            insertStmnt.executeUpdate();
-        }
-        catch (SQLException e)
+            //the table holds a single row
+            try (PreparedStatement updateStmnt = connection.prepareStatement(SQL_UPDATE_NEXT_CLAIM_ID))
+            {
+                updateStmnt.setLong(1, nextID);
+                if (updateStmnt.executeUpdate() > 0) return null;
+            }
+
+            try (PreparedStatement insertStmnt = connection.prepareStatement(SQL_INSERT_NEXT_CLAIM_ID))
+            {
+                insertStmnt.setLong(1, nextID);
+                insertStmnt.executeUpdate();
+            }
+            return null;
+        }).exceptionally(e ->
         {
             GriefPrevention.AddLogEntry("Unable to set next claim ID to " + nextID + ".  Details:");
             GriefPrevention.AddLogEntry(e.getMessage());
-        }
+            return null;
+        });
     }
 
     //updates the database with a group's bonus blocks
     @Override
-    synchronized void saveGroupBonusBlocks(String groupName, int currentValue)
+    void saveGroupBonusBlocks(String groupName, int currentValue)
     {
         //group bonus blocks are stored in the player data table, with player name = $groupName
-        try (PreparedStatement deleteStmnt = this.databaseConnection.prepareStatement(SQL_DELETE_GROUP_DATA);
-             PreparedStatement insertStmnt = this.databaseConnection.prepareStatement(SQL_INSERT_PLAYER_DATA))
-        {
-            SimpleDateFormat sqlFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            String dateString = sqlFormat.format(new Date());
-            deleteStmnt.setString(1, '$' + groupName);
-            deleteStmnt.executeUpdate();
+        SimpleDateFormat sqlFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        String dateString = sqlFormat.format(new Date());
 
-            insertStmnt.setString(1, '$' + groupName);
-            insertStmnt.setString(2, dateString);
-            insertStmnt.setInt(3, 0);
-            insertStmnt.setInt(4, currentValue);
-            insertStmnt.executeUpdate();
-        }
-        catch (SQLException e)
+        this.writeAsync(connection ->
+        {
+            this.upsertPlayerData(connection, '$' + groupName, dateString, 0, currentValue);
+            return null;
+        }).exceptionally(e ->
         {
             GriefPrevention.AddLogEntry("Unable to save data for group " + groupName + ".  Details:");
             GriefPrevention.AddLogEntry(e.getMessage());
-        }
+            return null;
+        });
     }
 
-    @Override
-    synchronized void close()
+    //updates a player data row, or adds it if there isn't one yet
+    private void upsertPlayerData(Connection connection, String name, String dateString, int accruedBlocks, int bonusBlocks) throws SQLException
     {
-        if (this.databaseConnection != null)
+        try (PreparedStatement updateStmnt = connection.prepareStatement(SQL_UPDATE_PLAYER_DATA))
         {
-            try
-            {
-                if (!this.databaseConnection.isClosed())
-                {
-                    this.databaseConnection.close();
-                }
-            }
-            catch (SQLException ignored) {}
+            updateStmnt.setString(1, dateString);
+            updateStmnt.setInt(2, accruedBlocks);
+            updateStmnt.setInt(3, bonusBlocks);
+            updateStmnt.setString(4, name);
+            if (updateStmnt.executeUpdate() > 0) return;
         }
 
-        this.databaseConnection = null;
+        try (PreparedStatement insertStmnt = connection.prepareStatement(SQL_INSERT_PLAYER_DATA))
+        {
+            insertStmnt.setString(1, name);
+            insertStmnt.setString(2, dateString);
+            insertStmnt.setInt(3, accruedBlocks);
+            insertStmnt.setInt(4, bonusBlocks);
+            insertStmnt.executeUpdate();
+        }
     }
 
-    private synchronized void refreshDataConnection() throws SQLException
+    //queues a write behind all earlier queued writes.  the returned future completes when the write has been made
+    synchronized <T> CompletableFuture<Void> writeAsync(ConnectionPool.SqlFunction<T> operation)
     {
-        if (this.databaseConnection == null || !this.databaseConnection.isValid(3))
-        {
-            if (this.databaseConnection != null && !this.databaseConnection.isClosed())
-            {
-                this.databaseConnection.close();
-            }
+        CompletableFuture<Void> write = this.pendingWrites
+                .thenCompose(ignored -> this.connectionPool.supplyAsync(operation))
+                .thenApply(ignored -> null);
 
-            //set username/pass properties
-            Properties connectionProps = new Properties();
-            connectionProps.put("user", this.userName);
-            connectionProps.put("password", this.password);
-            connectionProps.put("autoReconnect", "true");
-            connectionProps.put("maxReconnects", String.valueOf(Integer.MAX_VALUE));
+        //a failed write mustn't hold up the ones queued after it
+        this.pendingWrites = write.exceptionally(e -> null);
+        return write;
+    }
 
-            //establish connection
-            this.databaseConnection = DriverManager.getConnection(this.databaseUrl, connectionProps);
+    @Override
+    void close()
+    {
+        //let queued writes finish before the pool stops accepting work
+        CompletableFuture<Void> pendingWrites;
+        synchronized (this)
+        {
+            pendingWrites = this.pendingWrites;
         }
+        pendingWrites.join();
+
+        this.connectionPool.close();
     }
 
     @Override
     protected int getSchemaVersionFromStorage()
     {
-        try (PreparedStatement selectStmnt = this.databaseConnection.prepareStatement(SQL_SELECT_SCHEMA_VERSION))
+        Integer version;
+        try
         {
-            ResultSet results = selectStmnt.executeQuery();
-
-            //if there's nothing yet, assume 0 and add it
-            if (!results.next())
+            version = this.connectionPool.execute(connection ->
             {
-                this.setSchemaVersion(0);
-                return 0;
-            }
-            //otherwise return the value that's in the table
-            else
-            {
-                return results.getInt("version");
-            }
+                try (PreparedStatement selectStmnt = connection.prepareStatement(SQL_SELECT_SCHEMA_VERSION))
+                {
+                    ResultSet results = selectStmnt.executeQuery();
+
+                    //return the value that's in the table, if any
+                    return results.next() ? results.getInt("version") : null;
+                }
+            });
         }
         catch (SQLException e)
         {
@@ -688,18 +1214,38 @@ public class DatabaseDataStore extends DataStore
             e.printStackTrace();
             return 0;
         }
+
+        //if there's nothing yet, assume 0 and add it
+        if (version == null)
+        {
+            this.setSchemaVersion(0);
+            return 0;
+        }
+
+        return version;
     }
 
     @Override
     protected void updateSchemaVersionInStorage(int versionToSet)
     {
-        try (PreparedStatement deleteStmnt = this.databaseConnection.prepareStatement(SQL_DELETE_SCHEMA_VERSION);
-             PreparedStatement insertStmnt = this.databaseConnection.prepareStatement(SQL_INSERT_SCHEMA_VERSION))
+        try
         {
-            deleteStmnt.execute();
+            this.connectionPool.execute(connection ->
+            {
+                //the table holds a single row
+                try (PreparedStatement updateStmnt = connection.prepareStatement(SQL_UPDATE_SCHEMA_VERSION))
+                {
+                    updateStmnt.setInt(1, versionToSet);
+                    if (updateStmnt.executeUpdate() > 0) return null;
+                }
 
-            insertStmnt.setInt(1, versionToSet);
-            insertStmnt.executeUpdate();
+                try (PreparedStatement insertStmnt = connection.prepareStatement(SQL_INSERT_SCHEMA_VERSION))
+                {
+                    insertStmnt.setInt(1, versionToSet);
+                    insertStmnt.executeUpdate();
+                }
+                return null;
+            });
         }
         catch (SQLException e)
         {
@@ -708,19 +1254,38 @@ public class DatabaseDataStore extends DataStore
         }
     }
 
-    /**
-     * Concats an array to a string divided with the ; sign
-     *
-     * @param input List with strings to concat
-     * @return String with all values from input array
-     */
-    private String storageStringBuilder(List<String> input)
+    //gets the version of the database's own tables, 0 for tables from before they were versioned
+    //unlike the schema version, errors are thrown, because guessing wrong could migrate claims again from the old table
+    int getTableVersion() throws SQLException
     {
-        StringBuilder sb = new StringBuilder();
-        for (String string : input) {
-            sb.append(string).append(";");
-        }
-        return sb.toString();
+        return this.connectionPool.execute(connection ->
+        {
+            try (PreparedStatement selectStmnt = connection.prepareStatement(SQL_SELECT_TABLE_VERSION))
+            {
+                ResultSet results = selectStmnt.executeQuery();
+                return results.next() ? results.getInt("version") : 0;
+            }
+        });
+    }
+
+    void setTableVersion(int versionToSet) throws SQLException
+    {
+        this.connectionPool.execute(connection ->
+        {
+            //the table holds a single row
+            try (PreparedStatement updateStmnt = connection.prepareStatement(SQL_UPDATE_TABLE_VERSION))
+            {
+                updateStmnt.setInt(1, versionToSet);
+                if (updateStmnt.executeUpdate() > 0) return null;
+            }
+
+            try (PreparedStatement insertStmnt = connection.prepareStatement(SQL_INSERT_TABLE_VERSION))
+            {
+                insertStmnt.setInt(1, versionToSet);
+                insertStmnt.executeUpdate();
+            }
+            return null;
+        });
     }
 
 }
@@ -18,6 +18,7 @@
 
 package me.ryanhamshire.GriefPrevention;
 
+import com.griefprevention.events.EventDispatch;
 import me.ryanhamshire.GriefPrevention.events.AccrueClaimBlocksEvent;
 import org.bukkit.entity.Player;
 
@@ -76,24 +77,39 @@ class DeliverClaimBlocksTask implements Runnable
             //determine how fast blocks accrue for this player; can be modified by addons
             int accrualRate = instance.config_claims_blocksAccruedPerHour_default;
 
-            //fire event for addons
-            AccrueClaimBlocksEvent event = new AccrueClaimBlocksEvent(player, accrualRate, isIdle);
-            instance.getServer().getPluginManager().callEvent(event);
-            if (event.isCancelled())
+            //fire event for addons, or apply its defaults if no addon listens
+            int blocksToAccrue;
+            if (EventDispatch.hasListeners(AccrueClaimBlocksEvent.getHandlerList()))
             {
-                //event is initialized as canceled if player is idle
-                if (event.isIdle())
+                AccrueClaimBlocksEvent event = new AccrueClaimBlocksEvent(player, accrualRate, isIdle);
+                instance.getServer().getPluginManager().callEvent(event);
+                if (event.isCancelled())
+                {
+                    //event is initialized as canceled if player is idle
+                    if (event.isIdle())
+                        GriefPrevention.AddLogEntry(player.getName() + " wasn't active enough to accrue claim blocks this round.", CustomLogEntryTypes.Debug, true);
+                    else
+                        GriefPrevention.AddLogEntry(player.getName() + " claim block delivery was canceled by another plugin.", CustomLogEntryTypes.Debug, true);
+                    return; //event was cancelled
+                }
+                blocksToAccrue = event.getBlocksToAccrue();
+            }
+            else
+            {
+                if (isIdle)
+                {
                     GriefPrevention.AddLogEntry(player.getName() + " wasn't active enough to accrue claim blocks this round.", CustomLogEntryTypes.Debug, true);
-                else
-                    GriefPrevention.AddLogEntry(player.getName() + " claim block delivery was canceled by another plugin.", CustomLogEntryTypes.Debug, true);
-                return; //event was cancelled
+                    return;
+                }
+                //same rate the event would start with, delivered 6 times per hour
+                blocksToAccrue = accrualRate / 6;
             }
 
             //set actual accrual
-            accrualRate = event.getBlocksToAccrue();
+            accrualRate = blocksToAccrue;
             if (accrualRate < 0) accrualRate = 0;
             playerData.accrueBlocks(accrualRate);
-            GriefPrevention.AddLogEntry("Delivering " + event.getBlocksToAccrue() + " blocks to " + player.getName(), CustomLogEntryTypes.Debug, true);
+            GriefPrevention.AddLogEntry("Delivering " + blocksToAccrue + " blocks to " + player.getName(), CustomLogEntryTypes.Debug, true);
 
             //intentionally NOT saving data here to reduce overall secondary storage access frequency
             //many other operations will cause this player's data to save, including his eventual logout
@@ -4,6 +4,7 @@ import me.ryanhamshire.GriefPrevention.events.PreventPvPEvent;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.NamespacedKey;
+import org.bukkit.block.Block;
 import org.bukkit.entity.AnimalTamer;
 import org.bukkit.entity.Animals;
 import org.bukkit.entity.AreaEffectCloud;
@@ -54,6 +55,7 @@ import org.jetbrains.annotations.Nullable;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
@@ -927,6 +929,10 @@ public class EntityDamageHandler implements Listener
         else thrower = null;
         AtomicBoolean messagedPlayer = new AtomicBoolean(false);
 
+        // Claimed villagers and animals are looked up together, and only if a potion can grief them.
+        List<LivingEntity> protectable = null;
+        List<Claim> protectableClaims = null;
+
         Collection<PotionEffect> effects = potion.getEffects();
         for (PotionEffect effect : effects)
         {
@@ -936,41 +942,50 @@ public class EntityDamageHandler implements Listener
             // Griefers could use potions to kill entities or steal them over fences.
             if (GRIEF_EFFECTS.contains(effectType))
             {
-                Claim cachedClaim = null;
-                for (LivingEntity affected : event.getAffectedEntities())
+                if (protectable == null)
                 {
-                    // Always impact the thrower.
-                    if (affected == thrower) continue;
-
-                    if (affected.getType() == EntityType.VILLAGER || affected instanceof Animals)
+                    protectable = new ArrayList<>();
+                    List<Block> positions = new ArrayList<>();
+                    for (LivingEntity affected : event.getAffectedEntities())
                     {
-                        Claim claim = this.dataStore.getClaimAt(affected.getLocation(), false, cachedClaim);
-                        if (claim != null)
+                        // Always impact the thrower.
+                        if (affected == thrower) continue;
+
+                        if (affected.getType() == EntityType.VILLAGER || affected instanceof Animals)
                         {
-                            cachedClaim = claim;
+                            protectable.add(affected);
+                            positions.add(affected.getLocation().getBlock());
+                        }
+                    }
+                    protectableClaims = this.dataStore.getClaimsAt(positions, false, false);
+                }
 
-                            if (thrower == null)
-                            {
-                                // Non-player source: Witches, dispensers, etc.
-                                if (!EntityEventHandler.isBlockSourceInClaim(projectileSource, claim))
-                                {
-                                    // If the source is not a block in the same claim as the affected entity, disallow.
-                                    event.setIntensity(affected, 0);
-                                }
-                            }
-                            else
+                for (int i = 0; i < protectable.size(); i++)
+                {
+                    LivingEntity affected = protectable.get(i);
+                    Claim claim = protectableClaims.get(i);
+                    if (claim == null) continue;
+
+                    if (thrower == null)
+                    {
+                        // Non-player source: Witches, dispensers, etc.
+                        if (!EntityEventHandler.isBlockSourceInClaim(projectileSource, claim))
+                        {
+                            // If the source is not a block in the same claim as the affected entity, disallow.
+                            event.setIntensity(affected, 0);
+                        }
+                    }
+                    else
+                    {
+                        // Source is a player. Determine if they have permission to access entities in the claim.
+                        Supplier<String> override = () -> instance.dataStore.getMessage(Messages.NoDamageClaimedEntity, claim.getOwnerName());
+                        final Supplier<String> noContainersReason = claim.checkPermission(thrower, ClaimPermission.Inventory, event, override);
+                        if (noContainersReason != null)
+                        {
+                            event.setIntensity(affected, 0);
+                            if (messagedPlayer.compareAndSet(false, true))
                             {
-                                // Source is a player. Determine if they have permission to access entities in the claim.
-                                Supplier<String> override = () -> instance.dataStore.getMessage(Messages.NoDamageClaimedEntity, claim.getOwnerName());
-                                final Supplier<String> noContainersReason = claim.checkPermission(thrower, ClaimPermission.Inventory, event, override);
-                                if (noContainersReason != null)
-                                {
-                                    event.setIntensity(affected, 0);
-                                    if (messagedPlayer.compareAndSet(false, true))
-                                    {
-                                        GriefPrevention.sendMessage(thrower, TextMode.Err, noContainersReason.get());
-                                    }
-                                }
+                                GriefPrevention.sendMessage(thrower, TextMode.Err, noContainersReason.get());
                             }
                         }
                     }
@@ -71,7 +71,9 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.function.Supplier;
@@ -423,38 +425,47 @@ public class EntityEventHandler implements Listener
             }
         }
 
-        List<Block> removed = new ArrayList<>();
-        Claim cachedClaim = playerData != null ? playerData.lastClaim : null;
+        Claim lastClaim = null;
+        boolean lastDenied = false;
+        // A claim's decision is the same for every block in it, so only check each claim once.
+        Map<Claim, Boolean> deniedByClaim = new IdentityHashMap<>();
+        List<Claim> claims = this.dataStore.getClaimsAt(blocks, false, false);
 
-        for (Block block : blocks)
+        // Filter in place, keeping allowed blocks in their original order.
+        int kept = 0;
+        for (int i = 0; i < blocks.size(); i++)
         {
-            // Always ignore air blocks.
-            if (block.getType().isAir()) continue;
-
-            Claim claim = this.dataStore.getClaimAt(block.getLocation(), false, cachedClaim);
-
-            // Is it in a land claim?
-            if (claim == null) continue;
+            Block block = blocks.get(i);
+            Claim claim = claims.get(i);
 
-            cachedClaim = claim;
-
-            if (player == null)
+            // Always ignore air blocks and blocks outside of land claims.
+            if (claim != null && !block.getType().isAir())
             {
-                // If the source is not part of the claim, prevent interaction.
-                if (!isBlockSourceInClaim(source, claim))
-                    removed.add(block);
-                continue;
+                if (claim != lastClaim)
+                {
+                    Boolean denied = deniedByClaim.get(claim);
+                    if (denied == null)
+                    {
+                        // If the source is not part of the claim, prevent interaction.
+                        // If the player is not allowed to interact with blocks, prevent interaction.
+                        denied = player == null
+                                ? !isBlockSourceInClaim(source, claim)
+                                : claim.checkPermission(player, ClaimPermission.Access, event) != null;
+                        deniedByClaim.put(claim, denied);
+                    }
+                    lastClaim = claim;
+                    lastDenied = denied;
+                }
+
+                if (lastDenied) continue;
             }
 
-            // If the player is not allowed to interact with blocks, prevent interaction.
-            if (claim.checkPermission(player, ClaimPermission.Access, event) != null)
-                removed.add(block);
+            blocks.set(kept++, block);
         }
+        blocks.subList(kept, blocks.size()).clear();
 
-        if (playerData != null && cachedClaim != null)
-            playerData.lastClaim = cachedClaim;
-
-        blocks.removeAll(removed);
+        if (playerData != null && lastClaim != null)
+            playerData.lastClaim = lastClaim;
     }
 
     void handleExplosion(@NotNull Location location, @Nullable Entity entity, @NotNull List<Block> blocks)
@@ -472,49 +483,34 @@ public class EntityEventHandler implements Listener
         //special rule for creative worlds: explosions don't destroy anything
         if (GriefPrevention.instance.creativeRulesApply(location.getWorld()))
         {
-            for (int i = 0; i < blocks.size(); i++)
-            {
-                blocks.remove(i--);
-            }
-
+            blocks.clear();
             return;
         }
 
-        //make a list of blocks which were allowed to explode
-        List<Block> explodedBlocks = new ArrayList<>();
-        Claim cachedClaim = null;
-        for (Block block : blocks)
+        boolean claimExplosionsAllowed = !GriefPrevention.instance.config_blockClaimExplosions;
+        int surfaceY = GriefPrevention.instance.getSeaLevel(world) - 7;
+
+        //keep only the blocks which are allowed to explode, filtering in place
+        List<Claim> claims = this.dataStore.getClaimsAt(blocks, false, false);
+        int kept = 0;
+        for (int i = 0; i < blocks.size(); i++)
         {
+            Block block = blocks.get(i);
+
             //always ignore air blocks
             if (block.getType().isAir()) continue;
 
-            //is it in a land claim?
-            Claim claim = this.dataStore.getClaimAt(block.getLocation(), false, cachedClaim);
-            if (claim != null)
-            {
-                cachedClaim = claim;
-            }
+            Claim claim = claims.get(i);
 
-            //if yes, apply claim exemptions if they should apply
-            if (claim != null && (claim.areExplosivesAllowed || !GriefPrevention.instance.config_blockClaimExplosions))
-            {
-                explodedBlocks.add(block);
-                continue;
-            }
+            //if in a land claim, apply claim exemptions if they should apply
+            //if not, then consider surface rules
+            boolean allowed = claim != null
+                    ? claim.areExplosivesAllowed || claimExplosionsAllowed
+                    : !applySurfaceRules || block.getY() < surfaceY;
 
-            //if no, then also consider surface rules
-            if (claim == null)
-            {
-                if (!applySurfaceRules || block.getLocation().getBlockY() < GriefPrevention.instance.getSeaLevel(world) - 7)
-                {
-                    explodedBlocks.add(block);
-                }
-            }
+            if (allowed) blocks.set(kept++, block);
         }
-
-        //clear original damage list and replace with allowed damage list
-        blocks.clear();
-        blocks.addAll(explodedBlocks);
+        blocks.subList(kept, blocks.size()).clear();
     }
 
     //when an item spawns...
@@ -30,8 +30,12 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
+import java.util.stream.IntStream;
 
 //manages data stored in the file system
 public class FlatFileDataStore extends DataStore
@@ -39,6 +43,11 @@ public class FlatFileDataStore extends DataStore
     private final static String claimDataFolderPath = dataLayerFolderPath + File.separator + "ClaimData";
     private final static String nextClaimIdFilePath = claimDataFolderPath + File.separator + "_nextClaimID";
     private final static String schemaVersionFilePath = dataLayerFolderPath + File.separator + "_schemaVersion";
+    private final static String snapshotFilePath = dataLayerFolderPath + File.separator + "claims.snapshot";
+    private final static String snapshotJournalFolderPath = dataLayerFolderPath + File.separator + "ClaimSnapshotJournal";
+
+    //lets a clean restart skip reading every claim file
+    private final ClaimSnapshot snapshot = new ClaimSnapshot(new File(snapshotFilePath), new File(snapshotJournalFolderPath).toPath(), "FlatFile");
 
     static boolean hasData()
     {
@@ -53,6 +62,12 @@ public class FlatFileDataStore extends DataStore
         this.initialize();
     }
 
+    //a data store which hasn't loaded anything yet, for tests which load claim files themselves
+    FlatFileDataStore(boolean initialize) throws Exception
+    {
+        if (initialize) this.initialize();
+    }
+
     @Override
     void initialize() throws Exception
     {
@@ -188,17 +203,26 @@ public class FlatFileDataStore extends DataStore
             }
         }
 
-        //load claims data into memory
-        //get a list of all the files in the claims data folder
-        files = claimDataFolder.listFiles();
-
-        if (this.getSchemaVersion() <= 1)
+        //load claims data into memory, from the shutdown snapshot if there's a usable one
+        if (newDataStore || this.getSchemaVersion() <= 1 || !this.snapshot.load(this, this.getSchemaVersion(), claimDataFolder, Bukkit.getServer().getWorlds()))
         {
-            this.loadClaimData_Legacy(files);
-        }
-        else
-        {
-            this.loadClaimData(files);
+            //the claim files are the only source of truth now, so start over with an empty journal
+            this.snapshot.reset();
+
+            //get a list of all the files in the claims data folder
+            files = claimDataFolder.listFiles();
+
+            if (this.getSchemaVersion() <= 1)
+            {
+                this.loadClaimData_Legacy(files);
+
+                //legacy files are converted as they load, so let the next startup read the converted files
+                this.snapshot.markIncomplete();
+            }
+            else
+            {
+                this.loadClaimData(files);
+            }
         }
 
         super.initialize();
@@ -390,7 +414,11 @@ public class FlatFileDataStore extends DataStore
 
     void loadClaimData(File[] files) throws Exception
     {
-        ConcurrentHashMap<Claim, Long> orphans = new ConcurrentHashMap<>();
+        long startTime = System.nanoTime();
+
+        //list the claim files and their IDs
+        List<File> claimFiles = new ArrayList<>(files.length);
+        List<Long> claimIDs = new ArrayList<>(files.length);
         for (int i = 0; i < files.length; i++)
         {
             if (files[i].isFile())  //avoids folders
@@ -424,37 +452,71 @@ public class FlatFileDataStore extends DataStore
                     files[i] = newFile;
                 }
 
-                try
+                claimFiles.add(files[i]);
+                claimIDs.add(claimID);
+            }
+        }
+
+        long listedTime = System.nanoTime();
+
+        //read and parse the files in parallel, parsing doesn't touch the data store
+        List<World> validWorlds = Bukkit.getServer().getWorlds();
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), claimFiles.size()));
+        ForkJoinPool pool = new ForkJoinPool(threads, forkJoinPool ->
+        {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("GriefPrevention Claim Loader " + thread.getPoolIndex());
+            //parsing may resolve classes through the context class loader, which must be the plugin's
+            thread.setContextClassLoader(FlatFileDataStore.class.getClassLoader());
+            return thread;
+        }, null, false);
+        List<LoadedClaim> loadedClaims;
+        try
+        {
+            loadedClaims = pool.submit(() -> IntStream.range(0, claimFiles.size()).parallel()
+                    .mapToObj(i -> this.readClaimFile(claimFiles.get(i), claimIDs.get(i), validWorlds))
+                    .toList()).get();
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        long parsedTime = System.nanoTime();
+
+        //add top level claims in file order, and log any problems on this thread so messages aren't interleaved
+        ConcurrentHashMap<Claim, Long> orphans = new ConcurrentHashMap<>();
+        for (LoadedClaim loaded : loadedClaims)
+        {
+            if (loaded.error() != null)
+            {
+                //a snapshot of memory would lose this claim's file
+                this.snapshot.markIncomplete();
+
+                Exception e = loaded.error();
+                if (e.getMessage() != null && e.getMessage().contains("World not found"))
                 {
-                    ArrayList<Long> out_parentID = new ArrayList<>();  //hacky output parameter
-                    Claim claim = this.loadClaim(files[i], out_parentID, claimID);
-                    if (out_parentID.isEmpty() || out_parentID.get(0) == -1)
-                    {
-                        this.addClaim(claim, false);
-                    }
-                    else
-                    {
-                        orphans.put(claim, out_parentID.get(0));
-                    }
+                    GriefPrevention.AddLogEntry("Failed to load a claim (ID:" + loaded.claimID() + ") because its world isn't loaded (yet?).  If this is not expected, delete this claim.");
                 }
-
-                //if there's any problem with the file's content, log an error message and skip it
-                catch (Exception e)
+                else
                 {
-                    if (e.getMessage() != null && e.getMessage().contains("World not found"))
-                    {
-                        GriefPrevention.AddLogEntry("Failed to load a claim (ID:" + claimID + ") because its world isn't loaded (yet?).  If this is not expected, delete this claim.");
-                    }
-                    else
-                    {
-                        StringWriter errors = new StringWriter();
-                        e.printStackTrace(new PrintWriter(errors));
-                        GriefPrevention.AddLogEntry(files[i].getName() + " " + errors, CustomLogEntryTypes.Exception);
-                    }
+                    StringWriter errors = new StringWriter();
+                    e.printStackTrace(new PrintWriter(errors));
+                    GriefPrevention.AddLogEntry(loaded.file().getName() + " " + errors, CustomLogEntryTypes.Exception);
                 }
             }
+            else if (loaded.parentID() == -1)
+            {
+                this.addClaim(loaded.claim(), false);
+            }
+            else
+            {
+                orphans.put(loaded.claim(), loaded.parentID());
+            }
         }
 
+        long indexedTime = System.nanoTime();
+
         //link children to parents
         for (Claim child : orphans.keySet())
         {
@@ -464,11 +526,51 @@ public class FlatFileDataStore extends DataStore
                 child.parent = parent;
                 this.addClaim(child, false);
             }
+            else
+            {
+                this.snapshot.markIncomplete();
+            }
+        }
+
+        long linkedTime = System.nanoTime();
+
+        GriefPrevention.AddLogEntry(String.format("Loaded %d claim files in %dms (listing %dms, parsing %dms on %d threads, indexing %dms, subdivision linking %dms).",
+                claimFiles.size(),
+                TimeUnit.NANOSECONDS.toMillis(linkedTime - startTime),
+                TimeUnit.NANOSECONDS.toMillis(listedTime - startTime),
+                TimeUnit.NANOSECONDS.toMillis(parsedTime - listedTime),
+                threads,
+                TimeUnit.NANOSECONDS.toMillis(indexedTime - parsedTime),
+                TimeUnit.NANOSECONDS.toMillis(linkedTime - indexedTime)));
+    }
+
+    //the result of reading a single claim file, which is either a claim or the reason it couldn't be loaded
+    private record LoadedClaim(File file, long claimID, Claim claim, long parentID, Exception error) {}
+
+    //reads and parses a claim file without touching the data store, so it is safe to call from any thread
+    private LoadedClaim readClaimFile(File file, long claimID, List<World> validWorlds)
+    {
+        try
+        {
+            ArrayList<Long> out_parentID = new ArrayList<>();  //hacky output parameter
+            Claim claim = this.loadClaim(file, out_parentID, claimID, validWorlds);
+            long parentID = out_parentID.isEmpty() ? -1 : out_parentID.get(0);
+            return new LoadedClaim(file, claimID, claim, parentID, null);
         }
 
+        //if there's any problem with the file's content, report it to the loading thread
+        catch (Exception e)
+        {
+            return new LoadedClaim(file, claimID, null, -1, e);
+        }
     }
 
     Claim loadClaim(File file, ArrayList<Long> out_parentID, long claimID) throws IOException, InvalidConfigurationException, Exception
+    {
+        return this.loadClaim(file, out_parentID, claimID, Bukkit.getServer().getWorlds());
+    }
+
+    Claim loadClaim(File file, ArrayList<Long> out_parentID, long claimID, List<World> validWorlds) throws IOException, InvalidConfigurationException, Exception
     {
         List<String> lines = Files.readLines(file, StandardCharsets.UTF_8);
         StringBuilder builder = new StringBuilder();
@@ -477,7 +579,7 @@ public class FlatFileDataStore extends DataStore
             builder.append(line).append('\n');
         }
 
-        return this.loadClaim(builder.toString(), out_parentID, file.lastModified(), claimID, Bukkit.getServer().getWorlds());
+        return this.loadClaim(builder.toString(), out_parentID, file.lastModified(), claimID, validWorlds);
     }
 
     Claim loadClaim(String input, ArrayList<Long> out_parentID, long lastModifiedDate, long claimID, List<World> validWorlds) throws InvalidConfigurationException, Exception
@@ -583,36 +685,31 @@ public class FlatFileDataStore extends DataStore
         return yaml.saveToString();
     }
 
+    //claim writes are serialized on the claim write queue's thread, and each claim is its own file
     @Override
-    synchronized void writeClaimToStorage(Claim claim)
+    void writeClaimToStorage(Claim claim) throws IOException
     {
         String claimID = String.valueOf(claim.id);
 
         String yaml = this.getYamlForClaim(claim);
 
-        try
-        {
-            //open the claim's file
-            File claimFile = new File(claimDataFolderPath + File.separator + claimID + ".yml");
-            claimFile.createNewFile();
-            Files.write(yaml.getBytes(StandardCharsets.UTF_8), claimFile);
-        }
+        //journal the change first, so the snapshot plus journal is never behind the claim files
+        this.snapshot.journal(claim);
 
-        //if any problem, log it
-        catch (Exception e)
-        {
-            StringWriter errors = new StringWriter();
-            e.printStackTrace(new PrintWriter(errors));
-            GriefPrevention.AddLogEntry(claimID + " " + errors, CustomLogEntryTypes.Exception);
-        }
+        //open the claim's file
+        File claimFile = new File(claimDataFolderPath + File.separator + claimID + ".yml");
+        claimFile.createNewFile();
+        Files.write(yaml.getBytes(StandardCharsets.UTF_8), claimFile);
     }
 
     //deletes a claim from the file system
     @Override
-    synchronized void deleteClaimFromSecondaryStorage(Claim claim)
+    void deleteClaimFromSecondaryStorage(Claim claim)
     {
         String claimID = String.valueOf(claim.id);
 
+        this.snapshot.journalDeletion(claim);
+
         //remove from disk
         File claimFile = new File(claimDataFolderPath + File.separator + claimID + ".yml");
         if (claimFile.exists() && !claimFile.delete())
@@ -815,22 +912,22 @@ public class FlatFileDataStore extends DataStore
         catch (IOException exception) {}
     }
 
-    synchronized void migrateData(DatabaseDataStore databaseStore)
+    synchronized void migrateData(DataStore targetStore)
     {
         //migrate claims
         for (Claim claim : this.claims)
         {
-            databaseStore.addClaim(claim, true);
+            targetStore.addClaim(claim, true);
             for (Claim child : claim.children)
             {
-                databaseStore.addClaim(child, true);
+                targetStore.addClaim(child, true);
             }
         }
 
         //migrate groups
         for (Map.Entry<String, Integer> groupEntry : this.permissionToBonusBlocksMap.entrySet())
         {
-            databaseStore.saveGroupBonusBlocks(groupEntry.getKey(), groupEntry.getValue());
+            targetStore.saveGroupBonusBlocks(groupEntry.getKey(), groupEntry.getValue());
         }
 
         //migrate players
@@ -849,16 +946,24 @@ public class FlatFileDataStore extends DataStore
             if (file.getName().endsWith(".ignore")) continue;
 
             UUID playerID = UUID.fromString(file.getName());
-            databaseStore.savePlayerData(playerID, this.getPlayerData(playerID));
+            targetStore.savePlayerData(playerID, this.getPlayerData(playerID));
             this.clearCachedPlayerData(playerID);
         }
 
         //migrate next claim ID
-        if (this.nextClaimID > databaseStore.nextClaimID)
+        if (this.nextClaimID > targetStore.nextClaimID)
         {
-            databaseStore.setNextClaimID(this.nextClaimID);
+            targetStore.setNextClaimID(this.nextClaimID);
         }
 
+        //make sure every claim is written before the folders are moved
+        this.flushClaimWrites();
+        targetStore.getClaimWriteQueue().flush();
+
+        //the claim files are moving away, so the snapshot must not be loaded instead of them
+        this.snapshot.markIncomplete();
+        this.snapshot.delete();
+
         //rename player and claim data folders so the migration won't run again
         int i = 0;
         File claimsBackupFolder;
@@ -886,8 +991,12 @@ public class FlatFileDataStore extends DataStore
         GriefPrevention.AddLogEntry("When you're satisfied that all your data have been safely migrated, consider deleting those folders.");
     }
 
+    //claim writes are flushed before the data store closes, so memory matches the claim files
     @Override
-    synchronized void close() { }
+    synchronized void close()
+    {
+        this.snapshot.write(new ArrayList<>(this.claims), this.getSchemaVersion());
+    }
 
     @Override
     int getSchemaVersionFromStorage()
@@ -21,9 +21,13 @@ package me.ryanhamshire.GriefPrevention;
 import com.google.common.base.Joiner;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.griefprevention.claims.FluidFlowCache;
 import com.griefprevention.commands.ClaimCommand;
 import com.griefprevention.metrics.MetricsHandler;
+import com.griefprevention.protection.PermissionNodeCache;
 import com.griefprevention.protection.ProtectionHelper;
+import com.griefprevention.storage.ClaimWriteQueue;
+import com.griefprevention.storage.IoScheduler;
 import com.griefprevention.visualization.BoundaryVisualization;
 import com.griefprevention.visualization.VisualizationProviders;
 import com.griefprevention.visualization.VisualizationType;
@@ -222,6 +226,7 @@ public class GriefPrevention extends JavaPlugin
     public boolean config_advanced_fixNegativeClaimblockAmounts;    //whether to attempt to fix negative claim block amounts (some addons cause/assume players can go into negative amounts)
     public int config_advanced_claim_expiration_check_rate;            //How often GP should check for expired claims, amount in seconds
     public int config_advanced_offlineplayer_cache_days;            //Cache players who have logged in within the last x number of days
+    public boolean config_advanced_binaryLogStorage;                //whether to store claims and player data in a binary log instead of YAML files
 
     //custom log settings
     public int config_logs_daysToKeep;
@@ -242,6 +247,7 @@ public class GriefPrevention extends JavaPlugin
     private String databaseUrl;
     private String databaseUserName;
     private String databasePassword;
+    private int databasePoolSize = 3;
 
     // plugin support
     public boolean support_protocollib_enabled;
@@ -295,7 +301,7 @@ public class GriefPrevention extends JavaPlugin
         {
             try
             {
-                DatabaseDataStore databaseStore = new DatabaseDataStore(this.databaseUrl, this.databaseUserName, this.databasePassword);
+                DatabaseDataStore databaseStore = new DatabaseDataStore(this.databaseUrl, this.databaseUserName, this.databasePassword, this.databasePoolSize);
 
                 if (FlatFileDataStore.hasData())
                 {
@@ -335,7 +341,36 @@ public class GriefPrevention extends JavaPlugin
             }
             try
             {
-                this.dataStore = new FlatFileDataStore();
+                if (this.config_advanced_binaryLogStorage)
+                {
+                    BinaryLogDataStore logStore = new BinaryLogDataStore();
+
+                    if (FlatFileDataStore.hasData())
+                    {
+                        GriefPrevention.AddLogEntry("There appears to be some YAML data on the hard drive.  Converting those data to the binary log...");
+                        FlatFileDataStore flatFileStore = new FlatFileDataStore();
+                        this.dataStore = flatFileStore;
+                        flatFileStore.migrateData(logStore);
+                        GriefPrevention.AddLogEntry("Data conversion process complete.");
+                    }
+
+                    this.dataStore = logStore;
+                }
+                else
+                {
+                    FlatFileDataStore flatFileStore = new FlatFileDataStore();
+
+                    if (BinaryLogDataStore.hasData())
+                    {
+                        GriefPrevention.AddLogEntry("There appears to be a binary claim log on the hard drive.  Converting those data to YAML files...");
+                        BinaryLogDataStore logStore = new BinaryLogDataStore();
+                        this.dataStore = logStore;
+                        logStore.migrateData(flatFileStore);
+                        GriefPrevention.AddLogEntry("Data conversion process complete.");
+                    }
+
+                    this.dataStore = flatFileStore;
+                }
             }
             catch (Exception e)
             {
@@ -345,7 +380,10 @@ public class GriefPrevention extends JavaPlugin
             }
         }
 
-        String dataMode = (this.dataStore instanceof FlatFileDataStore) ? "(File Mode)" : "(Database Mode)";
+        String dataMode;
+        if (this.dataStore instanceof FlatFileDataStore) dataMode = "(File Mode)";
+        else if (this.dataStore instanceof BinaryLogDataStore) dataMode = "(Binary Log Mode)";
+        else dataMode = "(Database Mode)";
         AddLogEntry("Finished loading data " + dataMode + ".");
 
         //unless claim block accrual is disabled, start the recurring per 10 minute event to give claim blocks to online players
@@ -385,6 +423,9 @@ public class GriefPrevention extends JavaPlugin
         entityDamageHandler = new EntityDamageHandler(this.dataStore, this);
         pluginManager.registerEvents(entityDamageHandler, this);
 
+        //world events
+        pluginManager.registerEvents(new WorldEventHandler(this.dataStore), this);
+
         //packet listeners
         if (support_protocollib_enabled) {
             packetListeners = new PacketListeners();
@@ -393,16 +434,14 @@ public class GriefPrevention extends JavaPlugin
 
         //cache offline players
         OfflinePlayer[] offlinePlayers = this.getServer().getOfflinePlayers();
-        CacheOfflinePlayerNamesThread namesThread = new CacheOfflinePlayerNamesThread(offlinePlayers, this.playerNameToIDMap);
-        namesThread.setPriority(Thread.MIN_PRIORITY);
-        namesThread.start();
+        this.dataStore.getIoScheduler().submit(null, new CacheOfflinePlayerNames(offlinePlayers, this.playerNameToIDMap));
 
         //load ignore lists for any already-online players
         @SuppressWarnings("unchecked")
         Collection<Player> players = (Collection<Player>) GriefPrevention.instance.getServer().getOnlinePlayers();
         for (Player player : players)
         {
-            new IgnoreLoaderThread(player.getUniqueId(), this.dataStore.getPlayerData(player.getUniqueId()).ignoredPlayers).start();
+            this.dataStore.loadIgnoredPlayers(player.getUniqueId(), this.dataStore.getPlayerData(player.getUniqueId()));
         }
 
         setUpCommands();
@@ -718,6 +757,7 @@ public class GriefPrevention extends JavaPlugin
         this.config_advanced_fixNegativeClaimblockAmounts = config.getBoolean("GriefPrevention.Advanced.fixNegativeClaimblockAmounts", true);
         this.config_advanced_claim_expiration_check_rate = config.getInt("GriefPrevention.Advanced.ClaimExpirationCheckRate", 60);
         this.config_advanced_offlineplayer_cache_days = config.getInt("GriefPrevention.Advanced.OfflinePlayer_cache_days", 90);
+        this.config_advanced_binaryLogStorage = config.getBoolean("GriefPrevention.Advanced.BinaryLogStorage", false);
 
         //custom logger settings
         this.config_logs_daysToKeep = config.getInt("GriefPrevention.Abridged Logs.Days To Keep", 7);
@@ -849,6 +889,7 @@ public class GriefPrevention extends JavaPlugin
         outConfig.set("GriefPrevention.Advanced.fixNegativeClaimblockAmounts", this.config_advanced_fixNegativeClaimblockAmounts);
         outConfig.set("GriefPrevention.Advanced.ClaimExpirationCheckRate", this.config_advanced_claim_expiration_check_rate);
         outConfig.set("GriefPrevention.Advanced.OfflinePlayer_cache_days", this.config_advanced_offlineplayer_cache_days);
+        outConfig.set("GriefPrevention.Advanced.BinaryLogStorage", this.config_advanced_binaryLogStorage);
 
         //custom logger settings
         outConfig.set("GriefPrevention.Abridged Logs.Days To Keep", this.config_logs_daysToKeep);
@@ -921,6 +962,11 @@ public class GriefPrevention extends JavaPlugin
                 databaseUrl = databaseProps.getProperty("jdbcUrl", "");
                 databaseUserName = databaseProps.getProperty("username", "");
                 databasePassword = databaseProps.getProperty("password", "");
+                databasePoolSize = Math.max(1, Integer.parseInt(databaseProps.getProperty("poolSize", "3")));
+            }
+            catch (NumberFormatException e)
+            {
+                getLogger().log(Level.WARNING, "Invalid poolSize in database.properties, using 3 connections", e);
             }
             catch (IOException e)
             {
@@ -945,6 +991,7 @@ public class GriefPrevention extends JavaPlugin
         databaseProps.setProperty("jdbcUrl", databaseUrl);
         databaseProps.setProperty("username", databaseUserName);
         databaseProps.setProperty("password", databasePassword);
+        databaseProps.setProperty("poolSize", String.valueOf(databasePoolSize));
 
         // Write properties file for future usage.
         try (FileWriter writer = new FileWriter(databasePropsFile, StandardCharsets.UTF_8))
@@ -2452,6 +2499,8 @@ public class GriefPrevention extends JavaPlugin
         {
             this.loadConfig();
             this.dataStore.loadMessages();
+            this.dataStore.clearGroupBonusBlocksCache();
+            this.dataStore.getPermissionNodeCache().invalidateAll();
             playerEventHandler.reload();
             if (player != null)
             {
@@ -2465,6 +2514,40 @@ public class GriefPrevention extends JavaPlugin
             return true;
         }
 
+        //gpstatus
+        else if (cmd.getName().equalsIgnoreCase("gpstatus"))
+        {
+            ClaimWriteQueue queue = this.dataStore.getClaimWriteQueue();
+            GriefPrevention.sendMessage(player, TextMode.Info, Messages.StatusClaimWrites,
+                    String.valueOf(queue.getQueueDepth()),
+                    String.valueOf(queue.getCompletedWrites()),
+                    String.valueOf(queue.getCoalescedWrites()),
+                    String.valueOf(queue.getFailedWrites()));
+            GriefPrevention.sendMessage(player, TextMode.Info, Messages.StatusClaimFlush,
+                    String.valueOf(queue.getLastFlushSize()),
+                    String.valueOf(queue.getLastFlushTime(TimeUnit.MILLISECONDS)),
+                    String.valueOf(queue.getMaxFlushTime(TimeUnit.MILLISECONDS)));
+            IoScheduler ioScheduler = this.dataStore.getIoScheduler();
+            GriefPrevention.sendMessage(player, TextMode.Info, Messages.StatusPlayerDataTasks,
+                    String.valueOf(ioScheduler.getQueueDepth()),
+                    String.valueOf(ioScheduler.getCompletedTasks()),
+                    String.valueOf(ioScheduler.getFailedTasks()),
+                    String.valueOf(ioScheduler.getThrottledSubmissions()),
+                    String.valueOf(ioScheduler.getCoalescedSubmissions()));
+            PermissionNodeCache nodeCache = this.dataStore.getPermissionNodeCache();
+            GriefPrevention.sendMessage(player, TextMode.Info, Messages.StatusPermissionNodeCache,
+                    String.valueOf(nodeCache.getHits()),
+                    String.valueOf(nodeCache.getMisses()),
+                    String.valueOf(nodeCache.getInvalidations()));
+            FluidFlowCache fluidFlowCache = this.dataStore.getFluidFlowCache();
+            GriefPrevention.sendMessage(player, TextMode.Info, Messages.StatusFluidFlowCache,
+                    String.valueOf(fluidFlowCache.getHits()),
+                    String.valueOf(fluidFlowCache.getMisses()),
+                    String.valueOf(fluidFlowCache.getBlockLookups()));
+
+            return true;
+        }
+
         //ignoreplayer
         else if (cmd.getName().equalsIgnoreCase("ignoreplayer") && player != null)
         {
@@ -2854,13 +2937,13 @@ public class GriefPrevention extends JavaPlugin
     //helper method to resolve a player by name
     ConcurrentHashMap<String, UUID> playerNameToIDMap = new ConcurrentHashMap<>();
 
-    //thread to build the above cache
-    private class CacheOfflinePlayerNamesThread extends Thread
+    //task to build the above cache
+    private class CacheOfflinePlayerNames implements Runnable
     {
         private final OfflinePlayer[] offlinePlayers;
         private final ConcurrentHashMap<String, UUID> playerNameToIDMap;
 
-        CacheOfflinePlayerNamesThread(OfflinePlayer[] offlinePlayers, ConcurrentHashMap<String, UUID> playerNameToIDMap)
+        CacheOfflinePlayerNames(OfflinePlayer[] offlinePlayers, ConcurrentHashMap<String, UUID> playerNameToIDMap)
         {
             this.offlinePlayers = offlinePlayers;
             this.playerNameToIDMap = playerNameToIDMap;
@@ -3050,6 +3133,9 @@ public class GriefPrevention extends JavaPlugin
             this.dataStore.savePlayerDataSync(playerID, playerData);
         }
 
+        //write any player and claim changes still waiting in the queues before storage is closed
+        this.dataStore.flushPlayerDataWrites();
+        this.dataStore.flushClaimWrites();
         this.dataStore.close();
 
         //dump any remaining unwritten log entries
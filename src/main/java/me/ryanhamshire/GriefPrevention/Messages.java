@@ -228,7 +228,12 @@ public enum Messages
     _3DClaimsMode("3D claims mode. Select two opposing corners to create a 3D claim"),
     LocationClaimed("Your location has been claimed by {0}.", "0: claim owner"),
     _3DSubdivisionMode("3D Subdivision mode.  Use your shovel to create subdivisions in your existing claims.  Use /basicclaims to exit."),
-    _3DAdminClaimsMode("3D Administrative claims mode active.  Any claims created will be free and editable by other administrators.");
+    _3DAdminClaimsMode("3D Administrative claims mode active.  Any claims created will be free and editable by other administrators."),
+    StatusClaimWrites("Claim writes pending: {0}, completed: {1}, coalesced: {2}, failed: {3}", "0: pending writes, 1: completed writes, 2: coalesced writes, 3: failed writes"),
+    StatusClaimFlush("Last claim flush: {0} claims in {1}ms, slowest flush: {2}ms", "0: claims in the last flush, 1: last flush time, 2: slowest flush time"),
+    StatusPlayerDataTasks("Player data tasks pending: {0}, completed: {1}, failed: {2}, submitted to a full queue: {3}, combined: {4}", "0: pending tasks, 1: completed tasks, 2: failed tasks, 3: submissions made while the queue was full, 4: saves combined with a pending save"),
+    StatusPermissionNodeCache("Permission node trust checks cached: {0}, checked: {1}, invalidated: {2}", "0: cache hits, 1: cache misses, 2: invalidations"),
+    StatusFluidFlowCache("Fluid flows decided by chunk section: {0} cached, {1} computed, by block: {2}", "0: cache hits, 1: section pairs computed, 2: flows decided block by block");
     // END: Tau's fork
 
     final @NotNull String defaultValue;
@@ -167,21 +167,15 @@ public class PlayerData
             // If there is an overflow adding the player's available blocks, use max value.
             remainingBlocks = Integer.MAX_VALUE;
         }
-        try
-        {
-            for (int i = 0; i < this.getClaims().size(); i++)
-            {
-                Claim claim = this.getClaims().get(i);
-                remainingBlocks = Math.subtractExact(remainingBlocks, claim.getArea());
-            }
-        }
-        catch (ArithmeticException e)
-        {
-            // If there is an overflow subtracting the player's claims, they don't have any blocks left.
-            return 0;
-        }
 
-        return remainingBlocks;
+        // Loading the player's claims the first time also repairs negative balances.
+        this.getClaims();
+        long remaining = remainingBlocks - GriefPrevention.instance.dataStore.getClaimedArea(this.playerID);
+
+        // If there is an overflow subtracting the player's claims, they don't have any blocks left.
+        if (remaining < Integer.MIN_VALUE) return 0;
+
+        return (int) remaining;
     }
 
     //don't load data from secondary storage until it's needed
@@ -274,29 +268,10 @@ public class PlayerData
             //find all the claims belonging to this player and note them for future reference
             DataStore dataStore = GriefPrevention.instance.dataStore;
             int totalClaimsArea = 0;
-            for (int i = 0; i < dataStore.claims.size(); i++)
+            for (Claim claim : dataStore.getClaimsOwnedBy(this.playerID))
             {
-                Claim claim = dataStore.claims.get(i);
-                if (!claim.inDataStore)
-                {
-                    Claim remove = dataStore.claims.remove(i--);
-                    dataStore.claimIDMap.remove(remove.getID());
-                    for (Claim child : remove.children)
-                    {
-                        dataStore.claimIDMap.remove(child.getID());
-                    }
-                    continue;
-                }
-                if (playerID.equals(claim.ownerID))
-                {
-                    this.claims.add(claim);
-                    dataStore.claimIDMap.put(claim.getID(), claim);
-                    for (Claim child : claim.children)
-                    {
-                        dataStore.claimIDMap.put(child.getID(), child);
-                    }
-                    totalClaimsArea += claim.getArea();
-                }
+                this.claims.add(claim);
+                totalClaimsArea += claim.getArea();
             }
 
             //ensure player has claim blocks for his claims, and at least the minimum accrued
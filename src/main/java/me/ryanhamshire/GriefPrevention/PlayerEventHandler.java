@@ -24,6 +24,7 @@ import com.griefprevention.util.command.MonitoredCommands;
 import com.griefprevention.visualization.VisualizationType;
 import com.griefprevention.visualization.*;
 import me.ryanhamshire.GriefPrevention.events.ClaimInspectionEvent;
+import me.ryanhamshire.GriefPrevention.events.TrustChangedEvent;
 import me.ryanhamshire.GriefPrevention.tags.GPTags;
 import me.ryanhamshire.GriefPrevention.util.BoundingBox;
 import org.bukkit.*;
@@ -509,6 +510,16 @@ class PlayerEventHandler implements Listener
 
     private final ConcurrentHashMap<UUID, Date> lastLoginThisServerSessionMap = new ConcurrentHashMap<>();
 
+    //before a player joins, while still off the server thread...
+    @EventHandler(priority = EventPriority.MONITOR)
+    void onAsyncPlayerPreLogin(AsyncPlayerPreLoginEvent event)
+    {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) return;
+
+        //read the player's stored data now, so the server thread doesn't wait on storage (possibly a remote database) when they join
+        this.dataStore.getPlayerData(event.getUniqueId()).getAccruedClaimBlocks();
+    }
+
     //when a player attempts to join the server...
     @EventHandler(priority = EventPriority.HIGHEST)
     void onPlayerLogin(PlayerLoginEvent event)
@@ -701,8 +712,11 @@ class PlayerEventHandler implements Listener
             }
         }
 
-        //create a thread to load ignore information
-        new IgnoreLoaderThread(playerID, playerData.ignoredPlayers).start();
+        //load ignore information in the background
+        this.dataStore.loadIgnoredPlayers(playerID, playerData);
+
+        //permissions are often set up during login, so don't trust anything remembered from before
+        this.dataStore.getPermissionNodeCache().invalidate(playerID);
 
         //is he stuck in a portal frame?
         if (player.hasMetadata("GP_PORTALRESCUE"))
@@ -869,6 +883,7 @@ class PlayerEventHandler implements Listener
 
         //drop data about this player
         this.dataStore.clearCachedPlayerData(playerID);
+        this.dataStore.getPermissionNodeCache().invalidate(playerID);
 
         //send quit message later, but only if the player stays offline
         if (instance.config_spam_logoutMessageDelaySeconds > 0)
@@ -884,6 +899,20 @@ class PlayerEventHandler implements Listener
         }
     }
 
+    //permissions may differ per world, so check permission node trust again
+    @EventHandler(priority = EventPriority.MONITOR)
+    void onPlayerChangedWorld(PlayerChangedWorldEvent event)
+    {
+        this.dataStore.getPermissionNodeCache().invalidate(event.getPlayer().getUniqueId());
+    }
+
+    //when trust for a permission node changes, forget cached node checks so the cache only holds nodes still in use
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    void onTrustChanged(TrustChangedEvent event)
+    {
+        if (event.getIdentifier().startsWith("[")) this.dataStore.getPermissionNodeCache().invalidateAll();
+    }
+
     //determines whether or not a login or logout notification should be silenced, depending on how many there have been in the last minute
     private boolean shouldSilenceNotification()
     {
@@ -2353,26 +2382,25 @@ class PlayerEventHandler implements Listener
         return raytraceForTarget(player, maxDistance, new Predicate<Block>() {
             Location loc = player.getLocation();
             int cx = loc.getBlockX() >> 4, cz = loc.getBlockZ() >> 4;
-            List<Claim> claimsInChunk = GriefPrevention.instance.dataStore.chunksToClaimsMap.get(DataStore.getChunkHash(cx, cz));
+            World world = player.getWorld();
+            Collection<Claim> claimsInChunk = GriefPrevention.instance.dataStore.getClaims(world, cx, cz);
 
             @Override
             public boolean test(Block result) {
                 if (result.isPassable()) {
                     int rx = result.getX(), ry = result.getY(), rz = result.getZ();
                     if (rx >> 4 != cx || rz >> 4 != cz) {
-                        claimsInChunk = GriefPrevention.instance.dataStore.chunksToClaimsMap.get(DataStore.getChunkHash(cx = rx >> 4, cz = rz >> 4));
+                        claimsInChunk = GriefPrevention.instance.dataStore.getClaims(world, cx = rx >> 4, cz = rz >> 4);
                     }
 
-                    if (claimsInChunk != null) {
-                        for (Claim parent : claimsInChunk) {
-                            if (parent.isInside(rx, ry, rz)) {
-                                if (predicate.test(result, parent)) {
-                                    return true;
-                                } else if (!parent.children.isEmpty()) {
-                                    for (Claim child : parent.children) {
-                                        if (child.isInside(rx, ry, rz) && predicate.test(result, child)) {
-                                            return true;
-                                        }
+                    for (Claim parent : claimsInChunk) {
+                        if (parent.isInside(rx, ry, rz)) {
+                            if (predicate.test(result, parent)) {
+                                return true;
+                            } else if (!parent.children.isEmpty()) {
+                                for (Claim child : parent.children) {
+                                    if (child.isInside(rx, ry, rz) && predicate.test(result, child)) {
+                                        return true;
                                     }
                                 }
                             }
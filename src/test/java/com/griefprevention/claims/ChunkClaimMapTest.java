@@ -0,0 +1,102 @@
+package com.griefprevention.claims;
+
+import me.ryanhamshire.GriefPrevention.Claim;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class ChunkClaimMapTest
+{
+
+    @Test
+    void addAndRemove()
+    {
+        ChunkClaimMap map = new ChunkClaimMap();
+        Claim first = mock(Claim.class);
+        Claim second = mock(Claim.class);
+
+        map.add(0L, first);
+        map.add(0L, second);
+        map.add(-1L, second);
+        assertEquals(2, map.size());
+        assertArrayEquals(new Claim[] { first, second }, map.get(0L));
+        assertArrayEquals(new Claim[] { second }, map.get(-1L));
+        assertNull(map.get(1L));
+
+        Claim[] snapshot = map.get(0L);
+        assertTrue(map.removeIf(0L, claim -> claim == first));
+        assertArrayEquals(new Claim[] { first, second }, snapshot, "Returned arrays must not be modified.");
+        assertArrayEquals(new Claim[] { second }, map.get(0L));
+
+        assertFalse(map.removeIf(0L, claim -> claim == first));
+        assertFalse(map.removeIf(1L, claim -> true));
+
+        assertTrue(map.removeIf(0L, claim -> claim == second));
+        assertNull(map.get(0L));
+        assertEquals(1, map.size());
+
+        map.clear();
+        assertNull(map.get(-1L));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void matchesReferenceMap()
+    {
+        ChunkClaimMap map = new ChunkClaimMap();
+        Map<Long, List<Claim>> reference = new HashMap<>();
+        Claim[] claims = new Claim[8];
+        for (int i = 0; i < claims.length; i++)
+        {
+            claims[i] = mock(Claim.class);
+        }
+
+        // A narrow key range forces collisions, probe chains, resizes, and backward-shift deletes.
+        Random random = new Random(4);
+        for (int i = 0; i < 20_000; i++)
+        {
+            long key = ClaimIndex.getChunkKey(random.nextInt(64) - 32, random.nextInt(64) - 32);
+            Claim claim = claims[random.nextInt(claims.length)];
+
+            if (random.nextInt(3) == 0)
+            {
+                List<Claim> expected = reference.get(key);
+                boolean removed = expected != null && expected.removeIf(other -> other == claim);
+                if (expected != null && expected.isEmpty()) reference.remove(key);
+                assertEquals(removed, map.removeIf(key, other -> other == claim));
+            }
+            else
+            {
+                reference.computeIfAbsent(key, k -> new ArrayList<>()).add(claim);
+                map.add(key, claim);
+            }
+
+            assertEquals(reference.size(), map.size());
+        }
+
+        for (int chunkX = -32; chunkX < 32; chunkX++)
+        {
+            for (int chunkZ = -32; chunkZ < 32; chunkZ++)
+            {
+                long key = ClaimIndex.getChunkKey(chunkX, chunkZ);
+                List<Claim> expected = reference.get(key);
+                Claim[] actual = map.get(key);
+                if (expected == null) assertNull(actual);
+                else assertEquals(expected, Arrays.asList(actual));
+            }
+        }
+    }
+
+}
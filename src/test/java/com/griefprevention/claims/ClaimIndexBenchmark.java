@@ -0,0 +1,130 @@
+package com.griefprevention.claims;
+
+import me.ryanhamshire.GriefPrevention.Claim;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.function.LongPredicate;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Measures {@link ChunkClaimMap} lookups in unclaimed and claimed chunks.
+ *
+ * <p>This is a manual benchmark rather than a test; run its {@code main} method from the test classpath. Most lookups
+ * in a real world are for unclaimed chunks, which is what the map's claimed-chunk bitmap is for.</p>
+ */
+public final class ClaimIndexBenchmark
+{
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final int LOOKUPS = 1 << 20;
+    // Claims per world, from a small server to a large one.
+    private static final int[] CLAIMS = { 1_000, 10_000, 100_000 };
+    // Radius of the claimed area in chunks, 32,000 blocks.
+    private static final int RADIUS = 2_000;
+
+    public static void main(String[] args)
+    {
+        Claim claim = mock(Claim.class);
+        for (int claims : CLAIMS)
+        {
+            SplittableRandom random = new SplittableRandom(claims);
+            ChunkClaimMap map = new ChunkClaimMap();
+            long[] claimed = new long[LOOKUPS];
+            int claimedCount = 0;
+
+            // Claims are rectangles of one to four chunks a side.
+            for (int i = 0; i < claims; i++)
+            {
+                int chunkX = random.nextInt(-RADIUS, RADIUS);
+                int chunkZ = random.nextInt(-RADIUS, RADIUS);
+                int width = random.nextInt(1, 5);
+                int depth = random.nextInt(1, 5);
+                for (int x = chunkX; x < chunkX + width; x++)
+                {
+                    for (int z = chunkZ; z < chunkZ + depth; z++)
+                    {
+                        long key = ClaimIndex.getChunkKey(x, z);
+                        map.add(key, claim);
+                        claimed[claimedCount++ % LOOKUPS] = key;
+                    }
+                }
+            }
+
+            // Players scattered across the claimed area, and players walking, which keeps lookups in cache.
+            long[] scattered = unclaimed(map, random, false);
+            long[] walking = unclaimed(map, random, true);
+            // Repeat small worlds' chunks so that every case runs the same number of lookups.
+            for (int i = claimedCount; i < LOOKUPS; i++)
+            {
+                claimed[i] = claimed[i - claimedCount];
+            }
+
+            LongPredicate lookup = key -> map.get(key) != null;
+            String name = String.format(Locale.ROOT, "%,d claims (%,d chunks)", claims, map.size());
+            run(name + ", unclaimed scattered", scattered, lookup);
+            run(name + ", unclaimed walking", walking, lookup);
+            run(name + ", claimed", claimed, lookup);
+        }
+    }
+
+    private static long @NotNull [] unclaimed(@NotNull ChunkClaimMap map, @NotNull SplittableRandom random, boolean walk)
+    {
+        long[] keys = new long[LOOKUPS];
+        int chunkX = 0;
+        int chunkZ = 0;
+        for (int i = 0; i < keys.length; )
+        {
+            if (walk && i % 64 != 0)
+            {
+                chunkX += random.nextInt(-1, 2);
+                chunkZ += random.nextInt(-1, 2);
+            }
+            else
+            {
+                chunkX = random.nextInt(-RADIUS, RADIUS);
+                chunkZ = random.nextInt(-RADIUS, RADIUS);
+            }
+            long key = ClaimIndex.getChunkKey(chunkX, chunkZ);
+            if (map.get(key) == null) keys[i++] = key;
+        }
+        return keys;
+    }
+
+    private static void run(@NotNull String name, long @NotNull [] keys, @NotNull LongPredicate lookup)
+    {
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+        {
+            sink += measure(keys, lookup)[1];
+        }
+
+        long nanos = 0;
+        for (int i = 0; i < ROUNDS; i++)
+        {
+            long[] result = measure(keys, lookup);
+            nanos += result[0];
+            sink += result[1];
+        }
+
+        double operations = (double) ROUNDS * keys.length;
+        System.out.printf(Locale.ROOT, "%-52s %6.2f ns/op (sink %d)%n", name, nanos / operations, sink);
+    }
+
+    private static long[] measure(long @NotNull [] keys, @NotNull LongPredicate lookup)
+    {
+        long found = 0;
+        long start = System.nanoTime();
+        for (long key : keys)
+        {
+            if (lookup.test(key)) found++;
+        }
+        return new long[] { System.nanoTime() - start, found };
+    }
+
+    private ClaimIndexBenchmark() {}
+
+}
@@ -0,0 +1,143 @@
+package com.griefprevention.claims;
+
+import me.ryanhamshire.GriefPrevention.Claim;
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares finding a claim overlapping new claim boundaries by scanning every claim against querying the
+ * {@link ClaimIndex}, as {@code DataStore#getOverlappingClaim} does when a claim is created or resized.
+ *
+ * <p>This is a manual benchmark rather than a test; run its {@code main} method from the test classpath. Candidates
+ * are new claims placed in unclaimed space, so none of them overlaps anything and the scan has to visit every claim.</p>
+ */
+public final class ClaimOverlapBenchmark
+{
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final int CANDIDATES = 1 << 14;
+    // Claims per world, from a large server to far beyond any real one.
+    private static final int[] CLAIMS = { 10_000, 100_000, 500_000 };
+    // Radius of the claimed area in blocks.
+    private static final int RADIUS = 32_000;
+
+    public static void main(String[] args) throws ReflectiveOperationException
+    {
+        World world = mock(World.class);
+        when(world.getUID()).thenReturn(UUID.randomUUID());
+
+        for (int claimCount : CLAIMS)
+        {
+            SplittableRandom random = new SplittableRandom(claimCount);
+            ClaimIndex index = new ClaimIndex(world);
+            List<Claim> claims = new ArrayList<>(claimCount);
+            // Claims never overlap, and neither do candidates that a claim could actually be created at.
+            while (claims.size() < claimCount)
+            {
+                BoundingBox bounds = randomBounds(random);
+                if (scan(index.getChunkClaims(bounds), bounds) != null) continue;
+
+                Claim claim = newClaim(world, bounds, claims.size());
+                claim.inDataStore = true;
+                claims.add(claim);
+                index.add(claim);
+            }
+
+            BoundingBox[] candidates = new BoundingBox[CANDIDATES];
+            for (int i = 0; i < candidates.length; )
+            {
+                BoundingBox bounds = randomBounds(random);
+                if (scan(index.getChunkClaims(bounds), bounds) == null) candidates[i++] = bounds;
+            }
+
+            // The scan visits every claim per candidate, so it gets fewer candidates to keep rounds short.
+            int scanned = Math.max(16, Math.min(CANDIDATES, 100_000_000 / claimCount));
+            String name = String.format(Locale.ROOT, "%,d claims", claimCount);
+            run(name + ", scan", candidates, scanned, candidate -> scan(claims, candidate));
+            run(name + ", index", candidates, CANDIDATES, candidate -> scan(index.getChunkClaims(candidate), candidate));
+        }
+    }
+
+    private static @NotNull BoundingBox randomBounds(@NotNull SplittableRandom random)
+    {
+        // Claims of 10 to 100 blocks a side.
+        int x = random.nextInt(-RADIUS, RADIUS);
+        int z = random.nextInt(-RADIUS, RADIUS);
+        return new BoundingBox(x, 0, z, x + random.nextInt(9, 100), Claim._2D_HEIGHT, z + random.nextInt(9, 100));
+    }
+
+    private static @Nullable Claim scan(@NotNull Iterable<Claim> claims, @NotNull BoundingBox candidate)
+    {
+        for (Claim claim : claims)
+        {
+            if (claim.inDataStore && claim.getBounds().intersects2d(candidate)) return claim;
+        }
+        return null;
+    }
+
+    private static void run(
+            @NotNull String name,
+            @NotNull BoundingBox @NotNull [] candidates,
+            int count,
+            @NotNull Function<BoundingBox, Claim> overlap)
+    {
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+        {
+            sink += measure(candidates, count, overlap)[1];
+        }
+
+        long nanos = 0;
+        for (int i = 0; i < ROUNDS; i++)
+        {
+            long[] result = measure(candidates, count, overlap);
+            nanos += result[0];
+            sink += result[1];
+        }
+
+        double operations = (double) ROUNDS * count;
+        System.out.printf(Locale.ROOT, "%-24s %,12.0f ns/op (sink %d)%n", name, nanos / operations, sink);
+    }
+
+    private static long[] measure(
+            @NotNull BoundingBox @NotNull [] candidates,
+            int count,
+            @NotNull Function<BoundingBox, Claim> overlap)
+    {
+        long found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++)
+        {
+            if (overlap.apply(candidates[i]) != null) found++;
+        }
+        return new long[] { System.nanoTime() - start, found };
+    }
+
+    private static @NotNull Claim newClaim(@NotNull World world, @NotNull BoundingBox bounds, long id)
+            throws ReflectiveOperationException
+    {
+        // The claim constructor is internal to the plugin.
+        Constructor<Claim> constructor = Claim.class.getDeclaredConstructor(World.class, BoundingBox.class, UUID.class,
+                List.class, List.class, List.class, List.class, boolean.class, Long.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(world, bounds, UUID.randomUUID(),
+                List.of(), List.of(), List.of(), List.of(), false, id);
+    }
+
+    private ClaimOverlapBenchmark() {}
+
+}
@@ -0,0 +1,126 @@
+package com.griefprevention.claims;
+
+import me.ryanhamshire.GriefPrevention.Claim;
+import me.ryanhamshire.GriefPrevention.DataStore;
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FluidFlowCacheTest
+{
+
+    private final World world = mock(World.class);
+    private final AtomicLong gameTime = new AtomicLong();
+    private final DataStore dataStore = mock(DataStore.class);
+    private final FluidFlowCache cache = new FluidFlowCache(this.dataStore);
+
+    private final AtomicInteger ruleChecks = new AtomicInteger();
+    // Flow is allowed into the wilderness and within a claim only.
+    private final BiPredicate<Claim, Claim> rule = (from, to) ->
+    {
+        this.ruleChecks.incrementAndGet();
+        return to == null || to == from;
+    };
+
+    @BeforeEach
+    void setUp()
+    {
+        when(this.world.getUID()).thenReturn(UUID.randomUUID());
+        when(this.world.getGameTime()).thenAnswer(invocation -> this.gameTime.get());
+        when(this.dataStore.getClaimModelStamp()).thenReturn(1L);
+        when(this.dataStore.isClaimModelUnchanged(anyLong())).thenReturn(true);
+        when(this.dataStore.getClaims(eq(this.world), anyInt(), anyInt())).thenReturn(List.of());
+    }
+
+    private Claim claim(BoundingBox bounds)
+    {
+        Claim claim = mock(Claim.class);
+        when(claim.getBounds()).thenReturn(bounds);
+        claim.inDataStore = true;
+        claim.children = new ArrayList<>();
+        when(this.dataStore.getClaims(this.world, 0, 0)).thenReturn(List.of(claim));
+        return claim;
+    }
+
+    private Block block(int x, int y, int z)
+    {
+        Block block = mock(Block.class);
+        when(block.getWorld()).thenReturn(this.world);
+        when(block.getX()).thenReturn(x);
+        when(block.getY()).thenReturn(y);
+        when(block.getZ()).thenReturn(z);
+        when(block.getLocation()).thenReturn(new Location(this.world, x, y, z));
+        return block;
+    }
+
+    @Test
+    void uniformSectionsAreDecidedOnce()
+    {
+        claim(new BoundingBox(0, -64, 0, 15, 319, 15));
+
+        assertFalse(this.cache.isFlowAllowed(block(20, 64, 5), block(19, 64, 5), this.rule));
+        assertFalse(this.cache.isFlowAllowed(block(16, 70, 9), block(15, 70, 9), this.rule));
+        assertTrue(this.cache.isFlowAllowed(block(5, 64, 5), block(6, 64, 5), this.rule));
+
+        assertEquals(2, this.ruleChecks.get());
+        assertEquals(1, this.cache.getHits());
+        assertEquals(2, this.cache.getMisses());
+        verify(this.dataStore, never()).getClaimAt(any(), anyBoolean(), any());
+    }
+
+    @Test
+    void entriesLastOneTick()
+    {
+        this.cache.isFlowAllowed(block(20, 64, 5), block(21, 64, 5), this.rule);
+        this.gameTime.incrementAndGet();
+        this.cache.isFlowAllowed(block(20, 64, 5), block(21, 64, 5), this.rule);
+
+        assertEquals(2, this.ruleChecks.get());
+        assertEquals(0, this.cache.getHits());
+    }
+
+    @Test
+    void claimChangesDropEntries()
+    {
+        this.cache.isFlowAllowed(block(20, 64, 5), block(21, 64, 5), this.rule);
+        when(this.dataStore.isClaimModelUnchanged(anyLong())).thenReturn(false);
+        this.cache.isFlowAllowed(block(20, 64, 5), block(21, 64, 5), this.rule);
+
+        assertEquals(2, this.cache.getMisses());
+    }
+
+    @Test
+    void mixedSectionsLookUpBlocks()
+    {
+        Claim claim = claim(new BoundingBox(0, -64, 0, 7, 319, 7));
+        when(this.dataStore.getClaimAt(any(), eq(false), any())).thenReturn(claim, (Claim) null);
+
+        assertTrue(this.cache.isFlowAllowed(block(5, 64, 5), block(9, 64, 5), this.rule));
+        assertEquals(1, this.cache.getBlockLookups());
+        assertEquals(0, this.cache.getMisses());
+    }
+
+}
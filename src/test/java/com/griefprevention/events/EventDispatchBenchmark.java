@@ -0,0 +1,179 @@
+package com.griefprevention.events;
+
+import me.ryanhamshire.GriefPrevention.Claim;
+import me.ryanhamshire.GriefPrevention.ClaimPermission;
+import me.ryanhamshire.GriefPrevention.events.AccrueClaimBlocksEvent;
+import me.ryanhamshire.GriefPrevention.events.ClaimPermissionCheckEvent;
+import me.ryanhamshire.GriefPrevention.events.PreventBlockBreakEvent;
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.command.SimpleCommandMap;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.SimplePluginManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.function.IntSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Compares calling GriefPrevention's high-frequency events through the plugin manager against
+ * {@link EventDispatch} skipping them when nothing listens.
+ *
+ * <p>This is a manual benchmark rather than a test; run its {@code main} method from the test classpath. The server
+ * is a plain proxy instead of a mock so that the timings include the real {@link SimplePluginManager} dispatch and
+ * nothing else.</p>
+ */
+public final class EventDispatchBenchmark
+{
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final int OPERATIONS = 5_000_000;
+
+    @SuppressWarnings("removal")
+    public static void main(String[] args) throws ReflectiveOperationException
+    {
+        Server server = stub(Server.class);
+        PluginManager pluginManager = new SimplePluginManager(server, new SimpleCommandMap(server));
+        Bukkit.setServer(stub(Server.class, pluginManager));
+
+        UUID playerId = UUID.randomUUID();
+        Player player = stub(Player.class, playerId);
+        BlockBreakEvent breakEvent = new BlockBreakEvent(stub(Block.class), player);
+
+        run("PreventBlockBreakEvent", () -> dispatched(new PreventBlockBreakEvent(breakEvent)),
+                () -> EventDispatch.hasListeners(PreventBlockBreakEvent.getHandlerList())
+                        ? dispatched(new PreventBlockBreakEvent(breakEvent))
+                        : 0);
+        run("AccrueClaimBlocksEvent", () -> dispatched(new AccrueClaimBlocksEvent(player, 100, false)),
+                () -> EventDispatch.hasListeners(AccrueClaimBlocksEvent.getHandlerList())
+                        ? dispatched(new AccrueClaimBlocksEvent(player, 100, false))
+                        : 100 / 6);
+
+        // Permission checks skip the event internally, so compare the same call before and after a listener exists.
+        Claim claim = newClaim(stub(World.class), playerId);
+        run("Claim.checkPermission, no listener",
+                () -> claim.checkPermission(player, ClaimPermission.Build, breakEvent) == null ? 1 : 0);
+        pluginManager.registerEvent(ClaimPermissionCheckEvent.class, new Listener() {}, EventPriority.NORMAL,
+                (registered, event) -> {}, stub(Plugin.class));
+        run("Claim.checkPermission, listener",
+                () -> claim.checkPermission(player, ClaimPermission.Build, breakEvent) == null ? 1 : 0);
+    }
+
+    private static @NotNull Claim newClaim(@NotNull World world, @NotNull UUID ownerId)
+            throws ReflectiveOperationException
+    {
+        // The claim constructor is internal to the plugin. Owners skip the trust lookups, which need a data store.
+        Constructor<Claim> constructor = Claim.class.getDeclaredConstructor(World.class, BoundingBox.class, UUID.class,
+                List.class, List.class, List.class, List.class, boolean.class, Long.class);
+        constructor.setAccessible(true);
+        return constructor.newInstance(world, new BoundingBox(0, 0, 0, 99, 255, 99), ownerId,
+                List.of(), List.of(), List.of(), List.of(), false, 1L);
+    }
+
+    private static int dispatched(@NotNull Event event)
+    {
+        Bukkit.getPluginManager().callEvent(event);
+        return event.hashCode();
+    }
+
+    private static void run(@NotNull String name, @NotNull IntSupplier dispatched, @NotNull IntSupplier skipped)
+    {
+        int sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+        {
+            sink += measure(dispatched)[1] + measure(skipped)[1];
+        }
+
+        long dispatchedNanos = 0;
+        long skippedNanos = 0;
+        for (int i = 0; i < ROUNDS; i++)
+        {
+            long[] result = measure(dispatched);
+            dispatchedNanos += result[0];
+            sink += (int) result[1];
+            result = measure(skipped);
+            skippedNanos += result[0];
+            sink += (int) result[1];
+        }
+
+        double operations = (double) ROUNDS * OPERATIONS;
+        System.out.printf(Locale.ROOT, "%-36s dispatched %7.2f ns/op, skipped %7.2f ns/op (sink %d)%n",
+                name, dispatchedNanos / operations, skippedNanos / operations, sink);
+    }
+
+    private static void run(@NotNull String name, @NotNull IntSupplier operation)
+    {
+        int sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+        {
+            sink += (int) measure(operation)[1];
+        }
+
+        long nanos = 0;
+        for (int i = 0; i < ROUNDS; i++)
+        {
+            long[] result = measure(operation);
+            nanos += result[0];
+            sink += (int) result[1];
+        }
+
+        double operations = (double) ROUNDS * OPERATIONS;
+        System.out.printf(Locale.ROOT, "%-36s %7.2f ns/op (sink %d)%n", name, nanos / operations, sink);
+    }
+
+    private static long[] measure(@NotNull IntSupplier operation)
+    {
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < OPERATIONS; i++)
+        {
+            sink += operation.getAsInt();
+        }
+        return new long[] { System.nanoTime() - start, sink };
+    }
+
+    /**
+     * Create a bare implementation of an interface. Methods return the first matching value, else a default.
+     */
+    private static <T> @NotNull T stub(@NotNull Class<T> type, Object... values)
+    {
+        Logger logger = Logger.getLogger("EventDispatchBenchmark");
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (instance, method, arguments) ->
+        {
+            Class<?> returnType = method.getReturnType();
+            for (Object value : values)
+            {
+                if (returnType.isInstance(value)) return value;
+            }
+            // The server runs everything on the main thread and plugins are enabled.
+            if (returnType == boolean.class)
+                return method.getName().equals("isPrimaryThread") || method.getName().equals("isEnabled");
+            if (returnType == int.class) return 0;
+            if (returnType == long.class) return 0L;
+            if (returnType == double.class) return 0D;
+            if (returnType == float.class) return 0F;
+            if (returnType == String.class) return method.getName();
+            if (returnType == Logger.class) return logger;
+            return null;
+        });
+        return type.cast(proxy);
+    }
+
+    private EventDispatchBenchmark() {}
+
+}
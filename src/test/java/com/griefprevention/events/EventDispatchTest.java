@@ -0,0 +1,98 @@
+package com.griefprevention.events;
+
+import com.griefprevention.test.ServerMocks;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.RegisteredListener;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EventDispatchTest
+{
+
+    private static PluginManager pluginManager;
+
+    @BeforeAll
+    static void beforeAll()
+    {
+        Server server = ServerMocks.newServer();
+        pluginManager = mock(PluginManager.class);
+        when(server.getPluginManager()).thenReturn(pluginManager);
+        Bukkit.setServer(server);
+    }
+
+    @AfterAll
+    static void afterAll()
+    {
+        ServerMocks.unsetBukkitServer();
+    }
+
+    @AfterEach
+    void afterEach()
+    {
+        TestEvent.HANDLERS.unregisterAll();
+        clearInvocations(pluginManager);
+    }
+
+    @Test
+    void eventWithoutListenersIsNotCalled()
+    {
+        TestEvent event = new TestEvent();
+
+        assertFalse(EventDispatch.hasListeners(TestEvent.getHandlerList()));
+        assertSame(event, EventDispatch.call(event));
+        verify(pluginManager, never()).callEvent(event);
+    }
+
+    @Test
+    void eventWithListenerIsCalled()
+    {
+        TestEvent.HANDLERS.register(new RegisteredListener(new Listener() {}, (listener, event) -> {},
+                EventPriority.NORMAL, mock(Plugin.class), false));
+        TestEvent event = new TestEvent();
+
+        assertTrue(EventDispatch.hasListeners(TestEvent.getHandlerList()));
+        EventDispatch.call(event);
+        verify(pluginManager).callEvent(event);
+
+        TestEvent.HANDLERS.unregisterAll();
+        assertFalse(EventDispatch.hasListeners(TestEvent.getHandlerList()), "Unregistering is seen.");
+    }
+
+    private static final class TestEvent extends Event
+    {
+
+        private static final HandlerList HANDLERS = new HandlerList();
+
+        public static HandlerList getHandlerList()
+        {
+            return HANDLERS;
+        }
+
+        @Override
+        public @NotNull HandlerList getHandlers()
+        {
+            return HANDLERS;
+        }
+
+    }
+
+}
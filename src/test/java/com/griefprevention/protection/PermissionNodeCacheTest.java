@@ -0,0 +1,84 @@
+package com.griefprevention.protection;
+
+import org.bukkit.entity.Player;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PermissionNodeCacheTest
+{
+
+    private final AtomicLong now = new AtomicLong();
+    private final PermissionNodeCache cache = new PermissionNodeCache(5, TimeUnit.SECONDS, this.now::get);
+
+    private static Player player(UUID id)
+    {
+        Player player = mock(Player.class);
+        when(player.getUniqueId()).thenReturn(id);
+        when(player.hasPermission("rank.member")).thenReturn(true);
+        return player;
+    }
+
+    @Test
+    void resultsAreRemembered()
+    {
+        Player player = player(UUID.randomUUID());
+
+        assertTrue(this.cache.hasPermission(player, "rank.member"));
+        assertTrue(this.cache.hasPermission(player, "rank.member"));
+        assertFalse(this.cache.hasPermission(player, "rank.admin"));
+        assertFalse(this.cache.hasPermission(player, "rank.admin"));
+
+        verify(player, times(1)).hasPermission("rank.member");
+        verify(player, times(1)).hasPermission("rank.admin");
+        assertEquals(2, this.cache.getHits());
+        assertEquals(2, this.cache.getMisses());
+    }
+
+    @Test
+    void invalidationChecksAgain()
+    {
+        UUID id = UUID.randomUUID();
+        Player player = player(id);
+        Player other = player(UUID.randomUUID());
+        this.cache.hasPermission(player, "rank.member");
+        this.cache.hasPermission(other, "rank.member");
+
+        this.cache.invalidate(id);
+        this.cache.hasPermission(player, "rank.member");
+        this.cache.hasPermission(other, "rank.member");
+        verify(player, times(2)).hasPermission("rank.member");
+        verify(other, times(1)).hasPermission("rank.member");
+
+        this.cache.invalidateAll();
+        this.cache.hasPermission(other, "rank.member");
+        verify(other, times(2)).hasPermission("rank.member");
+        assertEquals(3, this.cache.getInvalidations());
+    }
+
+    @Test
+    void entriesExpire()
+    {
+        Player player = player(UUID.randomUUID());
+        this.cache.hasPermission(player, "rank.member");
+
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(4));
+        this.cache.hasPermission(player, "rank.member");
+        verify(player, times(1)).hasPermission("rank.member");
+
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        this.cache.hasPermission(player, "rank.member");
+        verify(player, times(2)).hasPermission("rank.member");
+    }
+
+}
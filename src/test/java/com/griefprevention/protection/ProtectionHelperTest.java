@@ -0,0 +1,191 @@
+package com.griefprevention.protection;
+
+import me.ryanhamshire.GriefPrevention.Claim;
+import me.ryanhamshire.GriefPrevention.ClaimPermission;
+import me.ryanhamshire.GriefPrevention.ClaimsMode;
+import me.ryanhamshire.GriefPrevention.DataStore;
+import me.ryanhamshire.GriefPrevention.GriefPrevention;
+import me.ryanhamshire.GriefPrevention.PlayerData;
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProtectionHelperTest
+{
+
+    private final World world = mock(World.class);
+    private final Player player = mock(Player.class);
+    private final PlayerData playerData = new PlayerData();
+    private DataStore dataStore;
+
+    @BeforeEach
+    void setUp()
+    {
+        GriefPrevention.instance = mock(GriefPrevention.class);
+        this.dataStore = mock(DataStore.class);
+        GriefPrevention.instance.dataStore = this.dataStore;
+        GriefPrevention.instance.config_claims_worldModes = new ConcurrentHashMap<>(Map.of(this.world, ClaimsMode.Survival));
+        when(GriefPrevention.instance.claimsEnabledForWorld(this.world)).thenReturn(true);
+
+        UUID playerID = UUID.randomUUID();
+        when(this.player.getUniqueId()).thenReturn(playerID);
+        when(this.dataStore.getPlayerData(playerID)).thenReturn(this.playerData);
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        //noinspection DataFlowIssue
+        GriefPrevention.instance = null;
+    }
+
+    private Block block()
+    {
+        Block block = mock(Block.class);
+        when(block.getWorld()).thenReturn(this.world);
+        return block;
+    }
+
+    private Claim claim(BoundingBox bounds)
+    {
+        Claim claim = mock(Claim.class);
+        claim.inDataStore = true;
+        claim.children = new ArrayList<>();
+        when(claim.getBounds()).thenReturn(bounds);
+        return claim;
+    }
+
+    @Test
+    void eachClaimIsCheckedOnce()
+    {
+        Claim allowed = mock(Claim.class);
+        Claim denied = mock(Claim.class);
+        Supplier<String> reason = () -> "No building here";
+        when(denied.checkPermission(this.player, ClaimPermission.Build, null)).thenReturn(reason);
+
+        List<Block> blocks = List.of(block(), block(), block(), block(), block());
+        when(this.dataStore.getClaimsAt(blocks, false, false))
+                .thenReturn(Arrays.asList(allowed, denied, null, denied, allowed));
+
+        Map<Block, Supplier<String>> result = ProtectionHelper.checkPermission(this.player, blocks, ClaimPermission.Build, null);
+
+        assertEquals(List.of(blocks.get(1), blocks.get(3)), List.copyOf(result.keySet()));
+        assertSame(reason, result.get(blocks.get(1)));
+        verify(allowed, times(1)).checkPermission(this.player, ClaimPermission.Build, null);
+        verify(denied, times(1)).checkPermission(this.player, ClaimPermission.Build, null);
+        verify(this.dataStore, times(1)).getPlayerData(this.player.getUniqueId());
+    }
+
+    @Test
+    void wildernessIsDeniedWhereClaimsAreRequired()
+    {
+        GriefPrevention.instance.config_claims_worldModes.put(this.world, ClaimsMode.SurvivalRequiringClaims);
+        List<Block> blocks = List.of(block(), block());
+        when(this.dataStore.getClaimsAt(blocks, false, false)).thenReturn(Arrays.asList(null, null));
+
+        Map<Block, Supplier<String>> result = ProtectionHelper.checkPermission(this.player, blocks, ClaimPermission.Build, null);
+
+        assertEquals(2, result.size());
+        assertSame(result.get(blocks.get(0)), result.get(blocks.get(1)), "Wilderness is checked once per world.");
+    }
+
+    @Test
+    void ignoringClaimsAllowsEverything()
+    {
+        this.playerData.ignoreClaims = true;
+        List<Block> blocks = List.of(block());
+
+        assertTrue(ProtectionHelper.checkPermission(this.player, blocks, ClaimPermission.Build, null).isEmpty());
+        verify(this.dataStore, never()).getClaimsAt(any(), anyBoolean(), anyBoolean());
+    }
+
+    @Test
+    void unclaimedAreaIsNotCheckedBlockByBlock()
+    {
+        BoundingBox area = new BoundingBox(0, 0, 0, 63, 63, 63);
+        when(this.dataStore.getChunkClaims(this.world, area)).thenReturn(new HashSet<>());
+
+        assertTrue(ProtectionHelper.checkPermission(this.player, this.world, area, ClaimPermission.Build, null).isEmpty());
+        verify(this.world, never()).getBlockAt(anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    void deniedClaimIsCutToTheAreaOutsideItsSubdivisions()
+    {
+        Claim parent = claim(new BoundingBox(0, 0, 0, 31, 255, 31));
+        Supplier<String> reason = () -> "No building here";
+        when(parent.checkPermission(this.player, ClaimPermission.Build, null)).thenReturn(reason);
+        Claim child = claim(new BoundingBox(0, 0, 0, 15, 255, 15));
+        parent.children.add(child);
+
+        BoundingBox area = new BoundingBox(8, 64, 8, 23, 65, 23);
+        when(this.dataStore.getChunkClaims(this.world, area)).thenReturn(new HashSet<>(List.of(parent)));
+        when(this.world.getBlockAt(anyInt(), anyInt(), anyInt())).thenAnswer(invocation -> block());
+
+        List<DeniedRegion> result = ProtectionHelper.checkPermission(this.player, this.world, area, ClaimPermission.Build, null);
+
+        assertEquals(1, result.size());
+        DeniedRegion region = result.get(0);
+        assertSame(parent, region.claim());
+        assertSame(reason, region.reason());
+        assertEquals(area, region.bounds());
+        assertEquals(List.of(new BoundingBox(8, 64, 8, 15, 65, 15)), region.excluded());
+        assertTrue(region.contains(16, 64, 8));
+        assertFalse(region.contains(15, 64, 15));
+
+        int blocks = 0;
+        for (Block ignored : region.blocks()) blocks++;
+        assertEquals(16 * 16 * 2 - 8 * 8 * 2, blocks);
+        verify(child, times(1)).checkPermission(this.player, ClaimPermission.Build, null);
+        verify(parent, times(1)).checkPermission(this.player, ClaimPermission.Build, null);
+    }
+
+    @Test
+    void wildernessIsDeniedPerChunkWhereClaimsAreRequired()
+    {
+        GriefPrevention.instance.config_claims_worldModes.put(this.world, ClaimsMode.SurvivalRequiringClaims);
+        Claim claim = claim(new BoundingBox(16, 0, 0, 31, 255, 15));
+        BoundingBox area = new BoundingBox(0, 0, 0, 47, 9, 15);
+        when(this.dataStore.getChunkClaims(this.world, area)).thenReturn(new HashSet<>(List.of(claim)));
+        when(this.dataStore.getClaims(this.world, 0, 0)).thenReturn(List.of());
+        when(this.dataStore.getClaims(this.world, 1, 0)).thenReturn(List.of(claim));
+        when(this.dataStore.getClaims(this.world, 2, 0)).thenReturn(List.of());
+
+        List<DeniedRegion> result = ProtectionHelper.checkPermission(this.player, this.world, area, ClaimPermission.Build, null);
+
+        // The claimed chunk is left out entirely, and the unclaimed ones share the same reason.
+        assertEquals(List.of(new BoundingBox(0, 0, 0, 15, 9, 15), new BoundingBox(32, 0, 0, 47, 9, 15)),
+                result.stream().map(DeniedRegion::bounds).toList());
+        assertNull(result.get(0).claim());
+        assertSame(result.get(0).reason(), result.get(1).reason());
+        verify(this.world, never()).getBlockAt(anyInt(), anyInt(), anyInt());
+    }
+
+}
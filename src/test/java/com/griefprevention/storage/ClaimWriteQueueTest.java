@@ -0,0 +1,154 @@
+package com.griefprevention.storage;
+
+import me.ryanhamshire.GriefPrevention.Claim;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ClaimWriteQueueTest
+{
+
+    private final List<String> operations = new CopyOnWriteArrayList<>();
+    private final List<Claim> written = new CopyOnWriteArrayList<>();
+
+    private ClaimWriteQueue newQueue()
+    {
+        return new ClaimWriteQueue(
+                claim ->
+                {
+                    this.written.add(claim);
+                    this.operations.add("write " + claim.getID());
+                },
+                claim -> this.operations.add("delete " + claim.getID()),
+                (message, error) -> this.operations.add("error " + message),
+                // Long enough that nothing is written before the queue is closed.
+                60_000);
+    }
+
+    private static Claim snapshot(long id)
+    {
+        Claim claim = mock(Claim.class);
+        when(claim.getID()).thenReturn(id);
+        return claim;
+    }
+
+    @Test
+    void repeatedSavesAreCoalesced()
+    {
+        ClaimWriteQueue queue = newQueue();
+        Claim first = snapshot(1);
+        Claim latest = snapshot(1);
+
+        queue.save(first);
+        queue.save(snapshot(2));
+        queue.save(latest);
+        assertEquals(2, queue.getQueueDepth());
+        assertEquals(List.of(), operations, "Nothing should be written before the window passes.");
+
+        queue.close();
+        assertEquals(List.of("write 1", "write 2"), operations);
+        assertSame(latest, written.get(0), "The latest snapshot should be written.");
+        assertEquals(0, queue.getQueueDepth());
+        assertEquals(2, queue.getCompletedWrites());
+        assertEquals(1, queue.getCoalescedWrites());
+        assertEquals(2, queue.getLastFlushSize());
+    }
+
+    @Test
+    void deleteSupersedesPendingSave()
+    {
+        ClaimWriteQueue queue = newQueue();
+
+        queue.save(snapshot(1));
+        queue.delete(snapshot(1));
+        queue.close();
+
+        assertEquals(List.of("delete 1"), operations);
+    }
+
+    @Test
+    void writesThroughAfterClose()
+    {
+        ClaimWriteQueue queue = newQueue();
+        queue.close();
+
+        queue.save(snapshot(3));
+        assertEquals(List.of("write 3"), operations);
+        assertEquals(0, queue.getQueueDepth());
+    }
+
+    @Test
+    void failuresAreLoggedAndCounted()
+    {
+        ClaimWriteQueue queue = new ClaimWriteQueue(
+                claim ->
+                {
+                    throw new IOException("disk full");
+                },
+                claim -> {},
+                (message, error) -> this.operations.add(message),
+                60_000);
+
+        queue.save(snapshot(4));
+        queue.save(snapshot(5));
+        queue.close();
+
+        assertEquals(List.of("Unable to write claim 4", "Unable to write claim 5"), operations);
+        assertEquals(2, queue.getFailedWrites());
+        assertEquals(0, queue.getCompletedWrites());
+    }
+
+    @Test
+    void pendingChangesAreWrittenAsOneBatch()
+    {
+        ClaimWriteQueue queue = new ClaimWriteQueue(
+                claim -> this.operations.add("write " + claim.getID()),
+                claim -> this.operations.add("delete " + claim.getID()),
+                (saves, deletes) -> this.operations.add("batch " + saves.stream().map(Claim::getID).toList()
+                        + " " + deletes.stream().map(Claim::getID).toList()),
+                (message, error) -> this.operations.add("error " + message),
+                60_000);
+
+        queue.save(snapshot(1));
+        queue.delete(snapshot(2));
+        queue.save(snapshot(3));
+        queue.save(snapshot(1));
+        queue.close();
+
+        assertEquals(List.of("batch [1, 3] [2]"), operations);
+        assertEquals(3, queue.getCompletedWrites());
+    }
+
+    @Test
+    void failedBatchIsRetriedClaimByClaim()
+    {
+        ClaimWriteQueue queue = new ClaimWriteQueue(
+                claim -> this.operations.add("write " + claim.getID()),
+                claim -> this.operations.add("delete " + claim.getID()),
+                (saves, deletes) ->
+                {
+                    throw new IllegalStateException("deadlock");
+                },
+                (message, error) -> this.operations.add("error " + message),
+                60_000);
+
+        queue.save(snapshot(6));
+        queue.delete(snapshot(7));
+        queue.close();
+
+        assertEquals(List.of(
+                "error Unable to write a batch of 2 claims, retrying them one at a time.",
+                "write 6",
+                "delete 7"), operations);
+        assertEquals(2, queue.getCompletedWrites());
+        assertEquals(0, queue.getFailedWrites());
+    }
+
+}
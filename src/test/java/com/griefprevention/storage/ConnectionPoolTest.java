@@ -0,0 +1,214 @@
+package com.griefprevention.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionPoolTest
+{
+
+    private static final AtomicInteger databases = new AtomicInteger();
+
+    // Each test gets its own in-memory database, kept alive until the last connection closes.
+    private final String url = "jdbc:h2:mem:pool" + databases.incrementAndGet();
+    private final AtomicInteger connectionsOpened = new AtomicInteger();
+    private final List<String> errors = new ArrayList<>();
+    private ConnectionPool pool;
+
+    private ConnectionPool open(int size)
+    {
+        this.pool = new ConnectionPool(
+                () ->
+                {
+                    this.connectionsOpened.incrementAndGet();
+                    return DriverManager.getConnection(this.url);
+                },
+                size,
+                30,
+                TimeUnit.SECONDS,
+                (message, error) -> this.errors.add(message));
+        return this.pool;
+    }
+
+    @AfterEach
+    void close()
+    {
+        if (this.pool != null) this.pool.close();
+    }
+
+    @Test
+    void connectionsAreReused() throws SQLException
+    {
+        ConnectionPool pool = open(2);
+        Connection first = pool.execute(connection -> connection);
+        Connection second = pool.execute(connection -> connection);
+
+        assertSame(first, second);
+        assertEquals(1, this.connectionsOpened.get());
+        assertEquals(1, pool.getIdleConnections());
+    }
+
+    @Test
+    void asyncWorkRunsOffCallingThread() throws Exception
+    {
+        ConnectionPool pool = open(2);
+        pool.execute(connection ->
+        {
+            try (Statement statement = connection.createStatement())
+            {
+                statement.execute("CREATE TABLE value (id INTEGER)");
+                statement.execute("INSERT INTO value VALUES (7)");
+            }
+            return null;
+        });
+
+        Thread caller = Thread.currentThread();
+        CompletableFuture<Integer> result = pool.supplyAsync(connection ->
+        {
+            assertNotSame(caller, Thread.currentThread());
+            try (Statement statement = connection.createStatement())
+            {
+                ResultSet results = statement.executeQuery("SELECT id FROM value");
+                results.next();
+                return results.getInt(1);
+            }
+        });
+
+        assertEquals(7, result.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void sizeIsBounded() throws Exception
+    {
+        ConnectionPool pool = open(2);
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<CompletableFuture<Object>> busy = new ArrayList<>();
+        for (int i = 0; i < 2; i++)
+        {
+            busy.add(pool.supplyAsync(connection ->
+            {
+                started.countDown();
+                try
+                {
+                    release.await();
+                }
+                catch (InterruptedException e)
+                {
+                    throw new SQLException(e);
+                }
+                return null;
+            }));
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // A third borrower waits for a connection instead of opening another.
+        CompletableFuture<Object> waiting = CompletableFuture.supplyAsync(() ->
+        {
+            try
+            {
+                return pool.execute(connection -> "done");
+            }
+            catch (SQLException e)
+            {
+                throw new CompletionException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+        assertEquals(2, pool.getOpenConnections());
+
+        release.countDown();
+        assertEquals("done", waiting.get(5, TimeUnit.SECONDS));
+        for (CompletableFuture<Object> future : busy) future.get(5, TimeUnit.SECONDS);
+        assertEquals(2, this.connectionsOpened.get());
+    }
+
+    @Test
+    void brokenConnectionIsReplaced() throws SQLException
+    {
+        ConnectionPool pool = open(1);
+        Connection first = pool.execute(connection -> connection);
+
+        assertThrows(SQLException.class, () -> pool.execute(connection ->
+        {
+            throw new SQLNonTransientConnectionException("Connection reset", "08006");
+        }));
+        assertTrue(first.isClosed());
+        assertEquals(0, pool.getOpenConnections());
+
+        Connection second = pool.execute(connection -> connection);
+        assertNotSame(first, second);
+        assertEquals(2, this.connectionsOpened.get());
+    }
+
+    @Test
+    void failedStatementKeepsConnection() throws SQLException
+    {
+        ConnectionPool pool = open(1);
+        Connection first = pool.execute(connection -> connection);
+
+        assertThrows(SQLException.class, () -> pool.execute(connection ->
+        {
+            try (Statement statement = connection.createStatement())
+            {
+                return statement.executeQuery("SELECT * FROM missing_table");
+            }
+        }));
+
+        assertSame(first, pool.execute(connection -> connection));
+    }
+
+    @Test
+    void asyncFailureCompletesExceptionally()
+    {
+        ConnectionPool pool = open(1);
+        CompletableFuture<Object> result = pool.supplyAsync(connection ->
+        {
+            throw new SQLException("Failed");
+        });
+
+        CompletionException thrown = assertThrows(CompletionException.class, result::join);
+        assertInstanceOf(SQLException.class, thrown.getCause());
+    }
+
+    @Test
+    void closeFinishesQueuedWork() throws SQLException
+    {
+        ConnectionPool pool = open(1);
+        AtomicInteger completed = new AtomicInteger();
+        for (int i = 0; i < 10; i++)
+        {
+            pool.supplyAsync(connection -> completed.incrementAndGet());
+        }
+
+        pool.close();
+        assertEquals(10, completed.get());
+        assertEquals(0, pool.getOpenConnections());
+        assertThrows(SQLException.class, () -> pool.execute(connection -> null));
+        assertEquals(List.of(), this.errors);
+    }
+
+}
@@ -0,0 +1,236 @@
+package com.griefprevention.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IoSchedulerTest
+{
+
+    private final List<String> errors = new CopyOnWriteArrayList<>();
+    private IoScheduler scheduler;
+
+    private IoScheduler open(int concurrency, int queueCapacity)
+    {
+        this.scheduler = new IoScheduler(concurrency, queueCapacity, (message, error) -> this.errors.add(message));
+        return this.scheduler;
+    }
+
+    @AfterEach
+    void close()
+    {
+        if (this.scheduler != null) this.scheduler.close();
+    }
+
+    @Test
+    void tasksForOneKeyRunInOrder() throws Exception
+    {
+        IoScheduler scheduler = open(8, 1000);
+        List<Integer> order = new CopyOnWriteArrayList<>();
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+        {
+            int task = i;
+            futures.add(scheduler.submit("player", () ->
+            {
+                // Give later tasks every chance to overtake.
+                if (task % 10 == 0) Thread.yield();
+                order.add(task);
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) expected.add(i);
+        assertEquals(expected, order);
+    }
+
+    @Test
+    void concurrencyIsBounded() throws Exception
+    {
+        IoScheduler scheduler = open(2, 100);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+        {
+            futures.add(scheduler.submit(null, () ->
+            {
+                peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+                try
+                {
+                    Thread.sleep(5);
+                }
+                catch (InterruptedException ignored) {}
+                active.decrementAndGet();
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        assertTrue(peak.get() <= 2, "At most two tasks should run at once, saw " + peak.get());
+        assertEquals(20, scheduler.getCompletedTasks());
+    }
+
+    @Test
+    void fullQueueBlocksSubmitter() throws Exception
+    {
+        IoScheduler scheduler = open(1, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable blocked = () ->
+        {
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException ignored) {}
+        };
+        scheduler.submit(null, blocked);
+        scheduler.submit(null, blocked);
+        assertEquals(2, scheduler.getQueueDepth());
+
+        CompletableFuture<Void> third = CompletableFuture.runAsync(() -> scheduler.submit(null, () -> {}));
+        Thread.sleep(100);
+        assertFalse(third.isDone());
+
+        release.countDown();
+        third.get(5, TimeUnit.SECONDS);
+        assertEquals(1, scheduler.getThrottledSubmissions());
+    }
+
+    @Test
+    void fullQueueNeverBlocksSubmitterThatMayNotWait() throws Exception
+    {
+        this.scheduler = new IoScheduler(1, 2, () -> false, (message, error) -> this.errors.add(message));
+        IoScheduler scheduler = this.scheduler;
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable blocked = () ->
+        {
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException ignored) {}
+        };
+        scheduler.submit(null, blocked);
+        scheduler.submit(null, blocked);
+
+        AtomicInteger completed = new AtomicInteger();
+        CompletableFuture<Void> third = scheduler.submit(null, completed::incrementAndGet);
+        assertEquals(3, scheduler.getQueueDepth());
+        assertEquals(1, scheduler.getThrottledSubmissions());
+        assertFalse(third.isDone());
+
+        release.countDown();
+        third.get(5, TimeUnit.SECONDS);
+        assertEquals(1, completed.get());
+    }
+
+    @Test
+    void pendingCoalescedTaskIsReplaced() throws Exception
+    {
+        IoScheduler scheduler = open(1, 100);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> operations = new CopyOnWriteArrayList<>();
+
+        scheduler.submit("player", () ->
+        {
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException ignored) {}
+            operations.add("load");
+        });
+        CompletableFuture<Void> first = scheduler.submitCoalesced("player", () -> operations.add("first save"));
+        CompletableFuture<Void> second = scheduler.submitCoalesced("player", () -> operations.add("second save"));
+        assertSame(first, second);
+        assertEquals(2, scheduler.getQueueDepth());
+
+        release.countDown();
+        second.get(5, TimeUnit.SECONDS);
+        // A save after the pending one started is scheduled on its own.
+        scheduler.submitCoalesced("player", () -> operations.add("third save")).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("load", "second save", "third save"), operations);
+        assertEquals(1, scheduler.getCoalescedSubmissions());
+    }
+
+    @Test
+    void coalescedTaskIsNotReplacedAcrossOtherTasks() throws Exception
+    {
+        IoScheduler scheduler = open(1, 100);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> operations = new CopyOnWriteArrayList<>();
+
+        scheduler.submit("player", () ->
+        {
+            try
+            {
+                release.await();
+            }
+            catch (InterruptedException ignored) {}
+        });
+        scheduler.submitCoalesced("player", () -> operations.add("first save"));
+        scheduler.submit("player", () -> operations.add("load"));
+        CompletableFuture<Void> last = scheduler.submitCoalesced("player", () -> operations.add("second save"));
+
+        release.countDown();
+        last.get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("first save", "load", "second save"), operations);
+        assertEquals(0, scheduler.getCoalescedSubmissions());
+    }
+
+    @Test
+    void failureDoesNotBreakKeyOrder() throws Exception
+    {
+        IoScheduler scheduler = open(2, 10);
+        List<String> operations = new CopyOnWriteArrayList<>();
+
+        scheduler.submit("player", () ->
+        {
+            throw new IllegalStateException("Disk full");
+        });
+        scheduler.submit("player", () -> operations.add("second")).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("second"), operations);
+        assertEquals(1, scheduler.getFailedTasks());
+        assertEquals(List.of("An I/O task failed"), this.errors);
+    }
+
+    @Test
+    void closeFinishesQueuedWorkThenRunsInline()
+    {
+        IoScheduler scheduler = open(1, 100);
+        AtomicInteger completed = new AtomicInteger();
+        for (int i = 0; i < 10; i++)
+        {
+            scheduler.submit("player", completed::incrementAndGet);
+        }
+
+        scheduler.close();
+        assertEquals(10, completed.get());
+        assertEquals(0, scheduler.getQueueDepth());
+
+        Thread caller = Thread.currentThread();
+        List<Thread> ranOn = new ArrayList<>();
+        assertTrue(scheduler.submit("player", () -> ranOn.add(Thread.currentThread())).isDone());
+        assertSame(caller, ranOn.get(0));
+        assertEquals(List.of(), this.errors);
+    }
+
+}
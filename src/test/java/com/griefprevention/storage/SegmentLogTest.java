@@ -0,0 +1,238 @@
+package com.griefprevention.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentLogTest
+{
+
+    private static final byte CLAIMS = 1;
+    private static final byte PLAYERS = 2;
+
+    @TempDir
+    Path directory;
+
+    private final List<String> errors = new ArrayList<>();
+
+    private SegmentLog open(long maxSegmentSize) throws IOException
+    {
+        return new SegmentLog(this.directory, maxSegmentSize, (message, error) -> this.errors.add(message));
+    }
+
+    private static byte[] bytes(String value)
+    {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> read(SegmentLog log, byte namespace) throws IOException
+    {
+        Map<String, String> values = new LinkedHashMap<>();
+        log.forEach(namespace, (key, value) -> values.put(key, new String(value, StandardCharsets.UTF_8)));
+        return values;
+    }
+
+    private List<Path> segments() throws IOException
+    {
+        try (Stream<Path> files = Files.list(this.directory))
+        {
+            return files.sorted().toList();
+        }
+    }
+
+    @Test
+    void valuesSurviveReopen() throws IOException
+    {
+        SegmentLog log = open(1024);
+        log.put(CLAIMS, "1", bytes("first"));
+        log.put(CLAIMS, "2", bytes("second"));
+        log.put(PLAYERS, "1", bytes("player"));
+        log.put(CLAIMS, "1", bytes("first, changed"));
+        log.delete(CLAIMS, "2");
+        log.close();
+
+        log = open(1024);
+        assertEquals(Map.of("1", "first, changed"), read(log, CLAIMS));
+        assertEquals(Map.of("1", "player"), read(log, PLAYERS));
+        assertArrayEquals(bytes("player"), log.get(PLAYERS, "1"));
+        assertNull(log.get(CLAIMS, "2"));
+        assertEquals(List.of(), this.errors);
+        log.close();
+    }
+
+    @Test
+    void interruptedWriteIsDiscarded() throws IOException
+    {
+        SegmentLog log = open(1024);
+        log.put(CLAIMS, "1", bytes("kept"));
+        log.put(CLAIMS, "2", bytes("torn"));
+        log.close();
+
+        // Cut the last record short, as if the server died while writing it.
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE))
+        {
+            channel.truncate(channel.size() - 3);
+        }
+
+        log = open(1024);
+        assertEquals(Map.of("1", "kept"), read(log, CLAIMS));
+        assertEquals(1, this.errors.size());
+
+        // New writes land after the last good record.
+        log.put(CLAIMS, "3", bytes("after"));
+        log.close();
+        assertEquals(Map.of("1", "kept", "3", "after"), read(open(1024), CLAIMS));
+    }
+
+    @Test
+    void corruptRecordIsDetected() throws IOException
+    {
+        SegmentLog log = open(1024);
+        log.put(CLAIMS, "1", bytes("kept"));
+        log.put(CLAIMS, "2", bytes("flipped"));
+        log.close();
+
+        Path segment = segments().get(0);
+        byte[] content = Files.readAllBytes(segment);
+        content[content.length - 1] ^= 1;
+        Files.write(segment, content);
+
+        log = open(1024);
+        assertEquals(Map.of("1", "kept"), read(log, CLAIMS));
+        log.close();
+    }
+
+    @Test
+    void compactionKeepsLatestValues() throws IOException
+    {
+        SegmentLog log = open(256);
+        Map<String, String> expected = new HashMap<>();
+        Random random = new Random(12);
+        for (int i = 0; i < 2_000; i++)
+        {
+            String key = String.valueOf(random.nextInt(50));
+            if (random.nextInt(5) == 0)
+            {
+                log.delete(CLAIMS, key);
+                expected.remove(key);
+            }
+            else
+            {
+                String value = "value " + i;
+                log.put(CLAIMS, key, bytes(value));
+                expected.put(key, value);
+            }
+        }
+
+        int segmentsBefore = log.getSegmentCount();
+        assertTrue(log.getGarbageRatio() > 0.5);
+        log.compact();
+        assertTrue(log.getSegmentCount() < segmentsBefore);
+        assertEquals(0, log.getGarbageRatio(), 0.0001);
+        assertEquals(expected, read(log, CLAIMS));
+
+        log.put(CLAIMS, "new", bytes("value"));
+        expected.put("new", "value");
+        log.close();
+
+        log = open(256);
+        assertEquals(expected, read(log, CLAIMS));
+        assertEquals(expected.size(), log.size());
+        assertEquals(List.of(), this.errors);
+        log.close();
+    }
+
+    @Test
+    void interruptedCompactionReplaysToSameContents() throws IOException
+    {
+        SegmentLog log = open(256);
+        for (int i = 0; i < 100; i++)
+        {
+            log.put(CLAIMS, String.valueOf(i % 10), bytes("value " + i));
+        }
+        log.delete(CLAIMS, "3");
+        log.close();
+
+        // Keep a copy of the old segments, then compact and put them back as if deletion never happened.
+        Map<Path, byte[]> oldSegments = new HashMap<>();
+        for (Path segment : segments())
+        {
+            oldSegments.put(segment, Files.readAllBytes(segment));
+        }
+
+        log = open(256);
+        Map<String, String> expected = read(log, CLAIMS);
+        log.compact();
+        log.close();
+
+        for (Map.Entry<Path, byte[]> segment : oldSegments.entrySet())
+        {
+            Files.write(segment.getKey(), segment.getValue());
+        }
+
+        log = open(256);
+        assertEquals(expected, read(log, CLAIMS));
+        assertNull(log.get(CLAIMS, "3"));
+        log.close();
+    }
+
+    @Test
+    void failedSegmentDeletionKeepsDeletedKeysDeleted() throws IOException
+    {
+        SegmentLog log = open(256);
+        for (int i = 0; i < 10; i++)
+        {
+            log.put(CLAIMS, "filler " + i, bytes("value " + i));
+        }
+        log.put(CLAIMS, "deleted", bytes("value"));
+        Path undeletable = segments().get(segments().size() - 1);
+        for (int i = 10; i < 20; i++)
+        {
+            log.put(CLAIMS, "filler " + i, bytes("value " + i));
+        }
+        log.delete(CLAIMS, "deleted");
+        Map<String, String> expected = read(log, CLAIMS);
+        assertTrue(log.getSegmentCount() > 2);
+
+        // The deletion marker is in a newer segment than the undeletable one, so that segment must be kept too.
+        log.fileDeleter = path ->
+        {
+            if (path.equals(undeletable)) throw new IOException("Simulated failure");
+            Files.delete(path);
+        };
+        log.compact();
+        assertEquals(1, this.errors.size());
+        assertTrue(Files.exists(undeletable));
+        log.close();
+
+        log = open(256);
+        assertEquals(expected, read(log, CLAIMS));
+        assertNull(log.get(CLAIMS, "deleted"));
+
+        // The next compaction removes what was left behind.
+        log.compact();
+        assertTrue(Files.notExists(undeletable));
+        log.close();
+        assertEquals(expected, read(open(256), CLAIMS));
+    }
+
+}
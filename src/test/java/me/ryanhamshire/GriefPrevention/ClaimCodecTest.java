@@ -0,0 +1,101 @@
+package me.ryanhamshire.GriefPrevention;
+
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
+import org.bukkit.World;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ClaimCodecTest
+{
+
+    private static World world(String name)
+    {
+        World world = mock(World.class);
+        when(world.getName()).thenReturn(name);
+        return world;
+    }
+
+    private static List<List<String>> permissions(Claim claim)
+    {
+        ArrayList<String> builders = new ArrayList<>();
+        ArrayList<String> containers = new ArrayList<>();
+        ArrayList<String> accessors = new ArrayList<>();
+        ArrayList<String> managers = new ArrayList<>();
+        claim.getPermissions(builders, containers, accessors, managers);
+        return List.of(builders, containers, accessors, managers);
+    }
+
+    @Test
+    void claimRoundTrip() throws Exception
+    {
+        World world = world("world");
+        UUID owner = UUID.randomUUID();
+        UUID banned = UUID.randomUUID();
+        Claim parent = new Claim(world, new BoundingBox(-10, 0, -10, 10, 100, 10), owner,
+                List.of("public"), List.of(UUID.randomUUID().toString()), List.of("[group]"),
+                List.of(UUID.randomUUID().toString()), false, 7L);
+        parent.banUUID(banned);
+        parent.setPublicBanned(true);
+        parent.areExplosivesAllowed = true;
+        parent.modifiedDate = new Date(123456789L);
+
+        Claim child = new Claim(world, new BoundingBox(0, 10, 0, 5, 20, 5), owner,
+                List.of(), List.of(), List.of(), List.of(), true, 8L);
+        child.parent = parent;
+
+        ArrayList<Long> parentID = new ArrayList<>();
+        Claim decoded = ClaimCodec.decode(ClaimCodec.encode(parent.copyForStorage()), 7L, parentID, ClaimCodec.indexWorlds(List.of(world)));
+        assertEquals(List.of(-1L), parentID);
+        assertEquals(7L, decoded.getID());
+        assertEquals(world, decoded.getWorld());
+        assertEquals(parent.getBounds(), decoded.getBounds());
+        assertEquals(owner, decoded.ownerID);
+        assertEquals(permissions(parent), permissions(decoded));
+        assertEquals(Set.of(banned), decoded.getBannedPlayers());
+        assertTrue(decoded.isPublicBanned());
+        assertTrue(decoded.areExplosivesAllowed);
+        assertEquals(parent.modifiedDate, decoded.modifiedDate);
+
+        parentID.clear();
+        decoded = ClaimCodec.decode(ClaimCodec.encode(child.copyForStorage()), 8L, parentID, ClaimCodec.indexWorlds(List.of(world)));
+        assertEquals(List.of(7L), parentID);
+        assertEquals(child.getBounds(), decoded.getBounds());
+        assertTrue(decoded.getSubclaimRestrictions());
+    }
+
+    @Test
+    void adminClaimHasNoOwner() throws Exception
+    {
+        World world = world("world_nether");
+        Claim claim = new Claim(world, new BoundingBox(0, 0, 0, 1, 1, 1), null,
+                List.of(), List.of(), List.of(), List.of(), false, 1L);
+
+        Claim decoded = ClaimCodec.decode(ClaimCodec.encode(claim), 1L, new ArrayList<>(), ClaimCodec.indexWorlds(List.of(world)));
+        assertNull(decoded.ownerID);
+    }
+
+    @Test
+    void missingWorldIsReported() throws Exception
+    {
+        Claim claim = new Claim(world("gone"), new BoundingBox(0, 0, 0, 1, 1, 1), null,
+                List.of(), List.of(), List.of(), List.of(), false, 1L);
+        byte[] encoded = ClaimCodec.encode(claim);
+
+        Exception e = assertThrows(Exception.class,
+                () -> ClaimCodec.decode(encoded, 1L, new ArrayList<>(), ClaimCodec.indexWorlds(List.of(world("world")))));
+        assertTrue(e.getMessage().contains("World not found"));
+    }
+
+}
@@ -0,0 +1,330 @@
+package me.ryanhamshire.GriefPrevention;
+
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ClaimIndexTest
+{
+    private final World overworld = mockWorld();
+    private final World nether = mockWorld();
+    private final List<Claim> topLevelClaims = new ArrayList<>();
+    private DataStore dataStore;
+    private long nextId;
+
+    private static World mockWorld()
+    {
+        World world = mock(World.class);
+        when(world.getUID()).thenReturn(UUID.randomUUID());
+        return world;
+    }
+
+    @BeforeEach
+    void beforeEach()
+    {
+        this.dataStore = new MemoryDataStore();
+        this.topLevelClaims.clear();
+        this.nextId = 0;
+    }
+
+    private Claim newClaim(World world, Claim parent, int x1, int y1, int z1, int x2, int y2, int z2)
+    {
+        Claim claim = new Claim(world, new BoundingBox(x1, y1, z1, x2, y2, z2), null,
+                List.of(), List.of(), List.of(), List.of(), false, this.nextId++);
+        claim.parent = parent;
+        this.dataStore.addClaim(claim, false);
+        if (parent == null) this.topLevelClaims.add(claim);
+        return claim;
+    }
+
+    // The lookup as it was before claims were indexed per world: a scan of every claim in the chunk.
+    private Claim linearClaimAt(Location location, boolean ignoreHeight, boolean ignoreSubclaims)
+    {
+        for (Claim claim : this.topLevelClaims)
+        {
+            if (!claim.inDataStore || !claim.contains(location, true, false)) continue;
+            if (!ignoreSubclaims)
+            {
+                for (Claim subdivision : claim.children)
+                {
+                    if (subdivision.inDataStore && subdivision.contains(location, !subdivision.is3D() && ignoreHeight, false))
+                        return subdivision;
+                }
+            }
+            if (claim.contains(location, !claim.is3D() && ignoreHeight, false))
+                return claim;
+        }
+        return null;
+    }
+
+    @Test
+    void sameChunkCoordinatesInDifferentWorlds()
+    {
+        Claim inOverworld = newClaim(overworld, null, 0, 0, 0, 20, Claim._2D_HEIGHT, 20);
+        Claim inNether = newClaim(nether, null, 0, 0, 0, 20, Claim._2D_HEIGHT, 20);
+
+        assertSame(inOverworld, dataStore.getClaimAt(new Location(overworld, 5, 64, 5), true, null));
+        assertSame(inNether, dataStore.getClaimAt(new Location(nether, 5, 64, 5), true, null));
+        assertEquals(Set.of(inOverworld), dataStore.getChunkClaims(overworld, new BoundingBox(0, 0, 0, 1, 1, 1)));
+        assertEquals(List.of(inNether), new ArrayList<>(dataStore.getClaims(nether, 0, 0)));
+    }
+
+    @Test
+    void subdivisionsResolveThroughParent()
+    {
+        Claim parent = newClaim(overworld, null, 0, 0, 0, 40, Claim._2D_HEIGHT, 40);
+        Claim child2d = newClaim(overworld, parent, 0, 0, 0, 10, Claim._2D_HEIGHT, 10);
+        Claim child3d = newClaim(overworld, parent, 20, 60, 20, 30, 70, 30);
+
+        assertSame(child2d, dataStore.getClaimAt(new Location(overworld, 5, 64, 5), true, null));
+        assertSame(parent, dataStore.getClaimAt(new Location(overworld, 5, 64, 5), true, true, null));
+        assertSame(child3d, dataStore.getClaimAt(new Location(overworld, 25, 65, 25), true, null));
+        // 3D subclaims never ignore height.
+        assertSame(parent, dataStore.getClaimAt(new Location(overworld, 25, 90, 25), true, null));
+    }
+
+    @Test
+    void subdivisionsCanBeFoundById()
+    {
+        Claim parent = newClaim(overworld, null, 0, 0, 0, 40, Claim._2D_HEIGHT, 40);
+        Claim child = newClaim(overworld, parent, 0, 0, 0, 10, Claim._2D_HEIGHT, 10);
+
+        assertSame(parent, dataStore.getClaim(parent.getID()));
+        assertSame(child, dataStore.getClaim(child.getID()));
+
+        dataStore.deleteClaim(child, false, false);
+        assertNull(dataStore.getClaim(child.getID()));
+        assertSame(parent, dataStore.getClaim(parent.getID()));
+    }
+
+    @Test
+    void deletedClaimsLeaveIndex()
+    {
+        Claim claim = newClaim(overworld, null, 0, 0, 0, 40, Claim._2D_HEIGHT, 40);
+        dataStore.deleteClaim(claim, false, false);
+
+        assertNull(dataStore.getClaimAt(new Location(overworld, 5, 64, 5), true, null));
+        assertTrue(dataStore.getChunkClaims(overworld, new BoundingBox(0, 0, 0, 40, 0, 40)).isEmpty());
+    }
+
+    @Test
+    void worldUnloadAndReload()
+    {
+        Claim claim = newClaim(overworld, null, 0, 0, 0, 40, Claim._2D_HEIGHT, 40);
+        Location location = new Location(overworld, 5, 64, 5);
+
+        dataStore.onWorldUnload(overworld);
+        assertNull(dataStore.getClaimAt(location, true, null));
+
+        dataStore.onWorldLoad(overworld);
+        assertSame(claim, dataStore.getClaimAt(location, true, null));
+    }
+
+    @Test
+    void ownerIndexTracksTopLevelClaims()
+    {
+        UUID owner = UUID.randomUUID();
+        UUID otherOwner = UUID.randomUUID();
+        Claim first = new Claim(overworld, new BoundingBox(0, 0, 0, 10, Claim._2D_HEIGHT, 10), owner,
+                List.of(), List.of(), List.of(), List.of(), false, this.nextId++);
+        Claim second = new Claim(nether, new BoundingBox(0, 0, 0, 10, Claim._2D_HEIGHT, 10), owner,
+                List.of(), List.of(), List.of(), List.of(), false, this.nextId++);
+        Claim other = new Claim(overworld, new BoundingBox(50, 0, 50, 60, Claim._2D_HEIGHT, 60), otherOwner,
+                List.of(), List.of(), List.of(), List.of(), false, this.nextId++);
+        dataStore.addClaim(first, false);
+        dataStore.addClaim(second, false);
+        dataStore.addClaim(other, false);
+        newClaim(overworld, null, 100, 0, 100, 110, Claim._2D_HEIGHT, 110);
+        newClaim(overworld, first, 1, 0, 1, 5, Claim._2D_HEIGHT, 5);
+
+        assertEquals(List.of(first, second), dataStore.getClaimsOwnedBy(owner));
+        assertEquals(List.of(other), dataStore.getClaimsOwnedBy(otherOwner));
+        assertTrue(dataStore.getClaimsOwnedBy(UUID.randomUUID()).isEmpty());
+
+        // Claimed area totals only count top level claims.
+        assertEquals(first.getArea() + second.getArea(), dataStore.getClaimedArea(owner));
+        assertEquals(other.getArea(), dataStore.getClaimedArea(otherOwner));
+        assertEquals(0, dataStore.getClaimedArea(UUID.randomUUID()));
+    }
+
+    @Test
+    void overlapMatchesLinearScan()
+    {
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++)
+        {
+            int x = random.nextInt(4000) - 2000;
+            int z = random.nextInt(4000) - 2000;
+            newClaim(random.nextBoolean() ? overworld : nether, null, x, 0, z,
+                    x + random.nextInt(60), Claim._2D_HEIGHT, z + random.nextInt(60));
+        }
+
+        for (int i = 0; i < 2_000; i++)
+        {
+            World world = random.nextBoolean() ? overworld : nether;
+            int x = random.nextInt(4400) - 2200;
+            int z = random.nextInt(4400) - 2200;
+            // Mostly shovel-sized candidates, with the occasional huge one that falls back to a scan.
+            int size = random.nextInt(50) == 0 ? 5000 : random.nextInt(100);
+            Claim candidate = new Claim(world, new BoundingBox(x, 0, z, x + size, Claim._2D_HEIGHT, z + size), null,
+                    List.of(), List.of(), List.of(), List.of(), false, -1L);
+
+            boolean expected = false;
+            for (Claim claim : this.topLevelClaims)
+            {
+                if (claim.overlaps(candidate))
+                {
+                    expected = true;
+                    break;
+                }
+            }
+
+            Claim overlapped = dataStore.getOverlappingClaim(candidate);
+            assertEquals(expected, overlapped != null, candidate::toString);
+            if (overlapped != null) assertTrue(overlapped.overlaps(candidate));
+        }
+    }
+
+    @Test
+    void crowdedParentMatchesLinearLookup()
+    {
+        Random random = new Random(11);
+        Claim parent = newClaim(overworld, null, -200, 0, -200, 200, Claim._2D_HEIGHT, 200);
+        List<Claim> subdivisions = new ArrayList<>();
+        for (int i = 0; i < 400; i++)
+        {
+            int x = random.nextInt(390) - 200;
+            int z = random.nextInt(390) - 200;
+            int y = random.nextInt(100);
+            subdivisions.add(newClaim(overworld, parent, x, y, z, x + random.nextInt(12),
+                    random.nextBoolean() ? Claim._2D_HEIGHT : y + random.nextInt(20), z + random.nextInt(12)));
+        }
+
+        for (int round = 0; round < 3; round++)
+        {
+            for (int i = 0; i < 5_000; i++)
+            {
+                Location location = new Location(overworld, random.nextInt(420) - 210, random.nextInt(140), random.nextInt(420) - 210);
+                boolean ignoreHeight = random.nextBoolean();
+
+                assertSame(linearClaimAt(location, ignoreHeight, false), dataStore.getClaimAt(location, ignoreHeight, null), location::toString);
+
+                boolean inSubdivision = false;
+                for (Claim subdivision : parent.children)
+                {
+                    inSubdivision |= subdivision.contains(location, ignoreHeight, true);
+                }
+                assertEquals(parent.contains(location, ignoreHeight, false) && !inSubdivision,
+                        parent.contains(location, ignoreHeight, true), location::toString);
+            }
+
+            // Churn the children so the index has to be rebuilt.
+            for (int i = 0; i < 50; i++)
+            {
+                dataStore.deleteClaim(subdivisions.remove(random.nextInt(subdivisions.size())), false, false);
+            }
+            int x = random.nextInt(390) - 200;
+            int z = random.nextInt(390) - 200;
+            subdivisions.add(newClaim(overworld, parent, x, 0, z, x + 5, Claim._2D_HEIGHT, z + 5));
+        }
+    }
+
+    @Test
+    void batchLookupMatchesSingleLookups()
+    {
+        Random random = new Random(3);
+        Claim parent = newClaim(overworld, null, 0, 0, 0, 40, Claim._2D_HEIGHT, 40);
+        newClaim(overworld, parent, 0, 0, 0, 10, Claim._2D_HEIGHT, 10);
+        newClaim(overworld, parent, 20, 60, 20, 30, 70, 30);
+        newClaim(overworld, null, 50, 0, 0, 70, Claim._2D_HEIGHT, 20);
+        newClaim(nether, null, 0, 0, 0, 20, Claim._2D_HEIGHT, 20);
+
+        List<Block> blocks = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++)
+        {
+            // Mostly one world, like an explosion, with the odd run in another.
+            World world = i % 500 < 450 ? overworld : nether;
+            Block block = mock(Block.class);
+            when(block.getWorld()).thenReturn(world);
+            when(block.getX()).thenReturn(random.nextInt(90) - 10);
+            when(block.getY()).thenReturn(random.nextInt(100));
+            when(block.getZ()).thenReturn(random.nextInt(50) - 10);
+            blocks.add(block);
+        }
+
+        for (boolean ignoreSubclaims : new boolean[] { false, true })
+        {
+            List<Claim> claims = dataStore.getClaimsAt(blocks, false, ignoreSubclaims);
+            assertEquals(blocks.size(), claims.size());
+            for (int i = 0; i < blocks.size(); i++)
+            {
+                Block block = blocks.get(i);
+                Location location = new Location(block.getWorld(), block.getX(), block.getY(), block.getZ());
+                assertSame(dataStore.getClaimAt(location, false, ignoreSubclaims, null), claims.get(i), location::toString);
+            }
+        }
+    }
+
+    @Test
+    void matchesLinearLookup()
+    {
+        Random random = new Random(42);
+        World[] worlds = { overworld, nether };
+
+        for (int i = 0; i < 300; i++)
+        {
+            World world = worlds[random.nextInt(worlds.length)];
+            int x = random.nextInt(2000) - 1000;
+            int z = random.nextInt(2000) - 1000;
+            boolean is3d = random.nextBoolean();
+            int minY = random.nextInt(100);
+            int maxY = is3d ? minY + random.nextInt(50) : Claim._2D_HEIGHT;
+            Claim parent = newClaim(world, null, x, minY, z, x + random.nextInt(80), maxY, z + random.nextInt(80));
+
+            for (int j = random.nextInt(4); j > 0; j--)
+            {
+                BoundingBox bounds = parent.getBounds();
+                int cx = bounds.getMinX() + random.nextInt(bounds.getLength());
+                int cz = bounds.getMinZ() + random.nextInt(bounds.getWidth());
+                int cy = minY + random.nextInt(20);
+                newClaim(world, parent, cx, cy, cz,
+                        Math.min(bounds.getMaxX(), cx + random.nextInt(20)),
+                        random.nextBoolean() ? Claim._2D_HEIGHT : cy + random.nextInt(20),
+                        Math.min(bounds.getMaxZ(), cz + random.nextInt(20)));
+            }
+        }
+
+        Set<Claim> found = new HashSet<>();
+        for (int i = 0; i < 20_000; i++)
+        {
+            World world = worlds[random.nextInt(worlds.length)];
+            Location location = new Location(world, random.nextInt(2200) - 1100, random.nextInt(160) - 10, random.nextInt(2200) - 1100);
+            boolean ignoreHeight = random.nextBoolean();
+            boolean ignoreSubclaims = random.nextBoolean();
+
+            Claim expected = linearClaimAt(location, ignoreHeight, ignoreSubclaims);
+            assertSame(expected, dataStore.getClaimAt(location, ignoreHeight, ignoreSubclaims, null), location::toString);
+            if (expected != null) found.add(expected);
+        }
+
+        // Sanity check that the lookups actually exercised claims.
+        assertTrue(found.size() > 10);
+    }
+}
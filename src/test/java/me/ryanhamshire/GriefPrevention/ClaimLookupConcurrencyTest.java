@@ -0,0 +1,168 @@
+package me.ryanhamshire.GriefPrevention;
+
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ClaimLookupConcurrencyTest
+{
+    private static final int READERS = 4;
+
+    private final World world = mockWorld();
+
+    private static World mockWorld()
+    {
+        World world = mock(World.class);
+        when(world.getUID()).thenReturn(UUID.randomUUID());
+        return world;
+    }
+
+    private static Claim newClaim(World world, long id, int x, int z, int size)
+    {
+        return new Claim(world, new BoundingBox(x, 0, z, x + size, Claim._2D_HEIGHT, z + size), null,
+                List.of(), List.of(), List.of(), List.of(), false, id);
+    }
+
+    @Test
+    void readersProgressWhileWriteIsInFlight() throws InterruptedException
+    {
+        CountDownLatch writeStarted = new CountDownLatch(1);
+        CountDownLatch releaseWrite = new CountDownLatch(1);
+        DataStore dataStore = new MemoryDataStore()
+        {
+            @Override
+            void writeClaimToStorage(Claim claim)
+            {
+                // Simulate a slow disk or database write on the claim I/O thread.
+                writeStarted.countDown();
+                try
+                {
+                    releaseWrite.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                super.writeClaimToStorage(claim);
+            }
+        };
+
+        Claim claim = newClaim(world, 0, 0, 0, 32);
+        dataStore.addClaim(claim, false);
+
+        // Saving only queues the write, so this returns while storage is still busy.
+        dataStore.saveClaim(claim);
+        assertTrue(writeStarted.await(10, TimeUnit.SECONDS));
+
+        try
+        {
+            Location location = new Location(world, 16, 64, 16);
+            Location wilderness = new Location(world, 100, 64, 100);
+            for (int i = 0; i < 10_000; i++)
+            {
+                assertSame(claim, dataStore.getClaimAt(location, false, null));
+                assertNull(dataStore.getClaimAt(wilderness, false, null));
+            }
+            assertSame(claim, dataStore.getClaim(0));
+            assertNotNull(dataStore.getPlayerData(UUID.randomUUID()));
+
+            // Further saves queue up behind the write in flight instead of waiting for it.
+            dataStore.saveClaim(claim);
+            dataStore.saveClaim(claim);
+            assertEquals(1, dataStore.getClaimWriteQueue().getQueueDepth());
+        }
+        finally
+        {
+            releaseWrite.countDown();
+            dataStore.flushClaimWrites();
+        }
+
+        assertEquals(0, dataStore.getClaimWriteQueue().getQueueDepth());
+        assertEquals(2, dataStore.getClaimWriteQueue().getCompletedWrites());
+    }
+
+    @Test
+    void readersSeeConsistentModelDuringChurn() throws InterruptedException
+    {
+        DataStore dataStore = new MemoryDataStore();
+
+        // A claim that is never modified must always be found.
+        Claim stable = newClaim(world, 0, 0, 0, 15);
+        dataStore.addClaim(stable, false);
+        Location inStable = new Location(world, 8, 64, 8);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong lookups = new AtomicLong();
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        List<Thread> readers = new ArrayList<>();
+
+        for (int i = 0; i < READERS; i++)
+        {
+            Thread reader = new Thread(() ->
+            {
+                try
+                {
+                    while (running.get())
+                    {
+                        if (dataStore.getClaimAt(inStable, false, null) != stable)
+                        {
+                            failures.add(new AssertionError("Stable claim not found"));
+                            return;
+                        }
+                        // Same chunk as the churning claims.
+                        dataStore.getClaimAt(new Location(world, 40, 64, 40), false, null);
+                        lookups.incrementAndGet();
+                    }
+                }
+                catch (Throwable t)
+                {
+                    failures.add(t);
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        // Churn claims sharing chunks with the stable claim.
+        long id = 1;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        while (System.nanoTime() < deadline)
+        {
+            Claim churn = newClaim(world, id++, 16 + (int) (id % 32), 16, 40);
+            dataStore.addClaim(churn, false);
+            Claim child = newClaim(world, id++, churn.getBounds().getMinX(), 20, 4);
+            child.parent = churn;
+            dataStore.addClaim(child, false);
+            dataStore.deleteClaim(churn, false, false);
+        }
+
+        running.set(false);
+        for (Thread reader : readers)
+        {
+            reader.join(10_000);
+        }
+
+        assertTrue(failures.isEmpty(), () -> "Reader failed: " + failures.peek());
+        assertTrue(lookups.get() > 0, "Readers made no progress");
+        assertSame(stable, dataStore.getClaimAt(inStable, false, null));
+    }
+}
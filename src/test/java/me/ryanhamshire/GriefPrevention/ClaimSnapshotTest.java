@@ -0,0 +1,272 @@
+package me.ryanhamshire.GriefPrevention;
+
+import com.griefprevention.test.ServerMocks;
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.command.ConsoleCommandSender;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ClaimSnapshotTest
+{
+
+    private final World world = mock(World.class);
+    private final List<RecordingDataStore> dataStores = new ArrayList<>();
+
+    @TempDir
+    Path folder;
+    private File snapshotFile;
+    private Path journalFolder;
+    private File claimFolder;
+
+    @BeforeAll
+    static void beforeAll()
+    {
+        Server server = ServerMocks.newServer();
+        when(server.getConsoleSender()).thenReturn(mock(ConsoleCommandSender.class));
+        Bukkit.setServer(server);
+    }
+
+    @AfterAll
+    static void afterAll()
+    {
+        ServerMocks.unsetBukkitServer();
+    }
+
+    @BeforeEach
+    void beforeEach() throws IOException
+    {
+        GriefPrevention.instance = mock(GriefPrevention.class);
+        when(GriefPrevention.instance.getLogger()).thenReturn(mock(Logger.class));
+        when(this.world.getName()).thenReturn("world");
+        when(this.world.getUID()).thenReturn(UUID.randomUUID());
+
+        this.snapshotFile = this.folder.resolve("claims.snapshot").toFile();
+        this.journalFolder = this.folder.resolve("ClaimSnapshotJournal");
+        this.claimFolder = Files.createDirectory(this.folder.resolve("ClaimData")).toFile();
+        this.writeClaimFile("_nextClaimID", -60_000);
+    }
+
+    @AfterEach
+    void afterEach()
+    {
+        for (RecordingDataStore dataStore : this.dataStores)
+        {
+            dataStore.getClaimWriteQueue().close();
+        }
+        GriefPrevention.instance = null;
+    }
+
+    @Test
+    void freshSnapshotLoads() throws IOException
+    {
+        this.writeSnapshot();
+
+        RecordingDataStore dataStore = this.newDataStore();
+        assertTrue(this.newSnapshot().load(dataStore, DataStore.latestSchemaVersion, this.claimFolder, List.of(this.world)));
+
+        Claim parent = dataStore.getClaim(1L);
+        assertNotNull(parent);
+        assertEquals(new BoundingBox(0, 0, 0, 99, 255, 99), parent.getBounds());
+        assertEquals(1, parent.children.size());
+        Claim child = parent.children.get(0);
+        assertEquals(2L, child.getID());
+        assertSame(parent, child.parent);
+    }
+
+    @Test
+    void snapshotOlderThanEditedClaimFileIsRejected() throws IOException
+    {
+        this.writeSnapshot();
+
+        // An edit in place doesn't change the folder's modification time.
+        long folderModified = this.claimFolder.lastModified();
+        this.writeClaimFile("2.yml", 60_000);
+        assertTrue(this.claimFolder.setLastModified(folderModified));
+
+        assertFalse(this.newSnapshot().load(this.newDataStore(), DataStore.latestSchemaVersion, this.claimFolder, List.of(this.world)));
+    }
+
+    @Test
+    void snapshotWithAddedClaimFileIsRejected() throws IOException
+    {
+        this.writeSnapshot();
+        this.writeClaimFile("3.yml", -60_000);
+
+        assertFalse(this.newSnapshot().load(this.newDataStore(), DataStore.latestSchemaVersion, this.claimFolder, List.of(this.world)));
+    }
+
+    @Test
+    void snapshotWithDeletedClaimFileIsRejected() throws IOException
+    {
+        this.writeSnapshot();
+        Files.delete(this.claimFolder.toPath().resolve("2.yml"));
+
+        assertFalse(this.newSnapshot().load(this.newDataStore(), DataStore.latestSchemaVersion, this.claimFolder, List.of(this.world)));
+    }
+
+    @Test
+    void journalIsReplayedAfterCrash() throws IOException
+    {
+        this.writeSnapshot();
+
+        // A session that changes claims and stops without writing a snapshot.
+        ClaimSnapshot crashed = this.newSnapshot();
+        assertTrue(crashed.load(this.newDataStore(), DataStore.latestSchemaVersion, this.claimFolder, List.of(this.world)));
+
+        Claim resized = this.newClaim(new BoundingBox(0, 0, 0, 199, 255, 199), 1L);
+        crashed.journal(resized);
+        this.writeClaimFile("1.yml", 60_000);
+
+        // Claim 3 was journaled but never written, and claim 2 was journaled as deleted but its file is still there.
+        crashed.journal(this.newClaim(new BoundingBox(500, 0, 500, 599, 255, 599), 3L));
+        Claim child = this.newClaim(new BoundingBox(10, 0, 10, 19, 255, 19), 2L);
+        crashed.journalDeletion(child);
+
+        RecordingDataStore dataStore = this.newDataStore();
+        assertTrue(this.newSnapshot().load(dataStore, DataStore.latestSchemaVersion, this.claimFolder, List.of(this.world)));
+
+        Claim parent = dataStore.getClaim(1L);
+        assertNotNull(parent);
+        assertEquals(resized.getBounds(), parent.getBounds());
+        assertTrue(parent.children.isEmpty());
+        assertNotNull(dataStore.getClaim(3L));
+
+        // Storage may be a write behind the journal, so journaled changes are written again.
+        dataStore.getClaimWriteQueue().flush();
+        assertEquals(List.of(1L, 3L), dataStore.written.stream().sorted().toList());
+        assertEquals(List.of(2L), dataStore.deleted);
+    }
+
+    @Test
+    void journaledSubdivisionIsWrittenAgainAfterCrash() throws IOException
+    {
+        this.writeSnapshot();
+
+        ClaimSnapshot crashed = this.newSnapshot();
+        RecordingDataStore crashedStore = this.newDataStore();
+        assertTrue(crashed.load(crashedStore, DataStore.latestSchemaVersion, this.claimFolder, List.of(this.world)));
+
+        // The subdivision's change reached the journal, but the server stopped before its file was written.
+        Claim resized = this.newClaim(new BoundingBox(10, 0, 10, 29, 255, 29), 2L);
+        resized.parent = crashedStore.getClaim(1L);
+        crashed.journal(resized);
+
+        RecordingDataStore dataStore = this.newDataStore();
+        assertTrue(this.newSnapshot().load(dataStore, DataStore.latestSchemaVersion, this.claimFolder, List.of(this.world)));
+
+        Claim child = dataStore.getClaim(2L);
+        assertNotNull(child);
+        assertSame(dataStore.getClaim(1L), child.parent);
+        assertEquals(resized.getBounds(), child.getBounds());
+
+        dataStore.getClaimWriteQueue().flush();
+        assertEquals(List.of(2L), dataStore.written);
+        assertTrue(dataStore.deleted.isEmpty());
+    }
+
+    @Test
+    void incompleteSnapshotIsIgnored() throws IOException
+    {
+        this.writeSnapshot();
+
+        // A session that couldn't load every claim, for example because a world was missing.
+        RecordingDataStore dataStore = this.newDataStore();
+        ClaimSnapshot incomplete = this.newSnapshot();
+        assertTrue(incomplete.load(dataStore, DataStore.latestSchemaVersion, this.claimFolder, List.of(this.world)));
+        incomplete.markIncomplete();
+        incomplete.write(List.of(dataStore.getClaim(1L)), DataStore.latestSchemaVersion);
+
+        assertFalse(this.snapshotFile.exists());
+        assertFalse(this.newSnapshot().load(this.newDataStore(), DataStore.latestSchemaVersion, this.claimFolder, List.of(this.world)));
+    }
+
+    private void writeSnapshot() throws IOException
+    {
+        DataStore dataStore = this.newDataStore();
+        Claim parent = this.newClaim(new BoundingBox(0, 0, 0, 99, 255, 99), 1L);
+        dataStore.addClaim(parent, false);
+        Claim child = this.newClaim(new BoundingBox(10, 0, 10, 19, 255, 19), 2L);
+        child.parent = parent;
+        dataStore.addClaim(child, false);
+        this.writeClaimFile("1.yml", -60_000);
+        this.writeClaimFile("2.yml", -60_000);
+
+        ClaimSnapshot snapshot = this.newSnapshot();
+        snapshot.reset();
+        snapshot.write(List.of(parent), DataStore.latestSchemaVersion);
+        assertTrue(this.snapshotFile.isFile());
+    }
+
+    private Claim newClaim(BoundingBox bounds, long id)
+    {
+        return new Claim(this.world, bounds, UUID.randomUUID(),
+                List.of(), List.of(), List.of(), List.of(), false, id);
+    }
+
+    private void writeClaimFile(String name, long offsetMillis) throws IOException
+    {
+        // The snapshot never reads the files, only their names and modification times.
+        Path file = this.claimFolder.toPath().resolve(name);
+        Files.writeString(file, name);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + offsetMillis));
+    }
+
+    private ClaimSnapshot newSnapshot()
+    {
+        return new ClaimSnapshot(this.snapshotFile, this.journalFolder, "FlatFile");
+    }
+
+    private RecordingDataStore newDataStore()
+    {
+        RecordingDataStore dataStore = new RecordingDataStore();
+        this.dataStores.add(dataStore);
+        return dataStore;
+    }
+
+    private static class RecordingDataStore extends MemoryDataStore
+    {
+
+        private final List<Long> written = Collections.synchronizedList(new ArrayList<>());
+        private final List<Long> deleted = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        void writeClaimToStorage(Claim claim)
+        {
+            this.written.add(claim.getID());
+        }
+
+        @Override
+        void deleteClaimFromSecondaryStorage(Claim claim)
+        {
+            this.deleted.add(claim.getID());
+        }
+
+    }
+
+}
@@ -0,0 +1,115 @@
+package me.ryanhamshire.GriefPrevention;
+
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
+import org.bukkit.World;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class ClaimTrustTest
+{
+
+    private static Claim claim(List<String> builders, List<String> managers)
+    {
+        return new Claim(mock(World.class), new BoundingBox(0, 0, 0, 10, 10, 10), UUID.randomUUID(),
+                builders, List.of(), List.of(), managers, false, 1L);
+    }
+
+    @Test
+    void playerTrustIsFoundByUuid()
+    {
+        UUID builder = UUID.randomUUID();
+        Claim claim = claim(List.of(builder.toString().toUpperCase()), List.of());
+
+        assertTrue(claim.hasExplicitPermission(builder, ClaimPermission.Build));
+        assertTrue(claim.hasExplicitPermission(builder, ClaimPermission.Access));
+        assertFalse(claim.hasExplicitPermission(builder, ClaimPermission.Manage));
+        assertEquals(ClaimPermission.Build, claim.getPermission(builder.toString()));
+
+        claim.dropPermission(builder.toString());
+        assertFalse(claim.hasAnyExplicitPermission(builder));
+    }
+
+    @Test
+    void subjectsKeepTheirStringForm()
+    {
+        UUID builder = UUID.randomUUID();
+        Claim claim = claim(List.of(builder.toString(), "public", "[group.builders]"), List.of("[group.admins]"));
+
+        assertEquals(ClaimPermission.Build, claim.getPermission("public"));
+        assertEquals(ClaimPermission.Build, claim.getPermission("[group.builders]"));
+        assertNull(claim.getPermission("group.builders"));
+        assertFalse(claim.hasExplicitPermission(UUID.randomUUID(), ClaimPermission.Build), "Public trust isn't explicit.");
+
+        ArrayList<String> builders = new ArrayList<>();
+        ArrayList<String> managers = new ArrayList<>();
+        claim.getPermissions(builders, new ArrayList<>(), new ArrayList<>(), managers);
+        assertEquals(3, builders.size());
+        assertTrue(builders.containsAll(List.of(builder.toString(), "public", "[group.builders]")));
+        assertEquals(List.of("[group.admins]"), managers);
+    }
+
+    @Test
+    void directManagerListChangesAreSeen()
+    {
+        UUID manager = UUID.randomUUID();
+        Claim claim = claim(List.of(), List.of());
+        assertFalse(claim.hasExplicitPermission(manager, ClaimPermission.Manage));
+
+        claim.managers.add(manager.toString());
+        assertTrue(claim.hasExplicitPermission(manager, ClaimPermission.Manage));
+        assertTrue(claim.hasAnyExplicitPermission(manager));
+
+        claim.managers.set(0, UUID.randomUUID().toString());
+        assertFalse(claim.hasExplicitPermission(manager, ClaimPermission.Manage));
+
+        Claim copy = new Claim(claim);
+        copy.managers.add(manager.toString());
+        assertTrue(copy.hasExplicitPermission(manager, ClaimPermission.Manage));
+        assertFalse(claim.hasExplicitPermission(manager, ClaimPermission.Manage), "Copies don't share managers.");
+    }
+
+    @Test
+    void rememberedGrantsEndWithTrustChanges()
+    {
+        UUID player = UUID.randomUUID();
+        Claim claim = claim(List.of(), List.of());
+
+        claim.rememberGrant(player, ClaimPermission.Build);
+        assertTrue(claim.isGrantRemembered(player, ClaimPermission.Build));
+        assertFalse(claim.isGrantRemembered(player, ClaimPermission.Access), "Only the checked level is remembered.");
+
+        claim.setPermission(UUID.randomUUID().toString(), ClaimPermission.Access);
+        assertFalse(claim.isGrantRemembered(player, ClaimPermission.Build));
+
+        claim.rememberGrant(player, ClaimPermission.Manage);
+        claim.managers.add("[rank.moderator]");
+        assertFalse(claim.isGrantRemembered(player, ClaimPermission.Manage), "Direct list edits count as trust changes.");
+    }
+
+    @Test
+    void inheritedGrantsEndWithParentChanges()
+    {
+        UUID player = UUID.randomUUID();
+        Claim parent = claim(List.of(), List.of());
+        Claim child = claim(List.of(), List.of());
+        child.parent = parent;
+
+        child.rememberGrant(player, ClaimPermission.Access);
+        parent.dropPermission(player.toString());
+        assertFalse(child.isGrantRemembered(player, ClaimPermission.Access));
+
+        child.rememberGrant(player, ClaimPermission.Access);
+        child.setSubclaimRestrictions(true);
+        assertFalse(child.isGrantRemembered(player, ClaimPermission.Access));
+    }
+
+}
@@ -0,0 +1,420 @@
+package me.ryanhamshire.GriefPrevention;
+
+import com.griefprevention.storage.ClaimWriteQueue;
+import com.griefprevention.storage.ConnectionPool;
+import com.griefprevention.test.ServerMocks;
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.command.ConsoleCommandSender;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DatabaseDataStoreTest
+{
+
+    private static final AtomicInteger databases = new AtomicInteger();
+    private static Server server;
+
+    // Each test gets its own in-memory database, kept alive by the pool's open connections.
+    private final String url = "jdbc:h2:mem:datastore" + databases.incrementAndGet();
+    private final World world = mock(World.class);
+    private final UUID owner = UUID.randomUUID();
+    private final UUID builder = UUID.randomUUID();
+    private final UUID banned = UUID.randomUUID();
+    private ConnectionPool pool;
+    private DatabaseDataStore dataStore;
+
+    @BeforeAll
+    static void beforeAll()
+    {
+        server = ServerMocks.newServer();
+        when(server.getConsoleSender()).thenReturn(mock(ConsoleCommandSender.class));
+        Bukkit.setServer(server);
+    }
+
+    @AfterAll
+    static void afterAll()
+    {
+        ServerMocks.unsetBukkitServer();
+    }
+
+    @BeforeEach
+    void beforeEach() throws SQLException
+    {
+        GriefPrevention.instance = mock(GriefPrevention.class);
+        when(GriefPrevention.instance.getLogger()).thenReturn(mock(Logger.class));
+        when(this.world.getName()).thenReturn("world");
+        when(this.world.getUID()).thenReturn(UUID.randomUUID());
+        when(server.getWorlds()).thenReturn(List.of(this.world));
+
+        this.open(this.url, this.url, false);
+    }
+
+    @AfterEach
+    void afterEach()
+    {
+        this.dataStore.getClaimWriteQueue().close();
+        this.pool.close();
+        GriefPrevention.instance = null;
+    }
+
+    @Test
+    void writeUpdateAndDeleteClaims() throws SQLException
+    {
+        Claim parent = this.newClaim(new BoundingBox(0, 0, 0, 99, 255, 99), this.owner, 1L);
+        parent.setPermission(this.builder.toString(), ClaimPermission.Build);
+        parent.setPermission("public", ClaimPermission.Access);
+        parent.setPermission("[griefprevention.vip]", ClaimPermission.Inventory);
+        parent.banUUID(this.banned);
+        Claim child = this.newClaim(new BoundingBox(10, 0, 10, 19, 255, 19), null, 2L);
+        child.parent = parent;
+        child.setPermission("public", ClaimPermission.Build);
+
+        this.dataStore.writeClaimsToStorage(List.of(parent, child), List.of());
+        assertEquals(List.of(
+                "1|" + this.owner + "|world;0;0;0|world;99;255;99|FALSE|-1|FALSE",
+                "2||world;10;0;10|world;19;255;19|FALSE|1|FALSE"),
+                this.query("SELECT * FROM griefprevention_claims ORDER BY id"));
+        assertEquals(Set.of(
+                "1|" + this.builder + "|3",
+                "1|public|1",
+                "1|[griefprevention.vip]|2",
+                "1|" + this.banned + "|5",
+                "2|public|3"),
+                this.trustRows());
+
+        // An update rewrites the existing row and replaces every trust row.
+        parent.areExplosivesAllowed = true;
+        parent.dropPermission("public");
+        parent.setPermission(this.builder.toString(), ClaimPermission.Manage);
+        this.dataStore.writeClaimsToStorage(List.of(parent), List.of());
+        assertEquals(List.of(
+                "1|" + this.owner + "|world;0;0;0|world;99;255;99|FALSE|-1|TRUE",
+                "2||world;10;0;10|world;19;255;19|FALSE|1|FALSE"),
+                this.query("SELECT * FROM griefprevention_claims ORDER BY id"));
+        assertEquals(Set.of(
+                "1|" + this.builder + "|3",
+                "1|" + this.builder + "|4",
+                "1|[griefprevention.vip]|2",
+                "2|public|3"),
+                this.trustRows());
+
+        this.dataStore.writeClaimsToStorage(List.of(), List.of(child));
+        assertEquals(List.of("1"), this.query("SELECT id FROM griefprevention_claims"));
+        assertEquals(Set.of(
+                "1|" + this.builder + "|3",
+                "1|" + this.builder + "|4",
+                "1|[griefprevention.vip]|2"),
+                this.trustRows());
+
+        this.dataStore.deleteClaimFromSecondaryStorage(parent);
+        assertEquals(List.of(), this.query("SELECT id FROM griefprevention_claims"));
+        assertEquals(Set.of(), this.trustRows());
+    }
+
+    @Test
+    void writeClaimsWithoutBatchRowCounts() throws SQLException
+    {
+        // Some drivers report SUCCESS_NO_INFO for every statement in a batch, which upserts don't rely on.
+        this.pool.close();
+        this.open(this.url, this.url, true);
+
+        Claim claim = this.newClaim(new BoundingBox(0, 0, 0, 99, 255, 99), this.owner, 1L);
+        claim.setPermission("public", ClaimPermission.Access);
+        this.dataStore.writeClaimsToStorage(List.of(claim), List.of());
+
+        claim.areExplosivesAllowed = true;
+        claim.setPermission("public", ClaimPermission.Build);
+        this.dataStore.writeClaimsToStorage(List.of(claim), List.of());
+
+        assertEquals(List.of("1|" + this.owner + "|world;0;0;0|world;99;255;99|FALSE|-1|TRUE"),
+                this.query("SELECT * FROM griefprevention_claims"));
+        assertEquals(Set.of("1|public|3"), this.trustRows());
+    }
+
+    @Test
+    void writeClaimsWithMySqlUpsert() throws SQLException
+    {
+        // H2's MySQL mode understands MySQL's upsert syntax.
+        this.pool.close();
+        this.open("jdbc:mysql://localhost/minecraft", this.url + ";MODE=MySQL", false);
+
+        Claim claim = this.newClaim(new BoundingBox(0, 0, 0, 99, 255, 99), this.owner, 1L);
+        claim.setPermission("public", ClaimPermission.Access);
+        this.dataStore.writeClaimsToStorage(List.of(claim), List.of());
+
+        claim.areExplosivesAllowed = true;
+        claim.setPermission("public", ClaimPermission.Build);
+        this.dataStore.writeClaimsToStorage(List.of(claim), List.of());
+
+        assertEquals(List.of("1|" + this.owner + "|world;0;0;0|world;99;255;99|FALSE|-1|TRUE"),
+                this.query("SELECT * FROM griefprevention_claims"));
+        assertEquals(Set.of("1|public|3"), this.trustRows());
+    }
+
+    @Test
+    void failedClaimWriteIsCounted() throws SQLException
+    {
+        // The claim write queue can only count failures which reach it.
+        this.update("DROP TABLE griefprevention_claimtrust");
+
+        ClaimWriteQueue queue = this.dataStore.getClaimWriteQueue();
+        queue.close();
+        queue.save(this.newClaim(new BoundingBox(0, 0, 0, 99, 255, 99), this.owner, 1L));
+
+        assertEquals(1, queue.getFailedWrites());
+        assertEquals(List.of(), this.query("SELECT id FROM griefprevention_claims"));
+    }
+
+    @Test
+    void migrateClaimTable() throws Exception
+    {
+        String manager = UUID.randomUUID().toString();
+        this.update("CREATE TABLE griefprevention_claimdata (id INTEGER, owner VARCHAR(50), lessercorner VARCHAR(100), greatercorner VARCHAR(100), builders TEXT, containers TEXT, accessors TEXT, managers TEXT, inheritnothing BOOLEAN, parentid INTEGER, bannedplayerids TEXT, claimExplosions BOOLEAN)");
+        this.update("INSERT INTO griefprevention_claimdata VALUES "
+                + "(1, '" + this.owner + "', 'world;0;0;0', 'world;99;255;99', '" + this.builder + ";public;', '[griefprevention.vip];', '', '" + manager + "', FALSE, -1, '" + this.banned + ";', TRUE), "
+                // Repeated entries can't all be copied, the trust table's key allows each only once.
+                + "(2, '', 'world;10;0;10', 'world;19;255;19', '" + this.builder + ";" + this.builder + ";', NULL, 'public;', NULL, TRUE, 1, NULL, FALSE), "
+                + "(3, '" + this.owner + "', 'world;200;0;200', 'world;299;255;299', NULL, NULL, NULL, NULL, FALSE, -1, NULL, NULL), "
+                // The old table had no key, so a claim may be there twice.
+                + "(3, '" + manager + "', 'world;0;0;0', 'world;1;1;1', 'public;', NULL, NULL, NULL, FALSE, -1, NULL, NULL)");
+
+        this.dataStore.migrateClaimTable(3);
+
+        assertEquals(List.of(
+                "1|" + this.owner + "|world;0;0;0|world;99;255;99|FALSE|-1|TRUE",
+                "2||world;10;0;10|world;19;255;19|TRUE|1|FALSE",
+                "3|" + this.owner + "|world;200;0;200|world;299;255;299|FALSE|-1|FALSE"),
+                this.query("SELECT * FROM griefprevention_claims ORDER BY id"));
+        assertEquals(Set.of(
+                "1|" + this.builder + "|3",
+                "1|public|3",
+                "1|[griefprevention.vip]|2",
+                "1|" + manager + "|4",
+                "1|" + this.banned + "|5",
+                "2|" + this.builder + "|3",
+                "2|public|1"),
+                this.trustRows());
+
+        // The old table is left as a backup.
+        assertEquals(List.of("4"), this.query("SELECT COUNT(*) FROM griefprevention_claimdata"));
+
+        // Banned players aren't trusted.
+        assertEquals(List.of(1L, 2L), this.dataStore.getTrustedClaimIDsAsync(this.builder.toString()).get().stream().sorted().toList());
+        assertEquals(List.of(), this.dataStore.getTrustedClaimIDsAsync(this.banned.toString()).get());
+    }
+
+    @Test
+    void tableVersionIsStoredApartFromSchemaVersion() throws SQLException
+    {
+        // Tables from before they were versioned still need their claims moved.
+        assertEquals(0, this.dataStore.getTableVersion());
+
+        this.dataStore.setSchemaVersion(DataStore.latestSchemaVersion);
+        this.dataStore.setTableVersion(1);
+        this.dataStore.setTableVersion(1);
+
+        assertEquals(1, this.dataStore.getTableVersion());
+        assertEquals(List.of("1"), this.query("SELECT version FROM griefprevention_tableversion"));
+        assertEquals(List.of(String.valueOf(DataStore.latestSchemaVersion)), this.query("SELECT version FROM griefprevention_schemaversion"));
+    }
+
+    @Test
+    void loadClaims() throws SQLException
+    {
+        String manager = UUID.randomUUID().toString();
+        this.update("INSERT INTO griefprevention_claims VALUES "
+                + "(1, '" + this.owner + "', 'world;0;0;0', 'world;99;255;99', FALSE, -1, TRUE), "
+                + "(2, '', 'world;10;0;10', 'world;19;255;19', TRUE, 1, FALSE), "
+                + "(3, '', 'world;50;0;50', 'world;59;255;59', FALSE, 1, FALSE), "
+                + "(4, '', 'world;200;0;200', 'world;299;255;299', FALSE, -1, FALSE), "
+                // A subdivision outside of every claim, and a claim in a world that isn't loaded.
+                + "(5, '', 'world;500;0;500', 'world;509;255;509', FALSE, 99, FALSE), "
+                + "(6, '" + this.owner + "', 'nether;0;0;0', 'nether;99;255;99', FALSE, -1, FALSE)");
+        this.update("INSERT INTO griefprevention_claimtrust VALUES "
+                + "(1, '" + this.builder + "', 3), "
+                + "(1, 'public', 1), "
+                + "(1, '[griefprevention.vip]', 2), "
+                + "(1, '" + manager + "', 4), "
+                + "(1, '" + this.banned + "', 5), "
+                + "(2, 'public', 3), "
+                + "(5, 'public', 3)");
+
+        this.dataStore.setSchemaVersion(DataStore.latestSchemaVersion);
+        this.dataStore.loadClaims(DataStore.latestSchemaVersion);
+
+        Claim parent = this.dataStore.getClaim(1L);
+        assertNotNull(parent);
+        assertEquals(this.owner, parent.ownerID);
+        assertEquals(new BoundingBox(0, 0, 0, 99, 255, 99), parent.getBounds());
+        assertTrue(parent.areExplosivesAllowed);
+        assertEquals(List.of(
+                List.of(this.builder.toString()),
+                List.of("[griefprevention.vip]"),
+                List.of("public"),
+                List.of(manager)),
+                permissions(parent));
+        assertEquals(Set.of(this.banned), parent.getBannedPlayers());
+
+        assertEquals(List.of(2L, 3L), parent.children.stream().map(Claim::getID).toList());
+        Claim subdivision = parent.children.get(0);
+        assertSame(subdivision, this.dataStore.getClaim(2L));
+        assertSame(parent, subdivision.parent);
+        assertTrue(subdivision.inDataStore);
+        assertTrue(subdivision.getSubclaimRestrictions());
+        assertEquals(List.of(List.of("public"), List.of(), List.of(), List.of()), permissions(subdivision));
+        assertSame(subdivision, this.dataStore.getClaimAt(new Location(this.world, 15, 64, 15), true, null));
+
+        Claim adminClaim = this.dataStore.getClaim(4L);
+        assertNotNull(adminClaim);
+        assertNull(adminClaim.ownerID);
+        assertTrue(adminClaim.children.isEmpty());
+
+        // The orphaned subdivision is deleted, the claim in the missing world is only skipped.
+        assertNull(this.dataStore.getClaim(6L));
+        assertEquals(List.of("1", "2", "3", "4", "6"), this.query("SELECT id FROM griefprevention_claims ORDER BY id"));
+        assertEquals(List.of(), this.query("SELECT subject FROM griefprevention_claimtrust WHERE claim_id = 5"));
+    }
+
+    // The data store picks its SQL dialect by its own URL, which may differ from the one actually connected to.
+    private void open(String dataStoreUrl, String connectionUrl, boolean withoutRowCounts) throws SQLException
+    {
+        if (this.dataStore != null) this.dataStore.getClaimWriteQueue().close();
+
+        this.pool = new ConnectionPool(
+                () ->
+                {
+                    Connection connection = DriverManager.getConnection(connectionUrl);
+                    return withoutRowCounts ? withoutRowCounts(connection) : connection;
+                },
+                2,
+                30,
+                TimeUnit.SECONDS,
+                (message, error) -> {});
+        this.dataStore = new DatabaseDataStore(dataStoreUrl, this.pool);
+        this.dataStore.createTables();
+    }
+
+    private Claim newClaim(BoundingBox bounds, UUID ownerID, long id)
+    {
+        return new Claim(this.world, bounds, ownerID, List.of(), List.of(), List.of(), List.of(), false, id);
+    }
+
+    private void update(String sql) throws SQLException
+    {
+        this.pool.execute(connection ->
+        {
+            try (Statement statement = connection.createStatement())
+            {
+                return statement.executeUpdate(sql);
+            }
+        });
+    }
+
+    private static List<List<String>> permissions(Claim claim)
+    {
+        ArrayList<String> builders = new ArrayList<>();
+        ArrayList<String> containers = new ArrayList<>();
+        ArrayList<String> accessors = new ArrayList<>();
+        ArrayList<String> managers = new ArrayList<>();
+        claim.getPermissions(builders, containers, accessors, managers);
+        return List.of(builders, containers, accessors, managers);
+    }
+
+    private Set<String> trustRows() throws SQLException
+    {
+        return Set.copyOf(this.query("SELECT claim_id, subject, level FROM griefprevention_claimtrust"));
+    }
+
+    private List<String> query(String sql) throws SQLException
+    {
+        return this.pool.execute(connection ->
+        {
+            try (Statement statement = connection.createStatement())
+            {
+                ResultSet results = statement.executeQuery(sql);
+                int columns = results.getMetaData().getColumnCount();
+                List<String> rows = new ArrayList<>();
+                while (results.next())
+                {
+                    StringBuilder row = new StringBuilder();
+                    for (int i = 1; i <= columns; i++)
+                    {
+                        if (i > 1) row.append('|');
+                        String value = results.getString(i);
+                        if (value != null) row.append(value);
+                    }
+                    rows.add(row.toString());
+                }
+                return rows;
+            }
+        });
+    }
+
+    // Wraps a connection so that its prepared statements' batches report SUCCESS_NO_INFO instead of row counts.
+    private static Connection withoutRowCounts(Connection connection)
+    {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, arguments) ->
+                {
+                    Object result = invoke(connection, method, arguments);
+                    if (!(result instanceof PreparedStatement statement)) return result;
+
+                    return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[] { PreparedStatement.class },
+                            (statementProxy, statementMethod, statementArguments) ->
+                            {
+                                Object statementResult = invoke(statement, statementMethod, statementArguments);
+                                if (!statementMethod.getName().equals("executeBatch")) return statementResult;
+
+                                int[] counts = ((int[]) statementResult).clone();
+                                Arrays.fill(counts, Statement.SUCCESS_NO_INFO);
+                                return counts;
+                            });
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] arguments) throws Throwable
+    {
+        try
+        {
+            return method.invoke(target, arguments);
+        }
+        catch (InvocationTargetException e)
+        {
+            throw e.getCause();
+        }
+    }
+
+}
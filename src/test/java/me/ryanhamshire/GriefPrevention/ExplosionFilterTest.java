@@ -0,0 +1,137 @@
+package me.ryanhamshire.GriefPrevention;
+
+import com.griefprevention.test.ServerMocks;
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.event.Event;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ExplosionFilterTest
+{
+    private static final int SEA_LEVEL = 63;
+
+    private final World world = mock(World.class);
+    private DataStore dataStore;
+    private EntityEventHandler handler;
+    private long nextId;
+
+    @BeforeAll
+    static void beforeAll()
+    {
+        Bukkit.setServer(ServerMocks.newServer());
+    }
+
+    @AfterAll
+    static void afterAll()
+    {
+        ServerMocks.unsetBukkitServer();
+        GriefPrevention.instance = null;
+    }
+
+    @BeforeEach
+    void beforeEach()
+    {
+        when(world.getUID()).thenReturn(UUID.randomUUID());
+        when(world.getEnvironment()).thenReturn(World.Environment.NORMAL);
+
+        GriefPrevention plugin = mock(GriefPrevention.class);
+        when(plugin.claimsEnabledForWorld(world)).thenReturn(true);
+        when(plugin.getSeaLevel(world)).thenReturn(SEA_LEVEL);
+        plugin.config_blockClaimExplosions = true;
+        plugin.config_blockSurfaceOtherExplosions = true;
+        GriefPrevention.instance = plugin;
+
+        this.dataStore = new MemoryDataStore();
+        plugin.dataStore = this.dataStore;
+        this.handler = new EntityEventHandler(this.dataStore, plugin);
+    }
+
+    private Claim newClaim(int x1, int z1, int x2, int z2, boolean explosivesAllowed)
+    {
+        Claim claim = new Claim(world, new BoundingBox(x1, 0, z1, x2, Claim._2D_HEIGHT, z2), null,
+                List.of(), List.of(), List.of(), List.of(), false, this.nextId++);
+        claim.areExplosivesAllowed = explosivesAllowed;
+        this.dataStore.addClaim(claim, false);
+        return claim;
+    }
+
+    // A 2000 block blast centered where four claims meet, with some wilderness, air, and surface blocks mixed in.
+    private List<Block> explode(Random random)
+    {
+        List<Block> blocks = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++)
+        {
+            Block block = mock(Block.class);
+            when(block.getWorld()).thenReturn(world);
+            when(block.getX()).thenReturn(random.nextInt(24) - 12);
+            when(block.getY()).thenReturn(SEA_LEVEL - 14 + random.nextInt(20));
+            when(block.getZ()).thenReturn(random.nextInt(24) - 12);
+            when(block.getType()).thenReturn(random.nextInt(10) == 0 ? Material.AIR : Material.STONE);
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
+    private void addClaims()
+    {
+        newClaim(-10, -10, -1, -1, false);
+        newClaim(0, -10, 10, -1, true);
+        newClaim(-10, 0, -1, 10, false);
+        newClaim(0, 0, 10, 10, false);
+    }
+
+    @Test
+    void explosionKeepsAllowedBlocksInOrder()
+    {
+        addClaims();
+        List<Block> blocks = explode(new Random(1));
+
+        List<Block> expected = new ArrayList<>();
+        for (Block block : blocks)
+        {
+            if (block.getType().isAir()) continue;
+            Claim claim = dataStore.getClaimAt(new Location(world, block.getX(), block.getY(), block.getZ()), false, null);
+            boolean allowed = claim != null ? claim.areExplosivesAllowed : block.getY() < SEA_LEVEL - 7;
+            if (allowed) expected.add(block);
+        }
+
+        handler.handleExplosion(new Location(world, 0, SEA_LEVEL, 0), null, blocks);
+
+        assertEquals(expected, blocks);
+    }
+
+    @Test
+    void explodeInteractRemovesClaimedBlocksForForeignSources()
+    {
+        addClaims();
+        List<Block> blocks = explode(new Random(2));
+
+        List<Block> expected = new ArrayList<>();
+        for (Block block : blocks)
+        {
+            Claim claim = dataStore.getClaimAt(new Location(world, block.getX(), block.getY(), block.getZ()), false, null);
+            // With no source, nothing in a claim may be interacted with.
+            if (claim == null || block.getType().isAir()) expected.add(block);
+        }
+
+        handler.handleExplodeInteract(new Location(world, 0, SEA_LEVEL, 0), null, blocks, mock(Event.class));
+
+        assertEquals(expected, blocks);
+    }
+}
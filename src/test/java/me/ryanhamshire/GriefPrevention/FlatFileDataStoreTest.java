@@ -0,0 +1,176 @@
+package me.ryanhamshire.GriefPrevention;
+
+import com.griefprevention.test.ServerMocks;
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.command.ConsoleCommandSender;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FlatFileDataStoreTest
+{
+
+    // Enough claim files that parsing is split across threads.
+    private static final int CLAIMS = 500;
+
+    private static Server server;
+
+    private final World world = mock(World.class);
+    private final World unloadedWorld = mock(World.class);
+    private final UUID owner = UUID.randomUUID();
+
+    @TempDir
+    Path claimFolder;
+    private FlatFileDataStore dataStore;
+
+    @BeforeAll
+    static void beforeAll()
+    {
+        server = ServerMocks.newServer();
+        when(server.getConsoleSender()).thenReturn(mock(ConsoleCommandSender.class));
+        Bukkit.setServer(server);
+    }
+
+    @AfterAll
+    static void afterAll()
+    {
+        ServerMocks.unsetBukkitServer();
+    }
+
+    @BeforeEach
+    void beforeEach() throws Exception
+    {
+        GriefPrevention.instance = mock(GriefPrevention.class);
+        when(GriefPrevention.instance.getLogger()).thenReturn(mock(Logger.class));
+        when(this.world.getName()).thenReturn("world");
+        when(this.world.getUID()).thenReturn(UUID.randomUUID());
+        when(this.unloadedWorld.getName()).thenReturn("nether");
+        when(this.unloadedWorld.getUID()).thenReturn(UUID.randomUUID());
+        when(server.getWorlds()).thenReturn(List.of(this.world));
+
+        this.dataStore = new FlatFileDataStore(false);
+    }
+
+    @AfterEach
+    void afterEach()
+    {
+        this.dataStore.getClaimWriteQueue().close();
+        GriefPrevention.instance = null;
+    }
+
+    @Test
+    void loadClaimFilesInParallel() throws Exception
+    {
+        // A row of claims, each with a subdivision in a file of its own, in whatever order the folder lists them.
+        for (long id = 1; id <= CLAIMS; id++)
+        {
+            int x = (int) id * 100;
+            Claim claim = this.newClaim(this.world, new BoundingBox(x, 0, 0, x + 49, 255, 49), this.owner, id);
+            claim.setPermission("public", ClaimPermission.Build);
+            this.writeClaimFile(claim);
+
+            Claim subdivision = this.newClaim(this.world, new BoundingBox(x + 10, 0, 10, x + 19, 255, 19), null, CLAIMS + id);
+            subdivision.parent = claim;
+            this.writeClaimFile(subdivision);
+        }
+
+        this.dataStore.loadClaimData(this.claimFolder.toFile().listFiles());
+
+        assertEquals(CLAIMS, this.dataStore.claims.size());
+        for (long id = 1; id <= CLAIMS; id++)
+        {
+            int x = (int) id * 100;
+            Claim claim = this.dataStore.getClaim(id);
+            assertNotNull(claim, "Claim " + id + " should be loaded.");
+            assertEquals(new BoundingBox(x, 0, 0, x + 49, 255, 49), claim.getBounds());
+            assertEquals(this.owner, claim.ownerID);
+            assertTrue(claim.inDataStore);
+            assertEquals(List.of("public"), permissions(claim).get(0));
+
+            Claim subdivision = this.dataStore.getClaim(CLAIMS + id);
+            assertNotNull(subdivision, "Subdivision " + (CLAIMS + id) + " should be loaded.");
+            assertSame(claim, subdivision.parent);
+            assertEquals(List.of(subdivision), claim.children);
+            assertSame(subdivision, this.dataStore.getClaimAt(new Location(this.world, x + 15, 64, 15), true, null));
+        }
+    }
+
+    @Test
+    void badClaimFilesAreSkipped() throws Exception
+    {
+        Claim claim = this.newClaim(this.world, new BoundingBox(0, 0, 0, 99, 255, 99), this.owner, 1L);
+        this.writeClaimFile(claim);
+
+        // A subdivision whose parent is gone, and a claim in a world that isn't loaded.
+        Claim parent = this.newClaim(this.world, new BoundingBox(500, 0, 500, 599, 255, 599), this.owner, 99L);
+        Claim orphan = this.newClaim(this.world, new BoundingBox(510, 0, 510, 519, 255, 519), null, 2L);
+        orphan.parent = parent;
+        this.writeClaimFile(orphan);
+        this.writeClaimFile(this.newClaim(this.unloadedWorld, new BoundingBox(0, 0, 0, 99, 255, 99), this.owner, 3L));
+
+        // A file cut short by a full disk, a file which isn't a claim, and a special file.
+        Files.writeString(this.claimFolder.resolve("4.yml"), "Lesser Boundary Corner: [world;", StandardCharsets.UTF_8);
+        File notAClaim = Files.writeString(this.claimFolder.resolve("notes.txt"), "", StandardCharsets.UTF_8).toFile();
+        File nextClaimID = Files.writeString(this.claimFolder.resolve("_nextClaimID"), "100", StandardCharsets.UTF_8).toFile();
+
+        this.dataStore.loadClaimData(this.claimFolder.toFile().listFiles());
+
+        assertEquals(List.of(claim.getID()), this.dataStore.claims.stream().map(Claim::getID).toList());
+        assertNull(this.dataStore.getClaim(2L));
+        assertNull(this.dataStore.getClaim(3L));
+        assertNull(this.dataStore.getClaim(4L));
+
+        // The orphan's and the broken file are left alone, only files which can't be claims are removed.
+        assertTrue(Files.exists(this.claimFolder.resolve("2.yml")));
+        assertTrue(Files.exists(this.claimFolder.resolve("4.yml")));
+        assertFalse(notAClaim.exists());
+        assertTrue(nextClaimID.exists());
+    }
+
+    private Claim newClaim(World world, BoundingBox bounds, UUID ownerID, long id)
+    {
+        return new Claim(world, bounds, ownerID, List.of(), List.of(), List.of(), List.of(), false, id);
+    }
+
+    private void writeClaimFile(Claim claim) throws IOException
+    {
+        Files.writeString(this.claimFolder.resolve(claim.getID() + ".yml"), this.dataStore.getYamlForClaim(claim), StandardCharsets.UTF_8);
+    }
+
+    private static List<List<String>> permissions(Claim claim)
+    {
+        ArrayList<String> builders = new ArrayList<>();
+        ArrayList<String> containers = new ArrayList<>();
+        ArrayList<String> accessors = new ArrayList<>();
+        ArrayList<String> managers = new ArrayList<>();
+        claim.getPermissions(builders, containers, accessors, managers);
+        return List.of(builders, containers, accessors, managers);
+    }
+
+}
@@ -0,0 +1,49 @@
+package me.ryanhamshire.GriefPrevention;
+
+import java.util.UUID;
+
+/**
+ * A {@link DataStore} that keeps everything in memory and never touches secondary storage.
+ */
+class MemoryDataStore extends DataStore
+{
+
+    @Override
+    int getSchemaVersionFromStorage()
+    {
+        return latestSchemaVersion;
+    }
+
+    @Override
+    void updateSchemaVersionInStorage(int versionToSet) {}
+
+    @Override
+    void saveGroupBonusBlocks(String groupName, int amount) {}
+
+    @Override
+    void writeClaimToStorage(Claim claim) {}
+
+    @Override
+    void incrementNextClaimID()
+    {
+        this.nextClaimID++;
+    }
+
+    @Override
+    PlayerData getPlayerDataFromStorage(UUID playerID)
+    {
+        PlayerData playerData = new PlayerData();
+        playerData.playerID = playerID;
+        return playerData;
+    }
+
+    @Override
+    void deleteClaimFromSecondaryStorage(Claim claim) {}
+
+    @Override
+    void overrideSavePlayerData(UUID playerID, PlayerData playerData) {}
+
+    @Override
+    void close() {}
+
+}